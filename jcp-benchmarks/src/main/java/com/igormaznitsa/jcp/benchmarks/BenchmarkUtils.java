@@ -0,0 +1,130 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.benchmarks;
+
+import com.igormaznitsa.jcp.containers.FileInfoContainer;
+import com.igormaznitsa.jcp.containers.TextFileDataContainer;
+import com.igormaznitsa.jcp.context.PreprocessingState;
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.logger.PreprocessorLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+
+/**
+ * Auxiliary methods to prepare preprocessor contexts and sources for benchmarks.
+ */
+final class BenchmarkUtils {
+
+  private static final PreprocessorLogger SILENT_LOGGER = new PreprocessorLogger() {
+    @Override
+    public void error(final String message) {
+    }
+
+    @Override
+    public void info(final String message) {
+    }
+
+    @Override
+    public void debug(final String message) {
+    }
+
+    @Override
+    public void warning(final String message) {
+    }
+  };
+
+  private BenchmarkUtils() {
+  }
+
+  /**
+   * Make new temporary folder, it is removed on JVM exit if it is empty.
+   *
+   * @return the created folder, must not be null
+   * @throws IOException if the folder can't be created
+   */
+  static File makeTempFolder() throws IOException {
+    final File folder = Files.createTempDirectory("jcp-bench").toFile();
+    folder.deleteOnExit();
+    return folder;
+  }
+
+  /**
+   * Copy XML files of the static site test project into the folder, they are packed into the benchmark jar.
+   *
+   * @param folder target folder, must not be null
+   * @param names  names of files to be copied, must not be null
+   * @throws IOException if a file can't be copied
+   */
+  static void copyStaticSiteFiles(final File folder, final String... names) throws IOException {
+    for (final String name : names) {
+      try (final InputStream in = BenchmarkUtils.class.getResourceAsStream("/static-site/" + name)) {
+        if (in == null) {
+          throw new FileNotFoundException("Can't find static site resource: " + name);
+        }
+        final File file = new File(folder, name);
+        Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        file.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * Make dry run context with the folder as the only source folder and without logging.
+   *
+   * @param folder the source folder, must not be null
+   * @return new context, must not be null
+   */
+  static PreprocessorContext makeContext(final File folder) {
+    final PreprocessorContext context = new PreprocessorContext(folder);
+    context.setSources(Collections.singletonList(folder.getAbsolutePath()));
+    context.setDryRun(true);
+    context.setPreprocessorLogger(SILENT_LOGGER);
+    return context;
+  }
+
+  /**
+   * Preprocess text in memory as content of the file, the file is used only as the source reference.
+   *
+   * @param context context to be used for preprocessing, must not be null
+   * @param file    file to be used as the source of the text, must not be null
+   * @param lines   lines of the text, must not be null
+   * @param buffer  buffer to get result, it is reset before use, must not be null
+   * @return size of the result in bytes
+   * @throws IOException if the text can't be preprocessed
+   */
+  static int preprocess(final PreprocessorContext context, final File file, final String[] lines, final ByteArrayOutputStream buffer) throws IOException {
+    final FileInfoContainer reference = new FileInfoContainer(file, file.getName(), false);
+    final PreprocessingState state = context.produceNewPreprocessingState(reference, new TextFileDataContainer(file, lines, true, 0));
+    reference.preprocessFile(state, context);
+    buffer.reset();
+    state.saveBuffersToStreams(buffer, buffer, buffer);
+    return buffer.size();
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.benchmarks;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.functions.FunctionESC;
+import com.igormaznitsa.jcp.expression.functions.FunctionSTR2JAVA;
+import com.igormaznitsa.jcp.expression.functions.FunctionSTR2WEB;
+import com.igormaznitsa.jcp.expression.functions.FunctionSTR2XML;
+import com.igormaznitsa.jcp.expression.functions.FunctionTRIMLINES;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table-driven STR2JAVA, STR2WEB, STR2XML, ESC and TRIMLINES against their former implementations ({@link LegacyEscapers}) on about 2 KB texts:
+ * HTML-like text with quotes, tags and some non-ASCII chars, indented Cyrillic text and plain ASCII text which doesn't need escaping.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapeBenchmark {
+
+  private static final FunctionSTR2JAVA STR2JAVA = new FunctionSTR2JAVA();
+  private static final FunctionSTR2WEB STR2WEB = new FunctionSTR2WEB();
+  private static final FunctionSTR2XML STR2XML = new FunctionSTR2XML();
+  private static final FunctionESC ESC = new FunctionESC();
+  private static final FunctionTRIMLINES TRIMLINES = new FunctionTRIMLINES();
+
+  @Param({"html", "cyrillic", "plain"})
+  public String payload;
+
+  private PreprocessorContext context;
+  private String text;
+  private Value value;
+
+  private static String makePayload(final String name) {
+    final StringBuilder buffer = new StringBuilder(2048);
+    int index = 0;
+    while (buffer.length() < 2000) {
+      switch (name) {
+        case "html":
+          buffer.append("Line ").append(index).append(" with \"quotes\", <tags> & tab\there; café\n");
+          break;
+        case "cyrillic":
+          buffer.append("    Мелодии, игры и логотипы ").append(index).append("  \n");
+          break;
+        case "plain":
+          buffer.append("Plain ascii text without anything to escape at all ").append(index).append(' ');
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown payload: " + name);
+      }
+      index++;
+    }
+    return buffer.toString();
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    this.context = BenchmarkUtils.makeContext(BenchmarkUtils.makeTempFolder());
+    this.text = makePayload(this.payload);
+    this.value = Value.valueOf(this.text);
+  }
+
+  @Benchmark
+  public Value str2java() {
+    return STR2JAVA.executeStrBool(this.context, this.value, Value.BOOLEAN_FALSE);
+  }
+
+  @Benchmark
+  public Value legacyStr2java() {
+    return Value.valueOf(LegacyEscapers.str2java(this.text, false));
+  }
+
+  @Benchmark
+  public Value str2javaSplit() {
+    return STR2JAVA.executeStrBool(this.context, this.value, Value.BOOLEAN_TRUE);
+  }
+
+  @Benchmark
+  public Value legacyStr2javaSplit() {
+    return Value.valueOf(LegacyEscapers.str2java(this.text, true));
+  }
+
+  @Benchmark
+  public Value str2web() {
+    return STR2WEB.executeStr(this.context, this.value);
+  }
+
+  @Benchmark
+  public Value legacyStr2web() {
+    return Value.valueOf(LegacyEscapers.str2web(this.text));
+  }
+
+  @Benchmark
+  public Value str2xml() {
+    return STR2XML.executeStr(this.context, this.value);
+  }
+
+  @Benchmark
+  public Value legacyStr2xml() {
+    return Value.valueOf(LegacyEscapers.str2xml(this.text));
+  }
+
+  @Benchmark
+  public Value esc() {
+    return ESC.executeStr(this.context, this.value);
+  }
+
+  @Benchmark
+  public Value legacyEsc() {
+    return Value.valueOf(LegacyEscapers.esc(this.text));
+  }
+
+  @Benchmark
+  public Value trimlines() {
+    return TRIMLINES.executeStr(this.context, this.value);
+  }
+
+  @Benchmark
+  public Value legacyTrimlines() {
+    return Value.valueOf(LegacyEscapers.trimlines(this.text));
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.benchmarks;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.EvaluationMode;
+import com.igormaznitsa.jcp.expression.Expression;
+import com.igormaznitsa.jcp.expression.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of arithmetic expressions over INT and FLOAT variables in all evaluation modes. Allocation rate is shown by the GC profiler:
+ * {@code java -jar target/benchmarks.jar ExpressionBenchmark -prof gc}, look at {@code gc.alloc.rate.norm} (bytes per operation).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+
+  @Param({"TREE", "PROGRAM", "TIERED"})
+  public EvaluationMode mode;
+
+  @Param({"x*3+x/2-x%4", "f*x+1.5-f", "(x+1)*(x-1)>x*x-2 && x%2==1"})
+  public String expression;
+
+  private PreprocessorContext context;
+
+  @Setup
+  public void setup() throws IOException {
+    this.context = BenchmarkUtils.makeContext(BenchmarkUtils.makeTempFolder());
+    this.context.setEvaluationMode(this.mode);
+    this.context.setGlobalVariable("x", Value.valueOf(5L));
+    this.context.setGlobalVariable("f", Value.valueOf(2.5f));
+  }
+
+  @Benchmark
+  public Value evaluate() {
+    return Expression.evalExpression(this.expression, this.context);
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.apache.commons.text.StringEscapeUtils.escapeHtml3;
+import static org.apache.commons.text.StringEscapeUtils.escapeJava;
+import static org.apache.commons.text.StringEscapeUtils.escapeXml10;
+
+/**
+ * Copies of STR2JAVA, STR2WEB, STR2XML, ESC and TRIMLINES as they were implemented before table-driven escaping, over commons-text escapers and
+ * splitting of text into lines. They are the baseline for {@link EscapeBenchmark}.
+ */
+final class LegacyEscapers {
+
+  private LegacyEscapers() {
+  }
+
+  static String str2java(final String source, final boolean splitAndQuoteLines) {
+    if (splitAndQuoteLines) {
+      final boolean endsWithNextLine = source.endsWith("\n");
+      final List<String> split = splitForCharAndHoldEmptyLine(source, '\n');
+      final StringBuilder result = new StringBuilder(source.length() * 2);
+      final String nextLineChars = getNextLineCodes();
+
+      int index = 0;
+      for (final String s : split) {
+        final boolean last = ++index == split.size();
+        if (result.length() > 0) {
+          result.append(nextLineChars).append('+');
+        }
+        result.append('\"').append(escapeJava(s));
+        if (last) {
+          result.append(endsWithNextLine ? "\\n\"" : "\"");
+        } else {
+          result.append("\\n\"");
+        }
+      }
+      return result.toString();
+    } else {
+      return escapeJava(source);
+    }
+  }
+
+  static String str2web(final String source) {
+    final String escaped = escapeHtml3(source);
+
+    final StringBuilder result = new StringBuilder(escaped.length() * 2);
+    for (int i = 0; i < escaped.length(); i++) {
+      final char ch = escaped.charAt(i);
+      if (ch < 128) {
+        result.append(ch);
+      } else {
+        result.append("&#").append(Character.codePointAt(escaped, i)).append(';');
+      }
+    }
+
+    return result.toString();
+  }
+
+  static String str2xml(final String source) {
+    return escapeXml10(source);
+  }
+
+  static String esc(final String source) {
+    final StringBuilder result = new StringBuilder();
+    for (int i = 0; i < source.length(); i++) {
+      final char chr = source.charAt(i);
+      switch (chr) {
+        case '\n':
+          result.append("\\n");
+          break;
+        case '\t':
+          result.append("\\t");
+          break;
+        case '\b':
+          result.append("\\b");
+          break;
+        case '\f':
+          result.append("\\f");
+          break;
+        case '\r':
+          result.append("\\r");
+          break;
+        case '\\':
+          result.append("\\\\");
+          break;
+        case '\'':
+          result.append("\\\'");
+          break;
+        case '\"':
+          result.append("\\\"");
+          break;
+        default: {
+          if (chr > 0x7F || Character.isISOControl(chr)) {
+            String hexCode = Integer.toHexString(chr).toUpperCase(Locale.ENGLISH);
+            if (hexCode.length() < 4) {
+              hexCode = "0000".substring(0, 4 - hexCode.length()) + hexCode;
+            }
+            result.append("\\u").append(hexCode);
+          } else {
+            result.append(chr);
+          }
+        }
+      }
+    }
+    return result.toString();
+  }
+
+  static String trimlines(final String text) {
+    final StringBuilder result = new StringBuilder(text.length());
+
+    for (final String s : splitForChar(text, '\n')) {
+      final String trimmed = s.trim();
+      if (!trimmed.isEmpty()) {
+        if (result.length() > 0) {
+          result.append(getNextLineCodes());
+        }
+        result.append(trimmed);
+      }
+    }
+
+    return result.toString();
+  }
+
+  private static String getNextLineCodes() {
+    return System.getProperty("line.separator", "\r\n");
+  }
+
+  private static List<String> splitForCharAndHoldEmptyLine(final String string, final char delimiter) {
+    final List<String> result = splitForChar(string, delimiter);
+    if (result.isEmpty()) {
+      result.add("");
+    }
+    return result;
+  }
+
+  private static List<String> splitForChar(final String string, final char delimiter) {
+    final char[] array = string.toCharArray();
+    final StringBuilder buffer = new StringBuilder((array.length >> 1) == 0 ? 1 : array.length >> 1);
+
+    final List<String> tokens = new ArrayList<>(10);
+
+    for (final char curChar : array) {
+      if (curChar == delimiter) {
+        if (buffer.length() != 0) {
+          tokens.add(buffer.toString());
+          buffer.setLength(0);
+        }
+      } else {
+        buffer.append(curChar);
+      }
+    }
+
+    if (buffer.length() != 0) {
+      tokens.add(buffer.toString());
+    }
+
+    return tokens;
+  }
+}
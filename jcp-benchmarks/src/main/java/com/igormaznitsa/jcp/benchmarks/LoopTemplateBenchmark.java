@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.benchmarks;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.EvaluationMode;
+import com.igormaznitsa.jcp.expression.Expression;
+import com.igormaznitsa.jcp.expression.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loop-heavy templates, values made in every loop step are mostly out of the small integer cache so that the benchmark shows allocation rate of
+ * value arithmetic. Run with the GC profiler: {@code java -jar target/benchmarks.jar LoopTemplateBenchmark -prof gc}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoopTemplateBenchmark {
+
+  @Param({"TREE", "PROGRAM", "TIERED"})
+  public EvaluationMode mode;
+
+  @Param({"100", "1000"})
+  public int steps;
+
+  private PreprocessorContext context;
+  private File file;
+  private String[] template;
+  private ByteArrayOutputStream buffer;
+
+  @Setup
+  public void setup() throws IOException {
+    final File folder = BenchmarkUtils.makeTempFolder();
+    this.context = BenchmarkUtils.makeContext(folder);
+    this.context.setEvaluationMode(this.mode);
+    this.file = new File(folder, "loop.java");
+    this.buffer = new ByteArrayOutputStream(this.steps * 64);
+    this.template = new String[] {
+        "//#local sum = 0",
+        "//#local avg = 0.0",
+        "//#local i = 0",
+        "//#while i < " + this.steps,
+        "//#local sum = sum + i * 3 - i % 7",
+        "//#local avg = sum / (i + 1.0)",
+        "//#if i % 2 == 0",
+        "int value/*$i$*/ = /*$sum$*/; // /*$avg$*/",
+        "//#endif",
+        "//#local i = i + 1",
+        "//#end"
+    };
+  }
+
+  /**
+   * Preprocess the loop template in memory.
+   *
+   * @return size of the result text in bytes
+   * @throws IOException it should not be thrown
+   */
+  @Benchmark
+  public int template() throws IOException {
+    return BenchmarkUtils.preprocess(this.context, this.file, this.template, this.buffer);
+  }
+
+  /**
+   * The same loop made directly through expressions and local variables, without directive processing.
+   *
+   * @return the last sum
+   */
+  @Benchmark
+  public Value counterLoop() {
+    this.context.setLocalVariable("i", Value.INT_ZERO);
+    this.context.setLocalVariable("sum", Value.INT_ZERO);
+    Value sum = Value.INT_ZERO;
+    for (int i = 0; i < this.steps; i++) {
+      sum = Expression.evalExpression("sum + i * 3 - i % 7", this.context);
+      this.context.setLocalVariable("sum", sum);
+      this.context.setLocalVariable("i", Expression.evalExpression("i + 1", this.context));
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.benchmarks;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.functions.xml.FunctionXML_OPEN;
+import com.igormaznitsa.jcp.expression.functions.xml.FunctionXML_XELEMENT;
+import com.igormaznitsa.jcp.expression.functions.xml.FunctionXML_XLIST;
+import org.apache.xpath.jaxp.XPathFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code xml_xlist} and {@code xml_xelement} over {@code games.xml} of the static site test project. Found lists and elements are removed from
+ * shared resources after every call so that the path is evaluated again. The {@code legacyXPath} benchmark is the baseline, it makes new XPath
+ * factory and compiles the path on every call over DOM as it was made before the XPath cache and the compact document model.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XPathBenchmark {
+
+  private static final FunctionXML_OPEN XML_OPEN = new FunctionXML_OPEN();
+  private static final FunctionXML_XLIST XML_XLIST = new FunctionXML_XLIST();
+  private static final FunctionXML_XELEMENT XML_XELEMENT = new FunctionXML_XELEMENT();
+
+  /**
+   * Simple child paths are processed by native navigator, the predicate needs XPath engine.
+   */
+  @Param({"/data/games/game", "/data/games/game/devices/samsung", "/data/games/game[owner/@id='coldcore']"})
+  public String path;
+
+  private PreprocessorContext context;
+  private Value documentId;
+  private Value xpath;
+  private Document dom;
+
+  @Setup
+  public void setup() throws Exception {
+    final File folder = BenchmarkUtils.makeTempFolder();
+    BenchmarkUtils.copyStaticSiteFiles(folder, "games.xml");
+    this.context = BenchmarkUtils.makeContext(folder);
+    this.documentId = XML_OPEN.executeStr(this.context, Value.valueOf("games.xml"));
+    this.xpath = Value.valueOf(this.path);
+
+    final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setIgnoringComments(true);
+    this.dom = factory.newDocumentBuilder().parse(new File(folder, "games.xml"));
+  }
+
+  @Benchmark
+  public Value xlist() {
+    final Value listId = XML_XLIST.executeStrStr(this.context, this.documentId, this.xpath);
+    this.context.removeSharedResource(listId.asString());
+    return listId;
+  }
+
+  @Benchmark
+  public Value xelement() {
+    final Value elementId = XML_XELEMENT.executeStrStr(this.context, this.documentId, this.xpath);
+    this.context.removeSharedResource(elementId.asString());
+    return elementId;
+  }
+
+  @Benchmark
+  public int legacyXPath() throws Exception {
+    final NodeList list = (NodeList) new XPathFactoryImpl().newXPath().compile(this.path).evaluate(this.dom, XPathConstants.NODESET);
+    return list.getLength();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.benchmarks;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Game list page of the static site test project: loop over games found by XPath in {@code games.xml} with access to attributes and texts of
+ * child elements. The document is opened once and shared between invocations as between files of one preprocessing run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlTemplateBenchmark {
+
+  private static final String[] TEMPLATE = new String[] {
+      "//#local games = xml_xlist(xml_open(\"games.xml\"), \"/data/games/game\")",
+      "//#local i = 0",
+      "//#while i < xml_size(games)",
+      "//#local game = xml_get(games, i)",
+      "//#local title = str2web(xml_attr(game, \"title\"))",
+      "//#local reference = xml_get(xml_list(game, \"shortreference\"), 0)",
+      "//#local text = xml_text(xml_get(xml_list(reference, \"eng\"), 0))",
+      "//#local devices = xml_list(xml_get(xml_list(game, \"devices\"), 0), \"samsung\")",
+      "<h2>/*$title$*/</h2>",
+      "<p>/*$trimlines(text)$*/</p>",
+      "//#if xml_size(devices) > 0",
+      "<p>Samsung: /*$xml_size(devices)$*/ models</p>",
+      "//#endif",
+      "//#local i = i + 1",
+      "//#end"
+  };
+
+  private PreprocessorContext context;
+  private File file;
+  private ByteArrayOutputStream buffer;
+
+  @Setup
+  public void setup() throws IOException {
+    final File folder = BenchmarkUtils.makeTempFolder();
+    BenchmarkUtils.copyStaticSiteFiles(folder, "games.xml");
+    this.context = BenchmarkUtils.makeContext(folder);
+    this.file = new File(folder, "gamelist.htm");
+    this.buffer = new ByteArrayOutputStream(64 * 1024);
+  }
+
+  @Benchmark
+  public int gameList() throws IOException {
+    return BenchmarkUtils.preprocess(this.context, this.file, TEMPLATE, this.buffer);
+  }
+}
@@ -43,22 +43,31 @@ import com.igormaznitsa.jcp.cmdline.SourceDirectoryHandler;
 import com.igormaznitsa.jcp.cmdline.UnknownAsFalseHandler;
 import com.igormaznitsa.jcp.cmdline.VerboseHandler;
 import com.igormaznitsa.jcp.containers.FileInfoContainer;
+import com.igormaznitsa.jcp.context.PreprocessingSession;
 import com.igormaznitsa.jcp.context.PreprocessingState;
 import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.ResourcePrefetcher;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
+import com.igormaznitsa.jcp.context.TextFileCache;
 import com.igormaznitsa.jcp.directives.ExcludeIfDirectiveHandler;
 import com.igormaznitsa.jcp.exceptions.FilePositionInfo;
 import com.igormaznitsa.jcp.exceptions.PreprocessorException;
 import com.igormaznitsa.jcp.expression.Expression;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
+import com.igormaznitsa.jcp.expression.functions.BinFileCache;
+import com.igormaznitsa.jcp.expression.functions.EvalFileCache;
+import com.igormaznitsa.jcp.expression.functions.FunctionResultCache;
 import com.igormaznitsa.jcp.utils.PreprocessorUtils;
 import com.igormaznitsa.jcp.utils.antpathmatcher.AntPathMatcher;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -66,13 +75,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static com.igormaznitsa.jcp.InfoHelper.makeTextForHelpInfo;
 import static com.igormaznitsa.jcp.utils.PreprocessorUtils.readWholeTextFileIntoArray;
 import static com.igormaznitsa.jcp.utils.PreprocessorUtils.throwPreprocessorException;
+import static com.igormaznitsa.meta.common.utils.Assertions.assertDoesntContainNull;
 import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
 
 /**
@@ -105,6 +123,7 @@ public final class JcpPreprocessor {
       new UnknownAsFalseHandler()
   };
   private final PreprocessorContext context;
+  private TextFileCache prefetchTextFileCache;
 
   public JcpPreprocessor(@Nonnull final PreprocessorContext context) {
     assertNotNull("Configurator is null", context);
@@ -213,6 +232,141 @@ public final class JcpPreprocessor {
     final long timeStart = System.currentTimeMillis();
     processConfigFiles();
 
+    final Collection<FileInfoContainer> filesToBePreprocessed = collectFilesToPreprocess();
+    final ResourcePrefetcher prefetcher = startPrefetch(filesToBePreprocessed);
+    final Statistics stat;
+    try {
+      stat = preprocess(filesToBePreprocessed);
+    } finally {
+      stopPrefetch(prefetcher);
+    }
+
+    final long elapsedTime = System.currentTimeMillis() - timeStart;
+    this.context.logInfo("-----------------------------------------------------------------");
+    this.context.logInfo(String.format("Preprocessed %d files, copied %d files, ignored %d files, elapsed time %d ms", stat.getPreprocessed(), stat.getCopied(), stat.getExcluded(), elapsedTime));
+    logCacheStatistics();
+    return stat;
+  }
+
+  /**
+   * Preprocess sources for several variants, every variant has its own set of global variables and its own target folder.
+   * Config files are processed and source files are collected only once, text of every source file is read and decoded only once and shared between variants,
+   * so that only evaluation is made for each variant. Variables of a variant are defined after config files processing and override variables defined in config files.
+   *
+   * @param variants list of variants to be generated, must not be null and can't contain variants with the same name
+   * @return statistics for each variant mapped by variant name in the same order as provided variants
+   * @throws IOException it will be thrown for any transport error
+   * @since 7.0.1
+   */
+  @Nonnull
+  public Map<String, Statistics> executeVariants(@Nonnull @MustNotContainNull final List<Variant> variants) throws IOException {
+    assertDoesntContainNull(variants);
+
+    final Set<String> variantNames = new HashSet<>();
+    for (final Variant variant : variants) {
+      if (!variantNames.add(variant.getName())) {
+        throw new IllegalArgumentException("Duplicated variant name: " + variant.getName());
+      }
+    }
+
+    final long timeStart = System.currentTimeMillis();
+    // the cache lives only during the run because it doesn't detect changes of files
+    final TextFileCache variantsTextFileCache = this.context.getTextFileCache() == null ? new TextFileCache() : null;
+    if (variantsTextFileCache != null) {
+      this.context.setTextFileCache(variantsTextFileCache);
+    }
+
+    final Map<String, Statistics> result = new LinkedHashMap<>();
+    final int cachedFiles;
+    try {
+      processConfigFiles();
+
+      final Collection<FileInfoContainer> collectedFiles = collectFilesToPreprocess();
+
+      final ResourcePrefetcher prefetcher = startPrefetch(collectedFiles);
+      try {
+        for (final Variant variant : variants) {
+          this.context.logInfo("Preprocessing variant '" + variant.getName() + "' into " + variant.getTarget());
+
+          final PreprocessorContext variantContext = this.context.makeVariantCopy();
+          variantContext.setTarget(variant.getTarget());
+          variant.getGlobalVariables().forEach(variantContext::setGlobalVariable);
+
+          final Statistics stat = new JcpPreprocessor(variantContext).preprocess(collectedFiles.stream().map(FileInfoContainer::new).collect(Collectors.toList()));
+          result.put(variant.getName(), stat);
+
+          this.context.logInfo(String.format("Variant '%s': preprocessed %d files, copied %d files, ignored %d files", variant.getName(), stat.getPreprocessed(), stat.getCopied(), stat.getExcluded()));
+        }
+      } finally {
+        stopPrefetch(prefetcher);
+      }
+      cachedFiles = this.context.getTextFileCache().size();
+    } finally {
+      if (variantsTextFileCache != null && this.context.getTextFileCache() == variantsTextFileCache) {
+        this.context.setTextFileCache(null);
+      }
+    }
+
+    final long elapsedTime = System.currentTimeMillis() - timeStart;
+    this.context.logInfo("-----------------------------------------------------------------");
+    this.context.logInfo(String.format("Preprocessed %d variants, cached %d source files, elapsed time %d ms", variants.size(), cachedFiles, elapsedTime));
+    logCacheStatistics();
+    return result;
+  }
+
+  /**
+   * Start prefetch of resources referenced by literal paths in files if it is turned on and not started yet.
+   *
+   * @param files files to be scanned, must not be null
+   * @return started prefetcher or null
+   */
+  @Nullable
+  private ResourcePrefetcher startPrefetch(@Nonnull @MustNotContainNull final Collection<FileInfoContainer> files) {
+    if (this.context.getPrefetchThreads() <= 0 || this.context.getResourcePrefetcher() != null) {
+      return null;
+    }
+    if (this.context.getTextFileCache() == null) {
+      // the cache lives only during the run because it doesn't detect changes of files
+      this.prefetchTextFileCache = new TextFileCache();
+      this.context.setTextFileCache(this.prefetchTextFileCache);
+    }
+    final ResourcePrefetcher result = ResourcePrefetcher.make(this.context);
+    this.context.setResourcePrefetcher(result);
+    files.stream().filter(f -> !f.isExcludedFromPreprocessing() && !f.isCopyOnly()).forEach(f -> result.prefetch(f.getSourceFile()));
+    return result;
+  }
+
+  private void stopPrefetch(@Nullable final ResourcePrefetcher prefetcher) {
+    if (prefetcher != null) {
+      prefetcher.close();
+      this.context.setResourcePrefetcher(null);
+      if (this.prefetchTextFileCache != null && this.context.getTextFileCache() == this.prefetchTextFileCache) {
+        this.context.setTextFileCache(null);
+      }
+      this.prefetchTextFileCache = null;
+      this.context.logInfo(String.format("Prefetch: %d resources scheduled, %d XML documents used", prefetcher.getPrefetched(), prefetcher.getUsedXmlDocuments()));
+    }
+  }
+
+  private void logCacheStatistics() {
+    this.context.logInfo(String.format("Shared resources: peak weight %d of budget %d, dropped %d", this.context.getSharedResourcePeakWeight(), this.context.getSharedResourceBudget(), this.context.getSharedResourceDropCount()));
+    final FunctionResultCache cache = this.context.getFunctionResultCache();
+    if (cache != null) {
+      this.context.logInfo(String.format("Function result cache: %d hits, %d misses, hit ratio %.2f, %d entries with weight %d", cache.getHits(), cache.getMisses(), cache.getHitRatio(), cache.size(), cache.getWeight()));
+    }
+    final EvalFileCache evalFileCache = this.context.getEvalFileCache();
+    if (evalFileCache != null) {
+      this.context.logInfo(String.format("Eval file cache: %d hits, %d misses, %d texts with weight %d", evalFileCache.getHits(), evalFileCache.getMisses(), evalFileCache.size(), evalFileCache.getWeight()));
+    }
+    final BinFileCache binFileCache = this.context.getBinFileCache();
+    if (binFileCache != null) {
+      this.context.logInfo(String.format("Bin file cache %s: %d hits, %d misses, size %d of %d", binFileCache.getFolder(), binFileCache.getHits(), binFileCache.getMisses(), binFileCache.getSize(), binFileCache.getMaxSize()));
+    }
+  }
+
+  @Nonnull
+  @MustNotContainNull
+  private Collection<FileInfoContainer> collectFilesToPreprocess() throws IOException {
     this.context.logInfo(String.format("File extensions: %s excluded %s", this.context.getExtensions(), this.context.getExcludeExtensions()));
     final List<PreprocessorContext.SourceFolder> srcFolders = this.context.getSources();
     this.context.logDebug("Source folders: " + srcFolders);
@@ -221,9 +375,13 @@ public final class JcpPreprocessor {
       this.context.logWarning("Source folder list is empty!");
     }
 
-    final Collection<FileInfoContainer> filesToBePreprocessed = collectFilesToPreprocess(srcFolders, this.context.getExcludeFolders());
+    return collectFilesToPreprocess(srcFolders, this.context.getExcludeFolders());
+  }
 
+  @Nonnull
+  private Statistics preprocess(@Nonnull @MustNotContainNull final Collection<FileInfoContainer> filesToBePreprocessed) throws IOException {
     final List<PreprocessingState.ExcludeIfInfo> excludedIf = processGlobalDirectives(filesToBePreprocessed);
+    this.context.compactGlobalVariables();
 
     processFileExclusion(excludedIf);
     if (!this.context.isDryRun()) {
@@ -231,12 +389,10 @@ public final class JcpPreprocessor {
     } else {
       this.context.logInfo("Dry run mode is ON");
     }
-    final Statistics stat = preprocessFiles(filesToBePreprocessed);
-
-    final long elapsedTime = System.currentTimeMillis() - timeStart;
-    this.context.logInfo("-----------------------------------------------------------------");
-    this.context.logInfo(String.format("Preprocessed %d files, copied %d files, ignored %d files, elapsed time %d ms", stat.getPreprocessed(), stat.getCopied(), stat.getExcluded(), elapsedTime));
-    return stat;
+    final Statistics result = preprocessFiles(filesToBePreprocessed);
+    result.setSharedResourcePeakWeight(this.context.getSharedResourcePeakWeight());
+    result.setSharedResourceDropCount(this.context.getSharedResourceDropCount());
+    return result;
   }
 
   private void processFileExclusion(@Nonnull @MustNotContainNull final List<PreprocessingState.ExcludeIfInfo> foundExcludeIf) {
@@ -300,44 +456,134 @@ public final class JcpPreprocessor {
 
   @Nonnull
   private Statistics preprocessFiles(@Nonnull @MustNotContainNull final Collection<FileInfoContainer> files) throws IOException {
+    if (this.context.getParallelism() > 1 && files.size() > 1) {
+      return preprocessFilesConcurrently(files, new PreprocessingSession(this.context));
+    }
+
     int preprocessedCounter = 0;
     int copiedCounter = 0;
     int excludedCounter = 0;
 
     for (final FileInfoContainer fileRef : files) {
-      if (fileRef.isExcludedFromPreprocessing()) {
-        excludedCounter++;
-      } else if (fileRef.isCopyOnly()) {
-        if (!context.isDryRun()) {
-          final File destinationFile = this.context.createDestinationFileForPath(fileRef.makeTargetFilePathAsString());
-          boolean doCopy = true;
-
-          if (this.context.isDontOverwriteSameContent() && PreprocessorUtils.isFileContentEquals(fileRef.getSourceFile(), destinationFile)) {
-            doCopy = false;
-            if (this.context.isVerbose()) {
-              this.context.logForVerbose(String.format("Copy skipped because same content: %s -> {dst} %s", PreprocessorUtils.getFilePath(fileRef.getSourceFile()), fileRef.makeTargetFilePathAsString()));
-            }
+      switch (processFile(fileRef, this.context)) {
+        case EXCLUDED:
+          excludedCounter++;
+          break;
+        case COPIED:
+          copiedCounter++;
+          break;
+        case PREPROCESSED:
+          preprocessedCounter++;
+          break;
+        default:
+          break;
+      }
+    }
+    return new Statistics(preprocessedCounter, copiedCounter, excludedCounter);
+  }
+
+  @Nonnull
+  private Statistics preprocessFilesConcurrently(@Nonnull @MustNotContainNull final Collection<FileInfoContainer> files, @Nonnull final PreprocessingSession session) throws IOException {
+    final int threads = Math.min(session.getConfig().getParallelism(), files.size());
+    final AtomicInteger threadCounter = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+      final Thread thread = new Thread(runnable, "jcp-preprocess-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    this.context.logDebug(String.format("Preprocessing %d files in %d threads", files.size(), threads));
+
+    try {
+      final List<Future<FileResult>> results = new ArrayList<>(files.size());
+      for (final FileInfoContainer fileRef : files) {
+        results.add(executor.submit(() -> processFile(fileRef, fileRef.isExcludedFromPreprocessing() ? session.getBaseContext() : session.makeFileContext())));
+      }
+
+      int preprocessedCounter = 0;
+      int copiedCounter = 0;
+      int excludedCounter = 0;
+
+      // results are checked in the file order so that the first failed file is reported as in sequential processing
+      for (final Future<FileResult> future : results) {
+        final FileResult result;
+        try {
+          result = future.get();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Preprocessing has been interrupted", ex);
+        } catch (ExecutionException ex) {
+          final Throwable cause = ex.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
           }
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new IOException("Unexpected exception during preprocessing", cause);
+        }
 
-          if (doCopy) {
-            if (this.context.isVerbose()) {
-              this.context.logForVerbose(String.format("Copy file %s -> {dst} %s", PreprocessorUtils.getFilePath(fileRef.getSourceFile()), fileRef.makeTargetFilePathAsString()));
-            }
-            PreprocessorUtils.copyFile(fileRef.getSourceFile(), destinationFile, this.context.isKeepAttributes());
+        switch (result) {
+          case EXCLUDED:
+            excludedCounter++;
+            break;
+          case COPIED:
             copiedCounter++;
+            break;
+          case PREPROCESSED:
+            preprocessedCounter++;
+            break;
+          default:
+            break;
+        }
+      }
+      return new Statistics(preprocessedCounter, copiedCounter, excludedCounter);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Nonnull
+  private FileResult processFile(@Nonnull final FileInfoContainer fileRef, @Nonnull final PreprocessorContext fileContext) throws IOException {
+    if (fileRef.isExcludedFromPreprocessing()) {
+      return FileResult.EXCLUDED;
+    } else if (fileRef.isCopyOnly()) {
+      if (!fileContext.isDryRun()) {
+        final File destinationFile = fileContext.createDestinationFileForPath(fileRef.makeTargetFilePathAsString());
+        boolean doCopy = true;
+
+        if (fileContext.isDontOverwriteSameContent() && PreprocessorUtils.isFileContentEquals(fileRef.getSourceFile(), destinationFile)) {
+          doCopy = false;
+          if (fileContext.isVerbose()) {
+            fileContext.logForVerbose(String.format("Copy skipped because same content: %s -> {dst} %s", PreprocessorUtils.getFilePath(fileRef.getSourceFile()), fileRef.makeTargetFilePathAsString()));
           }
         }
-      } else {
-        final long startTime = System.currentTimeMillis();
-        fileRef.preprocessFile(null, this.context);
-        final long elapsedTime = System.currentTimeMillis() - startTime;
-        if (this.context.isVerbose()) {
-          this.context.logForVerbose(String.format("File preprocessing completed  '%s', elapsed time %d ms", PreprocessorUtils.getFilePath(fileRef.getSourceFile()), elapsedTime));
+
+        if (doCopy) {
+          if (fileContext.isVerbose()) {
+            fileContext.logForVerbose(String.format("Copy file %s -> {dst} %s", PreprocessorUtils.getFilePath(fileRef.getSourceFile()), fileRef.makeTargetFilePathAsString()));
+          }
+          PreprocessorUtils.copyFile(fileRef.getSourceFile(), destinationFile, fileContext.isKeepAttributes());
+          return FileResult.COPIED;
         }
-        preprocessedCounter++;
       }
+      return FileResult.SKIPPED;
+    } else {
+      final long startTime = System.currentTimeMillis();
+      try {
+        fileRef.preprocessFile(null, fileContext);
+      } finally {
+        fileContext.releaseSharedResources(SharedResourceScope.FILE);
+      }
+      final long elapsedTime = System.currentTimeMillis() - startTime;
+      if (fileContext.isVerbose()) {
+        fileContext.logForVerbose(String.format("File preprocessing completed  '%s', elapsed time %d ms", PreprocessorUtils.getFilePath(fileRef.getSourceFile()), elapsedTime));
+      }
+      return FileResult.PREPROCESSED;
     }
-    return new Statistics(preprocessedCounter, copiedCounter, excludedCounter);
   }
 
   private void createTargetFolder() throws IOException {
@@ -501,10 +747,45 @@ public final class JcpPreprocessor {
     }
   }
 
+  private enum FileResult {
+    EXCLUDED,
+    COPIED,
+    PREPROCESSED,
+    SKIPPED
+  }
+
   @Data
   public static final class Statistics {
     private final int preprocessed;
     private final int copied;
     private final int excluded;
+
+    /**
+     * Max summary weight of shared resources during the run, approximately in bytes.
+     *
+     * @since 7.0.1
+     */
+    @EqualsAndHashCode.Exclude
+    private long sharedResourcePeakWeight;
+
+    /**
+     * Number of shared resources dropped during the run because of the shared resource budget.
+     *
+     * @since 7.0.1
+     */
+    @EqualsAndHashCode.Exclude
+    private long sharedResourceDropCount;
+  }
+
+  /**
+   * Description of a preprocessing variant, it contains name, target folder and global variables specific for the variant.
+   *
+   * @since 7.0.1
+   */
+  @Data
+  public static final class Variant {
+    private final String name;
+    private final File target;
+    private final Map<String, Value> globalVariables;
   }
 }
@@ -104,6 +104,21 @@ public class FileInfoContainer {
     }
   }
 
+  /**
+   * Make copy of a file container with the same source and target, the exclusion flag of the copy is reset.
+   *
+   * @param container the container to be copied, must not be null
+   * @since 7.0.1
+   */
+  public FileInfoContainer(@Nonnull final FileInfoContainer container) {
+    assertNotNull("Container is null", container);
+    this.sourceFile = container.sourceFile;
+    this.copyOnly = container.copyOnly;
+    this.excludedFromPreprocessing = false;
+    this.targetFolder = container.targetFolder;
+    this.targetFileName = container.targetFileName;
+  }
+
   @Nonnull
   private static String findTailRemover(@Nonnull final String str, @Nonnull final PreprocessorContext context) {
     String result = str;
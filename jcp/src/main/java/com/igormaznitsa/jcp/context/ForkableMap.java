@@ -0,0 +1,154 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hash map which can be forked in constant time. Copying of a whole map into an empty one by {@link #putAll(Map)} shares the internal map
+ * between both maps and the internal map is copied only on the first change of any of them (copy-on-write).
+ * The class is not thread safe.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ * @since 7.0.1
+ */
+final class ForkableMap<K, V> extends AbstractMap<K, V> {
+
+  private HashMap<K, V> map = new HashMap<>();
+  private boolean shared;
+
+  @Nonnull
+  private HashMap<K, V> own() {
+    if (this.shared) {
+      this.map = new HashMap<>(this.map);
+      this.shared = false;
+    }
+    return this.map;
+  }
+
+  boolean isShared() {
+    return this.shared;
+  }
+
+  @Override
+  public int size() {
+    return this.map.size();
+  }
+
+  @Override
+  @Nullable
+  public V get(@Nullable final Object key) {
+    return this.map.get(key);
+  }
+
+  @Override
+  public boolean containsKey(@Nullable final Object key) {
+    return this.map.containsKey(key);
+  }
+
+  @Override
+  @Nullable
+  public V put(@Nullable final K key, @Nullable final V value) {
+    return own().put(key, value);
+  }
+
+  @Override
+  @Nullable
+  public V remove(@Nullable final Object key) {
+    return this.map.containsKey(key) ? own().remove(key) : null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void putAll(@Nonnull final Map<? extends K, ? extends V> map) {
+    if (map instanceof ForkableMap && this.map.isEmpty()) {
+      final ForkableMap<K, V> that = (ForkableMap<K, V>) map;
+      this.map = that.map;
+      this.shared = true;
+      that.shared = true;
+    } else {
+      own().putAll(map);
+    }
+  }
+
+  @Override
+  public void clear() {
+    this.map = new HashMap<>();
+    this.shared = false;
+  }
+
+  @Override
+  @Nonnull
+  public Set<Entry<K, V>> entrySet() {
+    return new AbstractSet<Entry<K, V>>() {
+      @Override
+      @Nonnull
+      public Iterator<Entry<K, V>> iterator() {
+        final HashMap<K, V> iterated = map;
+        final Iterator<Entry<K, V>> delegate = iterated.entrySet().iterator();
+        return new Iterator<Entry<K, V>>() {
+          private Entry<K, V> last;
+
+          @Override
+          public boolean hasNext() {
+            return delegate.hasNext();
+          }
+
+          @Override
+          @Nonnull
+          public Entry<K, V> next() {
+            this.last = delegate.next();
+            return new SimpleImmutableEntry<>(this.last);
+          }
+
+          @Override
+          public void remove() {
+            if (this.last == null) {
+              throw new IllegalStateException();
+            }
+            if (!shared && map == iterated) {
+              delegate.remove();
+            } else {
+              // the iterated map is shared or already replaced, so it must not be changed
+              ForkableMap.this.remove(this.last.getKey());
+            }
+            this.last = null;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return ForkableMap.this.map.size();
+      }
+    };
+  }
+}
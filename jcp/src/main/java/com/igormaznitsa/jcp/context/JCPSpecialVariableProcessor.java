@@ -62,6 +62,14 @@ public class JCPSpecialVariableProcessor implements SpecialVariableProcessor {
   final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss");
   final SimpleDateFormat timestampFormat = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy");
 
+  @Nonnull
+  private static String format(@Nonnull final SimpleDateFormat format, @Nonnull final Date date) {
+    // formatters are not thread safe but the processor is shared by contexts which can be used concurrently
+    synchronized (format) {
+      return format.format(date);
+    }
+  }
+
   @Nonnull
   @MustNotContainNull
   public static List<NameReferencePair> getReference() {
@@ -133,16 +141,16 @@ public class JCPSpecialVariableProcessor implements SpecialVariableProcessor {
       case VAR_VERSION:
         return Value.valueOf(InfoHelper.getVersion());
       case VAR_TIME:
-        return Value.valueOf(timeFormat.format(new Date()));
+        return Value.valueOf(format(timeFormat, new Date()));
       case VAR_DATE:
-        return Value.valueOf(dateFormat.format(new Date()));
+        return Value.valueOf(format(dateFormat, new Date()));
       case VAR_TIMESTAMP:
         final TextFileDataContainer filedata = state.peekFile();
         final Value result;
         if (filedata == null) {
           result = Value.valueOf("<no file>");
         } else {
-          result = Value.valueOf(timestampFormat.format(new Date(filedata.getFile().lastModified())));
+          result = Value.valueOf(format(timestampFormat, new Date(filedata.getFile().lastModified())));
         }
         return result;
       case VAR_LINE:
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import javax.annotation.Nonnull;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Thread safe state of one preprocessing run. The session is made from a fully configured context (after processing of config files and global
+ * directives) which becomes the base context of the session and must not be changed while the session is in use, options of the context are frozen
+ * into immutable {@link PreprocessorConfig} once for the run. Every processed file gets own execution context which reads options from the
+ * configuration and forks variables from the base context, the fork costs constant time because variable tables and shared resources are copied
+ * only on change. Text file cache and function result cache of the base context are thread safe and shared by all forks.
+ *
+ * @see PreprocessorContext#setParallelism(int)
+ * @see PreprocessorContext#getSessionConfig()
+ * @since 7.0.1
+ */
+public final class PreprocessingSession {
+
+  private final PreprocessorContext baseContext;
+  private final PreprocessorConfig config;
+
+  /**
+   * Constructor.
+   *
+   * @param baseContext configured context to be used as the base for file contexts, must not be null
+   */
+  public PreprocessingSession(@Nonnull final PreprocessorContext baseContext) {
+    this.baseContext = assertNotNull("Base context must not be null", baseContext);
+    this.config = baseContext.makeConfig();
+  }
+
+  /**
+   * Get immutable configuration of the session made from the base context.
+   *
+   * @return the configuration, must not be null
+   */
+  @Nonnull
+  public PreprocessorConfig getConfig() {
+    return this.config;
+  }
+
+  /**
+   * Get the base context of the session, it must be used only for read.
+   *
+   * @return the base context, must not be null
+   */
+  @Nonnull
+  public PreprocessorContext getBaseContext() {
+    return this.baseContext;
+  }
+
+  /**
+   * Make new execution context to process a file, all changes of variables, shared resources and local options made in the context are not visible
+   * for other files. Options which define the whole run can't be changed in the context.
+   *
+   * @return new context with options of the session configuration and variables forked from the base context, must not be null
+   */
+  @Nonnull
+  public synchronized PreprocessorContext makeFileContext() {
+    return new PreprocessorContext(this.config, this.baseContext);
+  }
+}
@@ -26,6 +26,7 @@ import com.igormaznitsa.jcp.containers.FileInfoContainer;
 import com.igormaznitsa.jcp.containers.PreprocessingFlag;
 import com.igormaznitsa.jcp.containers.TextFileDataContainer;
 import com.igormaznitsa.jcp.exceptions.FilePositionInfo;
+import com.igormaznitsa.jcp.expression.functions.EvalFileCache;
 import com.igormaznitsa.jcp.exceptions.PreprocessorException;
 import com.igormaznitsa.jcp.removers.JavaCommentsRemover;
 import com.igormaznitsa.jcp.utils.PreprocessorUtils;
@@ -51,7 +52,9 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -78,7 +81,7 @@ public final class PreprocessingState {
   private final FileInfoContainer rootFileInfo;
   private final LinkedList<TextFileDataContainer> whileStack = new LinkedList<>();
   private final LinkedList<TextFileDataContainer> ifStack = new LinkedList<>();
-  private final LinkedList<TextFileDataContainer> includeStack = new LinkedList<>();
+  private final ArrayDeque<TextFileDataContainer> includeStack = new ArrayDeque<>();
   private final LinkedList<ExcludeIfInfo> deferredExcludeStack = new LinkedList<>();
   private final ResetablePrinter prefixPrinter = new ResetablePrinter(1024);
   private final ResetablePrinter postfixPrinter = new ResetablePrinter(64 * 1024);
@@ -207,10 +210,20 @@ public final class PreprocessingState {
   public TextFileDataContainer openFile(@Nonnull final File file) throws IOException {
     assertNotNull("The file is null", file);
 
-    final AtomicBoolean endedByNextLineContainer = new AtomicBoolean();
+    final EvalFileCache.Recorder recorder = this.context.getEvalFileRecorder();
+    if (recorder != null) {
+      recorder.onFileRead(file);
+    }
 
-    final String[] texts = PreprocessorUtils.readWholeTextFileIntoArray(file, globalInCharacterEncoding, endedByNextLineContainer);
-    final TextFileDataContainer newContainer = new TextFileDataContainer(file, texts, endedByNextLineContainer.get(), 0);
+    final TextFileCache textCache = this.context.getTextFileCache();
+    final TextFileDataContainer newContainer;
+    if (textCache == null) {
+      final AtomicBoolean endedByNextLineContainer = new AtomicBoolean();
+      final String[] texts = PreprocessorUtils.readWholeTextFileIntoArray(file, globalInCharacterEncoding, endedByNextLineContainer);
+      newContainer = new TextFileDataContainer(file, texts, endedByNextLineContainer.get(), 0);
+    } else {
+      newContainer = textCache.open(file, globalInCharacterEncoding);
+    }
     includeStack.push(newContainer);
     return newContainer;
   }
@@ -222,7 +235,7 @@ public final class PreprocessingState {
 
   @Nonnull
   @MustNotContainNull
-  List<TextFileDataContainer> getCurrentIncludeStack() {
+  Deque<TextFileDataContainer> getCurrentIncludeStack() {
     return this.includeStack;
   }
 
@@ -234,16 +247,16 @@ public final class PreprocessingState {
     }
 
     final FilePositionInfo[] stack = new FilePositionInfo[includeStack.size()];
-    for (int i = 0; i < includeStack.size(); i++) {
-      final TextFileDataContainer fileContainer = includeStack.get(i);
-      stack[i] = new FilePositionInfo(fileContainer.getFile(), fileContainer.getLastReadStringIndex());
+    int index = 0;
+    for (final TextFileDataContainer fileContainer : includeStack) {
+      stack[index++] = new FilePositionInfo(fileContainer.getFile(), fileContainer.getLastReadStringIndex());
     }
     return stack;
   }
 
   @Nullable
   public TextFileDataContainer getCurrentIncludeFileContainer() {
-    return this.includeStack.isEmpty() ? null :  this.includeStack.get(this.includeStack.size()-1);
+    return this.includeStack.peekLast();
   }
 
   @Nonnull
@@ -416,7 +429,8 @@ public final class PreprocessingState {
   public boolean saveBuffersToFile(@Nonnull final File outFile, final boolean keepComments) throws IOException {
     final File path = outFile.getParentFile();
 
-    if (path != null && !path.exists() && !path.mkdirs()) {
+    // the folder can be concurrently created by another thread
+    if (path != null && !path.exists() && !path.mkdirs() && !path.isDirectory()) {
       throw new IOException("Can't make directory [" + PreprocessorUtils.getFilePath(path) + ']');
     }
 
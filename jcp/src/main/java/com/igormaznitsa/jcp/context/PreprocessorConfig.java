@@ -0,0 +1,108 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import com.igormaznitsa.jcp.expression.EvaluationMode;
+import com.igormaznitsa.jcp.extension.PreprocessorExtension;
+import lombok.Data;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Immutable snapshot of preprocessor options. It is made once per preprocessing run from a configured {@link PreprocessorContext} and can be safely
+ * shared between threads processing files of one preprocessing session, execution contexts of files read their options from it. Only the
+ * preprocessor extension is provided by reference, it must be thread safe if files are processed concurrently.
+ *
+ * @see PreprocessorContext#makeConfig()
+ * @see PreprocessingSession
+ * @since 7.0.1
+ */
+@Data
+public final class PreprocessorConfig {
+
+  private final File baseDir;
+  private final List<PreprocessorContext.SourceFolder> sources;
+  private final File target;
+  private final String eol;
+  private final boolean verbose;
+  private final boolean keepComments;
+  private final boolean clearTarget;
+  private final boolean dryRun;
+  private final boolean keepLines;
+  private final boolean careForLastEol;
+  private final boolean dontOverwriteSameContent;
+  private final boolean allowWhitespaces;
+  private final boolean preserveIndents;
+  private final boolean keepAttributes;
+  private final boolean unknownVariableAsFalse;
+  private final Set<String> extensions;
+  private final Set<String> excludeExtensions;
+  private final List<String> excludeFolders;
+  private final List<File> configFiles;
+  private final PreprocessorExtension preprocessorExtension;
+  private final Charset sourceEncoding;
+  private final Charset targetEncoding;
+  private final EvaluationMode evaluationMode;
+  private final int parallelism;
+  private final int prefetchThreads;
+  private final long sharedResourceBudget;
+
+  PreprocessorConfig(@Nonnull final PreprocessorContext context) {
+    assertNotNull("Context must not be null", context);
+    this.baseDir = context.getBaseDir();
+    this.sources = Collections.unmodifiableList(new ArrayList<>(context.getSources()));
+    this.target = context.getTarget();
+    this.eol = context.getEol();
+    this.verbose = context.isVerbose();
+    this.keepComments = context.isKeepComments();
+    this.clearTarget = context.isClearTarget();
+    this.dryRun = context.isDryRun();
+    this.keepLines = context.isKeepLines();
+    this.careForLastEol = context.isCareForLastEol();
+    this.dontOverwriteSameContent = context.isDontOverwriteSameContent();
+    this.allowWhitespaces = context.isAllowWhitespaces();
+    this.preserveIndents = context.isPreserveIndents();
+    this.keepAttributes = context.isKeepAttributes();
+    this.unknownVariableAsFalse = context.isUnknownVariableAsFalse();
+    this.extensions = Collections.unmodifiableSet(new HashSet<>(context.getExtensions()));
+    this.excludeExtensions = Collections.unmodifiableSet(new HashSet<>(context.getExcludeExtensions()));
+    this.excludeFolders = Collections.unmodifiableList(new ArrayList<>(context.getExcludeFolders()));
+    this.configFiles = Collections.unmodifiableList(new ArrayList<>(context.getConfigFiles()));
+    this.preprocessorExtension = context.getPreprocessorExtension();
+    this.sourceEncoding = context.getSourceEncoding();
+    this.targetEncoding = context.getTargetEncoding();
+    this.evaluationMode = context.getEvaluationMode();
+    this.parallelism = context.getParallelism();
+    this.prefetchThreads = context.getPrefetchThreads();
+    this.sharedResourceBudget = context.getSharedResourceBudget();
+  }
+}
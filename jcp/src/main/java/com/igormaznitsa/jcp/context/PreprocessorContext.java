@@ -26,7 +26,12 @@ import com.igormaznitsa.jcp.containers.FileInfoContainer;
 import com.igormaznitsa.jcp.containers.TextFileDataContainer;
 import com.igormaznitsa.jcp.exceptions.FilePositionInfo;
 import com.igormaznitsa.jcp.exceptions.PreprocessorException;
+import com.igormaznitsa.jcp.expression.EvaluationMode;
 import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.Variable;
+import com.igormaznitsa.jcp.expression.functions.BinFileCache;
+import com.igormaznitsa.jcp.expression.functions.EvalFileCache;
+import com.igormaznitsa.jcp.expression.functions.FunctionResultCache;
 import com.igormaznitsa.jcp.extension.PreprocessorExtension;
 import com.igormaznitsa.jcp.logger.PreprocessorLogger;
 import com.igormaznitsa.jcp.logger.SystemOutLogger;
@@ -35,6 +40,7 @@ import com.igormaznitsa.meta.annotation.MustNotContainNull;
 import com.igormaznitsa.meta.common.utils.GetUtils;
 import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.Setter;
 import org.apache.commons.io.FilenameUtils;
 
@@ -46,8 +52,9 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -61,6 +68,8 @@ import static java.util.Collections.unmodifiableList;
 
 /**
  * Preprocessor context class is a main class which contains all options for preprocessin and allow to work with variables in expressions.
+ * The context is not thread safe, to process files concurrently it is used as a facade: options are frozen into {@link PreprocessorConfig},
+ * the configured context becomes the base of a {@link PreprocessingSession} and each file is processed with its own cheap copy-on-write fork.
  */
 @Data
 public final class PreprocessorContext {
@@ -71,16 +80,25 @@ public final class PreprocessorContext {
   public static final List<String> DEFAULT_EXCLUDED_EXTENSIONS = singletonList("xml");
   public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
 
-  private final Map<String, Value> globalVarTable = new HashMap<>();
-  private final Map<String, Value> localVarTable = new HashMap<>();
-  private final Map<String, SpecialVariableProcessor> mapVariableNameToSpecialVarProcessor = new HashMap<>();
-  private final Map<String, Object> sharedResources = new HashMap<>();
+  @Getter(AccessLevel.NONE)
+  private final SymbolTable symbolTable;
+  @Getter(AccessLevel.NONE)
+  private final VariableTable<Value> globalVarTable;
+  @Getter(AccessLevel.NONE)
+  private final VariableTable<Value> localVarTable;
+  @Getter(AccessLevel.NONE)
+  private final VariableTable<SpecialVariableProcessor> mapVariableNameToSpecialVarProcessor;
+  @Getter(AccessLevel.NONE)
+  private final SharedResourceMap sharedResources = new SharedResourceMap();
   private final List<File> configFiles = new ArrayList<>();
 
   @Setter(AccessLevel.NONE)
   private final boolean cloned;
   @Setter(AccessLevel.NONE)
   private final TextFileDataContainer currentInCloneSource;
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private final PreprocessorConfig sessionConfig;
   private final List<SourceFolder> sources = new ArrayList<>();
   private final File baseDir;
   private String eol = GetUtils.ensureNonNull(System.getProperty("jcp.line.separator", System.getProperty("line.separator")), "\n");
@@ -106,6 +124,91 @@ public final class PreprocessorContext {
 
   private List<String> excludeFolders = new ArrayList<>();
 
+  /**
+   * Cache of decoded source texts, it is shared between contexts of one preprocessing session. Null means that files are read every time.
+   *
+   * @since 7.0.1
+   */
+  private TextFileCache textFileCache;
+
+  /**
+   * Cache of results of memoizable functions, it is shared between contexts of one preprocessing session. Null means that results are not cached,
+   * default cache can be turned on by system property 'jcp.function.cache.weight' containing max weight of the cache.
+   *
+   * @see FunctionResultCache
+   * @since 7.0.1
+   */
+  private FunctionResultCache functionResultCache = makeDefaultFunctionResultCache();
+
+  /**
+   * Persistent cache of texts generated by {@code binfile}, it can be shared between runs, builds and variants. Null means that bin files are encoded
+   * every time, default cache can be turned on by system property 'jcp.binfile.cache.folder' containing path to the cache folder, max size of the cache
+   * in bytes can be provided by system property 'jcp.binfile.cache.size' (64 MB by default).
+   *
+   * @see BinFileCache
+   * @since 7.0.1
+   */
+  private BinFileCache binFileCache = makeDefaultBinFileCache();
+
+  /**
+   * Cache of texts produced by {@code evalfile}, it is shared between contexts of one preprocessing session. Null means that files are evaluated
+   * every time, default cache can be turned on by system property 'jcp.evalfile.cache.weight' containing max weight of the cache.
+   *
+   * @see EvalFileCache
+   * @since 7.0.1
+   */
+  private EvalFileCache evalFileCache = makeDefaultEvalFileCache();
+
+  /**
+   * Recorder of variables and resources used by evaluation of a file through {@code evalfile}, it is not null only for contexts evaluating files
+   * if the eval file cache is turned on.
+   *
+   * @see EvalFileCache.Recorder
+   * @since 7.0.1
+   */
+  private EvalFileCache.Recorder evalFileRecorder;
+
+  /**
+   * Mode to evaluate expressions, default value can be provided by system property 'jcp.expression.mode'.
+   *
+   * @since 7.0.1
+   */
+  private EvaluationMode evaluationMode = EvaluationMode.findForName(System.getProperty("jcp.expression.mode"), EvaluationMode.TREE);
+
+  /**
+   * Number of threads to preprocess files, 1 means that files are processed sequentially in the caller thread. Default value can be provided by
+   * system property 'jcp.parallelism'. If files are processed concurrently then changes of global variables made by a file are visible only in the file.
+   *
+   * @since 7.0.1
+   */
+  private int parallelism = Math.max(1, Integer.getInteger("jcp.parallelism", 1));
+
+  /**
+   * Max summary weight (approximately in bytes) of shared resources which are not pinned, the least recently used resources are dropped if the budget
+   * is exceeded. Default value can be provided by system property 'jcp.shared.resources.budget', by default it is quarter of max heap size.
+   *
+   * @see #setSharedResource(String, Object, SharedResourceScope, long)
+   * @since 7.0.1
+   */
+  @Setter(AccessLevel.NONE)
+  private long sharedResourceBudget = makeDefaultSharedResourceBudget();
+
+  /**
+   * Number of threads to prefetch resources referenced by literal paths in source files, 0 means that prefetch is turned off. Default value can be
+   * provided by system property 'jcp.prefetch.threads'.
+   *
+   * @see ResourcePrefetcher
+   * @since 7.0.1
+   */
+  private int prefetchThreads = Math.max(0, Integer.getInteger("jcp.prefetch.threads", 0));
+
+  /**
+   * Prefetcher of resources working during preprocessing, it is shared between contexts of one preprocessing run. Null means that resources are not prefetched.
+   *
+   * @since 7.0.1
+   */
+  private ResourcePrefetcher resourcePrefetcher;
+
   @Setter(AccessLevel.NONE)
   private transient PreprocessingState currentState;
 
@@ -116,64 +219,107 @@ public final class PreprocessorContext {
    */
   public PreprocessorContext(@Nonnull final File baseDir) {
     this.baseDir = assertNotNull("Base folder must not be null", baseDir);
+    this.symbolTable = new SymbolTable();
+    this.globalVarTable = new VariableTable<>(this.symbolTable);
+    this.localVarTable = new VariableTable<>(this.symbolTable);
+    this.mapVariableNameToSpecialVarProcessor = new VariableTable<>(this.symbolTable);
     this.currentState = new PreprocessingState(this, this.sourceEncoding, this.targetEncoding);
     setSources(DEFAULT_SOURCE_DIRECTORY).setTarget(new File(DEFAULT_DEST_DIRECTORY));
     registerSpecialVariableProcessor(new JCPSpecialVariableProcessor());
     registerSpecialVariableProcessor(new EnvironmentVariableProcessor());
     this.cloned = false;
     this.currentInCloneSource = null;
+    this.sessionConfig = null;
+    this.sharedResources.setBudget(this.sharedResourceBudget);
   }
 
   /**
-   * Make clone of a preprocessor context but without cloning state.
+   * Make clone of a preprocessor context but without cloning state. Variable tables and shared resources are not copied but shared with the source
+   * context until the first change of any of them (copy-on-write) so that clone of a context with many variables is cheap.
    *
    * @param context the context to be cloned, must not be null.
    */
   public PreprocessorContext(@Nonnull final PreprocessorContext context) {
-    assertNotNull("Source context must not be null", context);
+    this(context, context.makeConfig(), true, context.sessionConfig);
+  }
+
+  /**
+   * Make execution context of a file processed in a preprocessing session. Options are read from the immutable session configuration, variable
+   * tables and shared resources are forked from the base context (copy-on-write).
+   *
+   * @param config      configuration of the session, must not be null
+   * @param baseContext base context of the session, must not be null
+   * @see PreprocessingSession#makeFileContext()
+   */
+  PreprocessorContext(@Nonnull final PreprocessorConfig config, @Nonnull final PreprocessorContext baseContext) {
+    this(baseContext, config, false, config);
+  }
 
-    this.baseDir = context.getBaseDir();
-    this.verbose = context.isVerbose();
-    this.keepComments = context.isKeepComments();
-    this.clearTarget = context.isClearTarget();
-    this.dryRun = context.isDryRun();
-    this.keepLines = context.isKeepLines();
-    this.allowWhitespaces = context.isAllowWhitespaces();
-    this.preserveIndents = context.isPreserveIndents();
-    this.sources.addAll(context.sources);
-    this.target = context.getTarget();
-    this.keepAttributes = context.isKeepAttributes();
-    this.careForLastEol = context.isCareForLastEol();
+  private PreprocessorContext(
+      @Nonnull final PreprocessorContext context,
+      @Nonnull final PreprocessorConfig config,
+      final boolean cloned,
+      @Nullable final PreprocessorConfig sessionConfig
+  ) {
+    assertNotNull("Source context must not be null", context);
+    assertNotNull("Config must not be null", config);
+
+    this.baseDir = config.getBaseDir();
+    this.symbolTable = context.symbolTable;
+    this.globalVarTable = new VariableTable<>(this.symbolTable);
+    this.localVarTable = new VariableTable<>(this.symbolTable);
+    this.mapVariableNameToSpecialVarProcessor = new VariableTable<>(this.symbolTable);
+    this.verbose = config.isVerbose();
+    this.keepComments = config.isKeepComments();
+    this.clearTarget = config.isClearTarget();
+    this.dryRun = config.isDryRun();
+    this.keepLines = config.isKeepLines();
+    this.allowWhitespaces = config.isAllowWhitespaces();
+    this.preserveIndents = config.isPreserveIndents();
+    this.sources.addAll(config.getSources());
+    this.target = config.getTarget();
+    this.keepAttributes = config.isKeepAttributes();
+    this.careForLastEol = config.isCareForLastEol();
 
     this.extensions.clear();
-    this.extensions.addAll(context.extensions);
+    this.extensions.addAll(config.getExtensions());
 
     this.excludeExtensions.clear();
-    this.excludeExtensions.addAll(context.excludeExtensions);
-
-    this.unknownVariableAsFalse = context.unknownVariableAsFalse;
+    this.excludeExtensions.addAll(config.getExcludeExtensions());
 
-    this.preprocessorExtension = context.getPreprocessorExtension();
-    this.sourceEncoding = context.getSourceEncoding();
-    this.targetEncoding = context.getTargetEncoding();
-    this.dontOverwriteSameContent = context.isDontOverwriteSameContent();
-    this.eol = context.getEol();
+    this.unknownVariableAsFalse = config.isUnknownVariableAsFalse();
 
-    this.globalVarTable.clear();
-    this.globalVarTable.putAll(context.getGlobalVarTable());
+    this.preprocessorExtension = config.getPreprocessorExtension();
+    this.sourceEncoding = config.getSourceEncoding();
+    this.targetEncoding = config.getTargetEncoding();
+    this.dontOverwriteSameContent = config.isDontOverwriteSameContent();
+    this.eol = config.getEol();
 
-    this.localVarTable.clear();
-    this.localVarTable.putAll(context.getLocalVarTable());
-    this.excludeFolders = new ArrayList<>(context.getExcludeFolders());
+    this.globalVarTable.putAll(context.globalVarTable);
+    this.localVarTable.putAll(context.localVarTable);
+    this.excludeFolders = new ArrayList<>(config.getExcludeFolders());
 
-    this.mapVariableNameToSpecialVarProcessor.putAll(context.getMapVariableNameToSpecialVarProcessor());
-    this.sharedResources.putAll(context.getSharedResources());
+    this.mapVariableNameToSpecialVarProcessor.putAll(context.mapVariableNameToSpecialVarProcessor);
+    this.sharedResourceBudget = config.getSharedResourceBudget();
+    this.sharedResources.setBudget(this.sharedResourceBudget);
+    this.sharedResources.putAll(context.sharedResources);
 
     this.configFiles.clear();
-    this.configFiles.addAll(context.getConfigFiles());
-
-    this.currentState = assertNotNull(context.getCurrentState());
-    this.cloned = true;
+    this.configFiles.addAll(config.getConfigFiles());
+
+    this.textFileCache = context.getTextFileCache();
+    this.functionResultCache = context.getFunctionResultCache();
+    this.binFileCache = context.getBinFileCache();
+    this.evalFileCache = context.getEvalFileCache();
+    this.evalFileRecorder = context.getEvalFileRecorder();
+    this.evaluationMode = config.getEvaluationMode();
+    this.parallelism = config.getParallelism();
+    this.prefetchThreads = config.getPrefetchThreads();
+    this.resourcePrefetcher = context.getResourcePrefetcher();
+
+    this.currentState = cloned ? assertNotNull(context.getCurrentState()) : new PreprocessingState(this, this.sourceEncoding, this.targetEncoding);
+    this.cloned = cloned;
+    this.sessionConfig = sessionConfig;
 
     this.preprocessorLogger = context.getPreprocessorLogger();
 
@@ -181,11 +327,37 @@ public final class PreprocessorContext {
     this.currentInCloneSource = theState.peekFile();
   }
 
+  @Nullable
+  private static FunctionResultCache makeDefaultFunctionResultCache() {
+    final long maxWeight = Long.getLong("jcp.function.cache.weight", 0L);
+    return maxWeight > 0L ? new FunctionResultCache(maxWeight) : null;
+  }
+
+  @Nullable
+  private static EvalFileCache makeDefaultEvalFileCache() {
+    final long maxWeight = Long.getLong("jcp.evalfile.cache.weight", 0L);
+    return maxWeight > 0L ? new EvalFileCache(maxWeight) : null;
+  }
+
+  private static long makeDefaultSharedResourceBudget() {
+    final long budget = Long.getLong("jcp.shared.resources.budget", 0L);
+    return budget > 0L ? budget : Math.max(1L, Runtime.getRuntime().maxMemory() / 4L);
+  }
+
+  @Nullable
+  private static BinFileCache makeDefaultBinFileCache() {
+    final String folder = System.getProperty("jcp.binfile.cache.folder");
+    if (folder == null || folder.trim().isEmpty()) {
+      return null;
+    }
+    return new BinFileCache(new File(folder.trim()), Math.max(1L, Long.getLong("jcp.binfile.cache.size", 64L * 1024L * 1024L)));
+  }
+
   @Nonnull
   private static String makeStackView(
       @Nullable final TextFileDataContainer cloneSource,
       final boolean cloned,
-      @Nullable @MustNotContainNull final List<TextFileDataContainer> list
+      @Nullable @MustNotContainNull final Deque<TextFileDataContainer> list
   ) {
     if (list == null || list.isEmpty()) {
       return "";
@@ -207,8 +379,8 @@ public final class PreprocessorContext {
     tab += 5;
 
     int fileIndex = 1;
-    for (int i = list.size() - 1; i >= 0; i--) {
-      final TextFileDataContainer cur = list.get(i);
+    for (final Iterator<TextFileDataContainer> iterator = list.descendingIterator(); iterator.hasNext(); ) {
+      final TextFileDataContainer cur = iterator.next();
       builder.append('\n');
       for (int s = 0; s < tab; s++) {
         builder.append(' ');
@@ -236,10 +408,69 @@ public final class PreprocessorContext {
     this.eol = assertNotNull(eol);
   }
 
+  public void setParallelism(final int parallelism) {
+    assertNotSessionOption("parallelism");
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be 1 or greater: " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  public void setPrefetchThreads(final int prefetchThreads) {
+    assertNotSessionOption("prefetchThreads");
+    if (prefetchThreads < 0) {
+      throw new IllegalArgumentException("Number of prefetch threads must not be negative: " + prefetchThreads);
+    }
+    this.prefetchThreads = prefetchThreads;
+  }
+
   public void setTarget(@Nonnull final File file) {
     this.target = file.isAbsolute() ? file : new File(this.getBaseDir(), file.getPath());
   }
 
+  /**
+   * Make independent copy of the context to preprocess a variant of sources. In opposite to clone, the copy is not marked as cloned one so that it
+   * can be used for whole preprocessing session, but it shares the text file cache with the source context.
+   *
+   * @return new context contains copy of the context options and variables, must not be null
+   * @since 7.0.1
+   */
+  @Nonnull
+  public PreprocessorContext makeVariantCopy() {
+    return new PreprocessorContext(this, makeConfig(), false, null);
+  }
+
+  /**
+   * Make immutable snapshot of the current context options.
+   *
+   * @return new immutable configuration object, must not be null
+   * @since 7.0.1
+   */
+  @Nonnull
+  public PreprocessorConfig makeConfig() {
+    return new PreprocessorConfig(this);
+  }
+
+  /**
+   * Get configuration of the preprocessing session if the context is an execution context of a file processed in the session (or its clone).
+   * Options which define the whole run (parallelism, prefetch threads and shared resource budget) can't be changed in such context, changes of
+   * other options stay local for the file.
+   *
+   * @return the session configuration or null if the context doesn't belong to a session
+   * @see PreprocessingSession
+   * @since 7.0.1
+   */
+  @Nullable
+  public PreprocessorConfig getSessionConfig() {
+    return this.sessionConfig;
+  }
+
+  private void assertNotSessionOption(@Nonnull final String option) {
+    if (this.sessionConfig != null) {
+      throw new IllegalStateException("Option '" + option + "' is defined by preprocessing session and can't be changed in file context");
+    }
+  }
+
   /**
    * Check that the preprocessor context is a clone of another context.
    *
@@ -322,16 +553,32 @@ public final class PreprocessorContext {
   }
 
   /**
-   * Set a shared source, it is an object saved into the inside map for a name
+   * Set a shared source, it is an object saved into the inside map for a name. The resource is pinned and it is not removed automatically.
    *
    * @param name the name for the saved project, must not be null
    * @param obj  the object to be saved in, must not be null
    */
   public void setSharedResource(@Nonnull final String name, @Nonnull final Object obj) {
+    setSharedResource(name, obj, SharedResourceScope.PINNED, 0L);
+  }
+
+  /**
+   * Set a shared source with scope and approximate weight. If summary weight of shared resources exceeds the budget then the least recently used
+   * resources which are not pinned are dropped, an owner of a dropped resource can detect that through {@link #isSharedResourceDropped(String)} and make it again.
+   *
+   * @param name   the name for the saved object, must not be null
+   * @param obj    the object to be saved in, must not be null
+   * @param scope  the scope of the object, must not be null
+   * @param weight approximate weight of the object in bytes, must not be negative
+   * @see #setSharedResourceBudget(long)
+   * @since 7.0.1
+   */
+  public void setSharedResource(@Nonnull final String name, @Nonnull final Object obj, @Nonnull final SharedResourceScope scope, final long weight) {
     assertNotNull("Name is null", name);
     assertNotNull("Object is null", obj);
+    assertNotNull("Scope is null", scope);
 
-    sharedResources.put(name, obj);
+    sharedResources.put(name, obj, scope, weight);
   }
 
   /**
@@ -358,6 +605,84 @@ public final class PreprocessorContext {
     return sharedResources.remove(name);
   }
 
+  /**
+   * Get all shared resources.
+   *
+   * @return map of shared resources, must not be null
+   */
+  @Nonnull
+  public Map<String, Object> getSharedResources() {
+    return this.sharedResources;
+  }
+
+  /**
+   * Remove all shared resources of a scope.
+   *
+   * @param scope the scope, must not be null
+   * @return number of removed resources
+   * @since 7.0.1
+   */
+  public int releaseSharedResources(@Nonnull final SharedResourceScope scope) {
+    return this.sharedResources.release(assertNotNull("Scope is null", scope));
+  }
+
+  /**
+   * Check that a shared resource has been dropped because of the budget. Names of dropped resources are forgotten when their scope is released,
+   * end of the run scope forgets names of dropped resources of the file scope too.
+   *
+   * @param name the resource name, must not be null
+   * @return true if the resource was dropped, false otherwise
+   * @since 7.0.1
+   */
+  public boolean isSharedResourceDropped(@Nonnull final String name) {
+    return this.sharedResources.isDropped(assertNotNull("Name is null", name));
+  }
+
+  /**
+   * Set max summary weight of shared resources which are not pinned.
+   *
+   * @param budget the budget approximately in bytes, must be greater than zero
+   * @return the context
+   * @since 7.0.1
+   */
+  @Nonnull
+  public PreprocessorContext setSharedResourceBudget(final long budget) {
+    assertNotSessionOption("sharedResourceBudget");
+    this.sharedResources.setBudget(budget);
+    this.sharedResourceBudget = budget;
+    return this;
+  }
+
+  /**
+   * Get current summary weight of shared resources.
+   *
+   * @return the weight approximately in bytes
+   * @since 7.0.1
+   */
+  public long getSharedResourceWeight() {
+    return this.sharedResources.getWeight();
+  }
+
+  /**
+   * Get max summary weight of shared resources detected in the context and its forks.
+   *
+   * @return the weight approximately in bytes
+   * @since 7.0.1
+   */
+  public long getSharedResourcePeakWeight() {
+    return this.sharedResources.getPeakWeight();
+  }
+
+  /**
+   * Get number of shared resources dropped because of the budget in the context and its forks.
+   *
+   * @return number of dropped resources
+   * @since 7.0.1
+   */
+  public long getSharedResourceDropCount() {
+    return this.sharedResources.getDropped();
+  }
+
   /**
    * Set source directories
    *
@@ -463,6 +788,9 @@ public final class PreprocessorContext {
       throw makeException("Attempting to set either a global variable or a special variable as a local one [" + normalized + ']', null);
     }
 
+    if (this.evalFileRecorder != null) {
+      this.evalFileRecorder.onVariableChange(normalized);
+    }
     localVarTable.put(normalized, value);
     return this;
   }
@@ -490,6 +818,9 @@ public final class PreprocessorContext {
     if (isVerbose()) {
       logForVerbose("Removing local variable '" + normalized + "\'");
     }
+    if (this.evalFileRecorder != null) {
+      this.evalFileRecorder.onVariableChange(normalized);
+    }
     localVarTable.remove(normalized);
     return this;
   }
@@ -519,6 +850,9 @@ public final class PreprocessorContext {
       logForVerbose("Removing global variable '" + normalized + "\'");
     }
 
+    if (this.evalFileRecorder != null) {
+      this.evalFileRecorder.onVariableChange(normalized);
+    }
     globalVarTable.remove(normalized);
     return this;
   }
@@ -541,6 +875,7 @@ public final class PreprocessorContext {
       return null;
     }
 
+    recordVariableRead(normalized);
     return localVarTable.get(normalized);
   }
 
@@ -561,6 +896,7 @@ public final class PreprocessorContext {
       return false;
     }
 
+    recordVariableRead(normalized);
     return localVarTable.containsKey(normalized);
   }
 
@@ -571,6 +907,9 @@ public final class PreprocessorContext {
    */
   @Nonnull
   public PreprocessorContext clearLocalVariables() {
+    if (this.evalFileRecorder != null) {
+      this.evalFileRecorder.markNotCacheable();
+    }
     localVarTable.clear();
     return this;
   }
@@ -595,8 +934,14 @@ public final class PreprocessorContext {
     assertNotNull("Value is null", value);
 
     if (mapVariableNameToSpecialVarProcessor.containsKey(normalizedName)) {
+      if (this.evalFileRecorder != null) {
+        this.evalFileRecorder.markNotCacheable();
+      }
       mapVariableNameToSpecialVarProcessor.get(normalizedName).setVariable(normalizedName, value, this);
     } else {
+      if (this.evalFileRecorder != null) {
+        this.evalFileRecorder.onVariableChange(normalizedName);
+      }
       if (isVerbose()) {
         final String valueAsStr = value.toString();
         if (globalVarTable.containsKey(normalizedName)) {
@@ -626,6 +971,7 @@ public final class PreprocessorContext {
       return false;
     }
 
+    recordVariableRead(normalized);
     return mapVariableNameToSpecialVarProcessor.containsKey(normalized) || globalVarTable.containsKey(normalized);
   }
 
@@ -648,18 +994,46 @@ public final class PreprocessorContext {
       return null;
     }
 
-    final SpecialVariableProcessor processor = mapVariableNameToSpecialVarProcessor.get(normalized);
+    return findVariable(this.symbolTable.findSlot(normalized), normalized, name, enforceUnknownVarAsNull);
+  }
+
+  /**
+   * Find value among local and global variables for an expression variable. It works as {@link #findVariableForName(String, boolean)} but
+   * uses the name normalized and resolved to the variable table slot during expression parsing.
+   *
+   * @param variable                the expression variable, must not be null
+   * @param enforceUnknownVarAsNull if true then state of the unknownVariableAsFalse flag in context will be ignored
+   * @return null if the variable is not found, otherwise the variable value
+   * @since 7.0.1
+   */
+  @Nullable
+  public Value findVariable(@Nonnull final Variable variable, final boolean enforceUnknownVarAsNull) {
+    final String normalized = variable.getNormalizedName();
+    if (normalized.isEmpty()) {
+      return null;
+    }
+    return findVariable(variable.getSlot(this.symbolTable), normalized, variable.getName(), enforceUnknownVarAsNull);
+  }
+
+  @Nullable
+  private Value findVariable(final int slot, @Nonnull final String normalized, @Nonnull final String name, final boolean enforceUnknownVarAsNull) {
+    final SpecialVariableProcessor processor = mapVariableNameToSpecialVarProcessor.get(slot);
 
     if (processor != null) {
+      if (this.evalFileRecorder != null) {
+        this.evalFileRecorder.markNotCacheable();
+      }
       return processor.getVariable(normalized, this);
     }
 
-    final Value val = getLocalVariable(normalized);
-    if (val != null) {
-      return val;
+    if (this.evalFileRecorder != null) {
+      this.evalFileRecorder.onVariableRead(normalized, localVarTable.get(slot), globalVarTable.get(slot));
     }
 
-    Value result = globalVarTable.get(normalized);
+    Value result = localVarTable.get(slot);
+    if (result == null) {
+      result = globalVarTable.get(slot);
+    }
 
     if (result == null && !enforceUnknownVarAsNull && this.unknownVariableAsFalse) {
       logDebug("Unknown variable '" + name + "' is replaced by FALSE!");
@@ -669,6 +1043,75 @@ public final class PreprocessorContext {
     return result;
   }
 
+  private void recordVariableRead(@Nonnull final String normalized) {
+    if (this.evalFileRecorder != null) {
+      this.evalFileRecorder.onVariableRead(normalized, localVarTable.get(normalized), globalVarTable.get(normalized));
+    }
+  }
+
+  /**
+   * Get global variables, the map is the live table of the context so that changes made through it are visible for the context.
+   *
+   * @return map of global variables, must not be null
+   */
+  @Nonnull
+  public Map<String, Value> getGlobalVarTable() {
+    return this.globalVarTable;
+  }
+
+  /**
+   * Get local variables, the map is the live table of the context so that changes made through it are visible for the context.
+   *
+   * @return map of local variables, must not be null
+   */
+  @Nonnull
+  public Map<String, Value> getLocalVarTable() {
+    return this.localVarTable;
+  }
+
+  /**
+   * Get registered special variable processors, the map is the live table of the context.
+   *
+   * @return map of special variable processors for their variable names, must not be null
+   */
+  @Nonnull
+  public Map<String, SpecialVariableProcessor> getMapVariableNameToSpecialVarProcessor() {
+    return this.mapVariableNameToSpecialVarProcessor;
+  }
+
+  /**
+   * Get table of global variables. Changes made directly in the table bypass checks made by the context.
+   *
+   * @return the table of global variables, must not be null
+   * @since 7.0.1
+   */
+  @Nonnull
+  public VariableTable<Value> getGlobalVariableTable() {
+    return this.globalVarTable;
+  }
+
+  /**
+   * Get table of local variables. Changes made directly in the table bypass checks made by the context.
+   *
+   * @return the table of local variables, must not be null
+   * @since 7.0.1
+   */
+  @Nonnull
+  public VariableTable<Value> getLocalVariableTable() {
+    return this.localVarTable;
+  }
+
+  /**
+   * Compact the global variable table, it should be called when definition of global variables is completed. Global variables still can be changed
+   * but every change makes the table ordinary one.
+   *
+   * @see VariableTable#compact()
+   * @since 7.0.1
+   */
+  public void compactGlobalVariables() {
+    this.globalVarTable.compact();
+  }
+
   /**
    * Check that there is a global variable with such name.
    *
@@ -678,7 +1121,8 @@ public final class PreprocessorContext {
   public boolean isGlobalVariable(@Nullable final String variableName) {
     boolean result = false;
     if (variableName != null) {
-      final String normalized = PreprocessorUtils.normalizeVariableName(variableName);
+      final String normalized = assertNotNull(PreprocessorUtils.normalizeVariableName(variableName));
+      recordVariableRead(normalized);
       result = this.globalVarTable.containsKey(normalized) || mapVariableNameToSpecialVarProcessor.containsKey(normalized);
     }
     return result;
@@ -693,7 +1137,8 @@ public final class PreprocessorContext {
   public boolean isLocalVariable(@Nullable final String variableName) {
     boolean result = false;
     if (variableName != null) {
-      final String normalized = PreprocessorUtils.normalizeVariableName(variableName);
+      final String normalized = assertNotNull(PreprocessorUtils.normalizeVariableName(variableName));
+      recordVariableRead(normalized);
       result = this.localVarTable.containsKey(normalized);
     }
     return result;
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import com.igormaznitsa.jcp.containers.TextFileDataContainer;
+import com.igormaznitsa.jcp.expression.functions.BinFileCache;
+import com.igormaznitsa.jcp.expression.functions.xml.CompactXmlDocument;
+import org.apache.commons.io.FilenameUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Thread safe background loader of resources referenced by string literals in source files. A source file is scanned for {@code //#include "path"}
+ * directives and for calls of {@code evalfile}, {@code binfile} and {@code xml_open} with literal path arguments, found paths are resolved in the
+ * same way as {@link PreprocessorContext#findFileInSources(String)} and resources are warmed on a worker pool: texts of included and evaluated files
+ * are read into the text file cache (and scanned too), digests of bin files are calculated for the bin file cache and XML documents are parsed.
+ * All problems are ignored because the referenced resources are loaded by preprocessing anyway and it reports errors.
+ *
+ * @see PreprocessorContext#setPrefetchThreads(int)
+ * @since 7.0.1
+ */
+public final class ResourcePrefetcher implements AutoCloseable {
+
+  private static final Pattern INCLUDE_LITERAL = Pattern.compile("^\\s*//\\s*#include\\s+\"([^\"\\\\]+)\"\\s*$");
+  private static final Pattern FUNCTION_LITERAL = Pattern.compile("\\b(evalfile|binfile|xml_open)\\s*\\(\\s*\"([^\"\\\\]+)\"");
+
+  private final ExecutorService executor;
+  private final List<PreprocessorContext.SourceFolder> sources;
+  private final Charset charset;
+  private final TextFileCache textFileCache;
+  private final BinFileCache binFileCache;
+  private final Set<File> scannedFiles = ConcurrentHashMap.newKeySet();
+  private final Map<File, Future<CompactXmlDocument>> xmlDocuments = new ConcurrentHashMap<>();
+  private final AtomicLong prefetched = new AtomicLong();
+  private final AtomicLong used = new AtomicLong();
+  private final AtomicInteger pending = new AtomicInteger();
+
+  /**
+   * Constructor.
+   *
+   * @param threads       number of worker threads, must be greater than zero
+   * @param sources       source folders to check absolute paths, must not be null
+   * @param charset       charset of source files, must not be null
+   * @param textFileCache cache to keep read texts, must not be null
+   * @param binFileCache  cache of bin files, can be null
+   */
+  public ResourcePrefetcher(final int threads, @Nonnull final List<PreprocessorContext.SourceFolder> sources, @Nonnull final Charset charset, @Nonnull final TextFileCache textFileCache, @Nullable final BinFileCache binFileCache) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be greater than zero: " + threads);
+    }
+    this.sources = new ArrayList<>(assertNotNull(sources));
+    this.charset = assertNotNull(charset);
+    this.textFileCache = assertNotNull(textFileCache);
+    this.binFileCache = binFileCache;
+
+    final AtomicInteger threadCounter = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+      final Thread thread = new Thread(runnable, "jcp-prefetch-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+  }
+
+  /**
+   * Make prefetcher for options of a context.
+   *
+   * @param context the context, must not be null, its text file cache must not be null
+   * @return new prefetcher, must not be null
+   */
+  @Nonnull
+  public static ResourcePrefetcher make(@Nonnull final PreprocessorContext context) {
+    return new ResourcePrefetcher(context.getPrefetchThreads(), context.getSources(), context.getSourceEncoding(), assertNotNull("Text file cache must not be null", context.getTextFileCache()), context.getBinFileCache());
+  }
+
+  /**
+   * Schedule scan of a source file, every file is scanned only once.
+   *
+   * @param file the file to be scanned, must not be null
+   */
+  public void prefetch(@Nonnull final File file) {
+    if (this.scannedFiles.add(normalize(file))) {
+      submit(() -> scan(file));
+    }
+  }
+
+  @Nonnull
+  private static File normalize(@Nonnull final File file) {
+    return file.getAbsoluteFile().toPath().normalize().toFile();
+  }
+
+  private boolean submit(@Nonnull final Runnable task) {
+    this.pending.incrementAndGet();
+    try {
+      this.executor.execute(() -> {
+        try {
+          task.run();
+        } finally {
+          this.pending.decrementAndGet();
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      // the prefetcher is closed
+      this.pending.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  private void scan(@Nonnull final File file) {
+    final TextFileDataContainer text;
+    try {
+      text = this.textFileCache.open(file, this.charset);
+    } catch (IOException ex) {
+      return;
+    }
+    for (final String line : text.getText()) {
+      if (line.indexOf('"') < 0) {
+        continue;
+      }
+      final Matcher include = INCLUDE_LITERAL.matcher(line);
+      if (include.matches()) {
+        final File found = resolve(file, include.group(1));
+        if (found != null) {
+          this.prefetched.incrementAndGet();
+          prefetch(found);
+        }
+        continue;
+      }
+      final Matcher function = FUNCTION_LITERAL.matcher(line);
+      while (function.find()) {
+        final File found = resolve(file, function.group(2));
+        if (found != null) {
+          warm(function.group(1), found);
+        }
+      }
+    }
+  }
+
+  private void warm(@Nonnull final String function, @Nonnull final File file) {
+    switch (function) {
+      case "evalfile":
+        this.prefetched.incrementAndGet();
+        prefetch(file);
+        break;
+      case "binfile":
+        if (this.binFileCache != null) {
+          this.prefetched.incrementAndGet();
+          this.binFileCache.prefetch(file);
+        }
+        break;
+      case "xml_open":
+        final File xmlFile = normalize(file);
+        if (!this.xmlDocuments.containsKey(xmlFile)) {
+          final FutureTask<CompactXmlDocument> task = new FutureTask<>(() -> CompactXmlDocument.parse(xmlFile));
+          if (this.xmlDocuments.putIfAbsent(xmlFile, task) == null) {
+            this.prefetched.incrementAndGet();
+            if (!submit(task)) {
+              task.cancel(false);
+            }
+          }
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Resolve path in the same way as {@link PreprocessorContext#findFileInSources(String)} for a file referenced from another one.
+   *
+   * @param referencingFile file containing reference, must not be null
+   * @param path            the referenced path, must not be null
+   * @return found file or null if it is not found or not allowed
+   */
+  @Nullable
+  File resolve(@Nonnull final File referencingFile, @Nonnull final String path) {
+    if (path.trim().isEmpty()) {
+      return null;
+    }
+    final File file = new File(path);
+    File result = null;
+    if (file.isAbsolute()) {
+      final String normalizedPath = FilenameUtils.normalizeNoEndSeparator(file.getAbsolutePath());
+      for (final PreprocessorContext.SourceFolder root : this.sources) {
+        if (normalizedPath.startsWith(root.getNormalizedAbsolutePath(true))) {
+          result = file;
+          break;
+        }
+      }
+    } else if (referencingFile.getParent() != null) {
+      result = new File(referencingFile.getParent(), path);
+    }
+    return result != null && result.isFile() ? result : null;
+  }
+
+  /**
+   * Take prefetched XML document, it waits for the end of parsing if the document is being parsed. The document is given only once.
+   *
+   * @param file the XML file, must not be null
+   * @return parsed document or null if it is not prefetched or can't be parsed
+   */
+  @Nullable
+  public CompactXmlDocument takeXmlDocument(@Nonnull final File file) {
+    final Future<CompactXmlDocument> future = this.xmlDocuments.remove(normalize(file));
+    if (future == null) {
+      return null;
+    }
+    try {
+      final CompactXmlDocument result = future.get();
+      this.used.incrementAndGet();
+      return result;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException | CancellationException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Get number of resources scheduled for prefetch.
+   *
+   * @return number of resources
+   */
+  public long getPrefetched() {
+    return this.prefetched.get();
+  }
+
+  /**
+   * Get number of prefetched XML documents taken by preprocessing.
+   *
+   * @return number of documents
+   */
+  public long getUsedXmlDocuments() {
+    return this.used.get();
+  }
+
+  /**
+   * Wait for the end of all scheduled tasks.
+   *
+   * @param timeout max time to wait in milliseconds
+   * @return true if there are no more tasks, false if the timeout is reached
+   * @throws InterruptedException if the thread is interrupted
+   */
+  boolean awaitIdle(final long timeout) throws InterruptedException {
+    final long end = System.currentTimeMillis() + timeout;
+    while (this.pending.get() > 0) {
+      if (System.currentTimeMillis() > end) {
+        return false;
+      }
+      Thread.sleep(5L);
+    }
+    return true;
+  }
+
+  /**
+   * Stop prefetching, not started tasks are cancelled.
+   */
+  @Override
+  public void close() {
+    this.executor.shutdownNow();
+    // cancel documents which are not started, else a consumer could wait for them forever
+    this.xmlDocuments.values().forEach(f -> f.cancel(false));
+    this.xmlDocuments.clear();
+  }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Map of shared resources of a preprocessor context. Every resource has a scope and approximate weight, if summary weight exceeds the budget then
+ * the least recently used resources which are not pinned are dropped. Names of dropped resources are remembered until end of their scope so that their owners
+ * can make them again on demand. The map can be forked in constant time like {@link ForkableMap}, usage statistics and names of dropped resources of
+ * the run scope are shared between forks.
+ * The class is not thread safe but forks can be used in different threads.
+ *
+ * @since 7.0.1
+ */
+final class SharedResourceMap extends AbstractMap<String, Object> {
+
+  private final ForkableMap<String, Resource> resources = new ForkableMap<>();
+  private Usage usage = new Usage();
+  private final Set<String> droppedFileNames = new HashSet<>();
+  /**
+   * Resources which are not pinned in access order, it is made on the first drop so that forks which never exceed the budget don't pay for it.
+   */
+  private LinkedHashMap<String, Resource> evictionOrder;
+  private long weight;
+  private long budget = Long.MAX_VALUE;
+
+  /**
+   * Set max summary weight of resources, it will be applied on the next placement of a resource.
+   *
+   * @param budget the budget, must be greater than zero
+   */
+  void setBudget(final long budget) {
+    if (budget <= 0L) {
+      throw new IllegalArgumentException("Budget must be greater than zero: " + budget);
+    }
+    this.budget = budget;
+  }
+
+  long getWeight() {
+    return this.weight;
+  }
+
+  long getPeakWeight() {
+    return this.usage.peakWeight.get();
+  }
+
+  long getDropped() {
+    return this.usage.dropped.get();
+  }
+
+  boolean isDropped(@Nonnull final String name) {
+    if (this.droppedFileNames.contains(name)) {
+      return true;
+    }
+    synchronized (this.usage.droppedNames) {
+      return this.usage.droppedNames.contains(name);
+    }
+  }
+
+  @Nullable
+  Object put(@Nonnull final String name, @Nonnull final Object value, @Nonnull final SharedResourceScope scope, final long weight) {
+    if (weight < 0L) {
+      throw new IllegalArgumentException("Weight must not be negative: " + weight);
+    }
+    final Resource resource = new Resource(value, assertNotNull(scope), weight);
+    resource.lastUse = this.usage.clock.incrementAndGet();
+    final Resource prev = this.resources.put(name, resource);
+    if (prev != null) {
+      this.weight -= prev.weight;
+    }
+    if (this.evictionOrder != null) {
+      this.evictionOrder.remove(name);
+      if (scope != SharedResourceScope.PINNED) {
+        this.evictionOrder.put(name, resource);
+      }
+    }
+    this.weight += weight;
+    dropOverBudget(name);
+    this.usage.peakWeight.accumulateAndGet(this.weight, Math::max);
+    return prev == null ? null : prev.value;
+  }
+
+  private void dropOverBudget(@Nonnull final String keep) {
+    while (this.weight > this.budget) {
+      String eldest = null;
+      for (final String name : getEvictionOrder().keySet()) {
+        if (!keep.equals(name)) {
+          eldest = name;
+          break;
+        }
+      }
+      if (eldest == null) {
+        break;
+      }
+      final SharedResourceScope scope = this.resources.get(eldest).scope;
+      remove(eldest);
+      if (scope == SharedResourceScope.FILE) {
+        this.droppedFileNames.add(eldest);
+      } else {
+        synchronized (this.usage.droppedNames) {
+          this.usage.droppedNames.add(eldest);
+        }
+      }
+      this.usage.dropped.incrementAndGet();
+    }
+  }
+
+  @Nonnull
+  private LinkedHashMap<String, Resource> getEvictionOrder() {
+    if (this.evictionOrder == null) {
+      final List<Map.Entry<String, Resource>> entries = new ArrayList<>();
+      for (final Map.Entry<String, Resource> e : this.resources.entrySet()) {
+        if (e.getValue().scope != SharedResourceScope.PINNED) {
+          entries.add(e);
+        }
+      }
+      entries.sort(Comparator.comparingLong(e -> e.getValue().lastUse));
+      final LinkedHashMap<String, Resource> order = new LinkedHashMap<>(Math.max(16, entries.size() * 2), 0.75f, true);
+      for (final Map.Entry<String, Resource> e : entries) {
+        order.put(e.getKey(), e.getValue());
+      }
+      this.evictionOrder = order;
+    }
+    return this.evictionOrder;
+  }
+
+  /**
+   * Remove all resources of a scope. Names of resources dropped with the scope are forgotten, end of the run scope also forgets names
+   * of dropped resources of the file scope.
+   *
+   * @param scope the scope, must not be null
+   * @return number of removed resources
+   */
+  int release(@Nonnull final SharedResourceScope scope) {
+    int result = 0;
+    final Iterator<Map.Entry<String, Resource>> iterator = this.resources.entrySet().iterator();
+    while (iterator.hasNext()) {
+      final Map.Entry<String, Resource> e = iterator.next();
+      if (e.getValue().scope == scope) {
+        iterator.remove();
+        this.weight -= e.getValue().weight;
+        if (this.evictionOrder != null) {
+          this.evictionOrder.remove(e.getKey());
+        }
+        result++;
+      }
+    }
+    if (scope != SharedResourceScope.PINNED) {
+      this.droppedFileNames.clear();
+    }
+    if (scope == SharedResourceScope.RUN) {
+      synchronized (this.usage.droppedNames) {
+        this.usage.droppedNames.clear();
+      }
+    }
+    return result;
+  }
+
+  @Override
+  @Nullable
+  public Object get(@Nullable final Object key) {
+    final Resource resource = this.resources.get(key);
+    if (resource == null) {
+      return null;
+    }
+    // the use mark is just a hint for eviction so that it can be changed in a resource shared with other forks
+    resource.lastUse = this.usage.clock.incrementAndGet();
+    if (this.evictionOrder != null && resource.scope != SharedResourceScope.PINNED) {
+      this.evictionOrder.get(key);
+    }
+    return resource.value;
+  }
+
+  @Override
+  public boolean containsKey(@Nullable final Object key) {
+    return this.resources.containsKey(key);
+  }
+
+  @Override
+  @Nullable
+  public Object put(@Nonnull final String key, @Nonnull final Object value) {
+    return put(key, value, SharedResourceScope.PINNED, 0L);
+  }
+
+  @Override
+  @Nullable
+  public Object remove(@Nullable final Object key) {
+    final Resource removed = this.resources.remove(key);
+    if (removed == null) {
+      return null;
+    }
+    this.weight -= removed.weight;
+    if (this.evictionOrder != null) {
+      this.evictionOrder.remove(key);
+    }
+    return removed.value;
+  }
+
+  @Override
+  public void putAll(@Nonnull final Map<? extends String, ?> map) {
+    if (map instanceof SharedResourceMap && this.resources.isEmpty()) {
+      final SharedResourceMap that = (SharedResourceMap) map;
+      this.resources.putAll(that.resources);
+      this.weight = that.weight;
+      this.usage = that.usage;
+      this.evictionOrder = null;
+    } else {
+      for (final Map.Entry<? extends String, ?> e : map.entrySet()) {
+        put(e.getKey(), e.getValue());
+      }
+    }
+  }
+
+  @Override
+  public void clear() {
+    this.resources.clear();
+    this.weight = 0L;
+    this.evictionOrder = null;
+  }
+
+  @Override
+  public int size() {
+    return this.resources.size();
+  }
+
+  @Override
+  @Nonnull
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      @Nonnull
+      public Iterator<Entry<String, Object>> iterator() {
+        final Iterator<Entry<String, Resource>> delegate = resources.entrySet().iterator();
+        return new Iterator<Entry<String, Object>>() {
+          private Entry<String, Resource> last;
+
+          @Override
+          public boolean hasNext() {
+            return delegate.hasNext();
+          }
+
+          @Override
+          @Nonnull
+          public Entry<String, Object> next() {
+            this.last = delegate.next();
+            return new SimpleImmutableEntry<>(this.last.getKey(), this.last.getValue().value);
+          }
+
+          @Override
+          public void remove() {
+            delegate.remove();
+            weight -= this.last.getValue().weight;
+            if (evictionOrder != null) {
+              evictionOrder.remove(this.last.getKey());
+            }
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return resources.size();
+      }
+    };
+  }
+
+  private static final class Resource {
+    private final Object value;
+    private final SharedResourceScope scope;
+    private final long weight;
+    private volatile long lastUse;
+
+    private Resource(@Nonnull final Object value, @Nonnull final SharedResourceScope scope, final long weight) {
+      this.value = value;
+      this.scope = scope;
+      this.weight = weight;
+    }
+  }
+
+  private static final class Usage {
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong peakWeight = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Set<String> droppedNames = new HashSet<>();
+  }
+}
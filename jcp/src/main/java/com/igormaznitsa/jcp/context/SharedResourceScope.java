@@ -0,0 +1,44 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+/**
+ * Lifetime of a shared resource registered in a preprocessor context.
+ *
+ * @see PreprocessorContext#setSharedResource(String, Object, SharedResourceScope, long)
+ * @since 7.0.1
+ */
+public enum SharedResourceScope {
+  /**
+   * The resource is removed when processing of the current file is completed and it can be removed earlier if the memory budget is exceeded.
+   */
+  FILE,
+  /**
+   * The resource lives during whole preprocessing run but it can be removed if the memory budget is exceeded, the least recently used resources are removed first.
+   */
+  RUN,
+  /**
+   * The resource is never removed automatically.
+   */
+  PINNED
+}
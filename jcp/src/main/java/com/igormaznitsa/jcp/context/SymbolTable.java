@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Symbol table interns variable names into slot numbers of {@link VariableTable}. A table is made for a root preprocessor context and shared by all
+ * its copies so that names known during a preprocessing session are interned only once and the table is collected together with the session.
+ * The class is thread safe.
+ *
+ * @see VariableTable
+ * @since 7.0.1
+ */
+public final class SymbolTable {
+
+  private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+  private volatile String[] names = new String[64];
+  private int counter;
+
+  /**
+   * Get slot for a name, new slot is allocated if the name is not known yet.
+   *
+   * @param name the name, must not be null
+   * @return the slot number, zero or greater
+   */
+  public int slotFor(@Nonnull final String name) {
+    Integer slot = this.slots.get(assertNotNull("Name must not be null", name));
+    if (slot == null) {
+      synchronized (this.slots) {
+        slot = this.slots.get(name);
+        if (slot == null) {
+          slot = this.counter++;
+          String[] allocated = this.names;
+          if (slot >= allocated.length) {
+            allocated = Arrays.copyOf(allocated, allocated.length * 2);
+          }
+          allocated[slot] = name;
+          this.names = allocated;
+          this.slots.put(name, slot);
+        }
+      }
+    }
+    return slot;
+  }
+
+  /**
+   * Find slot for a name without allocation of new one.
+   *
+   * @param name the name, can be null
+   * @return the slot number or -1 if the name is not known
+   */
+  public int findSlot(@Nullable final String name) {
+    final Integer slot = name == null ? null : this.slots.get(name);
+    return slot == null ? -1 : slot;
+  }
+
+  /**
+   * Get name for a slot.
+   *
+   * @param slot allocated slot number
+   * @return the name interned for the slot, must not be null
+   */
+  @Nonnull
+  public String nameForSlot(final int slot) {
+    return assertNotNull("Unknown slot " + slot, this.names[slot]);
+  }
+
+  /**
+   * Get number of interned names.
+   *
+   * @return number of allocated slots
+   */
+  public int size() {
+    return this.slots.size();
+  }
+}
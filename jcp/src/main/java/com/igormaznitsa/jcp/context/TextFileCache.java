@@ -0,0 +1,128 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.igormaznitsa.jcp.context;
+
+import com.igormaznitsa.jcp.containers.TextFileDataContainer;
+import com.igormaznitsa.jcp.utils.PreprocessorUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Thread safe cache of decoded text files. It allows to read and decode a source file only once if the file is preprocessed several times during
+ * one session (for instance, for several variants). Files are not checked for changes so that the cache must not live longer than one preprocessing session.
+ *
+ * @since 7.0.1
+ */
+public final class TextFileCache {
+
+  private final Map<Key, TextFileDataContainer> cache = new ConcurrentHashMap<>();
+
+  /**
+   * Get text container for a file, the file will be read only if it is not presented in the cache.
+   *
+   * @param file    the file to be read, must not be null
+   * @param charset the charset to decode the file text, must not be null
+   * @return new text container for the file with text position at the start of the text
+   * @throws IOException it will be thrown if any transport error
+   */
+  @Nonnull
+  public TextFileDataContainer open(@Nonnull final File file, @Nonnull final Charset charset) throws IOException {
+    assertNotNull("File is null", file);
+    assertNotNull("Charset is null", charset);
+
+    final Key key = new Key(file.getAbsoluteFile(), charset);
+    TextFileDataContainer found = this.cache.get(key);
+    if (found == null) {
+      final AtomicBoolean endedByNextLineContainer = new AtomicBoolean();
+      final String[] texts = PreprocessorUtils.readWholeTextFileIntoArray(file, charset, endedByNextLineContainer);
+      found = new TextFileDataContainer(file, texts, endedByNextLineContainer.get(), 0);
+      final TextFileDataContainer alreadyAdded = this.cache.putIfAbsent(key, found);
+      if (alreadyAdded != null) {
+        found = alreadyAdded;
+      }
+    }
+    return new TextFileDataContainer(found, 0);
+  }
+
+  /**
+   * Check that a file is presented in the cache.
+   *
+   * @param file    the file to be checked, must not be null
+   * @param charset the charset of the file text, must not be null
+   * @return true if the file text is cached, false otherwise
+   */
+  public boolean contains(@Nonnull final File file, @Nonnull final Charset charset) {
+    return this.cache.containsKey(new Key(file.getAbsoluteFile(), charset));
+  }
+
+  /**
+   * Get number of cached files.
+   *
+   * @return number of cached files
+   */
+  public int size() {
+    return this.cache.size();
+  }
+
+  /**
+   * Remove all cached texts.
+   */
+  public void clear() {
+    this.cache.clear();
+  }
+
+  private static final class Key {
+    private final File file;
+    private final Charset charset;
+
+    private Key(@Nonnull final File file, @Nonnull final Charset charset) {
+      this.file = file;
+      this.charset = charset;
+    }
+
+    @Override
+    public int hashCode() {
+      return this.file.hashCode();
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object that) {
+      if (this == that) {
+        return true;
+      }
+      if (that instanceof Key) {
+        final Key thatKey = (Key) that;
+        return this.file.equals(thatKey.file) && this.charset.equals(thatKey.charset);
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import com.igormaznitsa.meta.annotation.MayContainNull;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Table of variable values where every name is interned into a slot number of a symbol table, so that search of a
+ * value for already resolved slot is an array access. Names are used as they are and must be already normalized. The table can be compacted
+ * into an open-addressing structure which keeps only defined values, any change of a compacted table makes it ordinary one.
+ * Copying of a whole table into an empty one with the same symbol table by {@link #putAll(Map)} doesn't copy values but shares them until the first change of any of the tables
+ * (copy-on-write), so that a forked context doesn't pay for big variable tables which it only reads.
+ * The class is not thread safe.
+ *
+ * @param <V> type of values
+ * @see SymbolTable
+ * @since 7.0.1
+ */
+public final class VariableTable<V> extends AbstractMap<String, V> {
+
+  private static final Object[] EMPTY = new Object[0];
+
+  private final SymbolTable symbols;
+
+  private Object[] values = EMPTY;
+  private int size;
+
+  private int[] compactSlots;
+  private Object[] compactValues;
+
+  /**
+   * Flag shows that the values array can be shared with another table and must be copied before change.
+   */
+  private boolean shared;
+
+  /**
+   * Make a table with its own symbol table.
+   */
+  public VariableTable() {
+    this(new SymbolTable());
+  }
+
+  /**
+   * Make a table which uses a symbol table.
+   *
+   * @param symbols the symbol table interning names into slots, must not be null
+   */
+  public VariableTable(@Nonnull final SymbolTable symbols) {
+    this.symbols = assertNotNull("Symbol table must not be null", symbols);
+  }
+
+  /**
+   * Get symbol table used by the table to intern names into slots.
+   *
+   * @return the symbol table, must not be null
+   */
+  @Nonnull
+  public SymbolTable getSymbols() {
+    return this.symbols;
+  }
+
+  private static int hash(final int slot, final int mask) {
+    final int hash = slot * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  /**
+   * Get value for a slot.
+   *
+   * @param slot the slot number, negative number means unknown symbol
+   * @return the value or null if there is not any value for the slot
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public V get(final int slot) {
+    if (slot < 0) {
+      return null;
+    }
+    final int[] slots = this.compactSlots;
+    if (slots == null) {
+      final Object[] data = this.values;
+      return slot < data.length ? (V) data[slot] : null;
+    }
+    final int mask = slots.length - 1;
+    int index = hash(slot, mask);
+    while (true) {
+      final int found = slots[index];
+      if (found == slot) {
+        return (V) this.compactValues[index];
+      }
+      if (found < 0) {
+        return null;
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  /**
+   * Set value for a slot.
+   *
+   * @param slot  allocated slot number
+   * @param value the value, must not be null
+   * @return the previous value for the slot, can be null
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public V put(final int slot, @Nonnull final V value) {
+    assertNotNull("Value must not be null", value);
+    expand();
+    if (slot >= this.values.length) {
+      this.values = Arrays.copyOf(this.values, Math.max(slot + 1, Math.max(16, this.values.length * 2)));
+      this.shared = false;
+    } else {
+      unshare();
+    }
+    final V old = (V) this.values[slot];
+    this.values[slot] = value;
+    if (old == null) {
+      this.size++;
+    }
+    return old;
+  }
+
+  /**
+   * Remove value for a slot.
+   *
+   * @param slot the slot number, negative number means unknown symbol
+   * @return the removed value, can be null
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public V remove(final int slot) {
+    if (slot < 0 || get(slot) == null) {
+      return null;
+    }
+    expand();
+    unshare();
+    final V old = (V) this.values[slot];
+    this.values[slot] = null;
+    this.size--;
+    return old;
+  }
+
+  /**
+   * Pack defined values into open-addressing table, it decreases memory footprint of the table if it is not going to be changed.
+   */
+  public void compact() {
+    if (this.compactSlots != null) {
+      return;
+    }
+    int capacity = 4;
+    while (capacity < this.size * 2) {
+      capacity <<= 1;
+    }
+    final int mask = capacity - 1;
+    final int[] slots = new int[capacity];
+    final Object[] packed = new Object[capacity];
+    Arrays.fill(slots, -1);
+    for (int slot = 0; slot < this.values.length; slot++) {
+      final Object value = this.values[slot];
+      if (value != null) {
+        int index = hash(slot, mask);
+        while (slots[index] >= 0) {
+          index = (index + 1) & mask;
+        }
+        slots[index] = slot;
+        packed[index] = value;
+      }
+    }
+    this.compactSlots = slots;
+    this.compactValues = packed;
+    this.values = EMPTY;
+    this.shared = false;
+  }
+
+  /**
+   * Check that the table is compacted one.
+   *
+   * @return true if values are in open-addressing table, false otherwise
+   */
+  public boolean isCompact() {
+    return this.compactSlots != null;
+  }
+
+  private void expand() {
+    final int[] slots = this.compactSlots;
+    if (slots != null) {
+      int max = -1;
+      for (final int slot : slots) {
+        max = Math.max(max, slot);
+      }
+      final Object[] expanded = max < 0 ? EMPTY : new Object[max + 1];
+      for (int i = 0; i < slots.length; i++) {
+        if (slots[i] >= 0) {
+          expanded[slots[i]] = this.compactValues[i];
+        }
+      }
+      this.values = expanded;
+      this.compactSlots = null;
+      this.compactValues = null;
+      this.shared = false;
+    }
+  }
+
+  private void unshare() {
+    if (this.shared) {
+      this.values = this.values.clone();
+      this.shared = false;
+    }
+  }
+
+  /**
+   * Check that the table shares its values with another table and will copy them on the first change.
+   *
+   * @return true if values are shared, false otherwise
+   */
+  public boolean isShared() {
+    return this.shared;
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  @Nullable
+  public V get(@Nullable final Object key) {
+    return key instanceof String ? get(this.symbols.findSlot((String) key)) : null;
+  }
+
+  @Override
+  public boolean containsKey(@Nullable final Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  @Nullable
+  public V put(@Nonnull final String key, @Nonnull final V value) {
+    return put(this.symbols.slotFor(key), value);
+  }
+
+  @Override
+  @Nullable
+  public V remove(@Nullable final Object key) {
+    return key instanceof String ? remove(this.symbols.findSlot((String) key)) : null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void putAll(@Nonnull final Map<? extends String, ? extends V> map) {
+    if (map instanceof VariableTable && this.size == 0 && ((VariableTable<V>) map).symbols == this.symbols) {
+      // compacted arrays are never changed in place so that only the values array needs copy-on-write
+      final VariableTable<V> that = (VariableTable<V>) map;
+      this.values = that.values;
+      this.compactSlots = that.compactSlots;
+      this.compactValues = that.compactValues;
+      this.size = that.size;
+      this.shared = true;
+      that.shared = true;
+    } else {
+      super.putAll(map);
+    }
+  }
+
+  @Override
+  public void clear() {
+    this.values = EMPTY;
+    this.compactSlots = null;
+    this.compactValues = null;
+    this.size = 0;
+    this.shared = false;
+  }
+
+  @Override
+  @Nonnull
+  public Set<Entry<String, V>> entrySet() {
+    return new AbstractSet<Entry<String, V>>() {
+      @Override
+      @Nonnull
+      public Iterator<Entry<String, V>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return VariableTable.this.size;
+      }
+    };
+  }
+
+  private final class EntryIterator implements Iterator<Entry<String, V>> {
+
+    private final int[] slots;
+    @MayContainNull
+    private final Object[] snapshot;
+    private int index;
+    private int last = -1;
+
+    private EntryIterator() {
+      this.slots = new int[size];
+      this.snapshot = new Object[size];
+      int counter = 0;
+      if (compactSlots == null) {
+        for (int slot = 0; slot < values.length; slot++) {
+          if (values[slot] != null) {
+            this.slots[counter] = slot;
+            this.snapshot[counter++] = values[slot];
+          }
+        }
+      } else {
+        for (int i = 0; i < compactSlots.length; i++) {
+          if (compactSlots[i] >= 0) {
+            this.slots[counter] = compactSlots[i];
+            this.snapshot[counter++] = compactValues[i];
+          }
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return this.index < this.slots.length;
+    }
+
+    @Override
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public Entry<String, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      this.last = this.slots[this.index];
+      final V value = (V) this.snapshot[this.index++];
+      return new SimpleImmutableEntry<>(symbols.nameForSlot(this.last), value);
+    }
+
+    @Override
+    public void remove() {
+      if (this.last < 0) {
+        throw new IllegalStateException();
+      }
+      VariableTable.this.remove(this.last);
+      this.last = -1;
+    }
+  }
+}
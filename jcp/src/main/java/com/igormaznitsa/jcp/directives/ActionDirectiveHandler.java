@@ -21,20 +21,17 @@
 
 package com.igormaznitsa.jcp.directives;
 
-import com.igormaznitsa.jcp.context.PreprocessingState;
 import com.igormaznitsa.jcp.context.PreprocessorContext;
-import com.igormaznitsa.jcp.exceptions.FilePositionInfo;
 import com.igormaznitsa.jcp.expression.Expression;
 import com.igormaznitsa.jcp.expression.ExpressionItem;
+import com.igormaznitsa.jcp.expression.ExpressionLexer;
 import com.igormaznitsa.jcp.expression.ExpressionParser;
 import com.igormaznitsa.jcp.expression.ExpressionTree;
 import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.functions.EvalFileCache;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
-import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -69,22 +66,23 @@ public class ActionDirectiveHandler extends AbstractDirectiveHandler {
   @Nonnull
   public AfterDirectiveProcessingBehaviour execute(@Nonnull final String string, @Nonnull final PreprocessorContext context) {
     if (context.getPreprocessorExtension() != null) {
+      final EvalFileCache.Recorder recorder = context.getEvalFileRecorder();
+      if (recorder != null) {
+        // an action can have side effects, so that result of evaluated file can't be cached
+        recorder.markNotCacheable();
+      }
 
-      try {
-        final List<ExpressionTree> args = parseString(string, context);
+      final List<ExpressionTree> args = parseString(string, context);
 
-        final Value[] results = new Value[args.size()];
-        int index = 0;
-        for (final ExpressionTree expr : args) {
-          final Value val = Expression.evalTree(expr, context);
-          results[index++] = val;
-        }
+      final Value[] results = new Value[args.size()];
+      int index = 0;
+      for (final ExpressionTree expr : args) {
+        final Value val = Expression.evalTree(expr, context);
+        results[index++] = val;
+      }
 
-        if (!assertNotNull(context.getPreprocessorExtension()).processAction(context, results)) {
-          throw context.makeException("Extension can't process action ", null);
-        }
-      } catch (IOException ex) {
-        throw context.makeException("Unexpected string detected [" + string + ']', ex);
+      if (!assertNotNull(context.getPreprocessorExtension()).processAction(context, results)) {
+        throw context.makeException("Extension can't process action ", null);
       }
     }
     return AfterDirectiveProcessingBehaviour.PROCESSED;
@@ -92,22 +90,15 @@ public class ActionDirectiveHandler extends AbstractDirectiveHandler {
 
   @Nonnull
   @MustNotContainNull
-  private List<ExpressionTree> parseString(@Nonnull final String str, @Nonnull final PreprocessorContext context) throws IOException {
+  private List<ExpressionTree> parseString(@Nonnull final String str, @Nonnull final PreprocessorContext context) {
     final ExpressionParser parser = ExpressionParser.getInstance();
 
-    final PushbackReader reader = new PushbackReader(new StringReader(str));
+    final ExpressionLexer lexer = new ExpressionLexer(str);
     final List<ExpressionTree> result = new ArrayList<>();
 
-    final PreprocessingState state = context.getPreprocessingState();
-    final FilePositionInfo[] stack;
-    final String sources;
-    stack = state.makeIncludeStack();
-    sources = state.getLastReadString();
-
     while (!Thread.currentThread().isInterrupted()) {
-      final ExpressionTree tree;
-      tree = new ExpressionTree(stack, sources);
-      final ExpressionItem delimiter = parser.readExpression(reader, tree, context, false, true);
+      final ExpressionTree tree = new ExpressionTree();
+      final ExpressionItem delimiter = parser.readExpression(lexer, tree, context, false, true);
 
       if (delimiter != null && ExpressionParser.SpecialItem.COMMA != delimiter) {
         throw context.makeException("Wrong argument format detected", null);
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
+import com.igormaznitsa.jcp.expression.operators.AbstractOperator;
+import com.igormaznitsa.jcp.expression.operators.OperatorAND;
+import com.igormaznitsa.jcp.expression.operators.OperatorOR;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class describes an expression tree compiled into a chain of method handles which the JDK turns into generated classes.
+ * Operators are called through their implementations resolved for argument types observed during profiled evaluation and guarded by type checks,
+ * if a guard fails then the operation is processed in generic way and the compiled expression is marked as deoptimized one, such expression must be
+ * evaluated by the interpreter.
+ *
+ * @see EvaluationMode#TIERED
+ * @since 7.0.1
+ */
+public final class CompiledExpression {
+
+  /**
+   * Number of interpreted evaluations of a tree before its compilation, can be provided by system property 'jcp.expression.compile.threshold'.
+   */
+  public static final int COMPILE_THRESHOLD = Math.max(1, Integer.getInteger("jcp.expression.compile.threshold", 1000));
+
+  private static final AtomicLong COMPILED_COUNTER = new AtomicLong();
+  private static final AtomicLong DEOPTIMIZED_COUNTER = new AtomicLong();
+
+  private static final OperatorAND OPERATOR_AND = AbstractOperator.findForClass(OperatorAND.class);
+  private static final OperatorOR OPERATOR_OR = AbstractOperator.findForClass(OperatorOR.class);
+
+  private static final MethodHandle READ_VARIABLE;
+  private static final MethodHandle INVOKE_OPERATOR;
+  private static final MethodHandle INVOKE_FUNCTION;
+  private static final MethodHandle SLOW_OPERATOR;
+  private static final MethodHandle OPERATOR_ERROR;
+  private static final MethodHandle HAS_TYPE;
+  private static final MethodHandle HAS_TYPES;
+  private static final MethodHandle IS_BOOLEAN;
+
+  static {
+    final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    try {
+      READ_VARIABLE = lookup.findStatic(Expression.class, "readVariable", MethodType.methodType(Value.class, PreprocessorContext.class, Variable.class));
+      INVOKE_OPERATOR = lookup.findStatic(Expression.class, "invokeOperator", MethodType.methodType(Value.class, PreprocessorContext.class, AbstractOperator.class, Value.class, Value.class));
+      INVOKE_FUNCTION = lookup.findStatic(Expression.class, "invokeFunction", MethodType.methodType(Value.class, PreprocessorContext.class, AbstractFunction.class, Value[].class));
+      SLOW_OPERATOR = lookup.findVirtual(CompiledExpression.class, "slowOperator", MethodType.methodType(Value.class, AbstractOperator.class, PreprocessorContext.class, Value.class, Value.class));
+      OPERATOR_ERROR = lookup.findStatic(CompiledExpression.class, "operatorError", MethodType.methodType(Value.class, AbstractOperator.class, Throwable.class));
+      HAS_TYPE = lookup.findStatic(CompiledExpression.class, "hasType", MethodType.methodType(boolean.class, ValueType.class, Value.class));
+      HAS_TYPES = lookup.findStatic(CompiledExpression.class, "hasTypes", MethodType.methodType(boolean.class, ValueType.class, ValueType.class, Value.class, Value.class));
+      IS_BOOLEAN = lookup.findStatic(CompiledExpression.class, "isBoolean", MethodType.methodType(boolean.class, boolean.class, Value.class));
+    } catch (NoSuchMethodException | IllegalAccessException ex) {
+      throw new Error("Can't find method for expression compilation", ex);
+    }
+  }
+
+  private final AtomicBoolean valid = new AtomicBoolean(true);
+  private MethodHandle executor;
+
+  private CompiledExpression() {
+  }
+
+  /**
+   * Compile expression tree.
+   *
+   * @param tree    the tree to be compiled, must not be null
+   * @param profile argument types of operators observed during evaluation of the tree, must not be null
+   * @return compiled expression or null if the tree can't be compiled
+   * @see ExpressionTree#getProgram()
+   */
+  @Nullable
+  public static CompiledExpression compile(@Nonnull final ExpressionTree tree, @Nonnull final Map<ExpressionTreeElement, ValueType[]> profile) {
+    if (tree.getProgram() == null) {
+      // only well-formed immutable trees are compiled
+      return null;
+    }
+    final CompiledExpression result = new CompiledExpression();
+    final MethodHandle handle = result.makeHandle(tree.getRoot(), profile);
+    if (handle == null) {
+      return null;
+    }
+    result.executor = handle;
+    COMPILED_COUNTER.incrementAndGet();
+    return result;
+  }
+
+  /**
+   * Get number of compiled expressions.
+   *
+   * @return number of expressions compiled since start
+   */
+  public static long getCompiledCounter() {
+    return COMPILED_COUNTER.get();
+  }
+
+  /**
+   * Get number of deoptimized compiled expressions.
+   *
+   * @return number of compiled expressions which met unexpected argument types
+   */
+  public static long getDeoptimizedCounter() {
+    return DEOPTIMIZED_COUNTER.get();
+  }
+
+  private static boolean hasType(@Nonnull final ValueType type, @Nonnull final Value value) {
+    return value.getType() == type;
+  }
+
+  private static boolean hasTypes(@Nonnull final ValueType leftType, @Nonnull final ValueType rightType, @Nonnull final Value left, @Nonnull final Value right) {
+    return left.getType() == leftType && right.getType() == rightType;
+  }
+
+  private static boolean isBoolean(final boolean expected, @Nonnull final Value value) {
+    return value.getType() == ValueType.BOOLEAN && value.booleanValue() == expected;
+  }
+
+  @Nonnull
+  private static Value operatorError(@Nonnull final AbstractOperator operator, @Nonnull final Throwable error) {
+    if (error instanceof RuntimeException) {
+      throw (RuntimeException) error;
+    }
+    if (error instanceof Error) {
+      throw (Error) error;
+    }
+    throw new RuntimeException("Invocation exception during \'" + operator.getKeyword() + "\' processing", error);
+  }
+
+  /**
+   * Check that the compiled expression can be used.
+   *
+   * @return false if the expression has been deoptimized, true otherwise
+   */
+  public boolean isValid() {
+    return this.valid.get();
+  }
+
+  /**
+   * Execute the compiled expression.
+   *
+   * @param context a preprocessor context to be used for variables and function calls, must not be null
+   * @return the result value, must not be null
+   */
+  @Nonnull
+  public Value execute(@Nonnull final PreprocessorContext context) {
+    try {
+      return (Value) this.executor.invokeExact(context);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new RuntimeException("Unexpected error during compiled expression execution", ex);
+    }
+  }
+
+  @Nonnull
+  private Value slowOperator(@Nonnull final AbstractOperator operator, @Nonnull final PreprocessorContext context, @Nonnull final Value left, @Nullable final Value right) {
+    if (this.valid.compareAndSet(true, false)) {
+      DEOPTIMIZED_COUNTER.incrementAndGet();
+    }
+    return Expression.invokeOperator(context, operator, left, right);
+  }
+
+  @Nullable
+  private MethodHandle makeHandle(@Nonnull final ExpressionTreeElement element, @Nonnull final Map<ExpressionTreeElement, ValueType[]> profile) {
+    if (element.isEmptySlot()) {
+      return null;
+    }
+
+    final ExpressionItem item = element.getItem();
+    switch (item.getExpressionItemType()) {
+      case VALUE:
+        return MethodHandles.dropArguments(MethodHandles.constant(Value.class, item), 0, PreprocessorContext.class);
+      case VARIABLE:
+        return MethodHandles.insertArguments(READ_VARIABLE, 1, item);
+      case OPERATOR: {
+        final AbstractOperator operator = (AbstractOperator) item;
+        final MethodHandle[] arguments = makeArguments(element, operator.getArity(), profile);
+        if (arguments == null) {
+          return null;
+        }
+        final MethodHandle call = makeOperatorCall(operator, profile.get(element));
+        final boolean shortCircuit = (operator == OPERATOR_AND || operator == OPERATOR_OR) && Expression.isSkippableArgument(element.getChildForIndex(1));
+        return sequence(call, arguments, shortCircuit ? MethodHandles.insertArguments(IS_BOOLEAN, 0, operator == OPERATOR_OR) : null);
+      }
+      case FUNCTION: {
+        final AbstractFunction function = (AbstractFunction) item;
+        final MethodHandle[] arguments = makeArguments(element, function.getArity(), profile);
+        if (arguments == null) {
+          return null;
+        }
+        final MethodHandle call = MethodHandles.insertArguments(INVOKE_FUNCTION, 1, function).asCollector(Value[].class, arguments.length);
+        return sequence(call, arguments, null);
+      }
+      default:
+        return null;
+    }
+  }
+
+  @Nullable
+  @MustNotContainNull
+  private MethodHandle[] makeArguments(@Nonnull final ExpressionTreeElement element, final int arity, @Nonnull final Map<ExpressionTreeElement, ValueType[]> profile) {
+    final MethodHandle[] result = new MethodHandle[arity];
+    for (int i = 0; i < arity; i++) {
+      result[i] = makeHandle(element.getChildForIndex(i), profile);
+      if (result[i] == null) {
+        return null;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Make operator call with type (PreprocessorContext,Value...)Value.
+   *
+   * @param operator the operator, must not be null
+   * @param types    observed argument types, null if the operator was not evaluated
+   * @return method handle to call the operator
+   */
+  @Nonnull
+  private MethodHandle makeOperatorCall(@Nonnull final AbstractOperator operator, @Nullable @MustNotContainNull final ValueType[] types) {
+    final boolean unary = operator.getArity() == 1;
+
+    MethodHandle generic = MethodHandles.insertArguments(INVOKE_OPERATOR, 1, operator);
+    if (unary) {
+      generic = MethodHandles.insertArguments(generic, 2, (Object) null);
+    }
+
+    final MethodHandle direct = types == null ? null : unary ? operator.findExecutor(types[0]) : operator.findExecutor(types[0], types[1]);
+    if (direct == null) {
+      return generic;
+    }
+
+    final MethodHandle error = MethodHandles.dropArguments(MethodHandles.insertArguments(OPERATOR_ERROR, 0, operator), 1, direct.type().parameterList());
+    final MethodHandle fast = MethodHandles.dropArguments(MethodHandles.catchException(direct, Throwable.class, error), 0, PreprocessorContext.class);
+
+    MethodHandle slow = MethodHandles.insertArguments(SLOW_OPERATOR, 0, this, operator);
+    if (unary) {
+      slow = MethodHandles.insertArguments(slow, 2, (Object) null);
+    }
+
+    final MethodHandle test = unary
+        ? MethodHandles.insertArguments(HAS_TYPE, 0, types[0])
+        : MethodHandles.insertArguments(HAS_TYPES, 0, types[0], types[1]);
+
+    return MethodHandles.guardWithTest(MethodHandles.dropArguments(test, 0, PreprocessorContext.class), fast, slow);
+  }
+
+  /**
+   * Make method handle which calculates arguments strictly from left to right and then calls target.
+   *
+   * @param call         target with type (PreprocessorContext,Value...)Value, must not be null
+   * @param arguments    handles to calculate arguments, every one has type (PreprocessorContext)Value
+   * @param shortCircuit test for the first argument, if it returns true then the first argument is result and other arguments are not calculated,
+   *                     can be null
+   * @return method handle with type (PreprocessorContext)Value
+   */
+  @Nonnull
+  private static MethodHandle sequence(@Nonnull final MethodHandle call, @Nonnull @MustNotContainNull final MethodHandle[] arguments, @Nullable final MethodHandle shortCircuit) {
+    final int arity = arguments.length;
+
+    // calculated arguments are placed in reverse order before the context
+    final Class<?>[] types = new Class<?>[arity + 1];
+    Arrays.fill(types, Value.class);
+    types[arity] = PreprocessorContext.class;
+
+    final int[] reorder = new int[arity + 1];
+    reorder[0] = arity;
+    for (int i = 0; i < arity; i++) {
+      reorder[i + 1] = arity - 1 - i;
+    }
+
+    MethodHandle result = MethodHandles.permuteArguments(call, MethodType.methodType(Value.class, types), reorder);
+    for (int i = arity - 1; i >= 0; i--) {
+      if (i == 0 && shortCircuit != null) {
+        final MethodHandle first = MethodHandles.dropArguments(MethodHandles.identity(Value.class), 1, PreprocessorContext.class);
+        result = MethodHandles.guardWithTest(MethodHandles.dropArguments(shortCircuit, 1, PreprocessorContext.class), first, result);
+      }
+      final Class<?>[] calculated = Arrays.copyOf(types, i);
+      result = MethodHandles.foldArguments(result, MethodHandles.dropArguments(arguments[i], 0, calculated));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Locale;
+
+/**
+ * Allowed modes to evaluate expression trees.
+ *
+ * @since 7.0.1
+ */
+public enum EvaluationMode {
+  /**
+   * Recursive walk over expression tree elements.
+   */
+  TREE,
+  /**
+   * Cached parsed trees are compiled into flat postfix programs executed over operand stack.
+   *
+   * @see ExpressionProgram
+   */
+  PROGRAM,
+  /**
+   * Cached parsed trees are executed as programs and trees evaluated often are compiled into method handle chains guarded by observed
+   * argument types, if a guard fails then the tree is evaluated as program.
+   *
+   * @see CompiledExpression
+   */
+  TIERED;
+
+  /**
+   * Find mode for its name, case is ignored.
+   *
+   * @param name         name of the mode, can be null
+   * @param defaultValue value to be returned if there is no such mode, must not be null
+   * @return found mode or the default value
+   */
+  @Nonnull
+  public static EvaluationMode findForName(@Nullable final String name, @Nonnull final EvaluationMode defaultValue) {
+    if (name != null) {
+      final String normalized = name.trim().toUpperCase(Locale.ENGLISH);
+      for (final EvaluationMode mode : values()) {
+        if (mode.name().equals(normalized)) {
+          return mode;
+        }
+      }
+    }
+    return defaultValue;
+  }
+}
@@ -23,17 +23,23 @@ package com.igormaznitsa.jcp.expression;
 
 import com.igormaznitsa.jcp.context.PreprocessingState;
 import com.igormaznitsa.jcp.context.PreprocessorContext;
-import com.igormaznitsa.jcp.exceptions.FilePositionInfo;
 import com.igormaznitsa.jcp.exceptions.PreprocessorException;
 import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
+import com.igormaznitsa.jcp.expression.functions.EvalFileCache;
 import com.igormaznitsa.jcp.expression.functions.FunctionDefinedByUser;
+import com.igormaznitsa.jcp.expression.functions.FunctionResultCache;
 import com.igormaznitsa.jcp.expression.operators.AbstractOperator;
+import com.igormaznitsa.jcp.expression.operators.OperatorAND;
+import com.igormaznitsa.jcp.expression.operators.OperatorOR;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
 
@@ -44,15 +50,8 @@ import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
  */
 public class Expression {
 
-  /**
-   * Pre-created array for speed up operations
-   */
-  private static final Class<?>[] OPERATOR_SIGNATURE_1 = new Class<?>[] {Value.class};
-
-  /**
-   * Pre-created array for speed up operations
-   */
-  private static final Class<?>[] OPERATOR_SIGNATURE_2 = new Class<?>[] {Value.class, Value.class};
+  private static final OperatorAND OPERATOR_AND = AbstractOperator.findForClass(OperatorAND.class);
+  private static final OperatorOR OPERATOR_OR = AbstractOperator.findForClass(OperatorOR.class);
 
   /**
    * The variable contains the preprocessor context for the expression, it can be null
@@ -64,12 +63,18 @@ public class Expression {
    */
   private final ExpressionTree expressionTree;
 
-  private Expression(@Nonnull final PreprocessorContext context, @Nonnull final ExpressionTree tree) {
+  /**
+   * Argument types of evaluated operators, it is null if profiling is not needed
+   */
+  private final Map<ExpressionTreeElement, ValueType[]> profile;
+
+  private Expression(@Nonnull final PreprocessorContext context, @Nonnull final ExpressionTree tree, @Nullable final Map<ExpressionTreeElement, ValueType[]> profile) {
     if (tree == null) {
       throw context.makeException("[Expression]The expression tree is null", null);
     }
     this.context = context;
     this.expressionTree = tree;
+    this.profile = profile;
   }
 
   /**
@@ -82,13 +87,33 @@ public class Expression {
   @Nonnull
   public static Value evalExpression(@Nonnull final String expression, @Nonnull final PreprocessorContext context) {
     try {
-      final ExpressionTree tree = ExpressionParser.getInstance().parse(expression, context);
+      final ExpressionTree tree = ExpressionParser.getInstance().parseOptimized(expression, context);
       return evalTree(tree, context);
     } catch (IOException unexpected) {
       throw context.makeException("[Expression]Wrong expression format detected [" + expression + ']', unexpected);
     }
   }
 
+  /**
+   * Evaluate expression placed in a part of a char sequence, the part is not copied if its parsed tree is cached.
+   *
+   * @param text    the text contains the expression, must not be null
+   * @param start   start index of the expression in the text, inclusive
+   * @param end     end index of the expression in the text, exclusive
+   * @param context a preprocessor context to be used for expression operations
+   * @return the result as a Value object, it can't be null
+   * @since 7.0.1
+   */
+  @Nonnull
+  public static Value evalExpression(@Nonnull final CharSequence text, final int start, final int end, @Nonnull final PreprocessorContext context) {
+    try {
+      final ExpressionTree tree = ExpressionParser.getInstance().parseOptimized(text, start, end, context);
+      return evalTree(tree, context);
+    } catch (IOException unexpected) {
+      throw context.makeException("[Expression]Wrong expression format detected [" + text.subSequence(start, end) + ']', unexpected);
+    }
+  }
+
   /**
    * Evaluate an expression tree
    *
@@ -98,7 +123,43 @@ public class Expression {
    */
   @Nonnull
   public static Value evalTree(@Nonnull final ExpressionTree tree, @Nonnull final PreprocessorContext context) {
-    final Expression exp = new Expression(context, tree);
+    switch (context.getEvaluationMode()) {
+      case PROGRAM: {
+        final ExpressionProgram program = tree.getProgram();
+        if (program != null) {
+          return program.execute(context);
+        }
+      }
+      break;
+      case TIERED: {
+        final ExpressionProgram program = tree.getProgram();
+        if (program != null) {
+          final CompiledExpression compiled = tree.getCompiledExpression();
+          if (compiled != null) {
+            if (compiled.isValid()) {
+              return compiled.execute(context);
+            }
+          } else if (tree.isCompilable() && tree.incrementEvaluationCounter() == CompiledExpression.COMPILE_THRESHOLD) {
+            final Map<ExpressionTreeElement, ValueType[]> profile = new IdentityHashMap<>();
+            final Value result = new Expression(context, tree, profile).eval(context.getPreprocessingState());
+            CompiledExpression compiledTree = null;
+            try {
+              compiledTree = CompiledExpression.compile(tree, profile);
+            } finally {
+              if (compiledTree == null) {
+                tree.markNotCompilable();
+              } else {
+                tree.setCompiledExpression(compiledTree);
+              }
+            }
+            return result;
+          }
+          return program.execute(context);
+        }
+      }
+      break;
+    }
+    final Expression exp = new Expression(context, tree, null);
     return exp.eval(context.getPreprocessingState());
   }
 
@@ -108,20 +169,6 @@ public class Expression {
 
     final int arity = function.getArity();
     final Value[] arguments = new Value[arity];
-    final Class<?>[] methodArguments = new Class<?>[arity + 1];
-    methodArguments[0] = PreprocessorContext.class;
-
-    final FilePositionInfo[] stack;
-    final String sources;
-
-    stack = state.makeIncludeStack();
-    sources = state.getLastReadString();
-
-    final StringBuilder signature = new StringBuilder(AbstractFunction.EXECUTION_PREFIX);
-
-    for (int i = 1; i <= arity; i++) {
-      methodArguments[i] = Value.class;
-    }
 
     for (int i = 0; i < arity; i++) {
       final ExpressionTreeElement item = calculateTreeElement(functionElement.getChildForIndex(i), state);
@@ -135,67 +182,90 @@ public class Expression {
       }
     }
 
-    final ValueType[][] allowedSignatures = function.getAllowedArgumentTypes();
-    ValueType[] allowed = null;
-    for (final ValueType[] current : allowedSignatures) {
-      boolean allCompatible = true;
+    return new ExpressionTreeElement(invokeFunction(this.context, function, arguments));
+  }
 
-      int thatIndex = 0;
-      for (final ValueType type : current) {
-        if (!type.isCompatible(arguments[thatIndex].getType())) {
-          allCompatible = false;
-          break;
-        }
-        thatIndex++;
-      }
+  /**
+   * Call a function for calculated argument values.
+   *
+   * @param context   the preprocessor context, must not be null
+   * @param function  the function to be called, must not be null
+   * @param arguments argument values, must not be null
+   * @return the function result, must not be null
+   */
+  @Nonnull
+  static Value invokeFunction(@Nonnull final PreprocessorContext context, @Nonnull final AbstractFunction function, @Nonnull @MustNotContainNull final Value[] arguments) {
+    final MethodHandle executor = function.findExecutor(arguments);
 
-      if (allCompatible) {
-        allowed = current;
-        for (final ValueType type : allowed) {
-          signature.append(type.getSignature());
-        }
-        break;
+    if (executor == null) {
+      final ValueType[] allowed = function.findAllowedSignature(arguments);
+      if (allowed == null) {
+        throw context.makeException("[Expression]Unsupported argument detected for \'" + function.getName() + '\'', null);
       }
+      throw context.makeException("[Expression]Can't find a function method to process data [" + makeSignature(allowed) + ']', null);
     }
 
-    if (allowed == null) {
-      throw this.context.makeException("[Expression]Unsupported argument detected for \'" + function.getName() + '\'', null);
+    final EvalFileCache.Recorder recorder = context.getEvalFileRecorder();
+    if (recorder != null) {
+      recorder.onFunctionCall(context, function, arguments);
     }
 
     if (function instanceof FunctionDefinedByUser) {
-      final FunctionDefinedByUser userFunction = (FunctionDefinedByUser) function;
       try {
-        return new ExpressionTreeElement(userFunction.execute(context, arguments), stack, sources);
-      } catch (Exception unexpected) {
-        throw this.context.makeException("[Expression]Unexpected exception during a user function processing", unexpected);
+        return (Value) executor.invokeExact(context, arguments);
+      } catch (Throwable unexpected) {
+        throw context.makeException("[Expression]Unexpected exception during a user function processing", unexpected);
       }
     } else {
-      try {
-        final Method method = function.getClass().getMethod(signature.toString(), methodArguments);
-
-        final Object[] callArgs = new Object[arity + 1];
-        callArgs[0] = context;
-        System.arraycopy(arguments, 0, callArgs, 1, arity);
+      final FunctionResultCache resultCache = context.getFunctionResultCache();
+      final FunctionResultCache.Key memoKey = resultCache == null ? null : resultCache.makeKey(context, function, arguments);
+      if (memoKey != null) {
+        final Value cached = resultCache.get(memoKey);
+        if (cached != null) {
+          return cached;
+        }
+      }
 
-        final Value result = (Value) method.invoke(function, callArgs);
+      try {
+        final Value result = (Value) executor.invokeExact(context, arguments);
 
         if (!result.getType().isCompatible(function.getResultType())) {
-          throw this.context.makeException("[Expression]Unsupported function result detected [" + result.getType().getSignature() + ']', null);
+          throw context.makeException("[Expression]Unsupported function result detected [" + result.getType().getSignature() + ']', null);
         }
 
-        return new ExpressionTreeElement(result, stack, sources);
-      } catch (NoSuchMethodException unexpected) {
-        throw this.context.makeException("[Expression]Can't find a function method to process data [" + signature.toString() + ']', unexpected);
-      } catch (Exception unexpected) {
-        final Throwable cause = unexpected.getCause();
-        if (cause instanceof PreprocessorException) {
-          throw (PreprocessorException) cause;
+        if (memoKey != null) {
+          resultCache.put(memoKey, result);
         }
-        throw this.context.makeException("[Expression]Can't execute a function method to process data [" + function.getClass().getName() + '.' + signature.toString() + ']', unexpected);
+
+        return result;
+      } catch (PreprocessorException ex) {
+        throw ex;
+      } catch (Throwable unexpected) {
+        throw context.makeException("[Expression]Can't execute a function method to process data [" + function.getClass().getName() + '.' + makeSignature(assertNotNull(function.findAllowedSignature(arguments))) + ']', unexpected);
       }
     }
   }
 
+  @Nonnull
+  private static String makeSignature(@Nonnull @MustNotContainNull final ValueType[] types) {
+    final StringBuilder signature = new StringBuilder(AbstractFunction.EXECUTION_PREFIX);
+    for (final ValueType type : types) {
+      signature.append(type.getSignature());
+    }
+    return signature.toString();
+  }
+
+  /**
+   * Check that the right argument of a logical operation can be skipped by short-circuit evaluation. Missing argument and non-boolean
+   * constant make wrong operation so that they must not be skipped to report the error.
+   *
+   * @param element the right argument element, must not be null
+   * @return true if the argument can be skipped, false otherwise
+   */
+  static boolean isSkippableArgument(@Nonnull final ExpressionTreeElement element) {
+    return !element.isEmptySlot() && !(element.getItem() instanceof Value && ((Value) element.getItem()).getType() != ValueType.BOOLEAN);
+  }
+
   @Nonnull
   private ExpressionTreeElement evalOperator(@Nonnull final ExpressionTreeElement operatorElement, @Nonnull final PreprocessingState state) {
     final AbstractOperator operator = (AbstractOperator) operatorElement.getItem();
@@ -203,17 +273,6 @@ public class Expression {
     final int arity = operator.getArity();
 
     final Value[] arguments = new Value[arity];
-    final Class<?>[] methodArguments = arity == 1 ? OPERATOR_SIGNATURE_1 : OPERATOR_SIGNATURE_2;
-
-    final StringBuilder signatureNormal = new StringBuilder(AbstractOperator.EXECUTION_PREFIX);
-    final StringBuilder signatureAnyLeft = new StringBuilder(AbstractOperator.EXECUTION_PREFIX);
-    final StringBuilder signatureAnyRight = new StringBuilder(AbstractOperator.EXECUTION_PREFIX);
-
-    final FilePositionInfo[] stack;
-    final String sources;
-
-    stack = state.makeIncludeStack();
-    sources = state.getLastReadString();
 
     for (int i = 0; i < arity; i++) {
       final ExpressionTreeElement arg = operatorElement.getChildForIndex(i);
@@ -230,76 +289,74 @@ public class Expression {
       } else {
         throw this.context.makeException("[Expression]Non-value detected for the \'" + operator.getKeyword() + "\' operator", null);
       }
-    }
 
-    int argIndex = 0;
-    for (final Value value : arguments) {
-      final String typeSignature = value.getType().getSignature();
-      signatureNormal.append(typeSignature);
-      if (argIndex == 0) {
-        signatureAnyLeft.append(ValueType.ANY.getSignature());
-      } else {
-        signatureAnyLeft.append(typeSignature);
+      if (i == 0 && arity == 2 && arguments[0].getType() == ValueType.BOOLEAN && isSkippableArgument(operatorElement.getChildForIndex(1))) {
+        // short-circuit evaluation, the right argument is not calculated if the result is defined by the left one
+        final boolean left = arguments[0].booleanValue();
+        if ((operator == OPERATOR_AND && !left) || (operator == OPERATOR_OR && left)) {
+          return currentElement;
+        }
       }
+    }
 
-      if (argIndex == 1) {
-        signatureAnyRight.append(ValueType.ANY.getSignature());
-      } else {
-        signatureAnyRight.append(typeSignature);
-      }
-      argIndex++;
+    if (this.profile != null) {
+      this.profile.put(operatorElement, arity == 1 ? new ValueType[] {arguments[0].getType()} : new ValueType[] {arguments[0].getType(), arguments[1].getType()});
     }
 
-    Method executeMethod = null;
+    return new ExpressionTreeElement(invokeOperator(this.context, operator, arguments[0], arity == 1 ? null : arguments[1]));
+  }
 
-    try {
-      executeMethod = operator.getClass().getMethod(signatureNormal.toString(), methodArguments);
-    } catch (NoSuchMethodException ex) {
-      try {
-        executeMethod = operator.getClass().getMethod(signatureAnyLeft.toString(), methodArguments);
-      } catch (NoSuchMethodException ex2) {
-        try {
-          executeMethod = operator.getClass().getMethod(signatureAnyRight.toString(), methodArguments);
-        } catch (NoSuchMethodException ex3) {
-        }
-      }
-    }
+  /**
+   * Call an operator for calculated argument values.
+   *
+   * @param context  the preprocessor context, must not be null
+   * @param operator the operator to be called, must not be null
+   * @param left     the first argument, must not be null
+   * @param right    the second argument, must be null for unary operator
+   * @return the operator result, must not be null
+   */
+  @Nonnull
+  static Value invokeOperator(@Nonnull final PreprocessorContext context, @Nonnull final AbstractOperator operator, @Nonnull final Value left, @Nullable final Value right) {
+    final MethodHandle executor = right == null ? operator.findExecutor(left.getType()) : operator.findExecutor(left.getType(), right.getType());
 
-    if (executeMethod == null) {
-      throw this.context.makeException("[Expression]Unsupported arguments detected for operator \'" + operator.getKeyword() + "\' " + Arrays.toString(arguments), null);
+    if (executor == null) {
+      throw context.makeException("[Expression]Unsupported arguments detected for operator \'" + operator.getKeyword() + "\' " + (right == null ? Arrays.toString(new Value[] {left}) : Arrays.toString(new Value[] {left, right})), null);
     }
 
     try {
-      return new ExpressionTreeElement((Value) executeMethod.invoke(operator, (Object[]) arguments), stack, sources);
-    } catch (ArithmeticException arithEx) {
-      throw arithEx;
-    } catch (InvocationTargetException ex) {
-      final Throwable thr = ex.getTargetException();
-      if (thr instanceof ArithmeticException) {
-        throw (ArithmeticException) thr;
-      }
+      return right == null ? (Value) executor.invokeExact(left) : (Value) executor.invokeExact(left, right);
+    } catch (RuntimeException | Error ex) {
+      throw ex;
+    } catch (Throwable thr) {
       throw new RuntimeException("Invocation exception during \'" + operator.getKeyword() + "\' processing", thr);
-    } catch (Exception unexpected) {
-      throw this.context.makeException("[Exception]Exception during \'" + operator.getKeyword() + "\' processing", unexpected);
     }
   }
 
+  /**
+   * Read value of a variable.
+   *
+   * @param context  the preprocessor context, must not be null
+   * @param variable the variable, must not be null
+   * @return the variable value, must not be null
+   */
+  @Nonnull
+  static Value readVariable(@Nonnull final PreprocessorContext context, @Nonnull final Variable variable) {
+    assertNotNull("[Expression]Variable can't be used without context [" + variable.toString() + ']', context);
+
+    final Value value = context.findVariable(variable, false);
+    if (value == null) {
+      throw new RuntimeException("Unknown variable [" + variable.getName() + ']');
+    }
+    return value;
+  }
+
   @Nonnull
   private ExpressionTreeElement calculateTreeElement(@Nonnull final ExpressionTreeElement element, @Nonnull final PreprocessingState state) {
     ExpressionTreeElement treeElement = element;
 
     switch (element.getItem().getExpressionItemType()) {
       case VARIABLE: {
-        assertNotNull("[Expression]Variable can't be used without context [" + element.getItem().toString() + ']', context);
-
-        final Variable var = (Variable) element.getItem();
-        final String name = var.getName();
-        final Value value = context.findVariableForName(name, false);
-        if (value == null) {
-          throw new RuntimeException("Unknown variable [" + name + ']');
-        } else {
-          treeElement = new ExpressionTreeElement(value, state.makeIncludeStack(), state.getLastReadString());
-        }
+        treeElement = new ExpressionTreeElement(readVariable(this.context, (Variable) element.getItem()));
       }
       break;
       case OPERATOR: {
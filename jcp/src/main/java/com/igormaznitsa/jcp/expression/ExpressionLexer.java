@@ -0,0 +1,449 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
+import com.igormaznitsa.jcp.expression.functions.FunctionDefinedByUser;
+import com.igormaznitsa.jcp.expression.operators.AbstractOperator;
+import com.igormaznitsa.jcp.extension.PreprocessorExtension;
+import com.igormaznitsa.jcp.utils.PreprocessorUtils;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Lexer of expressions, it works directly over a char sequence with index cursor. Tokens are recognized with table of char classes,
+ * operators are recognized by table of their keywords and short numbers are calculated without intermediate strings.
+ *
+ * @see ExpressionParser#readExpression(ExpressionLexer, ExpressionTree, PreprocessorContext, boolean, boolean)
+ * @since 7.0.1
+ */
+public final class ExpressionLexer {
+
+  private static final byte CLASS_WHITESPACE = 1;
+  private static final byte CLASS_DIGIT = 2;
+  private static final byte CLASS_NAME_START = 4;
+  private static final byte CLASS_OPERATOR = 8;
+  private static final byte CLASS_DELIMITER = 16;
+  private static final byte CLASS_HEX_DIGIT = 32;
+
+  private static final byte[] CHAR_CLASSES = new byte[128];
+
+  /**
+   * Operators grouped by the first keyword char, longer keywords are placed first.
+   */
+  private static final AbstractOperator[][] OPERATORS_BY_FIRST_CHAR = new AbstractOperator[128][];
+
+  private static final int MAX_DECIMAL_DIGITS = 18;
+  private static final int MAX_HEX_DIGITS = 15;
+
+  static {
+    for (char c = 0; c < CHAR_CLASSES.length; c++) {
+      int flags = 0;
+      if (Character.isWhitespace(c)) {
+        flags |= CLASS_WHITESPACE;
+      }
+      if (c >= '0' && c <= '9') {
+        flags |= CLASS_DIGIT | CLASS_HEX_DIGIT;
+      }
+      if ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) {
+        flags |= CLASS_HEX_DIGIT;
+      }
+      if (Character.isLetter(c) || c == '$' || c == '_') {
+        flags |= CLASS_NAME_START;
+      }
+      if ("-+%*/&|!^=<>".indexOf(c) >= 0) {
+        flags |= CLASS_OPERATOR;
+      }
+      if (",()".indexOf(c) >= 0) {
+        flags |= CLASS_DELIMITER;
+      }
+      CHAR_CLASSES[c] = (byte) flags;
+    }
+
+    final List<AbstractOperator> operators = new ArrayList<>(Arrays.asList(AbstractOperator.getAllOperators()));
+    operators.sort((a, b) -> Integer.compare(b.getKeyword().length(), a.getKeyword().length()));
+    for (final AbstractOperator operator : operators) {
+      final char first = operator.getKeyword().charAt(0);
+      final AbstractOperator[] found = OPERATORS_BY_FIRST_CHAR[first];
+      if (found == null) {
+        OPERATORS_BY_FIRST_CHAR[first] = new AbstractOperator[] {operator};
+      } else {
+        final AbstractOperator[] extended = Arrays.copyOf(found, found.length + 1);
+        extended[found.length] = operator;
+        OPERATORS_BY_FIRST_CHAR[first] = extended;
+      }
+    }
+  }
+
+  private final CharSequence text;
+  private final int end;
+  private int position;
+
+  /**
+   * Make lexer for whole char sequence.
+   *
+   * @param text the text to be tokenized, must not be null
+   */
+  public ExpressionLexer(@Nonnull final CharSequence text) {
+    this.text = assertNotNull("Text is null", text);
+    this.end = text.length();
+  }
+
+  private static boolean hasClass(final char chr, final byte charClass) {
+    return chr < 128 && (CHAR_CLASSES[chr] & charClass) != 0;
+  }
+
+  private static boolean isWhitespace(final char chr) {
+    return chr < 128 ? (CHAR_CLASSES[chr] & CLASS_WHITESPACE) != 0 : Character.isWhitespace(chr);
+  }
+
+  private static boolean isDigit(final char chr) {
+    return chr < 128 ? (CHAR_CLASSES[chr] & CLASS_DIGIT) != 0 : Character.isDigit(chr);
+  }
+
+  private static boolean isNameStart(final char chr) {
+    return chr < 128 ? (CHAR_CLASSES[chr] & CLASS_NAME_START) != 0 : Character.isLetter(chr);
+  }
+
+  private static boolean isHexDigit(final char chr) {
+    return chr < 128 ? (CHAR_CLASSES[chr] & CLASS_HEX_DIGIT) != 0 : Character.isDigit(chr);
+  }
+
+  private static int hex2int(@Nonnull final PreprocessorContext context, final char chr) {
+    final int result;
+    if (Character.isDigit(chr)) {
+      result = chr - '0';
+    } else {
+      result = 10 + (chr - Character.toLowerCase(chr) - 'a');
+      if (result < 10 || result > 15) {
+        throw context.makeException("Unexpected hex digit detected: " + chr, null);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get current position of the cursor.
+   *
+   * @return index of the next char to be read
+   */
+  int getPosition() {
+    return this.position;
+  }
+
+  /**
+   * Read the next item.
+   *
+   * @param context a preprocessor context, must not be null
+   * @return a read expression item, it can be null if the end is reached
+   */
+  @Nullable
+  ExpressionItem nextItem(@Nonnull final PreprocessorContext context) {
+    final CharSequence chars = this.text;
+
+    int pos = this.position;
+    while (pos < this.end && isWhitespace(chars.charAt(pos))) {
+      pos++;
+    }
+    if (pos >= this.end) {
+      this.position = pos;
+      return null;
+    }
+
+    final int start = pos;
+    final char chr = chars.charAt(pos++);
+    final ExpressionItem result;
+
+    if (chr == ',') {
+      result = ExpressionParser.SpecialItem.COMMA;
+    } else if (chr == '(') {
+      result = ExpressionParser.SpecialItem.BRACKET_OPENING;
+    } else if (chr == ')') {
+      result = ExpressionParser.SpecialItem.BRACKET_CLOSING;
+    } else if (isDigit(chr)) {
+      if (chr == '0' && pos < this.end) {
+        final char next = chars.charAt(pos);
+        if (next == 'x' || next == 'X') {
+          pos = skipHexDigits(chars, pos + 1);
+          this.position = pos;
+          return readHex(chars, start, pos);
+        } else if (next == '.') {
+          pos = skipDigits(chars, pos + 1);
+          this.position = pos;
+          return readFloat(chars, start, pos);
+        } else if (isDigit(next)) {
+          // the first digit after leading zero is not a part of the number
+          final int digitsStart = pos + 1;
+          pos = skipDigits(chars, digitsStart);
+          if (pos < this.end && chars.charAt(pos) == '.') {
+            pos = skipDigits(chars, pos + 1);
+            this.position = pos;
+            return Value.valueOf(Float.parseFloat("0" + chars.subSequence(digitsStart, pos)));
+          }
+          final String digits = "0" + chars.subSequence(digitsStart, pos);
+          this.position = pos;
+          return readDecimal(digits, 0, digits.length());
+        }
+      }
+      pos = skipDigits(chars, pos);
+      if (pos < this.end && chars.charAt(pos) == '.') {
+        pos = skipDigits(chars, pos + 1);
+        this.position = pos;
+        return readFloat(chars, start, pos);
+      }
+      this.position = pos;
+      return readDecimal(chars, start, pos);
+    } else if (chr == '.') {
+      pos = skipDigits(chars, pos);
+      this.position = pos;
+      return readFloat(chars, start, pos);
+    } else if (isNameStart(chr)) {
+      while (pos < this.end) {
+        final char c = chars.charAt(pos);
+        if (isWhitespace(c) || hasClass(c, (byte) (CLASS_OPERATOR | CLASS_DELIMITER))) {
+          break;
+        }
+        pos++;
+      }
+      this.position = pos;
+      return makeNamedItem(chars.subSequence(start, pos).toString().toLowerCase(), context);
+    } else if (chr == '\"') {
+      this.position = pos;
+      return readString(context);
+    } else if (hasClass(chr, CLASS_OPERATOR)) {
+      while (pos < this.end && hasClass(chars.charAt(pos), CLASS_OPERATOR)) {
+        pos++;
+      }
+      this.position = pos;
+      return findOperator(chars, start, pos, context);
+    } else {
+      throw context.makeException("Unsupported token character detected \'" + chr + '\'', null);
+    }
+
+    this.position = pos;
+    return result;
+  }
+
+  private int skipDigits(@Nonnull final CharSequence chars, final int from) {
+    int pos = from;
+    while (pos < this.end && isDigit(chars.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  private int skipHexDigits(@Nonnull final CharSequence chars, final int from) {
+    int pos = from;
+    while (pos < this.end && isHexDigit(chars.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  @Nonnull
+  private static Value readDecimal(@Nonnull final CharSequence chars, final int from, final int to) {
+    if (to - from <= MAX_DECIMAL_DIGITS) {
+      long result = 0L;
+      for (int i = from; i < to; i++) {
+        final char c = chars.charAt(i);
+        if (c > '9') {
+          return Value.valueOf(Long.parseLong(chars.subSequence(from, to).toString()));
+        }
+        result = result * 10L + (c - '0');
+      }
+      return Value.valueOf(result);
+    }
+    return Value.valueOf(Long.parseLong(chars.subSequence(from, to).toString()));
+  }
+
+  @Nonnull
+  private static Value readHex(@Nonnull final CharSequence chars, final int from, final int to) {
+    final int digitsStart = from + 2;
+    if (chars.charAt(from + 1) == 'x' && to > digitsStart && to - digitsStart <= MAX_HEX_DIGITS) {
+      long result = 0L;
+      for (int i = digitsStart; i < to; i++) {
+        final char c = chars.charAt(i);
+        if (c >= 128) {
+          return Value.valueOf(Long.parseLong(chars.subSequence(digitsStart, to).toString(), 16));
+        }
+        result = (result << 4) | Character.digit(c, 16);
+      }
+      return Value.valueOf(result);
+    }
+    final String str = PreprocessorUtils.extractTail("0x", chars.subSequence(from, to).toString());
+    return Value.valueOf(Long.parseLong(str, 16));
+  }
+
+  @Nonnull
+  private static Value readFloat(@Nonnull final CharSequence chars, final int from, final int to) {
+    return Value.valueOf(Float.parseFloat(chars.subSequence(from, to).toString()));
+  }
+
+  @Nonnull
+  private static AbstractOperator findOperator(@Nonnull final CharSequence chars, final int from, final int to, @Nonnull final PreprocessorContext context) {
+    final AbstractOperator[] candidates = OPERATORS_BY_FIRST_CHAR[chars.charAt(from)];
+    if (candidates != null) {
+      final int length = to - from;
+      for (final AbstractOperator operator : candidates) {
+        final String keyword = operator.getKeyword();
+        if (keyword.length() <= length && regionMatches(chars, from, keyword)) {
+          // the longest matched operator must take the whole operator char run
+          if (keyword.length() == length) {
+            return operator;
+          }
+          break;
+        }
+      }
+    }
+    throw context.makeException("Unknown operator detected \'" + chars.subSequence(from, to) + '\'', null);
+  }
+
+  private static boolean regionMatches(@Nonnull final CharSequence chars, final int from, @Nonnull final String keyword) {
+    for (int i = 0; i < keyword.length(); i++) {
+      if (chars.charAt(from + i) != keyword.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nonnull
+  private Value readString(@Nonnull final PreprocessorContext context) {
+    final CharSequence chars = this.text;
+    int pos = this.position;
+
+    // fast path for strings without escaped chars
+    final int start = pos;
+    while (pos < this.end) {
+      final char c = chars.charAt(pos);
+      if (c == '\"') {
+        this.position = pos + 1;
+        return Value.valueOf(chars.subSequence(start, pos).toString());
+      }
+      if (c == '\\') {
+        break;
+      }
+      pos++;
+    }
+
+    final StringBuilder builder = new StringBuilder(pos - start + 16);
+    builder.append(chars, start, pos);
+
+    while (pos < this.end) {
+      final char c = chars.charAt(pos++);
+      if (c == '\"') {
+        this.position = pos;
+        return Value.valueOf(builder.toString());
+      } else if (c == '\\') {
+        if (pos >= this.end) {
+          throw new Error("Unsupported final parser state detected [SPECIAL_CHAR]");
+        }
+        final char special = chars.charAt(pos++);
+        switch (special) {
+          case 'n':
+            builder.append('\n');
+            break;
+          case 't':
+            builder.append('\t');
+            break;
+          case 'b':
+            builder.append('\b');
+            break;
+          case 'f':
+            builder.append('\f');
+            break;
+          case 'r':
+            builder.append('\r');
+            break;
+          case '\\':
+            builder.append('\\');
+            break;
+          case '\"':
+            builder.append('\"');
+            break;
+          case '\'':
+            builder.append('\'');
+            break;
+          case 'u': {
+            char unicodeChar = 0;
+            for (int i = 0; i < 4; i++) {
+              if (pos >= this.end) {
+                throw new Error("Unsupported final parser state detected [UNICODE_DIGIT" + i + ']');
+              }
+              unicodeChar = (char) (unicodeChar | (hex2int(context, chars.charAt(pos++)) << (12 - i * 4)));
+            }
+            builder.append(unicodeChar);
+          }
+          break;
+          default: {
+            throw context.makeException("Unsupported special char detected \'\\" + special + '\'', null);
+          }
+        }
+      } else {
+        builder.append(c);
+      }
+    }
+
+    // non-closed string at the end of the text
+    this.position = pos;
+    return Value.valueOf(builder.toString());
+  }
+
+  @Nonnull
+  private static ExpressionItem makeNamedItem(@Nonnull final String str, @Nonnull final PreprocessorContext context) {
+    final ExpressionItem result;
+    if (str.charAt(0) == '$') {
+      assertNotNull("There is not a preprocessor context to define a user function [" + str + ']', context);
+
+      final PreprocessorExtension extension = context.getPreprocessorExtension();
+      if (extension == null) {
+        throw context.makeException("There is not any defined preprocessor extension to get data about user functions [" + str + ']', null);
+      }
+
+      final String userFunctionName = PreprocessorUtils.extractTail("$", str);
+
+      // user defined
+      result = new FunctionDefinedByUser(userFunctionName, extension.getUserFunctionArity(userFunctionName), context);
+    } else if ("true".equals(str)) {
+      result = Value.BOOLEAN_TRUE;
+    } else if ("false".equals(str)) {
+      result = Value.BOOLEAN_FALSE;
+    } else {
+      final AbstractFunction function = AbstractFunction.findForName(str);
+      if (function == null) {
+        result = new Variable(str);
+      } else {
+        result = function;
+      }
+    }
+    return result;
+  }
+}
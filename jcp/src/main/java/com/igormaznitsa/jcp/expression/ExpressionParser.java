@@ -24,21 +24,16 @@ package com.igormaznitsa.jcp.expression;
 import com.igormaznitsa.jcp.context.PreprocessingState;
 import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.exceptions.FilePositionInfo;
+import com.igormaznitsa.jcp.exceptions.PreprocessorException;
 import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
 import com.igormaznitsa.jcp.expression.functions.FunctionDefinedByUser;
-import com.igormaznitsa.jcp.expression.operators.AbstractOperator;
-import com.igormaznitsa.jcp.extension.PreprocessorExtension;
-import com.igormaznitsa.jcp.utils.PreprocessorUtils;
-import com.igormaznitsa.meta.annotation.MustNotContainNull;
+import com.igormaznitsa.jcp.utils.LruCache;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 
 import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
 
@@ -54,48 +49,65 @@ public final class ExpressionParser {
    */
   private static final ExpressionParser INSTANCE = new ExpressionParser();
 
+  /**
+   * Max number of parsed trees kept in the cache.
+   */
+  private static final int PARSED_TREE_CACHE_SIZE = 4096;
+
+  /**
+   * Cache of immutable parsed trees, the key is the trimmed expression text.
+   */
+  private final LruCache<TextPartKey, ExpressionTree> parsedTreeCache = new LruCache<>(PARSED_TREE_CACHE_SIZE);
+
+  /**
+   * Cache of immutable parsed and optimized trees, the key is the trimmed expression text.
+   */
+  private final LruCache<TextPartKey, ExpressionTree> optimizedTreeCache = new LruCache<>(PARSED_TREE_CACHE_SIZE);
+
   @Nonnull
   public static ExpressionParser getInstance() {
     return INSTANCE;
   }
 
-  private static boolean isDelimiterOrOperatorChar(final char chr) {
-    return isDelimiter(chr) || isOperatorChar(chr);
-  }
-
-  private static boolean isDelimiter(final char chr) {
-    switch (chr) {
-      case ',':
-      case '(':
-      case ')':
+  private static boolean containsUserFunction(@Nonnull final ExpressionTreeElement element) {
+    if (element.isEmptySlot()) {
+      return false;
+    }
+    if (element.getItem() instanceof FunctionDefinedByUser) {
+      return true;
+    }
+    for (int i = 0; i < element.getArity(); i++) {
+      if (containsUserFunction(element.getChildForIndex(i))) {
         return true;
-      default:
-        return false;
+      }
     }
+    return false;
   }
 
-  private static boolean isOperatorChar(final char chr) {
-    switch (chr) {
-      case '-':
-      case '+':
-      case '%':
-      case '*':
-      case '/':
-      case '&':
-      case '|':
-      case '!':
-      case '^':
-      case '=':
-      case '<':
-      case '>':
-        return true;
-      default:
-        return false;
+  /**
+   * Parsed trees don't contain source positions, so that the current position of the context is attached to an exception thrown without position.
+   *
+   * @param context   the preprocessor context, must not be null
+   * @param exception the exception thrown during parsing, must not be null
+   * @return exception with position information, must not be null
+   */
+  @Nonnull
+  private static PreprocessorException attachPosition(@Nonnull final PreprocessorContext context, @Nonnull final PreprocessorException exception) {
+    if (exception.getIncludeChain().length == 0) {
+      final PreprocessingState state = context.getPreprocessingState();
+      final FilePositionInfo[] stack = state.makeIncludeStack();
+      if (stack.length != 0) {
+        final PreprocessorException result = new PreprocessorException(exception.getMessage(), state.getLastReadString(), stack, exception.getCause());
+        result.setStackTrace(exception.getStackTrace());
+        return result;
+      }
     }
+    return exception;
   }
 
   /**
-   * To parse an expression represented as a string and get a tree
+   * To parse an expression represented as a string and get a tree. Parsed trees are cached and shared so that returned tree is immutable one
+   * and doesn't contain any information about source position, the information is attached to exception only if an error is detected.
    *
    * @param expressionStr the expression string to be parsed, must not be null
    * @param context       a preprocessor context to be used to get variable values
@@ -104,91 +116,162 @@ public final class ExpressionParser {
    */
   @Nonnull
   public ExpressionTree parse(@Nonnull final String expressionStr, @Nonnull final PreprocessorContext context) throws IOException {
+    return parse(expressionStr, context, false);
+  }
+
+  /**
+   * To parse an expression represented as a string and get an optimized tree. Constant sub-trees of the result tree are replaced by their values,
+   * the optimization is made once for each parsed tree and optimized trees are cached and shared as immutable ones.
+   *
+   * @param expressionStr the expression string to be parsed, must not be null
+   * @param context       a preprocessor context to be used to get variable values
+   * @return an optimized tree containing parsed expression
+   * @throws IOException it will be thrown if there is a problem to read the expression string
+   * @see ExpressionTree#optimize(PreprocessorContext)
+   * @since 7.0.1
+   */
+  @Nonnull
+  public ExpressionTree parseOptimized(@Nonnull final String expressionStr, @Nonnull final PreprocessorContext context) throws IOException {
+    return parse(expressionStr, context, true);
+  }
+
+  /**
+   * To parse an expression placed in a part of a char sequence and get an optimized tree. The cache of optimized trees is looked up directly by
+   * the trimmed part so that the text is copied only if the tree is not cached yet.
+   *
+   * @param text    the text contains the expression, must not be null
+   * @param start   start index of the expression in the text, inclusive
+   * @param end     end index of the expression in the text, exclusive
+   * @param context a preprocessor context to be used to get variable values
+   * @return an optimized tree containing parsed expression
+   * @throws IOException it will be thrown if there is a problem to read the expression string
+   * @see #parseOptimized(String, PreprocessorContext)
+   * @since 7.0.1
+   */
+  @Nonnull
+  public ExpressionTree parseOptimized(@Nonnull final CharSequence text, final int start, final int end, @Nonnull final PreprocessorContext context) throws IOException {
+    assertNotNull("Expression is null", text);
+    if (start < 0 || end > text.length() || start > end) {
+      throw new IndexOutOfBoundsException("Wrong expression bounds [" + start + ',' + end + ']');
+    }
+
+    int from = start;
+    int to = end;
+    while (from < to && text.charAt(from) <= ' ') {
+      from++;
+    }
+    while (to > from && text.charAt(to - 1) <= ' ') {
+      to--;
+    }
+
+    final ExpressionTree cached = this.optimizedTreeCache.get(new TextPartKey(text, from, to));
+    return cached == null ? parseAndCache(text.subSequence(from, to).toString(), text.subSequence(start, end).toString(), context, true) : cached;
+  }
+
+  @Nonnull
+  private ExpressionTree parse(@Nonnull final String expressionStr, @Nonnull final PreprocessorContext context, final boolean optimize) throws IOException {
     assertNotNull("Expression is null", expressionStr);
 
-    final PushbackReader reader = new PushbackReader(new StringReader(expressionStr));
+    final String normalized = expressionStr.trim();
+    final LruCache<TextPartKey, ExpressionTree> cache = optimize ? this.optimizedTreeCache : this.parsedTreeCache;
 
-    final ExpressionTree result;
-    final PreprocessingState state = context.getPreprocessingState();
-    result = new ExpressionTree(state.makeIncludeStack(), state.getLastReadString());
+    final ExpressionTree result = cache.get(new TextPartKey(normalized));
+    return result == null ? parseAndCache(normalized, expressionStr, context, optimize) : result;
+  }
+
+  @Nonnull
+  private ExpressionTree parseAndCache(@Nonnull final String normalized, @Nonnull final String expressionStr, @Nonnull final PreprocessorContext context, final boolean optimize) throws IOException {
+    final LruCache<TextPartKey, ExpressionTree> cache = optimize ? this.optimizedTreeCache : this.parsedTreeCache;
 
-    if (readExpression(reader, result, context, false, false) != null) {
+    final ExpressionLexer lexer = new ExpressionLexer(normalized);
+
+    final ExpressionTree result = new ExpressionTree();
+
+    if (readExpression(lexer, result, context, false, false) != null) {
       final String text = "Unexpected result during parsing [" + expressionStr + ']';
       throw context.makeException(text, null);
     }
 
-    result.postProcess();
+    try {
+      result.postProcess();
+      if (optimize) {
+        result.optimize(context);
+      }
+    } catch (PreprocessorException ex) {
+      throw attachPosition(context, ex);
+    }
+
+    // user functions are not cached because their arity is provided by extension of the context
+    if (!containsUserFunction(result.getRoot())) {
+      result.makeImmutable();
+      cache.put(new TextPartKey(normalized), result);
+    }
 
     return result;
   }
 
   /**
-   * It reads an expression from a reader and fill a tree
+   * It reads an expression from a lexer and fill a tree
    *
-   * @param reader        the reader to be used as the character source, must not be null
+   * @param lexer         the lexer to be used as the item source, must not be null
    * @param tree          the result tree to be filled by read items, must not be null
    * @param context       a preprocessor context to be used for variables
    * @param insideBracket the flag shows that the expression can be ended by a bracket
    * @param argument      the flag shows that the expression can be ended by a comma
    * @return the last read expression item (a comma or a bracket for instance), it can be null
-   * @throws IOException it will be thrown if there is a problem in reading from the reader
    */
   @Nullable
-  public ExpressionItem readExpression(@Nonnull final PushbackReader reader, @Nonnull final ExpressionTree tree, @Nonnull final PreprocessorContext context, final boolean insideBracket, final boolean argument) throws IOException {
+  public ExpressionItem readExpression(@Nonnull final ExpressionLexer lexer, @Nonnull final ExpressionTree tree, @Nonnull final PreprocessorContext context, final boolean insideBracket, final boolean argument) {
     boolean working = true;
 
     ExpressionItem result = null;
 
-    final FilePositionInfo[] stack;
-    final String sourceLine;
-
-    final PreprocessingState state = context.getPreprocessingState();
-    stack = state.makeIncludeStack();
-    sourceLine = state.getLastReadString();
-
     ExpressionItem prev = null;
 
-    while (working) {
-      final ExpressionItem nextItem = nextItem(reader, context);
-      if (nextItem == null) {
-        working = false;
-        result = null;
-      } else if (nextItem.getExpressionItemType() == ExpressionItemType.SPECIAL) {
-        if (nextItem == SpecialItem.BRACKET_CLOSING) {
-          if (insideBracket) {
-            working = false;
-            result = nextItem;
-          } else if (argument) {
-            working = false;
-            result = nextItem;
-          } else {
-            final String text = "Detected alone closing bracket";
-            throw context.makeException("Detected alone closing bracket", null);
-          }
-        } else if (nextItem == SpecialItem.BRACKET_OPENING) {
-          if (prev != null && prev.getExpressionItemType() == ExpressionItemType.VARIABLE) {
-            final String text = "Unknown function detected [" + prev.toString() + ']';
-            throw context.makeException(text, null);
-          }
+    try {
+      while (working) {
+        final ExpressionItem nextItem = nextItem(lexer, context);
+        if (nextItem == null) {
+          working = false;
+          result = null;
+        } else if (nextItem.getExpressionItemType() == ExpressionItemType.SPECIAL) {
+          if (nextItem == SpecialItem.BRACKET_CLOSING) {
+            if (insideBracket) {
+              working = false;
+              result = nextItem;
+            } else if (argument) {
+              working = false;
+              result = nextItem;
+            } else {
+              final String text = "Detected alone closing bracket";
+              throw context.makeException("Detected alone closing bracket", null);
+            }
+          } else if (nextItem == SpecialItem.BRACKET_OPENING) {
+            if (prev != null && prev.getExpressionItemType() == ExpressionItemType.VARIABLE) {
+              final String text = "Unknown function detected [" + prev.toString() + ']';
+              throw context.makeException(text, null);
+            }
 
-          final ExpressionTree subExpression;
-          subExpression = new ExpressionTree(stack, sourceLine);
-          if (SpecialItem.BRACKET_CLOSING != readExpression(reader, subExpression, context, true, false)) {
-            final String text = "Detected unclosed bracket";
-            throw context.makeException(text, null);
+            final ExpressionTree subExpression = new ExpressionTree();
+            if (SpecialItem.BRACKET_CLOSING != readExpression(lexer, subExpression, context, true, false)) {
+              final String text = "Detected unclosed bracket";
+              throw context.makeException(text, null);
+            }
+            tree.addTree(subExpression);
+          } else if (nextItem == SpecialItem.COMMA) {
+            return nextItem;
           }
-          tree.addTree(subExpression);
-        } else if (nextItem == SpecialItem.COMMA) {
-          return nextItem;
+        } else if (nextItem.getExpressionItemType() == ExpressionItemType.FUNCTION) {
+          final AbstractFunction function = (AbstractFunction) nextItem;
+          ExpressionTree functionTree = readFunction(function, lexer, context);
+          tree.addTree(functionTree);
+        } else {
+          tree.addItem(nextItem);
         }
-      } else if (nextItem.getExpressionItemType() == ExpressionItemType.FUNCTION) {
-        final AbstractFunction function = (AbstractFunction) nextItem;
-        ExpressionTree functionTree = readFunction(function, reader, context, stack, sourceLine);
-        tree.addTree(functionTree);
-      } else {
-        tree.addItem(nextItem);
+        prev = nextItem;
       }
-      prev = nextItem;
+    } catch (PreprocessorException ex) {
+      throw attachPosition(context, ex);
     }
     return result;
   }
@@ -197,16 +280,13 @@ public final class ExpressionParser {
    * The auxiliary method allows to form a function and its arguments as a tree
    *
    * @param function     the function which arguments will be read from the stream, must not be null
-   * @param reader       the reader to be used as the character source, must not be null
+   * @param lexer        the lexer to be used as the item source, must not be null
    * @param context      a preprocessor context, it will be used for a user functions and variables
-   * @param includeStack the current file include stack, can be null
-   * @param sources      the current source line, can be null
    * @return an expression tree containing parsed function arguments
-   * @throws IOException it will be thrown if there is any problem to read chars
    */
   @Nonnull
-  private ExpressionTree readFunction(@Nonnull final AbstractFunction function, @Nonnull final PushbackReader reader, @Nonnull final PreprocessorContext context, @Nullable @MustNotContainNull final FilePositionInfo[] includeStack, @Nullable final String sources) throws IOException {
-    final ExpressionItem expectedBracket = nextItem(reader, context);
+  private ExpressionTree readFunction(@Nonnull final AbstractFunction function, @Nonnull final ExpressionLexer lexer, @Nonnull final PreprocessorContext context) {
+    final ExpressionItem expectedBracket = nextItem(lexer, context);
     if (expectedBracket == null) {
       throw context.makeException("Detected function without params [" + function.getName() + ']', null);
     }
@@ -216,22 +296,22 @@ public final class ExpressionParser {
     ExpressionTree functionTree;
 
     if (arity == 0) {
-      final ExpressionTree subExpression = new ExpressionTree(includeStack, sources);
-      final ExpressionItem lastItem = readFunctionArgument(reader, subExpression, context, includeStack, sources);
+      final ExpressionTree subExpression = new ExpressionTree();
+      final ExpressionItem lastItem = readFunctionArgument(lexer, subExpression, context);
       if (SpecialItem.BRACKET_CLOSING != lastItem) {
         throw context.makeException("There is not closing bracket for function [" + function.getName() + ']', null);
       } else if (!subExpression.getRoot().isEmptySlot()) {
         throw context.makeException("The function \'" + function.getName() + "\' doesn't need arguments", null);
       } else {
-        functionTree = new ExpressionTree(includeStack, sources);
+        functionTree = new ExpressionTree();
         functionTree.addItem(function);
       }
     } else {
 
       final List<ExpressionTree> arguments = new ArrayList<>(arity);
       for (int i = 0; i < function.getArity(); i++) {
-        final ExpressionTree subExpression = new ExpressionTree(includeStack, sources);
-        final ExpressionItem lastItem = readFunctionArgument(reader, subExpression, context, includeStack, sources);
+        final ExpressionTree subExpression = new ExpressionTree();
+        final ExpressionItem lastItem = readFunctionArgument(lexer, subExpression, context);
 
         if (SpecialItem.BRACKET_CLOSING == lastItem) {
           arguments.add(subExpression);
@@ -243,7 +323,7 @@ public final class ExpressionParser {
         }
       }
 
-      functionTree = new ExpressionTree(includeStack, sources);
+      functionTree = new ExpressionTree();
       functionTree.addItem(function);
       ExpressionTreeElement functionTreeElement = functionTree.getRoot();
 
@@ -259,28 +339,25 @@ public final class ExpressionParser {
   /**
    * The auxiliary method allows to read a function argument
    *
-   * @param reader    a reader to be the character source, must not be null
+   * @param lexer     a lexer to be the item source, must not be null
    * @param tree      the result tree to be filled by read items, must not be null
    * @param context   a preprocessor context
-   * @param callStack the current file call stack, can be null
-   * @param source    the current source line, can be null
    * @return the last read expression item (a comma or a bracket)
-   * @throws IOException it will be thrown if there is any error during char reading from the reader
    */
   @Nullable
-  ExpressionItem readFunctionArgument(@Nonnull final PushbackReader reader, @Nonnull final ExpressionTree tree, @Nonnull final PreprocessorContext context, @Nullable @MustNotContainNull final FilePositionInfo[] callStack, @Nullable final String source) throws IOException {
+  ExpressionItem readFunctionArgument(@Nonnull final ExpressionLexer lexer, @Nonnull final ExpressionTree tree, @Nonnull final PreprocessorContext context) {
     boolean working = true;
     ExpressionItem result = null;
     while (working) {
-      final ExpressionItem nextItem = nextItem(reader, context);
+      final ExpressionItem nextItem = nextItem(lexer, context);
       if (nextItem == null) {
         throw context.makeException("Non-closed function detected", null);
       } else if (SpecialItem.COMMA == nextItem) {
         result = nextItem;
         working = false;
       } else if (SpecialItem.BRACKET_OPENING == nextItem) {
-        final ExpressionTree subExpression = new ExpressionTree(callStack, source);
-        if (SpecialItem.BRACKET_CLOSING != readExpression(reader, subExpression, context, true, false)) {
+        final ExpressionTree subExpression = new ExpressionTree();
+        if (SpecialItem.BRACKET_CLOSING != readExpression(lexer, subExpression, context, true, false)) {
           throw context.makeException("Non-closed bracket inside a function argument detected", null);
         }
         tree.addTree(subExpression);
@@ -289,7 +366,7 @@ public final class ExpressionParser {
         working = false;
       } else if (nextItem.getExpressionItemType() == ExpressionItemType.FUNCTION) {
         final AbstractFunction function = (AbstractFunction) nextItem;
-        ExpressionTree functionTree = readFunction(function, reader, context, callStack, source);
+        ExpressionTree functionTree = readFunction(function, lexer, context);
         tree.addTree(functionTree);
       } else {
         tree.addItem(nextItem);
@@ -298,325 +375,17 @@ public final class ExpressionParser {
     return result;
   }
 
-  private int hex2int(@Nonnull final PreprocessorContext context, final char chr) {
-    final int result;
-    if (Character.isDigit(chr)) {
-      result = chr - '0';
-    } else {
-      result = 10 + (chr - Character.toLowerCase(chr) - 'a');
-      if (result < 10 || result > 15) {
-        throw context.makeException("Unexpected hex digit detected: " + chr, null);
-      }
-    }
-    return result;
-  }
-
   /**
-   * Read the next item from the reader
+   * Read the next item from the lexer
    *
-   * @param reader  a reader to be used as the char source, must not be null
+   * @param lexer   a lexer to be used as the char source, must not be null
    * @param context a preprocessor context
    * @return a read expression item, it can be null if the end is reached
-   * @throws IOException it will be thrown if there is any error during a char reading
    */
   @Nullable
-  ExpressionItem nextItem(@Nonnull final PushbackReader reader, @Nonnull final PreprocessorContext context) throws IOException {
-    assertNotNull("Reader is null", reader);
-
-    ParserState state = ParserState.WAIT;
-    final StringBuilder builder = new StringBuilder(12);
-
-    boolean found = false;
-    char unicodeChar = 0;
-
-    while (!found) {
-      final int data = reader.read();
-
-      if (data < 0) {
-        if (state != ParserState.WAIT) {
-          found = true;
-        }
-        break;
-      }
-
-      final char chr = (char) data;
-
-      switch (state) {
-        case WAIT: {
-          if (Character.isWhitespace(chr)) {
-            // do nothing
-          } else if (chr == ',') {
-            return SpecialItem.COMMA;
-          } else if (chr == '(') {
-            return SpecialItem.BRACKET_OPENING;
-          } else if (chr == ')') {
-            return SpecialItem.BRACKET_CLOSING;
-          } else if (Character.isDigit(chr)) {
-            builder.append(chr);
-            if (chr == '0') {
-              state = ParserState.HEX_NUMBER;
-            } else {
-              state = ParserState.NUMBER;
-            }
-          } else if (chr == '.') {
-            builder.append('.');
-            state = ParserState.FLOAT_NUMBER;
-          } else if (Character.isLetter(chr) || chr == '$' || chr == '_') {
-            builder.append(chr);
-            state = ParserState.VALUE_OR_FUNCTION;
-          } else if (chr == '\"') {
-            state = ParserState.STRING;
-          } else if (isOperatorChar(chr)) {
-            builder.append(chr);
-            state = ParserState.OPERATOR;
-          } else {
-            throw context.makeException("Unsupported token character detected \'" + chr + '\'', null);
-          }
-        }
-        break;
-        case OPERATOR: {
-          if (!isOperatorChar(chr) || isDelimiter(chr)) {
-            reader.unread(data);
-            found = true;
-          } else {
-            builder.append(chr);
-          }
-        }
-        break;
-        case FLOAT_NUMBER: {
-          if (Character.isDigit(chr)) {
-            builder.append(chr);
-          } else {
-            found = true;
-            reader.unread(data);
-          }
-        }
-        break;
-        case HEX_NUMBER: {
-          if (builder.length() == 1) {
-            if (chr == 'X' || chr == 'x') {
-              builder.append(chr);
-            } else if (chr == '.') {
-              builder.append(chr);
-              state = ParserState.FLOAT_NUMBER;
-            } else if (Character.isDigit(chr)) {
-              state = ParserState.NUMBER;
-            } else {
-              state = ParserState.NUMBER;
-              found = true;
-              reader.unread(data);
-            }
-          } else if (Character.isDigit(chr) || (chr >= 'a' && chr <= 'f') || (chr >= 'A' && chr <= 'F')) {
-            builder.append(chr);
-          } else {
-            found = true;
-            reader.unread(data);
-          }
-        }
-        break;
-        case UNICODE_DIGIT0:
-          unicodeChar = (char) (hex2int(context, chr) << 12);
-          state = ParserState.UNICODE_DIGIT1;
-          break;
-        case UNICODE_DIGIT1:
-          unicodeChar = (char) (unicodeChar | (hex2int(context, chr) << 8));
-          state = ParserState.UNICODE_DIGIT2;
-          break;
-        case UNICODE_DIGIT2:
-          unicodeChar = (char) (unicodeChar | (hex2int(context, chr) << 4));
-          state = ParserState.UNICODE_DIGIT3;
-          break;
-        case UNICODE_DIGIT3:
-          unicodeChar = (char) (unicodeChar | hex2int(context, chr));
-          state = ParserState.STRING;
-          builder.append(unicodeChar);
-          break;
-        case NUMBER: {
-          if (Character.isDigit(chr)) {
-            builder.append(chr);
-          } else if (chr == '.') {
-            builder.append(chr);
-            state = ParserState.FLOAT_NUMBER;
-          } else {
-            reader.unread(data);
-            found = true;
-          }
-        }
-        break;
-        case VALUE_OR_FUNCTION: {
-          if (Character.isWhitespace(chr) || isDelimiterOrOperatorChar(chr)) {
-            reader.unread(data);
-            found = true;
-          } else {
-            builder.append(chr);
-          }
-        }
-        break;
-        case SPECIAL_CHAR: {
-          switch (chr) {
-            case 'n':
-              builder.append('\n');
-              break;
-            case 't':
-              builder.append('\t');
-              break;
-            case 'b':
-              builder.append('\b');
-              break;
-            case 'f':
-              builder.append('\f');
-              break;
-            case 'r':
-              builder.append('\r');
-              break;
-            case '\\':
-              builder.append('\\');
-              break;
-            case '\"':
-              builder.append('\"');
-              break;
-            case '\'':
-              builder.append('\'');
-              break;
-            case 'u':
-              state = ParserState.UNICODE_DIGIT0;
-              break;
-            default: {
-              throw context.makeException("Unsupported special char detected \'\\" + chr + '\'', null);
-            }
-          }
-          state = state == ParserState.SPECIAL_CHAR ? ParserState.STRING : state;
-        }
-        break;
-        case STRING: {
-          switch (chr) {
-            case '\"': {
-              found = true;
-            }
-            break;
-            case '\\': {
-              state = ParserState.SPECIAL_CHAR;
-            }
-            break;
-            default: {
-              builder.append(chr);
-            }
-            break;
-          }
-        }
-        break;
-        default:
-          throw new Error("Unsupported parser state [" + state.name() + ']');
-      }
-    }
-
-    if (!found) {
-      switch (state) {
-        case UNICODE_DIGIT0:
-        case UNICODE_DIGIT1:
-        case UNICODE_DIGIT2: {
-          throw context.makeException("Non-completed unicode char has been detected", null);
-        }
-        case SPECIAL_CHAR:
-        case STRING: {
-          throw context.makeException("Non-closed string has been detected", null);
-        }
-        default:
-          return null;
-      }
-    } else {
-      ExpressionItem result = null;
-      switch (state) {
-        case FLOAT_NUMBER: {
-          result = Value.valueOf(Float.parseFloat(builder.toString()));
-        }
-        break;
-        case HEX_NUMBER: {
-          final String text = builder.toString();
-          if ("0".equals(text)) {
-            result = Value.INT_ZERO;
-          } else {
-            final String str = PreprocessorUtils.extractTail("0x", text);
-            result = Value.valueOf(Long.parseLong(str, 16));
-          }
-        }
-        break;
-        case NUMBER: {
-          result = Value.valueOf(Long.parseLong(builder.toString()));
-        }
-        break;
-        case OPERATOR: {
-          final String operatorLC = builder.toString().toLowerCase(Locale.ENGLISH);
-          for (final AbstractOperator operator : AbstractOperator.getAllOperators()) {
-            if (operator.getKeyword().equals(operatorLC)) {
-              result = operator;
-              break;
-            }
-          }
-
-          if (result == null) {
-            throw context.makeException("Unknown operator detected \'" + operatorLC + '\'', null);
-          }
-        }
-        break;
-        case STRING: {
-          result = Value.valueOf(builder.toString());
-        }
-        break;
-        case VALUE_OR_FUNCTION: {
-          final String str = builder.toString().toLowerCase();
-          if (str.charAt(0) == '$') {
-
-            assertNotNull("There is not a preprocessor context to define a user function [" + str + ']', context);
-
-            final PreprocessorExtension extension = context.getPreprocessorExtension();
-            if (extension == null) {
-              throw context.makeException("There is not any defined preprocessor extension to get data about user functions [" + str + ']', null);
-            }
-
-            final String userFunctionName = PreprocessorUtils.extractTail("$", str);
-
-            // user defined
-            result = new FunctionDefinedByUser(userFunctionName, extension.getUserFunctionArity(userFunctionName), context);
-          } else if ("true".equals(str)) {
-            result = Value.BOOLEAN_TRUE;
-          } else if ("false".equals(str)) {
-            result = Value.BOOLEAN_FALSE;
-          } else {
-            final AbstractFunction function = AbstractFunction.findForName(str);
-            if (function == null) {
-              result = new Variable(str);
-            } else {
-              result = function;
-            }
-          }
-        }
-        break;
-        default: {
-          throw new Error("Unsupported final parser state detected [" + state.name() + ']');
-        }
-      }
-      return result;
-    }
-  }
-
-  /**
-   * Internal parser states.
-   */
-  private enum ParserState {
-
-    WAIT,
-    NUMBER,
-    HEX_NUMBER,
-    FLOAT_NUMBER,
-    STRING,
-    SPECIAL_CHAR,
-    UNICODE_DIGIT0,
-    UNICODE_DIGIT1,
-    UNICODE_DIGIT2,
-    UNICODE_DIGIT3,
-    VALUE_OR_FUNCTION,
-    OPERATOR
+  ExpressionItem nextItem(@Nonnull final ExpressionLexer lexer, @Nonnull final PreprocessorContext context) {
+    assertNotNull("Lexer is null", lexer);
+    return lexer.nextItem(context);
   }
 
   /**
@@ -645,4 +414,57 @@ public final class ExpressionParser {
       return ExpressionItemType.SPECIAL;
     }
   }
+
+  /**
+   * Cache key for a part of a char sequence, keys are equal if they contain the same chars. Keys stored in caches are made for whole expression
+   * strings and lookup keys can be made directly for a part of a source text without copying.
+   */
+  private static final class TextPartKey {
+
+    private final CharSequence text;
+    private final int start;
+    private final int end;
+    private final int hash;
+
+    private TextPartKey(@Nonnull final String text) {
+      this(text, 0, text.length());
+    }
+
+    private TextPartKey(@Nonnull final CharSequence text, final int start, final int end) {
+      this.text = text;
+      this.start = start;
+      this.end = end;
+      int h = 0;
+      for (int i = start; i < end; i++) {
+        h = 31 * h + text.charAt(i);
+      }
+      this.hash = h;
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof TextPartKey)) {
+        return false;
+      }
+      final TextPartKey that = (TextPartKey) obj;
+      final int length = this.end - this.start;
+      if (this.hash != that.hash || that.end - that.start != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (that.text.charAt(that.start + i) != this.text.charAt(this.start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
 }
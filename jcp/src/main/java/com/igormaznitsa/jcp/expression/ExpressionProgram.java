@@ -0,0 +1,307 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
+import com.igormaznitsa.jcp.expression.operators.AbstractOperator;
+import com.igormaznitsa.jcp.expression.operators.OperatorAND;
+import com.igormaznitsa.jcp.expression.operators.OperatorOR;
+import com.igormaznitsa.meta.annotation.MayContainNull;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class describes an expression tree compiled into flat postfix instruction array. The program is executed by a loop over operand stack
+ * reused by all programs executed in the same thread, so that evaluation doesn't create intermediate tree elements.
+ * Results and errors of execution are the same as for evaluation of the source tree.
+ *
+ * @since 7.0.1
+ */
+public final class ExpressionProgram {
+
+  private static final byte PUSH_CONST = 0;
+  private static final byte LOAD_VAR = 1;
+  private static final byte CALL_OP = 2;
+  private static final byte CALL_FN = 3;
+  private static final byte JUMP_IF_FALSE = 4;
+  private static final byte JUMP_IF_TRUE = 5;
+
+  private static final String[] CODE_NAMES = new String[] {"PUSH_CONST", "LOAD_VAR", "CALL_OP", "CALL_FN", "JUMP_IF_FALSE", "JUMP_IF_TRUE"};
+
+  private static final OperatorAND OPERATOR_AND = AbstractOperator.findForClass(OperatorAND.class);
+  private static final OperatorOR OPERATOR_OR = AbstractOperator.findForClass(OperatorOR.class);
+
+  private static final ThreadLocal<OperandStack> OPERAND_STACK = ThreadLocal.withInitial(OperandStack::new);
+
+  private final byte[] codes;
+  private final Object[] operands;
+  private final int[] jumpTargets;
+  private final int maxStackDepth;
+
+  private ExpressionProgram(@Nonnull final byte[] codes, @Nonnull @MayContainNull final Object[] operands, @Nonnull final int[] jumpTargets, final int maxStackDepth) {
+    this.codes = codes;
+    this.operands = operands;
+    this.jumpTargets = jumpTargets;
+    this.maxStackDepth = maxStackDepth;
+  }
+
+  /**
+   * Compile an expression tree into a program.
+   *
+   * @param tree the tree to be compiled, must not be null
+   * @return compiled program or null if the tree is empty or contains elements which can't be compiled (for instance missing arguments),
+   * such tree should be evaluated directly to report the error
+   */
+  @Nullable
+  public static ExpressionProgram compile(@Nonnull final ExpressionTree tree) {
+    if (tree.isEmpty()) {
+      return null;
+    }
+    final Builder builder = new Builder();
+    return builder.emit(tree.getRoot()) ? builder.build() : null;
+  }
+
+  /**
+   * Get max number of operand stack slots needed by the program.
+   *
+   * @return max stack depth
+   */
+  public int getMaxStackDepth() {
+    return this.maxStackDepth;
+  }
+
+  /**
+   * Get number of instructions in the program.
+   *
+   * @return number of instructions
+   */
+  public int size() {
+    return this.codes.length;
+  }
+
+  /**
+   * Execute the program.
+   *
+   * @param context a preprocessor context to be used for variables and function calls, must not be null
+   * @return the result value, must not be null
+   */
+  @Nonnull
+  public Value execute(@Nonnull final PreprocessorContext context) {
+    final OperandStack stack = OPERAND_STACK.get();
+    final int base = stack.size;
+
+    Value[] items = stack.ensureCapacity(base + this.maxStackDepth);
+    int sp = base;
+
+    // the whole region is reserved because reading of variables and function calls can execute nested programs
+    stack.size = base + this.maxStackDepth;
+
+    try {
+      final byte[] code = this.codes;
+      int pc = 0;
+      while (pc < code.length) {
+        switch (code[pc]) {
+          case PUSH_CONST: {
+            items[sp++] = (Value) this.operands[pc];
+          }
+          break;
+          case LOAD_VAR: {
+            final Value value = Expression.readVariable(context, (Variable) this.operands[pc]);
+            items = stack.items;
+            items[sp++] = value;
+          }
+          break;
+          case CALL_OP: {
+            final AbstractOperator operator = (AbstractOperator) this.operands[pc];
+            if (operator.getArity() == 1) {
+              items[sp - 1] = Expression.invokeOperator(context, operator, items[sp - 1], null);
+            } else {
+              sp--;
+              items[sp - 1] = Expression.invokeOperator(context, operator, items[sp - 1], items[sp]);
+            }
+          }
+          break;
+          case CALL_FN: {
+            final AbstractFunction function = (AbstractFunction) this.operands[pc];
+            final Value[] arguments = new Value[function.getArity()];
+            sp -= arguments.length;
+            System.arraycopy(items, sp, arguments, 0, arguments.length);
+
+            final Value result = Expression.invokeFunction(context, function, arguments);
+            items = stack.items;
+
+            items[sp++] = result;
+          }
+          break;
+          case JUMP_IF_FALSE: {
+            final Value top = items[sp - 1];
+            if (top.getType() == ValueType.BOOLEAN && !top.booleanValue()) {
+              pc = this.jumpTargets[pc];
+              continue;
+            }
+          }
+          break;
+          case JUMP_IF_TRUE: {
+            final Value top = items[sp - 1];
+            if (top.getType() == ValueType.BOOLEAN && top.booleanValue()) {
+              pc = this.jumpTargets[pc];
+              continue;
+            }
+          }
+          break;
+          default:
+            throw new Error("Unexpected instruction code: " + code[pc]);
+        }
+        pc++;
+      }
+      return items[base];
+    } finally {
+      Arrays.fill(stack.items, base, base + this.maxStackDepth, null);
+      stack.size = base;
+    }
+  }
+
+  @Override
+  @Nonnull
+  public String toString() {
+    final StringBuilder result = new StringBuilder();
+    for (int i = 0; i < this.codes.length; i++) {
+      if (result.length() > 0) {
+        result.append('\n');
+      }
+      result.append(i).append(": ").append(CODE_NAMES[this.codes[i]]).append(' ');
+      if (this.codes[i] == JUMP_IF_FALSE || this.codes[i] == JUMP_IF_TRUE) {
+        result.append(this.jumpTargets[i]);
+      } else {
+        result.append(this.operands[i]);
+      }
+    }
+    return result.toString();
+  }
+
+  private static final class OperandStack {
+
+    private Value[] items = new Value[32];
+    private int size;
+
+    @Nonnull
+    @MustNotContainNull
+    private Value[] ensureCapacity(final int capacity) {
+      if (capacity > this.items.length) {
+        this.items = Arrays.copyOf(this.items, Math.max(capacity, this.items.length * 2));
+      }
+      return this.items;
+    }
+  }
+
+  private static final class Builder {
+
+    private final List<Byte> codes = new ArrayList<>();
+    private final List<Object> operands = new ArrayList<>();
+    private final List<Integer> jumpTargets = new ArrayList<>();
+    private int depth;
+    private int maxDepth;
+
+    private int add(final byte code, @Nullable final Object operand, final int depthChange) {
+      this.codes.add(code);
+      this.operands.add(operand);
+      this.jumpTargets.add(-1);
+      this.depth += depthChange;
+      this.maxDepth = Math.max(this.maxDepth, this.depth);
+      return this.codes.size() - 1;
+    }
+
+    private boolean emit(@Nonnull final ExpressionTreeElement element) {
+      if (element.isEmptySlot()) {
+        return false;
+      }
+
+      final ExpressionItem item = element.getItem();
+      switch (item.getExpressionItemType()) {
+        case VALUE: {
+          add(PUSH_CONST, item, 1);
+        }
+        break;
+        case VARIABLE: {
+          add(LOAD_VAR, item, 1);
+        }
+        break;
+        case OPERATOR: {
+          final AbstractOperator operator = (AbstractOperator) item;
+          final int arity = operator.getArity();
+          if (!emit(element.getChildForIndex(0))) {
+            return false;
+          }
+          if (arity == 2) {
+            final ExpressionTreeElement right = element.getChildForIndex(1);
+            int jump = -1;
+            if ((operator == OPERATOR_AND || operator == OPERATOR_OR) && Expression.isSkippableArgument(right)) {
+              jump = add(operator == OPERATOR_AND ? JUMP_IF_FALSE : JUMP_IF_TRUE, null, 0);
+            }
+            if (!emit(right)) {
+              return false;
+            }
+            add(CALL_OP, operator, -1);
+            if (jump >= 0) {
+              this.jumpTargets.set(jump, this.codes.size());
+            }
+          } else {
+            add(CALL_OP, operator, 0);
+          }
+        }
+        break;
+        case FUNCTION: {
+          final AbstractFunction function = (AbstractFunction) item;
+          final int arity = function.getArity();
+          for (int i = 0; i < arity; i++) {
+            if (!emit(element.getChildForIndex(i))) {
+              return false;
+            }
+          }
+          add(CALL_FN, function, 1 - arity);
+        }
+        break;
+        default:
+          return false;
+      }
+      return true;
+    }
+
+    @Nonnull
+    private ExpressionProgram build() {
+      final byte[] codeArray = new byte[this.codes.size()];
+      final int[] targetArray = new int[this.codes.size()];
+      for (int i = 0; i < codeArray.length; i++) {
+        codeArray[i] = this.codes.get(i);
+        targetArray[i] = this.jumpTargets.get(i);
+      }
+      return new ExpressionProgram(codeArray, this.operands.toArray(), targetArray, this.maxDepth);
+    }
+  }
+}
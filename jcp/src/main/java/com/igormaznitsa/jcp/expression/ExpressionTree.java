@@ -21,13 +21,14 @@
 
 package com.igormaznitsa.jcp.expression;
 
-import com.igormaznitsa.jcp.context.PreprocessingState;
+import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.exceptions.FilePositionInfo;
 import com.igormaznitsa.jcp.exceptions.PreprocessorException;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
 
@@ -38,17 +39,144 @@ import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
  */
 public class ExpressionTree {
 
-  private final FilePositionInfo[] includeStack;
-  private final String sources;
   private ExpressionTreeElement last = ExpressionTreeElement.EMPTY_SLOT;
+  private boolean immutable;
+  private volatile boolean programCompiled;
+  private volatile ExpressionProgram program;
+  private volatile CompiledExpression compiledExpression;
+  private volatile boolean notCompilable;
+  private final AtomicInteger evaluationCounter = new AtomicInteger();
 
+  /**
+   * The constructor. The tree doesn't keep any source position, position information is added to exceptions by the parser
+   * from the current preprocessing state only when an error is detected.
+   */
   public ExpressionTree() {
-    this(null, null);
   }
 
+  /**
+   * The constructor is kept for compatibility, the tree doesn't keep source position any more so that arguments are ignored.
+   *
+   * @param callStack ignored
+   * @param sources   ignored
+   * @deprecated source position is taken from the preprocessing state when an error is detected, use {@link #ExpressionTree()}
+   */
+  @Deprecated
   public ExpressionTree(@Nullable @MustNotContainNull final FilePositionInfo[] callStack, @Nullable final String sources) {
-    this.includeStack = callStack == null ? PreprocessingState.EMPTY_STACK : callStack;
-    this.sources = sources == null ? "" : sources;
+    this();
+  }
+
+  /**
+   * Make the tree immutable one, any attempt to change the tree after the call will throw exception.
+   * Immutable trees can be shared and cached.
+   *
+   * @since 7.0.1
+   */
+  public void makeImmutable() {
+    this.immutable = true;
+  }
+
+  /**
+   * Check that the tree is immutable one.
+   *
+   * @return true if the tree can't be changed, false otherwise
+   * @since 7.0.1
+   */
+  public boolean isImmutable() {
+    return this.immutable;
+  }
+
+  /**
+   * Get compiled program for the tree. Only immutable trees are compiled, the program is compiled once and reused.
+   *
+   * @return compiled program or null if the tree is mutable or can't be compiled
+   * @see ExpressionProgram#compile(ExpressionTree)
+   * @since 7.0.1
+   */
+  @Nullable
+  public ExpressionProgram getProgram() {
+    if (!this.immutable) {
+      return null;
+    }
+    if (!this.programCompiled) {
+      this.program = ExpressionProgram.compile(this);
+      this.programCompiled = true;
+    }
+    return this.program;
+  }
+
+  /**
+   * Increment counter of interpreted evaluations of the tree.
+   *
+   * @return the new counter value
+   * @see EvaluationMode#TIERED
+   * @since 7.0.1
+   */
+  public int incrementEvaluationCounter() {
+    return this.evaluationCounter.incrementAndGet();
+  }
+
+  /**
+   * Get number of counted interpreted evaluations of the tree.
+   *
+   * @return the counter value
+   * @see EvaluationMode#TIERED
+   * @since 7.0.1
+   */
+  public int getEvaluationCounter() {
+    return this.evaluationCounter.get();
+  }
+
+  /**
+   * Check that the tree can be compiled. Only immutable trees can be compiled and a tree is excluded after failed compilation.
+   *
+   * @return true if the tree is a candidate for compilation, false otherwise
+   * @see EvaluationMode#TIERED
+   * @since 7.0.1
+   */
+  public boolean isCompilable() {
+    return this.immutable && !this.notCompilable;
+  }
+
+  /**
+   * Mark the tree as not compilable one, interpreted evaluations of such tree are not counted any more and compilation is not tried again.
+   *
+   * @see EvaluationMode#TIERED
+   * @since 7.0.1
+   */
+  public void markNotCompilable() {
+    this.notCompilable = true;
+  }
+
+  /**
+   * Get compiled expression made for the tree.
+   *
+   * @return compiled expression or null if the tree is not compiled yet or can't be compiled
+   * @see EvaluationMode#TIERED
+   * @since 7.0.1
+   */
+  @Nullable
+  public CompiledExpression getCompiledExpression() {
+    return this.compiledExpression;
+  }
+
+  /**
+   * Set compiled expression for the tree, only immutable trees can be compiled.
+   *
+   * @param compiledExpression compiled expression, can be null
+   * @since 7.0.1
+   */
+  public void setCompiledExpression(@Nullable final CompiledExpression compiledExpression) {
+    if (!this.immutable) {
+      throw new IllegalStateException("Only immutable tree can be compiled");
+    }
+    this.compiledExpression = compiledExpression;
+  }
+
+  private void assertMutable() {
+    if (this.immutable) {
+      throw new IllegalStateException("Tree is immutable one");
+    }
   }
 
   /**
@@ -66,14 +194,15 @@ public class ExpressionTree {
    * @param item an item to be added, must not be null
    */
   public void addItem(@Nonnull final ExpressionItem item) {
+    assertMutable();
     if (item == null) {
-      throw new PreprocessorException("[Expression]Item is null", this.sources, this.includeStack, null);
+      throw new PreprocessorException("[Expression]Item is null", null, null, null);
     }
 
     if (last.isEmptySlot()) {
-      last = new ExpressionTreeElement(item, this.includeStack, this.sources);
+      last = new ExpressionTreeElement(item);
     } else {
-      last = last.addTreeElement(new ExpressionTreeElement(item, this.includeStack, this.sources));
+      last = last.addTreeElement(new ExpressionTreeElement(item));
     }
   }
 
@@ -83,6 +212,7 @@ public class ExpressionTree {
    * @param tree a tree to be added as an item, must not be null
    */
   public void addTree(@Nonnull final ExpressionTree tree) {
+    assertMutable();
     assertNotNull("Tree is null", tree);
     if (last.isEmptySlot()) {
       final ExpressionTreeElement thatTreeRoot = tree.getRoot();
@@ -122,10 +252,29 @@ public class ExpressionTree {
    * It can be called after the tree has been formed to optimize inside structures
    */
   public void postProcess() {
+    assertMutable();
     final ExpressionTreeElement root = getRoot();
     if (!root.isEmptySlot()) {
       root.postProcess();
     }
   }
 
+  /**
+   * Optimize the formed tree: constant operations and calls of pure functions with constant arguments are replaced by their results and
+   * boolean AND and OR with constant left argument are simplified. If a constant calculation throws any error then it is kept in the tree
+   * to be reported during evaluation.
+   *
+   * @param context a preprocessor context to be used for function calls, must not be null
+   * @see com.igormaznitsa.jcp.expression.functions.AbstractFunction#isPure()
+   * @since 7.0.1
+   */
+  public void optimize(@Nonnull final PreprocessorContext context) {
+    assertMutable();
+    assertNotNull("Context is null", context);
+    final ExpressionTreeElement root = getRoot();
+    if (!root.isEmptySlot()) {
+      root.optimize(context);
+    }
+  }
+
 }
@@ -21,15 +21,26 @@
 
 package com.igormaznitsa.jcp.expression;
 
-import com.igormaznitsa.jcp.exceptions.FilePositionInfo;
+import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.exceptions.PreprocessorException;
 import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
 import com.igormaznitsa.jcp.expression.operators.AbstractOperator;
+import com.igormaznitsa.jcp.expression.operators.OperatorAND;
+import com.igormaznitsa.jcp.expression.operators.OperatorEQU;
+import com.igormaznitsa.jcp.expression.operators.OperatorGREAT;
+import com.igormaznitsa.jcp.expression.operators.OperatorGREATEQU;
+import com.igormaznitsa.jcp.expression.operators.OperatorLESS;
+import com.igormaznitsa.jcp.expression.operators.OperatorLESSEQU;
+import com.igormaznitsa.jcp.expression.operators.OperatorNOT;
+import com.igormaznitsa.jcp.expression.operators.OperatorNOTEQU;
+import com.igormaznitsa.jcp.expression.operators.OperatorOR;
 import com.igormaznitsa.jcp.expression.operators.OperatorSUB;
+import com.igormaznitsa.jcp.expression.operators.OperatorXOR;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
 import java.util.Arrays;
 import java.util.List;
 
@@ -47,18 +58,12 @@ public class ExpressionTreeElement {
    * Inside constant to be used for speed up some operations
    */
   private static final OperatorSUB OPERATOR_SUB = AbstractOperator.findForClass(OperatorSUB.class);
+  private static final OperatorAND OPERATOR_AND = AbstractOperator.findForClass(OperatorAND.class);
+  private static final OperatorOR OPERATOR_OR = AbstractOperator.findForClass(OperatorOR.class);
   /**
    * Empty array to avoid unnecessary operations
    */
   private static final ExpressionTreeElement[] EMPTY = new ExpressionTreeElement[0];
-  /**
-   * Contains the source string for the expression.
-   */
-  private final String sourceString;
-  /**
-   * Current include stack of the preprocessor to the source string.
-   */
-  private final FilePositionInfo[] includeStack;
   /**
    * The variable contains the wrapped expression item
    */
@@ -81,23 +86,16 @@ public class ExpressionTreeElement {
   private int nextChildSlot = 0;
 
   private ExpressionTreeElement() {
-    this.sourceString = "";
-    this.includeStack = new FilePositionInfo[0];
   }
 
   /**
    * The constructor
    *
-   * @param item         an expression item to be wrapped
-   * @param callStack    current call stack
-   * @param sourceString source string for the expression
+   * @param item an expression item to be wrapped
    */
-  ExpressionTreeElement(@Nonnull final ExpressionItem item, @Nonnull @MustNotContainNull final FilePositionInfo[] callStack, @Nullable final String sourceString) {
-    this.sourceString = sourceString;
-    this.includeStack = callStack;
-
+  ExpressionTreeElement(@Nonnull final ExpressionItem item) {
     if (item == null) {
-      throw new PreprocessorException("[Expression]The item is null", this.sourceString, this.includeStack, null);
+      throw new PreprocessorException("[Expression]The item is null", null, null, null);
     }
 
     int arity = 0;
@@ -201,11 +199,11 @@ public class ExpressionTreeElement {
     assertNotEmptySlot();
 
     if (oldOne == null) {
-      throw new PreprocessorException("[Expression]The old element is null", this.sourceString, this.includeStack, null);
+      throw new PreprocessorException("[Expression]The old element is null", null, null, null);
     }
 
     if (newOne == null) {
-      throw new PreprocessorException("[Expression]The new element is null", this.sourceString, this.includeStack, null);
+      throw new PreprocessorException("[Expression]The new element is null", null, null, null);
     }
 
     boolean result = false;
@@ -269,7 +267,7 @@ public class ExpressionTreeElement {
         parentTreeElement.replaceElement(this, element);
       }
       if (element.nextChildSlot >= element.childElements.length) {
-        throw new PreprocessorException("[Expression]Can't process expression item, may be wrong number of arguments", this.sourceString, this.includeStack, null);
+        throw new PreprocessorException("[Expression]Can't process expression item, may be wrong number of arguments", null, null, null);
       }
       element.childElements[element.nextChildSlot] = this;
       element.nextChildSlot++;
@@ -311,26 +309,26 @@ public class ExpressionTreeElement {
     assertNotEmptySlot();
 
     if (arguments == null) {
-      throw new PreprocessorException("[Expression]Argument list is null", this.sourceString, this.includeStack, null);
+      throw new PreprocessorException("[Expression]Argument list is null", null, null, null);
     }
 
     if (childElements.length != arguments.size()) {
-      throw new PreprocessorException("Wrong argument list size", this.sourceString, this.includeStack, null);
+      throw new PreprocessorException("Wrong argument list size", null, null, null);
     }
 
     int i = 0;
     for (ExpressionTree arg : arguments) {
       if (arg == null) {
-        throw new PreprocessorException("[Expression]Argument [" + (i + 1) + "] is null", this.sourceString, this.includeStack, null);
+        throw new PreprocessorException("[Expression]Argument [" + (i + 1) + "] is null", null, null, null);
       }
 
       if (!childElements[i].isEmptySlot()) {
-        throw new PreprocessorException("[Expression]Non-empty slot detected, it is possible that there is a program error, contact a developer please", this.sourceString, this.includeStack, null);
+        throw new PreprocessorException("[Expression]Non-empty slot detected, it is possible that there is a program error, contact a developer please", null, null, null);
       }
 
       final ExpressionTreeElement root = arg.getRoot();
       if (root.isEmptySlot()) {
-        throw new PreprocessorException("[Expression]Empty argument [" + (i + 1) + "] detected", this.sourceString, this.includeStack, null);
+        throw new PreprocessorException("[Expression]Empty argument [" + (i + 1) + "] detected", null, null, null);
       }
       childElements[i] = root;
       root.parentTreeElement = this;
@@ -346,13 +344,13 @@ public class ExpressionTreeElement {
    */
   private void addElementToNextFreeSlot(@Nonnull final ExpressionTreeElement element) {
     if (element == null) {
-      throw new PreprocessorException("[Expression]Element is null", this.sourceString, this.includeStack, null);
+      throw new PreprocessorException("[Expression]Element is null", null, null, null);
     }
 
     if (childElements.length == 0) {
-      throw new PreprocessorException("[Expression]Unexpected element, may be unknown function [" + savedItem.toString() + ']', this.sourceString, this.includeStack, null);
+      throw new PreprocessorException("[Expression]Unexpected element, may be unknown function [" + savedItem.toString() + ']', null, null, null);
     } else if (isFull()) {
-      throw new PreprocessorException("[Expression]There is not any possibility to add new argument [" + savedItem.toString() + ']', this.sourceString, this.includeStack, null);
+      throw new PreprocessorException("[Expression]There is not any possibility to add new argument [" + savedItem.toString() + ']', null, null, null);
     } else {
       childElements[nextChildSlot++] = element;
     }
@@ -376,13 +374,13 @@ public class ExpressionTreeElement {
                 switch (val.getType()) {
                   case INT: {
                     childElements = EMPTY;
-                    savedItem = Value.valueOf(0 - val.asLong());
+                    savedItem = Value.valueOf(0 - val.longValue());
                     makeMaxPriority();
                   }
                   break;
                   case FLOAT: {
                     childElements = EMPTY;
-                    savedItem = Value.valueOf(0.0f - val.asFloat());
+                    savedItem = Value.valueOf(0.0f - val.floatValue());
                     makeMaxPriority();
                   }
                   break;
@@ -421,4 +419,153 @@ public class ExpressionTreeElement {
       }
     }
   }
+
+  /**
+   * Optimize the element sub-tree, children are optimized at first and then the element is replaced by a constant value if it is possible.
+   *
+   * @param context a preprocessor context to be used for pure function calls, must not be null
+   * @see ExpressionTree#optimize(PreprocessorContext)
+   */
+  void optimize(@Nonnull final PreprocessorContext context) {
+    if (this.isEmptySlot()) {
+      return;
+    }
+
+    for (final ExpressionTreeElement element : this.childElements) {
+      if (!element.isEmptySlot()) {
+        element.optimize(context);
+      }
+    }
+
+    switch (this.savedItem.getExpressionItemType()) {
+      case OPERATOR: {
+        final AbstractOperator operator = (AbstractOperator) this.savedItem;
+        if (operator.getArity() == 1) {
+          final Value value = getChildValue(0);
+          final MethodHandle executor = value == null ? null : operator.findExecutor(value.getType());
+          if (executor != null) {
+            try {
+              replaceByValue((Value) executor.invokeExact(value));
+            } catch (Throwable ex) {
+              // keep the element to throw the error during evaluation
+            }
+          }
+        } else {
+          final Value left = getChildValue(0);
+          final Value right = getChildValue(1);
+          if (left != null && right != null) {
+            final MethodHandle executor = operator.findExecutor(left.getType(), right.getType());
+            if (executor != null) {
+              try {
+                replaceByValue((Value) executor.invokeExact(left, right));
+              } catch (Throwable ex) {
+                // keep the element to throw the error during evaluation
+              }
+            }
+          } else if (left != null && left.getType() == ValueType.BOOLEAN && Expression.isSkippableArgument(this.childElements[1])) {
+            if (operator == OPERATOR_AND && !left.booleanValue()) {
+              replaceByValue(Value.BOOLEAN_FALSE);
+            } else if (operator == OPERATOR_OR && left.booleanValue()) {
+              replaceByValue(Value.BOOLEAN_TRUE);
+            } else if ((operator == OPERATOR_AND || operator == OPERATOR_OR) && isBooleanResult(this.childElements[1])) {
+              // true&&x and false||x are x
+              replaceByChild(1);
+            }
+          } else if (right != null && right.getType() == ValueType.BOOLEAN && isBooleanResult(this.childElements[0])
+              && ((operator == OPERATOR_AND && right.booleanValue()) || (operator == OPERATOR_OR && !right.booleanValue()))) {
+            // x&&true and x||false are x, the constant can't change result of boolean operand
+            replaceByChild(0);
+          }
+        }
+      }
+      break;
+      case FUNCTION: {
+        final AbstractFunction function = (AbstractFunction) this.savedItem;
+        if (function.isPure()) {
+          final Value[] arguments = new Value[this.childElements.length];
+          for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = getChildValue(i);
+            if (arguments[i] == null) {
+              return;
+            }
+          }
+          final MethodHandle executor = function.findExecutor(arguments);
+          if (executor != null) {
+            try {
+              final Value result = (Value) executor.invokeExact(context, arguments);
+              if (result.getType().isCompatible(function.getResultType())) {
+                replaceByValue(result);
+              }
+            } catch (Throwable ex) {
+              // keep the element to throw the error during evaluation
+            }
+          }
+        }
+      }
+      break;
+    }
+  }
+
+  @Nullable
+  private Value getChildValue(final int index) {
+    final ExpressionTreeElement child = this.childElements[index];
+    return !child.isEmptySlot() && child.savedItem instanceof Value ? (Value) child.savedItem : null;
+  }
+
+  /**
+   * Check that the element is calculated into BOOLEAN value for sure, it is needed because AND, OR, XOR and NOT are bitwise
+   * operators for INT arguments.
+   *
+   * @param element an element to be checked, must not be null
+   * @return true if result of the element can be only BOOLEAN, false if it is unknown or another type
+   */
+  private static boolean isBooleanResult(@Nonnull final ExpressionTreeElement element) {
+    if (element.isEmptySlot()) {
+      return false;
+    }
+    final ExpressionItem item = element.savedItem;
+    switch (item.getExpressionItemType()) {
+      case VALUE:
+        return ((Value) item).getType() == ValueType.BOOLEAN;
+      case FUNCTION:
+        return ((AbstractFunction) item).getResultType() == ValueType.BOOLEAN;
+      case OPERATOR: {
+        if (item instanceof OperatorEQU || item instanceof OperatorNOTEQU || item instanceof OperatorLESS
+            || item instanceof OperatorLESSEQU || item instanceof OperatorGREAT || item instanceof OperatorGREATEQU) {
+          return true;
+        }
+        if (item instanceof OperatorAND || item instanceof OperatorOR || item instanceof OperatorXOR || item instanceof OperatorNOT) {
+          for (final ExpressionTreeElement child : element.childElements) {
+            if (!isBooleanResult(child)) {
+              return false;
+            }
+          }
+          return true;
+        }
+        return false;
+      }
+      default:
+        return false;
+    }
+  }
+
+  private void replaceByChild(final int index) {
+    final ExpressionTreeElement child = this.childElements[index];
+    this.savedItem = child.savedItem;
+    this.childElements = child.childElements;
+    this.nextChildSlot = child.nextChildSlot;
+    this.priority = child.priority;
+    for (final ExpressionTreeElement element : this.childElements) {
+      if (!element.isEmptySlot()) {
+        element.parentTreeElement = this;
+      }
+    }
+  }
+
+  private void replaceByValue(@Nonnull final Value value) {
+    this.savedItem = value;
+    this.childElements = EMPTY;
+    this.nextChildSlot = 0;
+    makeMaxPriority();
+  }
 }
@@ -36,42 +36,65 @@ import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
  */
 public final class Value implements ExpressionItem {
 
-  public static final Value BOOLEAN_TRUE = new Value(Boolean.TRUE);
-  public static final Value BOOLEAN_FALSE = new Value(Boolean.FALSE);
+  private static final int CACHE_LOW = -128;
+  private static final int CACHE_HIGH = 1023;
+  private static final Value[] INT_CACHE = new Value[CACHE_HIGH - CACHE_LOW + 1];
 
-  public static final Value INT_ZERO = new Value(0L);
-  public static final Value INT_ONE = new Value(1L);
-  public static final Value INT_TWO = new Value(2L);
-  public static final Value INT_THREE = new Value(3L);
-  public static final Value INT_FOUR = new Value(4L);
-  public static final Value INT_FIVE = new Value(5L);
+  static {
+    for (int i = 0; i < INT_CACHE.length; i++) {
+      INT_CACHE[i] = new Value(ValueType.INT, i + CACHE_LOW, 0.0d, null);
+    }
+  }
 
-  private final Object value;
-  private final ValueType type;
+  public static final Value BOOLEAN_TRUE = new Value(ValueType.BOOLEAN, 1L, 0.0d, null);
+  public static final Value BOOLEAN_FALSE = new Value(ValueType.BOOLEAN, 0L, 0.0d, null);
 
-  private Value(@Nullable final String val) {
-    value = val == null ? "null" : val;
-    type = ValueType.STRING;
-  }
+  public static final Value INT_ZERO = valueOf(0L);
+  public static final Value INT_ONE = valueOf(1L);
+  public static final Value INT_TWO = valueOf(2L);
+  public static final Value INT_THREE = valueOf(3L);
+  public static final Value INT_FOUR = valueOf(4L);
+  public static final Value INT_FIVE = valueOf(5L);
 
-  private Value(@Nonnull final Long val) {
-    value = val;
-    type = ValueType.INT;
-  }
+  private final ValueType type;
 
-  private Value(@Nonnull final Float val) {
-    value = val;
-    type = ValueType.FLOAT;
+  /**
+   * Value for INT, 1 or 0 for BOOLEAN
+   */
+  private final long longValue;
+
+  /**
+   * Value for FLOAT, it is always exact float value
+   */
+  private final double doubleValue;
+
+  /**
+   * Value for STRING
+   */
+  private final String stringValue;
+
+  private Value(@Nonnull final ValueType type, final long longValue, final double doubleValue, @Nullable final String stringValue) {
+    this.type = type;
+    this.longValue = longValue;
+    this.doubleValue = doubleValue;
+    this.stringValue = stringValue;
   }
 
-  private Value(@Nonnull final Boolean val) {
-    value = val;
-    type = ValueType.BOOLEAN;
+  @Nonnull
+  public static Value valueOf(@Nonnull final Long val) {
+    return valueOf(val.longValue());
   }
 
+  /**
+   * Get INT value, small values are cached.
+   *
+   * @param val the value
+   * @return value object, must not be null
+   * @since 7.0.1
+   */
   @Nonnull
-  public static Value valueOf(@Nonnull final Long val) {
-    return new Value(val);
+  public static Value valueOf(final long val) {
+    return val >= CACHE_LOW && val <= CACHE_HIGH ? INT_CACHE[(int) val - CACHE_LOW] : new Value(ValueType.INT, val, 0.0d, null);
   }
 
   @Nonnull
@@ -79,14 +102,38 @@ public final class Value implements ExpressionItem {
     return val ? BOOLEAN_TRUE : BOOLEAN_FALSE;
   }
 
+  /**
+   * Get BOOLEAN value.
+   *
+   * @param val the value
+   * @return one of boolean constants
+   * @since 7.0.1
+   */
+  @Nonnull
+  public static Value valueOf(final boolean val) {
+    return val ? BOOLEAN_TRUE : BOOLEAN_FALSE;
+  }
+
   @Nonnull
   public static Value valueOf(@Nonnull final Float val) {
-    return new Value(val);
+    return valueOf(val.floatValue());
+  }
+
+  /**
+   * Get FLOAT value.
+   *
+   * @param val the value
+   * @return value object, must not be null
+   * @since 7.0.1
+   */
+  @Nonnull
+  public static Value valueOf(final float val) {
+    return new Value(ValueType.FLOAT, 0L, val, null);
   }
 
   @Nonnull
   public static Value valueOf(@Nonnull final String val) {
-    return new Value(val);
+    return new Value(ValueType.STRING, 0L, 0.0d, val == null ? "null" : val);
   }
 
   @Nonnull
@@ -102,16 +149,16 @@ public final class Value implements ExpressionItem {
     }
 
     try {
-      return new Value(Long.parseLong(str));
+      return valueOf(Long.parseLong(str));
     } catch (NumberFormatException ex) {
     }
 
     try {
-      return new Value(Float.parseFloat(str));
+      return valueOf(Float.parseFloat(str));
     } catch (NumberFormatException ex) {
     }
 
-    return new Value(str);
+    return valueOf(str);
   }
 
   @Nonnull
@@ -126,15 +173,15 @@ public final class Value implements ExpressionItem {
       }
       break;
       case INT: {
-        result = new Value((Long) getValue(str, ValueType.INT));
+        result = valueOf((Long) getValue(str, ValueType.INT));
       }
       break;
       case FLOAT: {
-        result = new Value((Float) getValue(str, ValueType.FLOAT));
+        result = valueOf((Float) getValue(str, ValueType.FLOAT));
       }
       break;
       case STRING: {
-        result = new Value((String) getValue(str, ValueType.STRING));
+        result = valueOf((String) getValue(str, ValueType.STRING));
       }
       break;
       default: {
@@ -213,23 +260,26 @@ public final class Value implements ExpressionItem {
 
   @Nonnull
   public Object getValue() {
-    return value;
+    switch (type) {
+      case INT:
+        return this.longValue;
+      case FLOAT:
+        return (float) this.doubleValue;
+      case BOOLEAN:
+        return this.longValue != 0L;
+      default:
+        return this.stringValue;
+    }
   }
 
   @Nonnull
   public Long asLong() {
-    if (type != ValueType.INT) {
-      throw new IllegalStateException("Value is not integer");
-    }
-    return (Long) value;
+    return longValue();
   }
 
   @Nonnull
   public Float asFloat() {
-    if (type != ValueType.FLOAT) {
-      throw new IllegalStateException("Value is not float");
-    }
-    return (Float) value;
+    return floatValue();
   }
 
   @Nonnull
@@ -237,34 +287,73 @@ public final class Value implements ExpressionItem {
     if (type != ValueType.STRING) {
       throw new IllegalStateException("Value is not string");
     }
-    return (String) value;
+    return this.stringValue;
   }
 
   @Nonnull
   public Boolean asBoolean() {
+    return booleanValue();
+  }
+
+  /**
+   * Get INT value without boxing.
+   *
+   * @return the value
+   * @throws IllegalStateException if the value is not integer
+   * @since 7.0.1
+   */
+  public long longValue() {
+    if (type != ValueType.INT) {
+      throw new IllegalStateException("Value is not integer");
+    }
+    return this.longValue;
+  }
+
+  /**
+   * Get FLOAT value without boxing.
+   *
+   * @return the value
+   * @throws IllegalStateException if the value is not float
+   * @since 7.0.1
+   */
+  public float floatValue() {
+    if (type != ValueType.FLOAT) {
+      throw new IllegalStateException("Value is not float");
+    }
+    return (float) this.doubleValue;
+  }
+
+  /**
+   * Get BOOLEAN value without boxing.
+   *
+   * @return the value
+   * @throws IllegalStateException if the value is not boolean
+   * @since 7.0.1
+   */
+  public boolean booleanValue() {
     if (type != ValueType.BOOLEAN) {
       throw new IllegalStateException("Value is not boolean");
     }
-    return (Boolean) value;
+    return this.longValue != 0L;
   }
 
   @Nonnull
   public String toStringDetail() {
     switch (type) {
       case BOOLEAN: {
-        return "Boolean : " + value;
+        return "Boolean : " + this;
       }
       case INT: {
-        return "Integer : " + value;
+        return "Integer : " + this;
       }
       case UNKNOWN: {
         return "Unknown : -";
       }
       case FLOAT: {
-        return "Float : " + value;
+        return "Float : " + this;
       }
       case STRING: {
-        return "String : " + value;
+        return "String : " + this;
       }
     }
     return "!!! ERROR , UNSUPPORTED TYPE [" + type + "]";
@@ -275,15 +364,15 @@ public final class Value implements ExpressionItem {
   public String toString() {
     switch (type) {
       case BOOLEAN:
-        return asBoolean().toString();
+        return this.longValue != 0L ? "true" : "false";
       case INT:
-        return asLong().toString();
+        return Long.toString(this.longValue);
       case UNKNOWN:
         return "<UNKNOWN>";
       case FLOAT:
-        return asFloat().toString();
+        return Float.toString((float) this.doubleValue);
       case STRING:
-        return asString();
+        return this.stringValue;
       default:
         return "!!! ERROR , UNSUPPORTED TYPE [" + type + "]";
     }
@@ -309,15 +398,33 @@ public final class Value implements ExpressionItem {
 
     if (var instanceof Value) {
       final Value thatValue = (Value) var;
-
-      return this.type == thatValue.type && this.value.equals(thatValue.value);
+      if (this.type != thatValue.type) {
+        return false;
+      }
+      switch (this.type) {
+        case FLOAT:
+          return Float.floatToIntBits((float) this.doubleValue) == Float.floatToIntBits((float) thatValue.doubleValue);
+        case STRING:
+          return this.stringValue.equals(thatValue.stringValue);
+        default:
+          return this.longValue == thatValue.longValue;
+      }
     }
     return false;
   }
 
   @Override
   public int hashCode() {
-    return this.value.hashCode();
+    switch (this.type) {
+      case INT:
+        return Long.hashCode(this.longValue);
+      case FLOAT:
+        return Float.hashCode((float) this.doubleValue);
+      case BOOLEAN:
+        return Boolean.hashCode(this.longValue != 0L);
+      default:
+        return this.stringValue.hashCode();
+    }
   }
 
 }
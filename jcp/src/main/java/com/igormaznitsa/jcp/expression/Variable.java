@@ -21,7 +21,11 @@
 
 package com.igormaznitsa.jcp.expression;
 
+import com.igormaznitsa.jcp.context.SymbolTable;
+import com.igormaznitsa.jcp.utils.PreprocessorUtils;
+
 import javax.annotation.Nonnull;
+import java.lang.ref.WeakReference;
 
 import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
 
@@ -37,6 +41,17 @@ public final class Variable implements ExpressionItem {
    */
   private final String variableName;
 
+  /**
+   * The normalized variable name
+   */
+  private final String normalizedName;
+
+  /**
+   * The slot of the normalized name resolved in the last used symbol table, parsed expressions are shared between contexts
+   * so that the slot is resolved again if another symbol table is used, the table is weakly referenced to not keep it after its session
+   */
+  private volatile ResolvedSlot resolvedSlot;
+
   /**
    * The constructor
    *
@@ -45,6 +60,7 @@ public final class Variable implements ExpressionItem {
   public Variable(@Nonnull final String varName) {
     assertNotNull("Var name is null", varName);
     this.variableName = varName;
+    this.normalizedName = assertNotNull(PreprocessorUtils.normalizeVariableName(varName));
   }
 
   /**
@@ -57,6 +73,35 @@ public final class Variable implements ExpressionItem {
     return this.variableName;
   }
 
+  /**
+   * Get the normalized variable name
+   *
+   * @return the name in the format used by the preprocessor context
+   * @since 7.0.1
+   */
+  @Nonnull
+  public String getNormalizedName() {
+    return this.normalizedName;
+  }
+
+  /**
+   * Get slot of the variable in variable tables which use a symbol table
+   *
+   * @param symbols the symbol table, must not be null
+   * @return the slot allocated for the normalized name
+   * @see SymbolTable#slotFor(String)
+   * @since 7.0.1
+   */
+  public int getSlot(@Nonnull final SymbolTable symbols) {
+    final ResolvedSlot resolved = this.resolvedSlot;
+    if (resolved != null && resolved.symbols.get() == symbols) {
+      return resolved.slot;
+    }
+    final int slot = symbols.slotFor(this.normalizedName);
+    this.resolvedSlot = new ResolvedSlot(symbols, slot);
+    return slot;
+  }
+
   /**
    * Get the expression item type
    *
@@ -85,4 +130,15 @@ public final class Variable implements ExpressionItem {
     return this.variableName;
   }
 
+  private static final class ResolvedSlot {
+
+    private final WeakReference<SymbolTable> symbols;
+    private final int slot;
+
+    private ResolvedSlot(@Nonnull final SymbolTable symbols, final int slot) {
+      this.symbols = new WeakReference<>(symbols);
+      this.slot = slot;
+    }
+  }
+
 }
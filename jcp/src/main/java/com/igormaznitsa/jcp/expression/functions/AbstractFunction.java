@@ -21,10 +21,20 @@
 
 package com.igormaznitsa.jcp.expression.functions;
 
+import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.expression.ExpressionItem;
 import com.igormaznitsa.jcp.expression.ExpressionItemPriority;
 import com.igormaznitsa.jcp.expression.ExpressionItemType;
+import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
+import com.igormaznitsa.jcp.expression.functions.csv.FunctionCSV_FIND;
+import com.igormaznitsa.jcp.expression.functions.csv.FunctionCSV_GET;
+import com.igormaznitsa.jcp.expression.functions.csv.FunctionCSV_OPEN;
+import com.igormaznitsa.jcp.expression.functions.csv.FunctionCSV_SIZE;
+import com.igormaznitsa.jcp.expression.functions.json.FunctionJSON_GET;
+import com.igormaznitsa.jcp.expression.functions.json.FunctionJSON_OPEN;
+import com.igormaznitsa.jcp.expression.functions.json.FunctionJSON_PATH;
+import com.igormaznitsa.jcp.expression.functions.json.FunctionJSON_SIZE;
 import com.igormaznitsa.jcp.expression.functions.xml.FunctionXML_ATTR;
 import com.igormaznitsa.jcp.expression.functions.xml.FunctionXML_GET;
 import com.igormaznitsa.jcp.expression.functions.xml.FunctionXML_LIST;
@@ -39,6 +49,11 @@ import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -64,6 +79,19 @@ public abstract class AbstractFunction implements ExpressionItem {
    */
   private static volatile AbstractFunction[] allFunctions;
   private static volatile Map<String, AbstractFunction> functionNameMap;
+  /**
+   * Type of method handles returned by {@link #findExecutor(Value[])}
+   *
+   * @since 7.0.1
+   */
+  public static final MethodType EXECUTOR_TYPE = MethodType.methodType(Value.class, PreprocessorContext.class, Value[].class);
+  private static final int TYPE_NUMBER = ValueType.values().length;
+  /**
+   * Max function arity for which all argument type combinations are resolved into a flat table
+   */
+  private static final int MAX_TABLE_ARITY = 3;
+
+  private volatile DispatchTable dispatchTable;
 
   @Nonnull
   @MustNotContainNull
@@ -96,7 +124,16 @@ public abstract class AbstractFunction implements ExpressionItem {
           new FunctionXML_TEXT(),
           new FunctionXML_OPEN(),
           new FunctionXML_XLIST(),
-          new FunctionXML_XELEMENT()
+          new FunctionXML_XELEMENT(),
+          new FunctionJSON_OPEN(),
+          new FunctionJSON_GET(),
+          new FunctionJSON_SIZE(),
+          new FunctionJSON_PATH(),
+          new FunctionCSV_OPEN(),
+          new FunctionCSV_SIZE(),
+          new FunctionCSV_GET(),
+          new FunctionCSV_FIND(),
+          new FunctionPROPS_GET()
       };
     }
     return allFunctions;
@@ -184,6 +221,43 @@ public abstract class AbstractFunction implements ExpressionItem {
   @Nonnull
   public abstract ValueType getResultType();
 
+  /**
+   * Check that the function is pure one, its result depends only on argument values and the function doesn't use the preprocessor context.
+   * Calls of pure functions with constant arguments are calculated once during expression optimization.
+   *
+   * @return true if the function is pure one, false otherwise
+   * @since 7.0.1
+   */
+  public boolean isPure() {
+    return false;
+  }
+
+  /**
+   * Check that results of the function can be cached in {@link FunctionResultCache} to be reused for calls with the same arguments. A memoizable
+   * function must be pure one or it must provide state of all external resources used by the call through {@link #makeMemoKeyExtension(PreprocessorContext, Value[])}.
+   * Usually only functions which are more expensive than a cache lookup are memoizable.
+   *
+   * @return true if results of the function can be cached, false otherwise
+   * @since 7.0.1
+   */
+  public boolean isMemoizable() {
+    return false;
+  }
+
+  /**
+   * Make part of the memo key describing state of external resources used by the function call (for instance modification time and size of a read file).
+   *
+   * @param context   the preprocessor context, must not be null
+   * @param arguments argument values of the call, must not be null
+   * @return object with equals and hashCode describing state of used external resources, null if the call doesn't use any external resource
+   * @see #isMemoizable()
+   * @since 7.0.1
+   */
+  @Nullable
+  public Object makeMemoKeyExtension(@Nonnull final PreprocessorContext context, @Nonnull @MustNotContainNull final Value[] arguments) {
+    return null;
+  }
+
   /**
    * Get the priority of the function in the expression tree
    *
@@ -195,6 +269,121 @@ public abstract class AbstractFunction implements ExpressionItem {
     return ExpressionItemPriority.FUNCTION;
   }
 
+  /**
+   * Find the first allowed argument type combination compatible with argument values.
+   *
+   * @param arguments argument values, must not be null
+   * @return allowed signature compatible with arguments or null if there is not any such one
+   * @since 7.0.1
+   */
+  @Nullable
+  @MustNotContainNull
+  public final ValueType[] findAllowedSignature(@Nonnull @MustNotContainNull final Value[] arguments) {
+    final int index = findSignatureIndex(toTypes(arguments));
+    return index < 0 ? null : this.getAllowedArgumentTypes()[index];
+  }
+
+  @Nonnull
+  @MustNotContainNull
+  private static ValueType[] toTypes(@Nonnull @MustNotContainNull final Value[] arguments) {
+    final ValueType[] result = new ValueType[arguments.length];
+    for (int i = 0; i < arguments.length; i++) {
+      result[i] = arguments[i].getType();
+    }
+    return result;
+  }
+
+  private int findSignatureIndex(@Nonnull @MustNotContainNull final ValueType[] arguments) {
+    final ValueType[][] allowedSignatures = this.getAllowedArgumentTypes();
+    for (int i = 0; i < allowedSignatures.length; i++) {
+      final ValueType[] current = allowedSignatures[i];
+      if (current.length != arguments.length) {
+        continue;
+      }
+      boolean allCompatible = true;
+      for (int a = 0; a < current.length; a++) {
+        if (!current[a].isCompatible(arguments[a])) {
+          allCompatible = false;
+          break;
+        }
+      }
+      if (allCompatible) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find resolved method handle to execute the function for argument values. Overloads of the function are resolved once and cached,
+   * for functions with small arity the result is just a lookup in a table indexed by argument types.
+   *
+   * @param arguments argument values, must not be null
+   * @return method handle with {@link #EXECUTOR_TYPE} type or null if arguments are not supported or there is no method for allowed signature
+   * @see #findAllowedSignature(Value[])
+   * @since 7.0.1
+   */
+  @Nullable
+  public final MethodHandle findExecutor(@Nonnull @MustNotContainNull final Value[] arguments) {
+    DispatchTable table = this.dispatchTable;
+    if (table == null) {
+      table = new DispatchTable(this);
+      this.dispatchTable = table;
+    }
+
+    if (arguments.length != this.getArity()) {
+      return null;
+    }
+
+    if (table.byTypes == null) {
+      final int index = findSignatureIndex(toTypes(arguments));
+      return index < 0 ? null : table.bySignature[index];
+    } else {
+      int index = 0;
+      for (final Value arg : arguments) {
+        index = index * TYPE_NUMBER + arg.getType().ordinal();
+      }
+      return table.byTypes[index];
+    }
+  }
+
+  /**
+   * Make method handle to execute the function for an allowed signature. By default it is bound public method with name made from
+   * {@link #EXECUTION_PREFIX} and type signatures, arguments of the method are preprocessor context and argument values.
+   *
+   * @param signature allowed signature from {@link #getAllowedArgumentTypes()}, must not be null
+   * @return method handle with {@link #EXECUTOR_TYPE} type or null if there is not any method for the signature
+   * @since 7.0.1
+   */
+  @Nullable
+  protected MethodHandle makeExecutor(@Nonnull @MustNotContainNull final ValueType[] signature) {
+    final StringBuilder name = new StringBuilder(EXECUTION_PREFIX);
+    for (final ValueType type : signature) {
+      name.append(type.getSignature());
+    }
+
+    final Class<?>[] args = new Class<?>[signature.length + 1];
+    args[0] = PreprocessorContext.class;
+    Arrays.fill(args, 1, args.length, Value.class);
+
+    final Method method;
+    try {
+      method = this.getClass().getMethod(name.toString(), args);
+    } catch (NoSuchMethodException ex) {
+      return null;
+    }
+
+    if (Value.class != method.getReturnType()) {
+      return null;
+    }
+
+    try {
+      return MethodHandles.publicLookup().unreflect(method).bindTo(this).asSpreader(Value[].class, signature.length);
+    } catch (IllegalAccessException ex) {
+      throw new IllegalStateException("Can't get access to function method: " + method, ex);
+    }
+  }
+
   /**
    * Get the expression item type
    *
@@ -212,4 +401,40 @@ public abstract class AbstractFunction implements ExpressionItem {
   public String toString() {
     return "FUNCTION: " + getName();
   }
+
+  private static final class DispatchTable {
+
+    private final MethodHandle[] bySignature;
+    private final MethodHandle[] byTypes;
+
+    private DispatchTable(@Nonnull final AbstractFunction function) {
+      final ValueType[][] allowed = function.getAllowedArgumentTypes();
+      this.bySignature = new MethodHandle[allowed.length];
+      for (int i = 0; i < allowed.length; i++) {
+        this.bySignature[i] = allowed[i].length == function.getArity() ? function.makeExecutor(allowed[i]) : null;
+      }
+
+      final int arity = function.getArity();
+      if (arity <= MAX_TABLE_ARITY) {
+        final ValueType[] types = ValueType.values();
+        int size = 1;
+        for (int i = 0; i < arity; i++) {
+          size *= TYPE_NUMBER;
+        }
+        this.byTypes = new MethodHandle[size];
+        final ValueType[] probe = new ValueType[arity];
+        for (int index = 0; index < size; index++) {
+          int rest = index;
+          for (int a = arity - 1; a >= 0; a--) {
+            probe[a] = types[rest % TYPE_NUMBER];
+            rest /= TYPE_NUMBER;
+          }
+          final int signatureIndex = function.findSignatureIndex(probe);
+          this.byTypes[index] = signatureIndex < 0 ? null : this.bySignature[signatureIndex];
+        }
+      } else {
+        this.byTypes = null;
+      }
+    }
+  }
 }
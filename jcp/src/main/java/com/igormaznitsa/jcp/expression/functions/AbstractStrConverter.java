@@ -51,4 +51,14 @@ public abstract class AbstractStrConverter extends AbstractFunction {
   public final ValueType[][] getAllowedArgumentTypes() {
     return ARG_TYPES;
   }
+
+  @Override
+  public boolean isPure() {
+    return true;
+  }
+
+  @Override
+  public boolean isMemoizable() {
+    return true;
+  }
 }
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Thread safe persistent cache of encoded bin files, it keeps texts generated by {@code binfile} in a folder so that they can be reused between
+ * preprocessing runs, builds and variants. A text is found by SHA-256 digest of the source file content combined with encoding parameters, so that
+ * the same file placed in different folders is encoded only once. If summary size of cached texts exceeds the max size then the least recently used
+ * texts are removed. Problems of the cache folder are not fatal, they just lead to encoding of the file.
+ *
+ * @see FunctionBINFILE
+ * @since 7.0.1
+ */
+public final class BinFileCache {
+
+  /**
+   * Version of cached text format, must be changed if encoding of bin files is changed.
+   */
+  private static final String FORMAT_VERSION = "1";
+  private static final String SUFFIX = ".jcpbin";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File folder;
+  private final long maxSize;
+  private final Map<List<Object>, String> fileDigests = new HashMap<>();
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructor.
+   *
+   * @param folder  folder to keep cached texts, it will be created if not exists, must not be null
+   * @param maxSize max summary size of cached texts in bytes, must be greater than zero
+   */
+  public BinFileCache(@Nonnull final File folder, final long maxSize) {
+    if (maxSize <= 0L) {
+      throw new IllegalArgumentException("Max size must be greater than zero: " + maxSize);
+    }
+    this.folder = assertNotNull(folder);
+    this.maxSize = maxSize;
+  }
+
+  @Nonnull
+  private static MessageDigest makeDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new Error("SHA-256 is not supported", ex);
+    }
+  }
+
+  @Nonnull
+  private static String toHex(@Nonnull final byte[] data) {
+    final char[] result = new char[data.length * 2];
+    for (int i = 0; i < data.length; i++) {
+      result[i * 2] = Character.forDigit((data[i] >>> 4) & 0xF, 16);
+      result[i * 2 + 1] = Character.forDigit(data[i] & 0xF, 16);
+    }
+    return new String(result);
+  }
+
+  @Nonnull
+  public File getFolder() {
+    return this.folder;
+  }
+
+  public long getMaxSize() {
+    return this.maxSize;
+  }
+
+  /**
+   * Make key for encoding of a file. Digest of file content is calculated once for the same file path, size and modification time.
+   *
+   * @param file       the source bin file, must not be null
+   * @param type       name of encoding type, must not be null
+   * @param deflate    flag shows that content is deflated before encoding
+   * @param lineLength max length of line or -1 if lines are not split
+   * @param endOfLine  end of line used to split lines, must not be null
+   * @return key in hex form, must not be null
+   * @throws IOException thrown if the file can't be read
+   */
+  @Nonnull
+  public String makeKey(@Nonnull final File file, @Nonnull final String type, final boolean deflate, final int lineLength, @Nonnull final String endOfLine) throws IOException {
+    final MessageDigest digest = makeDigest();
+    digest.update(makeFileDigest(file).getBytes(StandardCharsets.UTF_8));
+    digest.update(('\u0000' + FORMAT_VERSION + '\u0000' + type + '\u0000' + deflate + '\u0000' + lineLength + '\u0000' + endOfLine).getBytes(StandardCharsets.UTF_8));
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Calculate digest of a file in advance so that making of its key doesn't need to read the file. Problems are ignored.
+   *
+   * @param file the file, must not be null
+   * @see com.igormaznitsa.jcp.context.ResourcePrefetcher
+   */
+  public void prefetch(@Nonnull final File file) {
+    try {
+      makeFileDigest(file);
+    } catch (IOException ex) {
+      // the file will be read again by encoding
+    }
+  }
+
+  @Nonnull
+  private String makeFileDigest(@Nonnull final File file) throws IOException {
+    final List<Object> fileKey = Arrays.asList(file.getAbsolutePath(), file.length(), file.lastModified());
+    synchronized (this.fileDigests) {
+      final String found = this.fileDigests.get(fileKey);
+      if (found != null) {
+        return found;
+      }
+    }
+
+    final MessageDigest digest = makeDigest();
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    try (final InputStream in = Files.newInputStream(file.toPath())) {
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    final String result = toHex(digest.digest());
+    synchronized (this.fileDigests) {
+      this.fileDigests.put(fileKey, result);
+    }
+    return result;
+  }
+
+  @Nonnull
+  private File makeFile(@Nonnull final String key) {
+    return new File(this.folder, key + SUFFIX);
+  }
+
+  /**
+   * Find cached text for a key, found text is marked as recently used.
+   *
+   * @param key the key, must not be null
+   * @return cached text or null if not found or can't be read
+   */
+  @Nullable
+  public synchronized String get(@Nonnull final String key) {
+    final File file = makeFile(assertNotNull(key));
+    String result = null;
+    if (file.isFile()) {
+      try {
+        result = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        // modification time is used as the last usage time for eviction, the text stays valid even if the time can't be changed
+        file.setLastModified(System.currentTimeMillis());
+      } catch (IOException ex) {
+        result = null;
+      }
+    }
+    if (result == null) {
+      this.misses++;
+    } else {
+      this.hits++;
+    }
+    return result;
+  }
+
+  /**
+   * Save text into the cache, the least recently used texts can be removed to keep the max size. A text bigger than the max size is not cached.
+   *
+   * @param key  the key, must not be null
+   * @param text the text, must not be null
+   * @return true if the text has been saved, false otherwise
+   */
+  public synchronized boolean put(@Nonnull final String key, @Nonnull final String text) {
+    final byte[] data = text.getBytes(StandardCharsets.UTF_8);
+    if (data.length > this.maxSize) {
+      return false;
+    }
+
+    final File file = makeFile(assertNotNull(key));
+    try {
+      if (!this.folder.isDirectory() && !this.folder.mkdirs() && !this.folder.isDirectory()) {
+        return false;
+      }
+      final Path tempFile = Files.createTempFile(this.folder.toPath(), key, ".tmp");
+      try {
+        Files.write(tempFile, data);
+        try {
+          Files.move(tempFile, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+          Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+    } catch (IOException ex) {
+      return false;
+    }
+
+    evict(file);
+    return true;
+  }
+
+  private void evict(@Nonnull final File keep) {
+    final File[] files = this.folder.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    if (files == null) {
+      return;
+    }
+    long size = 0L;
+    for (final File f : files) {
+      size += f.length();
+    }
+    if (size <= this.maxSize) {
+      return;
+    }
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (final File f : files) {
+      if (size <= this.maxSize) {
+        break;
+      }
+      if (!f.equals(keep)) {
+        final long length = f.length();
+        if (f.delete()) {
+          size -= length;
+        }
+      }
+    }
+  }
+
+  /**
+   * Get summary size of texts in the cache folder.
+   *
+   * @return size in bytes
+   */
+  public synchronized long getSize() {
+    final File[] files = this.folder.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    long result = 0L;
+    if (files != null) {
+      for (final File f : files) {
+        result += f.length();
+      }
+    }
+    return result;
+  }
+
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  @Override
+  @Nonnull
+  public synchronized String toString() {
+    return String.format("BinFileCache(folder=%s, maxSize=%d, hits=%d, misses=%d)", this.folder, this.maxSize, this.hits, this.misses);
+  }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Thread safe memory bounded cache of texts produced by {@code evalfile}. During evaluation of a file its context records variables read before
+ * they were changed by the file, states of used files and results of functions depending on external resources. A cached text is reused only
+ * if all recorded variables have the same values in the calling context and all files are not changed. Evaluations which use special variables,
+ * shared resources, user functions or actions are not cached. Log messages made by the file are not repeated if its text is taken from the cache.
+ *
+ * @see FunctionEVALFILE
+ * @see Recorder
+ * @since 7.0.1
+ */
+public final class EvalFileCache {
+
+  /**
+   * Approximate weight of an entry without strings.
+   */
+  private static final int ENTRY_WEIGHT = 64;
+
+  /**
+   * Max number of cached texts for one file evaluated with different variable values.
+   */
+  private static final int MAX_TEXTS_PER_FILE = 16;
+
+  private final long maxWeight;
+  private final Map<List<Object>, List<Entry>> map = new LinkedHashMap<>(64, 0.75f, true);
+  private long weight;
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructor.
+   *
+   * @param maxWeight max summary weight of cached entries, must be greater than zero
+   */
+  public EvalFileCache(final long maxWeight) {
+    if (maxWeight <= 0L) {
+      throw new IllegalArgumentException("Max weight must be greater than zero: " + maxWeight);
+    }
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * Make key for evaluation of a file in a context, the key contains the file and context options affecting the result.
+   *
+   * @param context the calling context, must not be null
+   * @param file    the evaluated file, must not be null
+   * @return the key, must not be null
+   */
+  @Nonnull
+  @MustNotContainNull
+  public static List<Object> makeKey(@Nonnull final PreprocessorContext context, @Nonnull final File file) {
+    final List<File> sources = new ArrayList<>();
+    for (final PreprocessorContext.SourceFolder folder : context.getSources()) {
+      sources.add(folder.getAsFile());
+    }
+    return Arrays.asList(file.getAbsolutePath(), context.getEol(), context.isAllowWhitespaces(), context.isPreserveIndents(),
+        context.isUnknownVariableAsFalse(), context.getSourceEncoding(), sources);
+  }
+
+  /**
+   * Find cached text actual for the calling context. If the calling context is recorded itself then recorded dependencies of the found text
+   * are added into its recorder.
+   *
+   * @param key     key made for the file, must not be null
+   * @param context the calling context, must not be null
+   * @return found text or null if there is not any actual one
+   */
+  @Nullable
+  public String find(@Nonnull @MustNotContainNull final List<Object> key, @Nonnull final PreprocessorContext context) {
+    Entry found = null;
+    synchronized (this) {
+      final List<Entry> entries = this.map.get(assertNotNull(key));
+      if (entries != null) {
+        for (final Iterator<Entry> iterator = entries.iterator(); iterator.hasNext(); ) {
+          final Entry entry = iterator.next();
+          if (entry.isActual(context)) {
+            iterator.remove();
+            entries.add(0, entry);
+            found = entry;
+            break;
+          }
+        }
+      }
+      if (found == null) {
+        this.misses++;
+      } else {
+        this.hits++;
+      }
+    }
+
+    if (found == null) {
+      return null;
+    }
+    final Recorder recorder = context.getEvalFileRecorder();
+    if (recorder != null) {
+      found.replay(recorder);
+    }
+    return found.text;
+  }
+
+  /**
+   * Place text made by a recorded evaluation into the cache. Nothing is cached if the recorder is marked as not cacheable or the entry is
+   * heavier than the max weight, the least recently used files can be removed to keep max weight.
+   *
+   * @param key      key made for the file, must not be null
+   * @param recorder recorder of the evaluation, must not be null
+   * @param text     produced text, must not be null
+   * @return true if the text has been cached, false otherwise
+   */
+  public synchronized boolean put(@Nonnull @MustNotContainNull final List<Object> key, @Nonnull final Recorder recorder, @Nonnull final String text) {
+    if (!recorder.isCacheable()) {
+      return false;
+    }
+    final Entry entry = new Entry(recorder, assertNotNull(text));
+    if (entry.weight > this.maxWeight) {
+      return false;
+    }
+
+    final List<Entry> entries = this.map.computeIfAbsent(key, k -> new ArrayList<>());
+    entries.add(0, entry);
+    this.weight += entry.weight;
+    while (entries.size() > MAX_TEXTS_PER_FILE) {
+      this.weight -= entries.remove(entries.size() - 1).weight;
+    }
+
+    final Iterator<List<Entry>> iterator = this.map.values().iterator();
+    while (this.weight > this.maxWeight && iterator.hasNext()) {
+      final List<Entry> eldest = iterator.next();
+      if (eldest == entries) {
+        while (this.weight > this.maxWeight && entries.size() > 1) {
+          this.weight -= entries.remove(entries.size() - 1).weight;
+        }
+      } else {
+        for (final Entry e : eldest) {
+          this.weight -= e.weight;
+        }
+        iterator.remove();
+      }
+    }
+    return true;
+  }
+
+  public synchronized void clear() {
+    this.map.clear();
+    this.weight = 0L;
+    this.hits = 0L;
+    this.misses = 0L;
+  }
+
+  /**
+   * Get number of cached texts.
+   *
+   * @return number of texts for all files
+   */
+  public synchronized int size() {
+    int result = 0;
+    for (final List<Entry> entries : this.map.values()) {
+      result += entries.size();
+    }
+    return result;
+  }
+
+  public synchronized long getWeight() {
+    return this.weight;
+  }
+
+  public long getMaxWeight() {
+    return this.maxWeight;
+  }
+
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  @Override
+  @Nonnull
+  public synchronized String toString() {
+    return String.format("EvalFileCache(texts=%d, weight=%d/%d, hits=%d, misses=%d)", this.size(), this.weight, this.maxWeight, this.hits, this.misses);
+  }
+
+  /**
+   * State of an external resource used by an evaluation.
+   */
+  private interface Dependency {
+    boolean isActual(@Nonnull PreprocessorContext context);
+  }
+
+  /**
+   * Recorder of everything what an evaluated file depends on, it is placed into the context used for evaluation and fed by the context and
+   * expressions. Recorder of nested evaluation passes recorded data to the parent recorder. Not thread safe, it must be used only by the thread
+   * evaluating the file.
+   *
+   * @see PreprocessorContext#getEvalFileRecorder()
+   */
+  public static final class Recorder {
+
+    private final Recorder parent;
+    private final Map<String, Value[]> readVariables = new LinkedHashMap<>();
+    private final Set<String> changedVariables = new HashSet<>();
+    private final Set<Dependency> dependencies = new LinkedHashSet<>();
+    private boolean cacheable = true;
+
+    /**
+     * Constructor.
+     *
+     * @param parent recorder of the calling context if it is recorded too, can be null
+     */
+    public Recorder(@Nullable final Recorder parent) {
+      this.parent = parent;
+    }
+
+    /**
+     * Notify about reading of a variable, only the first read of a variable not changed by the evaluation is recorded.
+     *
+     * @param normalizedName normalized name of the variable, must not be null
+     * @param localValue     current value of local variable with the name, can be null
+     * @param globalValue    current value of global variable with the name, can be null
+     */
+    public void onVariableRead(@Nonnull final String normalizedName, @Nullable final Value localValue, @Nullable final Value globalValue) {
+      if (!this.changedVariables.contains(normalizedName) && !this.readVariables.containsKey(normalizedName)) {
+        this.readVariables.put(normalizedName, new Value[] {localValue, globalValue});
+        if (this.parent != null) {
+          this.parent.onVariableRead(normalizedName, localValue, globalValue);
+        }
+      }
+    }
+
+    /**
+     * Notify about change of a variable, the change is visible only for the evaluation.
+     *
+     * @param normalizedName normalized name of the variable, must not be null
+     */
+    public void onVariableChange(@Nonnull final String normalizedName) {
+      this.changedVariables.add(normalizedName);
+    }
+
+    /**
+     * Notify that the evaluation has read a file.
+     *
+     * @param file the read file, must not be null
+     */
+    public void onFileRead(@Nonnull final File file) {
+      addDependency(new FileDependency(file));
+    }
+
+    /**
+     * Notify about call of a function, calls of pure functions are ignored, results of memoizable functions are recorded as dependencies.
+     *
+     * @param context   the context of the call, must not be null
+     * @param function  the called function, must not be null
+     * @param arguments argument values, must not be null
+     */
+    public void onFunctionCall(@Nonnull final PreprocessorContext context, @Nonnull final AbstractFunction function, @Nonnull @MustNotContainNull final Value[] arguments) {
+      if (function.isPure() || function instanceof FunctionIS || function instanceof FunctionEVALFILE) {
+        // results depend only on arguments or on variables and files which are recorded by the context
+        return;
+      }
+      final Object extension = function.isMemoizable() ? function.makeMemoKeyExtension(context, arguments) : null;
+      if (extension == null) {
+        markNotCacheable();
+      } else {
+        addDependency(new FunctionDependency(function, arguments.clone(), extension));
+      }
+    }
+
+    /**
+     * Mark the evaluation as not cacheable one, for instance because it uses special variables or has side effects.
+     */
+    public void markNotCacheable() {
+      this.cacheable = false;
+      if (this.parent != null) {
+        this.parent.markNotCacheable();
+      }
+    }
+
+    public boolean isCacheable() {
+      return this.cacheable;
+    }
+
+    private void addDependency(@Nonnull final Dependency dependency) {
+      if (this.dependencies.add(dependency) && this.parent != null) {
+        this.parent.addDependency(dependency);
+      }
+    }
+  }
+
+  private static final class FileDependency implements Dependency {
+
+    private final File file;
+    private final long lastModified;
+    private final long length;
+
+    private FileDependency(@Nonnull final File file) {
+      this.file = file.getAbsoluteFile();
+      this.lastModified = file.lastModified();
+      this.length = file.length();
+    }
+
+    @Override
+    public boolean isActual(@Nonnull final PreprocessorContext context) {
+      return this.file.lastModified() == this.lastModified && this.file.length() == this.length;
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj instanceof FileDependency) {
+        final FileDependency that = (FileDependency) obj;
+        return this.file.equals(that.file) && this.lastModified == that.lastModified && this.length == that.length;
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return this.file.hashCode();
+    }
+  }
+
+  private static final class FunctionDependency implements Dependency {
+
+    private final AbstractFunction function;
+    private final Value[] arguments;
+    private final Object extension;
+
+    private FunctionDependency(@Nonnull final AbstractFunction function, @Nonnull @MustNotContainNull final Value[] arguments, @Nonnull final Object extension) {
+      this.function = function;
+      this.arguments = arguments;
+      this.extension = extension;
+    }
+
+    @Override
+    public boolean isActual(@Nonnull final PreprocessorContext context) {
+      return this.extension.equals(this.function.makeMemoKeyExtension(context, this.arguments));
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj instanceof FunctionDependency) {
+        final FunctionDependency that = (FunctionDependency) obj;
+        return this.function == that.function && Arrays.equals(this.arguments, that.arguments) && this.extension.equals(that.extension);
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(this.function) * 31 + Arrays.hashCode(this.arguments);
+    }
+  }
+
+  private static final class Entry {
+
+    private final Map<String, Value[]> readVariables;
+    private final Dependency[] dependencies;
+    private final String text;
+    private final long weight;
+
+    private Entry(@Nonnull final Recorder recorder, @Nonnull final String text) {
+      this.readVariables = new LinkedHashMap<>(recorder.readVariables);
+      this.dependencies = recorder.dependencies.toArray(new Dependency[0]);
+      this.text = text;
+
+      long entryWeight = ENTRY_WEIGHT + text.length() + this.dependencies.length * 16L;
+      for (final String name : this.readVariables.keySet()) {
+        entryWeight += 16L + name.length();
+      }
+      this.weight = entryWeight;
+    }
+
+    private boolean isActual(@Nonnull final PreprocessorContext context) {
+      for (final Map.Entry<String, Value[]> e : this.readVariables.entrySet()) {
+        final Value[] recorded = e.getValue();
+        if (!Objects.equals(recorded[0], context.getLocalVariableTable().get(e.getKey()))
+            || !Objects.equals(recorded[1], context.getGlobalVariableTable().get(e.getKey()))) {
+          return false;
+        }
+      }
+      for (final Dependency d : this.dependencies) {
+        if (!d.isActual(context)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void replay(@Nonnull final Recorder recorder) {
+      for (final Map.Entry<String, Value[]> e : this.readVariables.entrySet()) {
+        recorder.onVariableRead(e.getKey(), e.getValue()[0], e.getValue()[1]);
+      }
+      for (final Dependency d : this.dependencies) {
+        recorder.addDependency(d);
+      }
+    }
+  }
+}
@@ -45,12 +45,12 @@ public final class FunctionABS extends AbstractFunction {
 
   @Nonnull
   public Value executeInt(@Nonnull final PreprocessorContext context, @Nonnull final Value value) {
-    return Value.valueOf(Math.abs(value.asLong()));
+    return Value.valueOf(Math.abs(value.longValue()));
   }
 
   @Nonnull
   public Value executeFloat(@Nonnull final PreprocessorContext context, @Nonnull final Value value) {
-    return Value.valueOf(Math.abs(value.asFloat()));
+    return Value.valueOf(Math.abs(value.floatValue()));
   }
 
   @Override
@@ -77,4 +77,8 @@ public final class FunctionABS extends AbstractFunction {
     return ValueType.ANY;
   }
 
+  @Override
+  public boolean isPure() {
+    return true;
+  }
 }
@@ -25,15 +25,18 @@ import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
-import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.codec.binary.Base64OutputStream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.zip.Deflater;
 
@@ -46,6 +49,7 @@ import java.util.zip.Deflater;
 public class FunctionBINFILE extends AbstractFunction {
 
   private static final ValueType[][] ARG_TYPES = new ValueType[][] {{ValueType.STRING, ValueType.STRING}};
+  private static final int CHUNK_SIZE = 64 * 1024;
 
   private static boolean hasSplitFlag(@Nonnull final String name, @Nonnull final Type type) {
     final String opts = name.substring(type.name.length());
@@ -59,89 +63,51 @@ public class FunctionBINFILE extends AbstractFunction {
 
   @Nonnull
   private static String convertTo(@Nonnull final File file, @Nonnull final Type type, final boolean deflate, final int lineLength, @Nonnull final String endOfLine) throws IOException {
-    final StringBuilder result = new StringBuilder(512);
-    byte[] array = FileUtils.readFileToByteArray(file);
-
-    if (deflate) {
-      array = deflate(array);
-    }
-
-    boolean addNextLine = false;
-
-    int visibleLineCharsCounter = 0;
-
-    switch (type) {
-      case BASE64: {
-        final String baseEncoded = new Base64(lineLength, endOfLine.getBytes(StandardCharsets.UTF_8), false).encodeAsString(array);
-        result.append(baseEncoded.trim());
-      }
-      break;
-      case BYTEARRAY:
-      case INT8:
-      case UINT8: {
-        for (final byte b : array) {
-          if (result.length() > 0) {
-            result.append(',');
-            visibleLineCharsCounter++;
-          }
-
-          if (addNextLine) {
-            addNextLine = false;
-            visibleLineCharsCounter = 0;
-            result.append(endOfLine);
-          }
-
-          final int initialBufferLength = result.length();
-          switch (type) {
-            case BYTEARRAY: {
-              result.append("(byte)0x").append(Integer.toHexString(b & 0xFF).toUpperCase(Locale.ENGLISH));
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long size = channel.size();
+      final AbstractEncoder encoder = type == Type.BASE64
+          ? new Base64Encoder(lineLength, endOfLine, deflate ? size / 2 : size)
+          : new ArrayEncoder(type, lineLength, endOfLine, deflate ? size / 2 : size);
+
+      final byte[] chunk = new byte[(int) Math.max(1L, Math.min(CHUNK_SIZE, size))];
+      final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+      final Deflater deflater = deflate ? new Deflater(Deflater.BEST_COMPRESSION) : null;
+      final byte[] deflated = deflate ? new byte[CHUNK_SIZE] : null;
+      try {
+        int length;
+        while ((length = channel.read(buffer)) >= 0) {
+          if (deflater == null) {
+            encoder.write(chunk, 0, length);
+          } else {
+            deflater.setInput(chunk, 0, length);
+            while (!deflater.needsInput()) {
+              encoder.write(deflated, 0, deflater.deflate(deflated));
             }
-            break;
-            case UINT8: {
-              result.append(Integer.toString(b & 0xFF).toUpperCase(Locale.ENGLISH));
-            }
-            break;
-            case INT8: {
-              result.append(Integer.toString(b).toUpperCase(Locale.ENGLISH));
-            }
-            break;
-            default:
-              throw new Error("Unexpected type : " + type);
           }
-          visibleLineCharsCounter += result.length() - initialBufferLength;
+          buffer.clear();
+        }
 
-          if (lineLength > 0 && visibleLineCharsCounter >= lineLength) {
-            addNextLine = true;
+        if (deflater != null) {
+          deflater.finish();
+          while (!deflater.finished()) {
+            encoder.write(deflated, 0, deflater.deflate(deflated));
           }
         }
+      } finally {
+        if (deflater != null) {
+          deflater.end();
+        }
       }
-      break;
-      default:
-        throw new Error("Unexpected type : " + type);
+      return encoder.finish();
     }
-
-    return result.toString();
   }
 
-  @Nonnull
-  private static byte[] deflate(@Nonnull final byte[] data) throws IOException {
-    final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
-    deflater.setInput(data);
-
-    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length);
-
-    deflater.finish();
-    final byte[] buffer = new byte[1024];
-    while (!deflater.finished()) {
-      final int count = deflater.deflate(buffer);
-      outputStream.write(buffer, 0, count);
+  private static int estimateCapacity(final long size, final int charsPerByte, final int lineLength, @Nonnull final String endOfLine) {
+    long result = size * charsPerByte;
+    if (lineLength > 0) {
+      result += result / lineLength * endOfLine.length();
     }
-    outputStream.close();
-    final byte[] output = outputStream.toByteArray();
-
-    deflater.end();
-
-    return output;
+    return (int) Math.max(16L, Math.min(result + 16L, Integer.MAX_VALUE - 16L));
   }
 
   @Override
@@ -182,6 +148,24 @@ public class FunctionBINFILE extends AbstractFunction {
     return ValueType.STRING;
   }
 
+  @Override
+  public boolean isMemoizable() {
+    return true;
+  }
+
+  @Override
+  @Nullable
+  public Object makeMemoKeyExtension(@Nonnull final PreprocessorContext context, @Nonnull @MustNotContainNull final Value[] arguments) {
+    final File file;
+    try {
+      file = context.findFileInSources(arguments[0].asString());
+    } catch (IOException | RuntimeException ex) {
+      // the problem will be reported by the call itself
+      return null;
+    }
+    return Arrays.asList(file.getAbsolutePath(), file.lastModified(), file.length(), System.getProperty("line.separator", "\r\n"));
+  }
+
   @Nonnull
   public Value executeStrStr(@Nonnull final PreprocessorContext context, @Nonnull final Value strFilePath, @Nonnull final Value encodeType) {
     final String filePath = strFilePath.asString();
@@ -208,12 +192,167 @@ public class FunctionBINFILE extends AbstractFunction {
 
     try {
       final String endOfLine = System.getProperty("line.separator", "\r\n");
-      return Value.valueOf(convertTo(theFile, type, doDeflate, lengthOfLine, endOfLine));
+      final BinFileCache cache = context.getBinFileCache();
+      if (cache == null) {
+        return Value.valueOf(convertTo(theFile, type, doDeflate, lengthOfLine, endOfLine));
+      }
+
+      final String key = cache.makeKey(theFile, type.getName(), doDeflate, lengthOfLine, endOfLine);
+      String result = cache.get(key);
+      if (result == null) {
+        result = convertTo(theFile, type, doDeflate, lengthOfLine, endOfLine);
+        if (!cache.put(key, result) && context.isVerbose()) {
+          context.logForVerbose("Can't save encoded bin file '" + theFile + "' into cache " + cache.getFolder());
+        }
+      } else if (context.isVerbose()) {
+        context.logForVerbose("Encoded bin file '" + theFile + "' found in cache");
+      }
+      return Value.valueOf(result);
     } catch (Exception ex) {
       throw context.makeException("Unexpected exception", ex);
     }
   }
 
+  /**
+   * Encoder of byte chunks into text, the text is accumulated in a pre-sized buffer.
+   */
+  private abstract static class AbstractEncoder {
+
+    protected final StringBuilder buffer;
+
+    private AbstractEncoder(final int capacity) {
+      this.buffer = new StringBuilder(capacity);
+    }
+
+    abstract void write(@Nonnull byte[] data, int offset, int length) throws IOException;
+
+    @Nonnull
+    abstract String finish() throws IOException;
+  }
+
+  /**
+   * Encoder of bytes into comma separated array items, every byte is converted through precomputed table.
+   */
+  private static final class ArrayEncoder extends AbstractEncoder {
+
+    private static final char[][] BYTEARRAY_TEXTS = new char[256][];
+    private static final char[][] UINT8_TEXTS = new char[256][];
+    private static final char[][] INT8_TEXTS = new char[256][];
+
+    static {
+      for (int i = 0; i < 256; i++) {
+        BYTEARRAY_TEXTS[i] = ("(byte)0x" + Integer.toHexString(i).toUpperCase(Locale.ENGLISH)).toCharArray();
+        UINT8_TEXTS[i] = Integer.toString(i).toCharArray();
+        INT8_TEXTS[i] = Integer.toString((byte) i).toCharArray();
+      }
+    }
+
+    private final char[][] texts;
+    private final int lineLength;
+    private final String endOfLine;
+    private boolean first = true;
+    private boolean addNextLine;
+    private int visibleLineCharsCounter;
+
+    private ArrayEncoder(@Nonnull final Type type, final int lineLength, @Nonnull final String endOfLine, final long expectedBytes) {
+      super(estimateCapacity(expectedBytes, type == Type.BYTEARRAY ? 11 : 4, lineLength, endOfLine));
+      switch (type) {
+        case BYTEARRAY:
+          this.texts = BYTEARRAY_TEXTS;
+          break;
+        case UINT8:
+          this.texts = UINT8_TEXTS;
+          break;
+        case INT8:
+          this.texts = INT8_TEXTS;
+          break;
+        default:
+          throw new Error("Unexpected type : " + type);
+      }
+      this.lineLength = lineLength;
+      this.endOfLine = endOfLine;
+    }
+
+    @Override
+    void write(@Nonnull final byte[] data, final int offset, final int length) {
+      final StringBuilder result = this.buffer;
+      for (int i = offset; i < offset + length; i++) {
+        if (this.first) {
+          this.first = false;
+        } else {
+          result.append(',');
+          this.visibleLineCharsCounter++;
+        }
+
+        if (this.addNextLine) {
+          this.addNextLine = false;
+          this.visibleLineCharsCounter = 0;
+          result.append(this.endOfLine);
+        }
+
+        final char[] text = this.texts[data[i] & 0xFF];
+        result.append(text);
+        this.visibleLineCharsCounter += text.length;
+
+        if (this.lineLength > 0 && this.visibleLineCharsCounter >= this.lineLength) {
+          this.addNextLine = true;
+        }
+      }
+    }
+
+    @Override
+    @Nonnull
+    String finish() {
+      return this.buffer.toString();
+    }
+  }
+
+  /**
+   * Encoder of bytes into Base64 text, the result is trimmed.
+   */
+  private static final class Base64Encoder extends AbstractEncoder {
+
+    private final Base64OutputStream stream;
+
+    private Base64Encoder(final int lineLength, @Nonnull final String endOfLine, final long expectedBytes) {
+      super(estimateCapacity(expectedBytes / 3 + 1, 4, lineLength, endOfLine));
+      this.stream = new Base64OutputStream(new OutputStream() {
+        @Override
+        public void write(final int b) {
+          buffer.append((char) (b & 0xFF));
+        }
+
+        @Override
+        public void write(@Nonnull final byte[] data, final int offset, final int length) {
+          for (int i = offset; i < offset + length; i++) {
+            buffer.append((char) (data[i] & 0xFF));
+          }
+        }
+      }, true, lineLength, endOfLine.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    void write(@Nonnull final byte[] data, final int offset, final int length) throws IOException {
+      this.stream.write(data, offset, length);
+    }
+
+    @Override
+    @Nonnull
+    String finish() throws IOException {
+      this.stream.close();
+      final StringBuilder result = this.buffer;
+      int end = result.length();
+      while (end > 0 && result.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      int start = 0;
+      while (start < end && result.charAt(start) <= ' ') {
+        start++;
+      }
+      return result.substring(start, end);
+    }
+  }
+
   private enum Type {
     BASE64("base64"),
     BYTEARRAY("byte[]"),
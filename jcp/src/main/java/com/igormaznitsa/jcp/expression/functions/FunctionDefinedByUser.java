@@ -27,6 +27,9 @@ import com.igormaznitsa.jcp.expression.ValueType;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 
 import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
 
@@ -38,6 +41,16 @@ import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
  */
 public final class FunctionDefinedByUser extends AbstractFunction {
 
+  private static final MethodHandle EXECUTE;
+
+  static {
+    try {
+      EXECUTE = MethodHandles.publicLookup().findVirtual(FunctionDefinedByUser.class, "execute", EXECUTOR_TYPE);
+    } catch (NoSuchMethodException | IllegalAccessException ex) {
+      throw new Error("Can't find user function executor", ex);
+    }
+  }
+
   private final String name;
   private final int argsNumber;
   private final ValueType[][] argTypes;
@@ -78,6 +91,12 @@ public final class FunctionDefinedByUser extends AbstractFunction {
     return assertNotNull("Preprocessor extension must not be null", context.getPreprocessorExtension()).processUserFunction(name, values);
   }
 
+  @Override
+  @Nullable
+  protected MethodHandle makeExecutor(@Nonnull @MustNotContainNull final ValueType[] signature) {
+    return EXECUTE.bindTo(this);
+  }
+
   @Override
   @Nonnull
   @MustNotContainNull
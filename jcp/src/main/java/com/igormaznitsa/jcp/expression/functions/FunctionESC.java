@@ -27,7 +27,6 @@ import com.igormaznitsa.jcp.expression.ValueType;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
-import java.util.Locale;
 
 /**
  * The class implements escape function handler to escape strings to be used inside preprocessor string value definitions.
@@ -44,49 +43,7 @@ public final class FunctionESC extends AbstractFunction {
 
   @Nonnull
   public Value executeStr(@Nonnull final PreprocessorContext context, @Nonnull final Value source) {
-    final String sourceString = source.asString();
-    final StringBuilder result = new StringBuilder();
-    for (int i = 0; i < sourceString.length(); i++) {
-      final char chr = sourceString.charAt(i);
-      switch (chr) {
-        case '\n':
-          result.append("\\n");
-          break;
-        case '\t':
-          result.append("\\t");
-          break;
-        case '\b':
-          result.append("\\b");
-          break;
-        case '\f':
-          result.append("\\f");
-          break;
-        case '\r':
-          result.append("\\r");
-          break;
-        case '\\':
-          result.append("\\\\");
-          break;
-        case '\'':
-          result.append("\\\'");
-          break;
-        case '\"':
-          result.append("\\\"");
-          break;
-        default: {
-          if (chr > 0x7F || Character.isISOControl(chr)) {
-            String hexCode = Integer.toHexString(chr).toUpperCase(Locale.ENGLISH);
-            if (hexCode.length() < 4) {
-              hexCode = "0000".substring(0, 4 - hexCode.length()) + hexCode;
-            }
-            result.append("\\u").append(hexCode);
-          } else {
-            result.append(chr);
-          }
-        }
-      }
-    }
-    return Value.valueOf(result.toString());
+    return Value.valueOf(StringEscaper.PREPROCESSOR.escape(source.asString()));
   }
 
   @Override
@@ -113,4 +70,13 @@ public final class FunctionESC extends AbstractFunction {
     return ValueType.STRING;
   }
 
+  @Override
+  public boolean isPure() {
+    return true;
+  }
+
+  @Override
+  public boolean isMemoizable() {
+    return true;
+  }
 }
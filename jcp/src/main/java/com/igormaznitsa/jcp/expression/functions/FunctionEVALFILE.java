@@ -29,14 +29,17 @@ import com.igormaznitsa.jcp.expression.ValueType;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.List;
 
 import static com.igormaznitsa.meta.common.utils.IOUtils.closeQuietly;
 
 /**
  * The Function makes preprocessing of a file and return result as a string value. It uses the current preprocessor context as the context for preprocessing the file.
+ * If the context has {@link EvalFileCache} then results are reused while read variables and used files are not changed.
  *
  * @author Igor Maznitsa (http://www.igormaznitsa.com)
  */
@@ -75,8 +78,9 @@ public class FunctionEVALFILE extends AbstractFunction {
   }
 
   @Nonnull
-  private PreprocessorContext prepareContext(@Nonnull final PreprocessorContext base) {
+  private PreprocessorContext prepareContext(@Nonnull final PreprocessorContext base, @Nullable final EvalFileCache.Recorder recorder) {
     final PreprocessorContext result = new PreprocessorContext(base);
+    result.setEvalFileRecorder(recorder);
     result.setDryRun(true);
     result.setKeepLines(false);
     result.setClearTarget(false);
@@ -100,13 +104,33 @@ public class FunctionEVALFILE extends AbstractFunction {
       context.logForVerbose("Eval file '" + theFile + '\'');
     }
 
+    final EvalFileCache cache = context.getEvalFileCache();
+    final List<Object> cacheKey = cache == null ? null : EvalFileCache.makeKey(context, theFile);
+    if (cache != null) {
+      final String cached = cache.find(cacheKey, context);
+      if (cached != null) {
+        if (context.isVerbose()) {
+          context.logForVerbose("Result of eval file '" + theFile + "' found in cache");
+        }
+        return Value.valueOf(cached);
+      }
+    }
+
     try {
+      final EvalFileCache.Recorder recorder = cache == null ? null : new EvalFileCache.Recorder(context.getEvalFileRecorder());
+      if (recorder != null) {
+        recorder.onFileRead(theFile);
+      }
       final FileInfoContainer fileContainer = new FileInfoContainer(theFile, theFile.getName(), false);
-      final PreprocessingState state = fileContainer.preprocessFile(null, prepareContext(context));
+      final PreprocessingState state = fileContainer.preprocessFile(null, prepareContext(context, recorder));
       final StringWriter strWriter = new StringWriter(1024);
       state.writePrinterBuffers(strWriter);
       closeQuietly(strWriter);
-      return Value.valueOf(strWriter.toString());
+      final String result = strWriter.toString();
+      if (recorder != null) {
+        cache.put(cacheKey, recorder, result);
+      }
+      return Value.valueOf(result);
     } catch (Exception ex) {
       throw context.makeException("Unexpected exception", ex);
     }
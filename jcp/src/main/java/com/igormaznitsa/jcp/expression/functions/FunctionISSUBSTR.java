@@ -74,4 +74,8 @@ public final class FunctionISSUBSTR extends AbstractFunction {
     return ValueType.BOOLEAN;
   }
 
+  @Override
+  public boolean isPure() {
+    return true;
+  }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The class implements the props_get function handler. A properties file is mapped and loaded once, its values are kept in hash map in shared
+ * resources of the context during whole preprocessing run so that next lookups in the file don't read it.
+ *
+ * @since 7.0.1
+ */
+public final class FunctionPROPS_GET extends AbstractFunction {
+
+  private static final String RESOURCE_PREFIX = "propsFile_";
+
+  private static final ValueType[][] ARG_TYPES = new ValueType[][] {{ValueType.STRING, ValueType.STRING}};
+
+  @Nonnull
+  private static Map<String, String> loadProperties(@Nonnull final File file) throws IOException {
+    final Properties properties = new Properties();
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // properties files are in ISO-8859-1 with unicode escapes
+      properties.load(new StringReader(StandardCharsets.ISO_8859_1.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size())).toString()));
+    }
+    final Map<String, String> result = new HashMap<>(Math.max(16, properties.size() * 4 / 3 + 1));
+    for (final String name : properties.stringPropertyNames()) {
+      result.put(name, properties.getProperty(name));
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  private static long weightOf(@Nonnull final Map<String, String> map) {
+    long result = 64L;
+    for (final Map.Entry<String, String> e : map.entrySet()) {
+      result += 96L + (e.getKey().length() + e.getValue().length()) * 2L;
+    }
+    return result;
+  }
+
+  @Override
+  @Nonnull
+  public String getName() {
+    return "props_get";
+  }
+
+  @Nonnull
+  @SuppressWarnings("unchecked")
+  public Value executeStrStr(@Nonnull final PreprocessorContext context, @Nonnull final Value filePath, @Nonnull final Value key) {
+    final String name = filePath.asString();
+    final String resourceId = RESOURCE_PREFIX + name;
+
+    Map<String, String> properties = (Map<String, String>) context.getSharedResource(resourceId);
+    if (properties == null) {
+      final File file;
+      try {
+        file = context.findFileInSources(name);
+      } catch (IOException unexpected) {
+        throw context.makeException("Can't read \'" + name + '\'', null);
+      }
+      try {
+        properties = loadProperties(file);
+      } catch (IOException ex) {
+        throw context.makeException("Can't read properties file", ex);
+      }
+      context.setSharedResource(resourceId, properties, SharedResourceScope.RUN, weightOf(properties));
+    }
+
+    final String result = properties.get(key.asString());
+    if (result == null) {
+      throw context.makeException("Can't find property \'" + key.asString() + "\' in \'" + name + '\'', null);
+    }
+    return Value.valueOf(result);
+  }
+
+  @Override
+  public int getArity() {
+    return 2;
+  }
+
+  @Override
+  @Nonnull
+  @MustNotContainNull
+  public ValueType[][] getAllowedArgumentTypes() {
+    return ARG_TYPES;
+  }
+
+  @Override
+  @Nonnull
+  public String getReference() {
+    return "get value of property from properties file";
+  }
+
+  @Override
+  @Nonnull
+  public ValueType getResultType() {
+    return ValueType.STRING;
+  }
+}
@@ -50,7 +50,7 @@ public final class FunctionROUND extends AbstractFunction {
 
   @Nonnull
   public Value executeFloat(@Nonnull final PreprocessorContext context, @Nonnull final Value value) {
-    return Value.valueOf(Long.valueOf(Math.round(value.asFloat())));
+    return Value.valueOf((long) Math.round(value.floatValue()));
   }
 
   @Override
@@ -77,4 +77,8 @@ public final class FunctionROUND extends AbstractFunction {
     return ValueType.INT;
   }
 
+  @Override
+  public boolean isPure() {
+    return true;
+  }
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Thread safe memory bounded cache of function results. Only results of functions which are {@link AbstractFunction#isMemoizable() memoizable}
+ * are cached, the key is the function, argument values and state of external resources provided by the function. The size of the cache is
+ * measured in weight units (approximately chars of cached strings) and the least recently used results are removed if the max weight is reached.
+ * The cache can be shared between all files of one preprocessing session.
+ *
+ * @see AbstractFunction#isMemoizable()
+ * @see AbstractFunction#makeMemoKeyExtension(PreprocessorContext, Value[])
+ * @since 7.0.1
+ */
+public final class FunctionResultCache {
+
+  /**
+   * Approximate weight of an entry without strings.
+   */
+  private static final int ENTRY_WEIGHT = 32;
+
+  private final long maxWeight;
+  private final Map<Key, Value> map = new LinkedHashMap<>(64, 0.75f, true);
+  private long weight;
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructor.
+   *
+   * @param maxWeight max summary weight of cached entries, must be greater than zero
+   */
+  public FunctionResultCache(final long maxWeight) {
+    if (maxWeight <= 0L) {
+      throw new IllegalArgumentException("Max weight must be greater than zero: " + maxWeight);
+    }
+    this.maxWeight = maxWeight;
+  }
+
+  private static long weightOf(@Nonnull final Value value) {
+    return value.getType() == ValueType.STRING ? value.asString().length() : 8L;
+  }
+
+  /**
+   * Make key for a function call.
+   *
+   * @param context   the preprocessor context, must not be null
+   * @param function  the called function, must not be null
+   * @param arguments argument values of the call, must not be null
+   * @return key for the call or null if result of the function can't be cached
+   */
+  @Nullable
+  public Key makeKey(@Nonnull final PreprocessorContext context, @Nonnull final AbstractFunction function, @Nonnull @MustNotContainNull final Value[] arguments) {
+    if (!function.isMemoizable()) {
+      return null;
+    }
+    return new Key(function, arguments.clone(), function.makeMemoKeyExtension(context, arguments));
+  }
+
+  /**
+   * Find cached result for a key.
+   *
+   * @param key the key, must not be null
+   * @return cached result or null if not found
+   */
+  @Nullable
+  public synchronized Value get(@Nonnull final Key key) {
+    final Value result = this.map.get(assertNotNull(key));
+    if (result == null) {
+      this.misses++;
+    } else {
+      this.hits++;
+    }
+    return result;
+  }
+
+  /**
+   * Place result into the cache, the least recently used results can be removed to keep max weight. A result heavier than the max weight
+   * is not cached.
+   *
+   * @param key    the key, must not be null
+   * @param result the function result, must not be null
+   */
+  public synchronized void put(@Nonnull final Key key, @Nonnull final Value result) {
+    final long entryWeight = key.weight + weightOf(assertNotNull(result));
+    if (entryWeight > this.maxWeight) {
+      return;
+    }
+
+    final Value prev = this.map.put(key, result);
+    if (prev != null) {
+      this.weight -= key.weight + weightOf(prev);
+    }
+    this.weight += entryWeight;
+
+    final Iterator<Map.Entry<Key, Value>> iterator = this.map.entrySet().iterator();
+    while (this.weight > this.maxWeight && iterator.hasNext()) {
+      final Map.Entry<Key, Value> eldest = iterator.next();
+      this.weight -= eldest.getKey().weight + weightOf(eldest.getValue());
+      iterator.remove();
+    }
+  }
+
+  public synchronized void clear() {
+    this.map.clear();
+    this.weight = 0L;
+    this.hits = 0L;
+    this.misses = 0L;
+  }
+
+  public synchronized int size() {
+    return this.map.size();
+  }
+
+  public synchronized long getWeight() {
+    return this.weight;
+  }
+
+  public long getMaxWeight() {
+    return this.maxWeight;
+  }
+
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Get ratio of hits to all requests.
+   *
+   * @return ratio in range 0..1, zero if there was no any request
+   */
+  public synchronized double getHitRatio() {
+    final long total = this.hits + this.misses;
+    return total == 0L ? 0.0d : (double) this.hits / total;
+  }
+
+  @Override
+  @Nonnull
+  public synchronized String toString() {
+    return String.format("FunctionResultCache(entries=%d, weight=%d/%d, hits=%d, misses=%d, hit ratio=%.2f)",
+        this.map.size(), this.weight, this.maxWeight, this.hits, this.misses, this.getHitRatio());
+  }
+
+  /**
+   * Key of a cached function call.
+   */
+  public static final class Key {
+
+    private final AbstractFunction function;
+    private final Value[] arguments;
+    private final Object extension;
+    private final int hash;
+    private final long weight;
+
+    private Key(@Nonnull final AbstractFunction function, @Nonnull @MustNotContainNull final Value[] arguments, @Nullable final Object extension) {
+      this.function = function;
+      this.arguments = arguments;
+      this.extension = extension;
+      this.hash = (System.identityHashCode(function) * 31 + Arrays.hashCode(arguments)) * 31 + Objects.hashCode(extension);
+
+      long argWeight = ENTRY_WEIGHT;
+      for (final Value arg : arguments) {
+        argWeight += weightOf(arg);
+      }
+      this.weight = argWeight;
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj instanceof Key) {
+        final Key that = (Key) obj;
+        return this.function == that.function
+            && this.hash == that.hash
+            && Arrays.equals(this.arguments, that.arguments)
+            && Objects.equals(this.extension, that.extension);
+      }
+      return false;
+    }
+  }
+}
@@ -27,8 +27,6 @@ import com.igormaznitsa.jcp.expression.ValueType;
 
 import javax.annotation.Nonnull;
 
-import static org.apache.commons.text.StringEscapeUtils.escapeCsv;
-
 /**
  * The class implements the str2csv function handler
  *
@@ -45,7 +43,7 @@ public final class FunctionSTR2CSV extends AbstractStrConverter {
   @Override
   @Nonnull
   public Value executeStr(@Nonnull final PreprocessorContext context, @Nonnull final Value value) {
-    final String escaped = escapeCsv(value.asString());
+    final String escaped = StringEscaper.escapeCsv(value.asString());
     return Value.valueOf(escaped);
   }
 
@@ -24,11 +24,9 @@ package com.igormaznitsa.jcp.expression.functions;
 import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
-import com.igormaznitsa.jcp.utils.PreprocessorUtils;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
-import java.util.List;
 
 /**
  * The class implements escape function handler to escape strings to be used in Go.
@@ -39,73 +37,6 @@ public final class FunctionSTR2GO extends AbstractFunction {
 
   private static final ValueType[][] ARG_TYPES = new ValueType[][] {{ValueType.STRING, ValueType.BOOLEAN}};
 
-  @Nonnull
-  private static String toUnicode(final char c) {
-    final StringBuilder result = new StringBuilder(4);
-    final String hex = Integer.toHexString(c);
-
-    for (int i = 0; i < 4 - hex.length(); i++) {
-      result.append('0');
-    }
-
-    result.append(hex);
-
-    return result.toString();
-  }
-
-  @Nonnull
-  private static String escapeGo(@Nonnull final String value) {
-    final StringBuilder result = new StringBuilder();
-
-    for (final char c : value.toCharArray()) {
-      switch (c) {
-        case '\u0007':
-          result.append("\\a");
-          break;
-        case '\u000b':
-          result.append("\\v");
-          break;
-        case '\b':
-          result.append("\\b");
-          break;
-        case '\f':
-          result.append("\\f");
-          break;
-        case '\n':
-          result.append("\\n");
-          break;
-        case '\r':
-          result.append("\\r");
-          break;
-        case '\t':
-          result.append("\\t");
-          break;
-        case '\\':
-          result.append("\\\\");
-          break;
-        case '\'':
-          result.append("\\\'");
-          break;
-        case '\"':
-          result.append("\\\"");
-          break;
-        case ' ':
-          result.append(" ");
-          break;
-        default: {
-          if (Character.isISOControl(c) || Character.isWhitespace(c) || c > 0xFF) {
-            result.append("\\u").append(toUnicode(c));
-          } else {
-            result.append(c);
-          }
-        }
-        break;
-      }
-    }
-
-    return result.toString();
-  }
-
   @Override
   @Nonnull
   public String getName() {
@@ -115,27 +46,9 @@ public final class FunctionSTR2GO extends AbstractFunction {
   @Nonnull
   public Value executeStrBool(@Nonnull final PreprocessorContext context, @Nonnull final Value source, @Nonnull final Value splitAndQuoteLines) {
     if (splitAndQuoteLines.asBoolean()) {
-      final boolean endsWithNextLine = source.asString().endsWith("\n");
-      final List<String> split = PreprocessorUtils.splitForCharAndHoldEmptyLine(source.asString(), '\n');
-      final StringBuilder result = new StringBuilder(source.asString().length() * 2);
-      final String nextLineChars = PreprocessorUtils.getNextLineCodes();
-
-      int index = 0;
-      for (final String s : split) {
-        final boolean last = ++index == split.size();
-        if (result.length() > 0) {
-          result.append(nextLineChars).append('+');
-        }
-        result.append('\"').append(escapeGo(s));
-        if (last) {
-          result.append(endsWithNextLine ? "\\n\"" : "\"");
-        } else {
-          result.append("\\n\"");
-        }
-      }
-      return Value.valueOf(result.toString());
+      return Value.valueOf(StringEscaper.GO.escapeSplitLines(source.asString()));
     } else {
-      return Value.valueOf(escapeGo(source.asString()));
+      return Value.valueOf(StringEscaper.GO.escape(source.asString()));
     }
   }
 
@@ -163,4 +76,13 @@ public final class FunctionSTR2GO extends AbstractFunction {
     return ValueType.STRING;
   }
 
+  @Override
+  public boolean isPure() {
+    return true;
+  }
+
+  @Override
+  public boolean isMemoizable() {
+    return true;
+  }
 }
@@ -57,4 +57,9 @@ public final class FunctionSTR2INT extends AbstractStrConverter {
   public ValueType getResultType() {
     return ValueType.INT;
   }
+
+  @Override
+  public boolean isMemoizable() {
+    return false;
+  }
 }
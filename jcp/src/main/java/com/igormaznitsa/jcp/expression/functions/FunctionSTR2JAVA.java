@@ -24,13 +24,9 @@ package com.igormaznitsa.jcp.expression.functions;
 import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
-import com.igormaznitsa.jcp.utils.PreprocessorUtils;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
-import java.util.List;
-
-import static org.apache.commons.text.StringEscapeUtils.escapeJava;
 
 /**
  * The class implements escape function handler to escape strings to be used in java.
@@ -50,27 +46,9 @@ public final class FunctionSTR2JAVA extends AbstractFunction {
   @Nonnull
   public Value executeStrBool(@Nonnull final PreprocessorContext context, @Nonnull final Value source, @Nonnull final Value splitAndQuoteLines) {
     if (splitAndQuoteLines.asBoolean()) {
-      final boolean endsWithNextLine = source.asString().endsWith("\n");
-      final List<String> split = PreprocessorUtils.splitForCharAndHoldEmptyLine(source.asString(), '\n');
-      final StringBuilder result = new StringBuilder(source.asString().length() * 2);
-      final String nextLineChars = PreprocessorUtils.getNextLineCodes();
-
-      int index = 0;
-      for (final String s : split) {
-        final boolean last = ++index == split.size();
-        if (result.length() > 0) {
-          result.append(nextLineChars).append('+');
-        }
-        result.append('\"').append(escapeJava(s));
-        if (last) {
-          result.append(endsWithNextLine ? "\\n\"" : "\"");
-        } else {
-          result.append("\\n\"");
-        }
-      }
-      return Value.valueOf(result.toString());
+      return Value.valueOf(StringEscaper.JAVA.escapeSplitLines(source.asString()));
     } else {
-      return Value.valueOf(escapeJava(source.asString()));
+      return Value.valueOf(StringEscaper.JAVA.escape(source.asString()));
     }
   }
 
@@ -98,4 +76,13 @@ public final class FunctionSTR2JAVA extends AbstractFunction {
     return ValueType.STRING;
   }
 
+  @Override
+  public boolean isPure() {
+    return true;
+  }
+
+  @Override
+  public boolean isMemoizable() {
+    return true;
+  }
 }
@@ -27,8 +27,6 @@ import com.igormaznitsa.jcp.expression.ValueType;
 
 import javax.annotation.Nonnull;
 
-import static org.apache.commons.text.StringEscapeUtils.escapeEcmaScript;
-
 /**
  * The class implements the str2js function handler
  *
@@ -45,7 +43,7 @@ public final class FunctionSTR2JS extends AbstractStrConverter {
   @Override
   @Nonnull
   public Value executeStr(@Nonnull final PreprocessorContext context, @Nonnull final Value value) {
-    final String escaped = escapeEcmaScript(value.asString());
+    final String escaped = StringEscaper.ECMA_SCRIPT.escape(value.asString());
     return Value.valueOf(escaped);
   }
 
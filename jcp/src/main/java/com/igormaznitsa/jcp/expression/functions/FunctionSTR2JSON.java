@@ -27,8 +27,6 @@ import com.igormaznitsa.jcp.expression.ValueType;
 
 import javax.annotation.Nonnull;
 
-import static org.apache.commons.text.StringEscapeUtils.escapeJson;
-
 /**
  * The class implements the str2json function handler
  *
@@ -45,7 +43,7 @@ public final class FunctionSTR2JSON extends AbstractStrConverter {
   @Override
   @Nonnull
   public Value executeStr(@Nonnull final PreprocessorContext context, @Nonnull final Value value) {
-    final String escaped = escapeJson(value.asString());
+    final String escaped = StringEscaper.JSON.escape(value.asString());
     return Value.valueOf(escaped);
   }
 
@@ -27,8 +27,6 @@ import com.igormaznitsa.jcp.expression.ValueType;
 
 import javax.annotation.Nonnull;
 
-import static org.apache.commons.text.StringEscapeUtils.escapeHtml3;
-
 /**
  * The class implements the str2web function handler
  *
@@ -45,19 +43,7 @@ public final class FunctionSTR2WEB extends AbstractStrConverter {
   @Override
   @Nonnull
   public Value executeStr(@Nonnull final PreprocessorContext context, @Nonnull final Value value) {
-    final String escaped = escapeHtml3(value.asString());
-
-    final StringBuilder result = new StringBuilder(escaped.length() * 2);
-    for (int i = 0; i < escaped.length(); i++) {
-      final char ch = escaped.charAt(i);
-      if (ch < 128) {
-        result.append(ch);
-      } else {
-        result.append("&#").append(Character.codePointAt(escaped, i)).append(';');
-      }
-    }
-
-    return Value.valueOf(result.toString());
+    return Value.valueOf(StringEscaper.WEB.escape(value.asString()));
   }
 
   @Override
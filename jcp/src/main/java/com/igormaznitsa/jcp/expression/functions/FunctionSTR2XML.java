@@ -27,8 +27,6 @@ import com.igormaznitsa.jcp.expression.ValueType;
 
 import javax.annotation.Nonnull;
 
-import static org.apache.commons.text.StringEscapeUtils.escapeXml10;
-
 /**
  * The class implements the str2xml function handler
  *
@@ -45,7 +43,7 @@ public final class FunctionSTR2XML extends AbstractStrConverter {
   @Override
   @Nonnull
   public Value executeStr(@Nonnull final PreprocessorContext context, @Nonnull final Value value) {
-    final String escaped = escapeXml10(value.asString());
+    final String escaped = StringEscaper.XML10.escape(value.asString());
     return Value.valueOf(escaped);
   }
 
@@ -72,4 +72,8 @@ public final class FunctionSTRLEN extends AbstractFunction {
     return ValueType.INT;
   }
 
+  @Override
+  public boolean isPure() {
+    return true;
+  }
 }
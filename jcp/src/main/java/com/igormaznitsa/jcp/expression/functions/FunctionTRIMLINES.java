@@ -24,7 +24,6 @@ package com.igormaznitsa.jcp.expression.functions;
 import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
-import com.igormaznitsa.jcp.utils.PreprocessorUtils;
 
 import javax.annotation.Nonnull;
 
@@ -44,20 +43,7 @@ public final class FunctionTRIMLINES extends AbstractStrConverter {
   @Override
   @Nonnull
   public Value executeStr(@Nonnull final PreprocessorContext context, @Nonnull final Value value) {
-    final String text = value.asString();
-    final StringBuilder result = new StringBuilder(text.length());
-
-    for (final String s : PreprocessorUtils.splitForChar(text, '\n')) {
-      final String trimmed = s.trim();
-      if (!trimmed.isEmpty()) {
-        if (result.length() > 0) {
-          result.append(PreprocessorUtils.getNextLineCodes());
-        }
-        result.append(trimmed);
-      }
-    }
-
-    return Value.valueOf(result.toString());
+    return Value.valueOf(StringEscaper.trimLines(value.asString()));
   }
 
   @Override
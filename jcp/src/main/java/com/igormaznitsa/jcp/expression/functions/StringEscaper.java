@@ -0,0 +1,385 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import com.igormaznitsa.jcp.utils.PreprocessorUtils;
+import org.apache.commons.text.translate.EntityArrays;
+
+import javax.annotation.Nonnull;
+/**
+ * Table driven escaper of strings used by string converting functions. Every escaper has precalculated replacements for chars less than 0x100 and a
+ * rule for other chars, a string is escaped in single pass into one pre-sized buffer and returned as is if there is nothing to escape.
+ * Results are the same as results of escapers of Apache Commons Text used by the functions before.
+ *
+ * @since 7.0.1
+ */
+final class StringEscaper {
+
+  /**
+   * Escaper for Java string literals, the same as {@code StringEscapeUtils.escapeJava}.
+   */
+  static final StringEscaper JAVA;
+
+  /**
+   * Escaper for JSON strings, the same as {@code StringEscapeUtils.escapeJson}.
+   */
+  static final StringEscaper JSON;
+
+  /**
+   * Escaper for EcmaScript strings, the same as {@code StringEscapeUtils.escapeEcmaScript}.
+   */
+  static final StringEscaper ECMA_SCRIPT;
+
+  /**
+   * Escaper for XML 1.0, the same as {@code StringEscapeUtils.escapeXml10}.
+   */
+  static final StringEscaper XML10;
+
+  /**
+   * Escaper for HTML 3 with all non-ASCII chars presented as decimal entities, the same as {@code StringEscapeUtils.escapeHtml3} with following
+   * replacement of chars greater than 127 by their code points.
+   */
+  static final StringEscaper WEB;
+
+  /**
+   * Escaper for preprocessor string literals.
+   */
+  static final StringEscaper PREPROCESSOR;
+
+  /**
+   * Escaper for Go string literals.
+   */
+  static final StringEscaper GO;
+
+  private static final char[] UPPER_HEX = "0123456789ABCDEF".toCharArray();
+  private static final char[] LOWER_HEX = "0123456789abcdef".toCharArray();
+
+  static {
+    final String[] java = new String[0x100];
+    java['"'] = "\\\"";
+    java['\\'] = "\\\\";
+    java['\b'] = "\\b";
+    java['\n'] = "\\n";
+    java['\t'] = "\\t";
+    java['\f'] = "\\f";
+    java['\r'] = "\\r";
+    for (int c = 0; c < 0x100; c++) {
+      if (java[c] == null && (c < 32 || c > 0x7F)) {
+        java[c] = unicode((char) c, UPPER_HEX);
+      }
+    }
+    JAVA = new StringEscaper(java, HighChars.UNICODE_UPPER);
+
+    final String[] json = java.clone();
+    json['/'] = "\\/";
+    json[0x7F] = unicode((char) 0x7F, UPPER_HEX);
+    JSON = new StringEscaper(json, HighChars.UNICODE_UPPER);
+
+    final String[] ecmaScript = java.clone();
+    ecmaScript['\''] = "\\'";
+    ecmaScript['/'] = "\\/";
+    ECMA_SCRIPT = new StringEscaper(ecmaScript, HighChars.UNICODE_UPPER);
+
+    final String[] xml = new String[0x100];
+    xml['"'] = "&quot;";
+    xml['&'] = "&amp;";
+    xml['<'] = "&lt;";
+    xml['>'] = "&gt;";
+    xml['\''] = "&apos;";
+    for (int c = 0; c < 32; c++) {
+      if (c != '\t' && c != '\n' && c != '\r') {
+        xml[c] = "";
+      }
+    }
+    for (int c = 0x7F; c <= 0x9F; c++) {
+      if (c != 0x85) {
+        xml[c] = "&#" + c + ';';
+      }
+    }
+    XML10 = new StringEscaper(xml, HighChars.XML10);
+
+    final String[] web = new String[0x100];
+    web['"'] = "&quot;";
+    web['&'] = "&amp;";
+    web['<'] = "&lt;";
+    web['>'] = "&gt;";
+    for (int c = 0x80; c < 0x100; c++) {
+      final CharSequence entity = EntityArrays.ISO8859_1_ESCAPE.get(String.valueOf((char) c));
+      web[c] = entity == null ? "&#" + c + ';' : entity.toString();
+    }
+    WEB = new StringEscaper(web, HighChars.DECIMAL_ENTITY);
+
+    final String[] preprocessor = new String[0x100];
+    preprocessor['\n'] = "\\n";
+    preprocessor['\t'] = "\\t";
+    preprocessor['\b'] = "\\b";
+    preprocessor['\f'] = "\\f";
+    preprocessor['\r'] = "\\r";
+    preprocessor['\\'] = "\\\\";
+    preprocessor['\''] = "\\'";
+    preprocessor['"'] = "\\\"";
+    for (int c = 0; c < 0x100; c++) {
+      if (preprocessor[c] == null && (c > 0x7F || Character.isISOControl(c))) {
+        preprocessor[c] = unicode((char) c, UPPER_HEX);
+      }
+    }
+    PREPROCESSOR = new StringEscaper(preprocessor, HighChars.UNICODE_UPPER);
+
+    final String[] go = new String[0x100];
+    go[0x07] = "\\a";
+    go[0x0B] = "\\v";
+    go['\b'] = "\\b";
+    go['\f'] = "\\f";
+    go['\n'] = "\\n";
+    go['\r'] = "\\r";
+    go['\t'] = "\\t";
+    go['\\'] = "\\\\";
+    go['\''] = "\\'";
+    go['"'] = "\\\"";
+    for (int c = 0; c < 0x100; c++) {
+      if (go[c] == null && c != ' ' && (Character.isISOControl(c) || Character.isWhitespace(c))) {
+        go[c] = unicode((char) c, LOWER_HEX);
+      }
+    }
+    GO = new StringEscaper(go, HighChars.UNICODE_LOWER);
+  }
+
+  private final String[] table;
+  private final HighChars highChars;
+
+  private StringEscaper(@Nonnull final String[] table, @Nonnull final HighChars highChars) {
+    this.table = table;
+    this.highChars = highChars;
+  }
+
+  @Nonnull
+  private static String unicode(final char c, @Nonnull final char[] hex) {
+    return new String(new char[] {'\\', 'u', hex[(c >> 12) & 0xF], hex[(c >> 8) & 0xF], hex[(c >> 4) & 0xF], hex[c & 0xF]});
+  }
+
+  private static void appendUnicode(@Nonnull final StringBuilder buffer, final char c, @Nonnull final char[] hex) {
+    buffer.append('\\').append('u').append(hex[(c >> 12) & 0xF]).append(hex[(c >> 8) & 0xF]).append(hex[(c >> 4) & 0xF]).append(hex[c & 0xF]);
+  }
+
+  /**
+   * Escape string with CSV rules, the same as {@code StringEscapeUtils.escapeCsv}: if the string contains comma, quote or next line chars then it is
+   * quoted and inside quotes are doubled.
+   *
+   * @param text the text to be escaped, must not be null
+   * @return escaped text, must not be null
+   */
+  @Nonnull
+  static String escapeCsv(@Nonnull final String text) {
+    int quotes = 0;
+    boolean needed = false;
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      if (c == '"') {
+        quotes++;
+        needed = true;
+      } else if (c == ',' || c == '\r' || c == '\n') {
+        needed = true;
+      }
+    }
+    if (!needed) {
+      return text;
+    }
+    final StringBuilder result = new StringBuilder(text.length() + quotes + 2);
+    result.append('"');
+    int start = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '"') {
+        result.append(text, start, i + 1).append('"');
+        start = i + 1;
+      }
+    }
+    return result.append(text, start, text.length()).append('"').toString();
+  }
+
+  /**
+   * Trim every line of a text and remove empty lines, lines of result are separated by {@link PreprocessorUtils#getNextLineCodes()}.
+   *
+   * @param text the text, must not be null
+   * @return the text with trimmed lines, must not be null
+   */
+  @Nonnull
+  static String trimLines(@Nonnull final String text) {
+    final String nextLine = PreprocessorUtils.getNextLineCodes();
+    final StringBuilder result = new StringBuilder(text.length());
+    final int length = text.length();
+    int lineStart = 0;
+    while (lineStart < length) {
+      int lineEnd = text.indexOf('\n', lineStart);
+      if (lineEnd < 0) {
+        lineEnd = length;
+      }
+      int start = lineStart;
+      int end = lineEnd;
+      while (start < end && text.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && text.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      if (start < end) {
+        if (result.length() > 0) {
+          result.append(nextLine);
+        }
+        result.append(text, start, end);
+      }
+      lineStart = lineEnd + 1;
+    }
+    return result.toString();
+  }
+
+  private boolean isEscaped(@Nonnull final String text, final int index) {
+    final char c = text.charAt(index);
+    if (c < 0x100) {
+      return this.table[c] != null;
+    }
+    switch (this.highChars) {
+      case XML10:
+        if (c == '\uFFFE' || c == '\uFFFF') {
+          return true;
+        }
+        if (Character.isHighSurrogate(c)) {
+          return index + 1 >= text.length() || !Character.isLowSurrogate(text.charAt(index + 1));
+        }
+        return Character.isLowSurrogate(c) && (index == 0 || !Character.isHighSurrogate(text.charAt(index - 1)));
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Escape text.
+   *
+   * @param text the text to be escaped, must not be null
+   * @return escaped text or the same text if there is nothing to escape
+   */
+  @Nonnull
+  String escape(@Nonnull final String text) {
+    final int length = text.length();
+    int first = 0;
+    while (first < length && !isEscaped(text, first)) {
+      first++;
+    }
+    if (first == length) {
+      return text;
+    }
+    final StringBuilder result = new StringBuilder(length + 16 + (length >> 2));
+    result.append(text, 0, first);
+    appendEscaped(result, text, first, length);
+    return result.toString();
+  }
+
+  /**
+   * Escape part of text into buffer.
+   *
+   * @param buffer buffer to write result, must not be null
+   * @param text   the text, must not be null
+   * @param start  start index of the part, inclusive
+   * @param end    end index of the part, exclusive
+   */
+  void appendEscaped(@Nonnull final StringBuilder buffer, @Nonnull final String text, final int start, final int end) {
+    int copyFrom = start;
+    for (int i = start; i < end; i++) {
+      final char c = text.charAt(i);
+      final String replacement;
+      if (c < 0x100) {
+        replacement = this.table[c];
+        if (replacement == null) {
+          continue;
+        }
+        buffer.append(text, copyFrom, i).append(replacement);
+      } else {
+        switch (this.highChars) {
+          case UNICODE_UPPER:
+            appendUnicode(buffer.append(text, copyFrom, i), c, UPPER_HEX);
+            break;
+          case UNICODE_LOWER:
+            appendUnicode(buffer.append(text, copyFrom, i), c, LOWER_HEX);
+            break;
+          case DECIMAL_ENTITY:
+            // a low surrogate of pair is written separately by its own value as it was made by the function before
+            buffer.append(text, copyFrom, i).append("&#").append(Character.codePointAt(text, i)).append(';');
+            break;
+          case XML10:
+            if (!isEscaped(text, i)) {
+              continue;
+            }
+            // unpaired surrogates and non-characters are removed
+            buffer.append(text, copyFrom, i);
+            break;
+          default:
+            throw new Error("Unexpected mode: " + this.highChars);
+        }
+      }
+      copyFrom = i + 1;
+    }
+    buffer.append(text, copyFrom, end);
+  }
+
+  /**
+   * Split text by next line chars and present it as concatenation of escaped quoted lines. Empty lines are ignored, every line except the last one
+   * gets escaped next line char, the last one gets it only if the text is ended by next line char.
+   *
+   * @param text the text, must not be null
+   * @return concatenation of quoted lines, must not be null
+   */
+  @Nonnull
+  String escapeSplitLines(@Nonnull final String text) {
+    final String nextLine = PreprocessorUtils.getNextLineCodes();
+    final int length = text.length();
+    final StringBuilder result = new StringBuilder(length + (length >> 2) + 16);
+    boolean first = true;
+    int lineStart = 0;
+    do {
+      int lineEnd = text.indexOf('\n', lineStart);
+      if (lineEnd < 0) {
+        lineEnd = length;
+      }
+      if (lineEnd > lineStart) {
+        if (!first) {
+          result.append("\\n\"").append(nextLine).append('+');
+        }
+        result.append('"');
+        appendEscaped(result, text, lineStart, lineEnd);
+        first = false;
+      }
+      lineStart = lineEnd + 1;
+    } while (lineStart < length);
+    if (first) {
+      result.append('"');
+    }
+    result.append(length > 0 && text.charAt(length - 1) == '\n' ? "\\n\"" : "\"");
+    return result.toString();
+  }
+
+  private enum HighChars {
+    UNICODE_UPPER,
+    UNICODE_LOWER,
+    DECIMAL_ENTITY,
+    XML10
+  }
+}
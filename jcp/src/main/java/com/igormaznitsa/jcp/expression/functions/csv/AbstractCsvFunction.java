@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.csv;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
+import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Base class for functions working with CSV tables. Tables are kept as {@link CsvTable} in shared resources of the context during whole
+ * preprocessing run so that files are mapped and indexed only once, functions exchange string ids of tables. A table dropped because of the
+ * shared resource budget is mapped again on demand.
+ *
+ * @since 7.0.1
+ */
+public abstract class AbstractCsvFunction extends AbstractFunction {
+
+  private static final String TABLE_ID_PREFIX = "csvTable_";
+
+  @Nonnull
+  public static String makeTableId(@Nonnull final String fileName) {
+    return TABLE_ID_PREFIX + fileName;
+  }
+
+  /**
+   * Find table in shared resources or map its file.
+   *
+   * @param context  the preprocessor context, must not be null
+   * @param fileName the file name, must not be null
+   * @return the table, must not be null
+   */
+  @Nonnull
+  protected static CsvTable openTable(@Nonnull final PreprocessorContext context, @Nonnull final String fileName) {
+    final String tableId = makeTableId(fileName);
+    final Object found = context.getSharedResource(tableId);
+    if (found instanceof CsvTable) {
+      return (CsvTable) found;
+    }
+
+    final File file;
+    try {
+      file = context.findFileInSources(fileName);
+    } catch (IOException unexpected) {
+      throw context.makeException("Can't read \'" + fileName + '\'', null);
+    }
+
+    final Charset charset = context.getSourceEncoding();
+    if (!CsvTable.isAsciiCompatible(charset)) {
+      throw context.makeException("CSV file can't be read in not ASCII compatible encoding " + charset.name(), null);
+    }
+
+    final CsvTable result;
+    try {
+      result = CsvTable.map(file, charset);
+    } catch (IOException ex) {
+      throw context.makeException("Can't read CSV file", ex);
+    }
+    context.setSharedResource(tableId, result, SharedResourceScope.RUN, result.getWeight());
+    return result;
+  }
+
+  /**
+   * Find opened table for its id.
+   *
+   * @param context the preprocessor context, must not be null
+   * @param tableId id of the table, must not be null
+   * @return the table, must not be null
+   */
+  @Nonnull
+  protected static CsvTable findTable(@Nonnull final PreprocessorContext context, @Nonnull final String tableId) {
+    final Object found = context.getSharedResource(tableId);
+    if (found instanceof CsvTable) {
+      return (CsvTable) found;
+    }
+    if (found == null && tableId.startsWith(TABLE_ID_PREFIX) && context.isSharedResourceDropped(tableId)) {
+      return openTable(context, tableId.substring(TABLE_ID_PREFIX.length()));
+    }
+    throw context.makeException("Can't find any CSV table for the \'" + tableId + "\' id", null);
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.csv;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read only CSV table (RFC 4180: comma separated fields, quoted fields can contain commas, next lines and doubled quotes). The file is mapped
+ * into memory once and only offsets of rows are kept in heap, cells are decoded on request. Hash index over a column is built on the first
+ * search in the column and reused by next searches. Empty lines are ignored. The table can be used by several threads.
+ * <p>
+ * Rows are found by scanning bytes so that the charset must be ASCII compatible (like UTF-8 or ISO-8859-1).
+ *
+ * @since 7.0.1
+ */
+public final class CsvTable {
+
+  private static final byte QUOTE = '"';
+  private static final byte COMMA = ',';
+
+  private final ByteBuffer data;
+  private final Charset charset;
+  private final int[] rowStart;
+  private final int[] rowEnd;
+  private final Map<Integer, Map<String, Integer>> columnIndexes = new ConcurrentHashMap<>();
+  private final AtomicLong indexWeight = new AtomicLong();
+
+  private CsvTable(@Nonnull final ByteBuffer data, @Nonnull final Charset charset) {
+    if (!isAsciiCompatible(charset)) {
+      throw new IllegalArgumentException("Charset is not ASCII compatible: " + charset.name());
+    }
+    this.data = data;
+    this.charset = charset;
+
+    final int size = data.limit();
+    int[] starts = new int[64];
+    int[] ends = new int[64];
+    int rows = 0;
+
+    int pos = size >= 3 && (data.get(0) & 0xFF) == 0xEF && (data.get(1) & 0xFF) == 0xBB && (data.get(2) & 0xFF) == 0xBF ? 3 : 0;
+    while (pos < size) {
+      final int start = pos;
+      boolean quoted = false;
+      while (pos < size) {
+        final byte b = data.get(pos);
+        if (b == QUOTE) {
+          quoted = !quoted;
+        } else if (!quoted && (b == '\n' || b == '\r')) {
+          break;
+        }
+        pos++;
+      }
+      if (pos > start) {
+        if (rows == starts.length) {
+          starts = Arrays.copyOf(starts, rows * 2);
+          ends = Arrays.copyOf(ends, rows * 2);
+        }
+        starts[rows] = start;
+        ends[rows] = pos;
+        rows++;
+      }
+      if (pos < size && data.get(pos) == '\r') {
+        pos++;
+      }
+      if (pos < size && data.get(pos) == '\n') {
+        pos++;
+      }
+    }
+    this.rowStart = Arrays.copyOf(starts, rows);
+    this.rowEnd = Arrays.copyOf(ends, rows);
+  }
+
+  /**
+   * Check that a charset encodes all ASCII chars into the same single bytes, only such charsets can be used for tables.
+   *
+   * @param charset the charset to be checked, must not be null
+   * @return true if the charset is ASCII compatible, false otherwise
+   */
+  public static boolean isAsciiCompatible(@Nonnull final Charset charset) {
+    if (!charset.canEncode()) {
+      return false;
+    }
+    final byte[] ascii = new byte[128];
+    for (int i = 0; i < ascii.length; i++) {
+      ascii[i] = (byte) i;
+    }
+    return Arrays.equals(ascii, new String(ascii, StandardCharsets.US_ASCII).getBytes(charset));
+  }
+
+  /**
+   * Map file into memory and find its rows.
+   *
+   * @param file    CSV file, must not be null
+   * @param charset ASCII compatible charset of the file, must not be null
+   * @return table for the file, must not be null
+   * @throws IOException thrown if the file can't be read or it is too big
+   * @throws IllegalArgumentException thrown if the charset is not ASCII compatible
+   * @see #isAsciiCompatible(Charset)
+   */
+  @Nonnull
+  public static CsvTable map(@Nonnull final File file, @Nonnull final Charset charset) throws IOException {
+    try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("CSV file is too big: " + file);
+      }
+      // mapping stays valid after closing of the channel
+      return new CsvTable(channel.map(FileChannel.MapMode.READ_ONLY, 0L, size), charset);
+    }
+  }
+
+  /**
+   * Make table for data in buffer.
+   *
+   * @param data    CSV data from 0 to the limit, must not be null
+   * @param charset ASCII compatible charset of the data, must not be null
+   * @return table for the data, must not be null
+   * @throws IllegalArgumentException thrown if the charset is not ASCII compatible
+   * @see #isAsciiCompatible(Charset)
+   */
+  @Nonnull
+  public static CsvTable wrap(@Nonnull final ByteBuffer data, @Nonnull final Charset charset) {
+    return new CsvTable(data, charset);
+  }
+
+  public int getRowCount() {
+    return this.rowStart.length;
+  }
+
+  /**
+   * Get approximate number of heap bytes occupied by the table and its indexes, mapped data is not counted.
+   *
+   * @return approximate weight in bytes
+   */
+  public long getWeight() {
+    return 64L + this.rowStart.length * 8L + this.indexWeight.get();
+  }
+
+  /**
+   * Get cell value.
+   *
+   * @param row    row index, 0 is the first one
+   * @param column column index, 0 is the first one
+   * @return decoded cell value or null if there is no such cell
+   */
+  @Nullable
+  public String getCell(final int row, final int column) {
+    if (row < 0 || row >= this.rowStart.length || column < 0) {
+      return null;
+    }
+    final int end = this.rowEnd[row];
+    int pos = this.rowStart[row];
+    for (int i = 0; i < column; i++) {
+      pos = skipField(pos, end);
+      if (pos >= end) {
+        return null;
+      }
+      pos++;
+    }
+    return decodeField(pos, end);
+  }
+
+  /**
+   * Find the first row which has the key in the column.
+   *
+   * @param column column index, 0 is the first one
+   * @param key    the key, must not be null
+   * @return index of the found row or -1 if not found
+   */
+  public int findRow(final int column, @Nonnull final String key) {
+    final Integer found = this.columnIndexes.computeIfAbsent(column, this::makeIndex).get(key);
+    return found == null ? -1 : found;
+  }
+
+  @Nonnull
+  private Map<String, Integer> makeIndex(final int column) {
+    final Map<String, Integer> result = new HashMap<>(Math.max(16, this.rowStart.length * 4 / 3 + 1));
+    long weight = 0L;
+    for (int row = 0; row < this.rowStart.length; row++) {
+      final String cell = getCell(row, column);
+      if (cell != null && result.putIfAbsent(cell, row) == null) {
+        weight += 64L + cell.length() * 2L;
+      }
+    }
+    this.indexWeight.addAndGet(weight);
+    return result;
+  }
+
+  private int skipField(final int start, final int end) {
+    int pos = start;
+    boolean quoted = false;
+    while (pos < end) {
+      final byte b = this.data.get(pos);
+      if (b == QUOTE) {
+        quoted = !quoted;
+      } else if (b == COMMA && !quoted) {
+        break;
+      }
+      pos++;
+    }
+    return pos;
+  }
+
+  @Nonnull
+  private String decodeField(final int start, final int end) {
+    final int fieldEnd = skipField(start, end);
+    if (start < fieldEnd && this.data.get(start) == QUOTE) {
+      final byte[] buffer = new byte[fieldEnd - start];
+      int length = 0;
+      for (int i = start + 1; i < fieldEnd; i++) {
+        final byte b = this.data.get(i);
+        if (b == QUOTE) {
+          if (i + 1 < fieldEnd && this.data.get(i + 1) == QUOTE) {
+            i++;
+          } else {
+            continue;
+          }
+        }
+        buffer[length++] = b;
+      }
+      return new String(buffer, 0, length, this.charset);
+    } else {
+      final byte[] buffer = new byte[fieldEnd - start];
+      for (int i = 0; i < buffer.length; i++) {
+        buffer[i] = this.data.get(start + i);
+      }
+      return new String(buffer, this.charset);
+    }
+  }
+}
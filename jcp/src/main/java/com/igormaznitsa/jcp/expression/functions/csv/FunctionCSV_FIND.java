@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.csv;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The class implements the csv_find function handler
+ *
+ * @since 7.0.1
+ */
+public final class FunctionCSV_FIND extends AbstractCsvFunction {
+
+  private static final ValueType[][] ARG_TYPES = new ValueType[][] {{ValueType.STRING, ValueType.INT, ValueType.STRING}};
+
+  @Override
+  @Nonnull
+  public String getName() {
+    return "csv_find";
+  }
+
+  @Nonnull
+  public Value executeStrIntStr(@Nonnull final PreprocessorContext context, @Nonnull final Value tableId, @Nonnull final Value column, @Nonnull final Value key) {
+    final CsvTable table = findTable(context, tableId.asString());
+    final long weight = table.getWeight();
+    final int row = table.findRow((int) column.longValue(), key.asString());
+    if (table.getWeight() != weight) {
+      // new column index has been made
+      context.setSharedResource(tableId.asString(), table, SharedResourceScope.RUN, table.getWeight());
+    }
+    return Value.valueOf((long) row);
+  }
+
+  @Override
+  public int getArity() {
+    return 3;
+  }
+
+  @Override
+  @Nonnull
+  @MustNotContainNull
+  public ValueType[][] getAllowedArgumentTypes() {
+    return ARG_TYPES;
+  }
+
+  @Override
+  @Nonnull
+  public String getReference() {
+    return "find index of the first row of CSV table which has the key in the column, returns -1 if not found";
+  }
+
+  @Override
+  @Nonnull
+  public ValueType getResultType() {
+    return ValueType.INT;
+  }
+}
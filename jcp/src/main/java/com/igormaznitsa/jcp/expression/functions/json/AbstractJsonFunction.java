@@ -0,0 +1,161 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.json;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
+import lombok.Data;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+
+/**
+ * Base class for functions working with JSON documents. Documents are kept as {@link JsonIndex} in shared resources of the context during whole
+ * preprocessing run so that they are shared between preprocessed files. Functions exchange string ids, id of a value is made from id of its
+ * document and integer handle of the value so that it is resolved without search. A document dropped because of the shared resource budget
+ * is parsed again on demand.
+ *
+ * @since 7.0.1
+ */
+public abstract class AbstractJsonFunction extends AbstractFunction {
+
+  private static final String DOCUMENT_ID_PREFIX = "jsonDocument_";
+  private static final String VALUE_ID_SEPARATOR = "_#";
+
+  @Nonnull
+  public static String makeDocumentId(@Nonnull final String fileName) {
+    return DOCUMENT_ID_PREFIX + fileName;
+  }
+
+  /**
+   * Make id of a value, the root value has the document id.
+   *
+   * @param documentId id of the document, must not be null
+   * @param value      handle of the value in the document
+   * @return id of the value, must not be null
+   */
+  @Nonnull
+  public static String makeValueId(@Nonnull final String documentId, final int value) {
+    return value == JsonIndex.ROOT ? documentId : documentId + VALUE_ID_SEPARATOR + value;
+  }
+
+  /**
+   * Find document in shared resources or read and parse it.
+   *
+   * @param context  the preprocessor context, must not be null
+   * @param fileName the file name, must not be null
+   * @return index of the document, must not be null
+   */
+  @Nonnull
+  protected static JsonIndex openDocument(@Nonnull final PreprocessorContext context, @Nonnull final String fileName) {
+    final String documentId = makeDocumentId(fileName);
+    final Object found = context.getSharedResource(documentId);
+    if (found instanceof JsonIndex) {
+      return (JsonIndex) found;
+    }
+
+    final File file;
+    try {
+      file = context.findFileInSources(fileName);
+    } catch (IOException unexpected) {
+      throw context.makeException("Can't read \'" + fileName + '\'', null);
+    }
+
+    final JsonIndex result;
+    try {
+      result = JsonIndex.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    } catch (ParseException ex) {
+      throw context.makeException("Can't parse JSON file \'" + fileName + "\' : " + ex.getMessage(), ex);
+    } catch (IOException ex) {
+      throw context.makeException("Can't read JSON file", ex);
+    }
+    context.setSharedResource(documentId, result, SharedResourceScope.RUN, result.getWeight());
+    return result;
+  }
+
+  /**
+   * Find value for its id.
+   *
+   * @param context the preprocessor context, must not be null
+   * @param id      id of the value or of the document, must not be null
+   * @return found value, must not be null
+   */
+  @Nonnull
+  protected static JsonNode findNode(@Nonnull final PreprocessorContext context, @Nonnull final String id) {
+    String documentId = id;
+    int value = JsonIndex.ROOT;
+
+    final int separator = id.lastIndexOf(VALUE_ID_SEPARATOR);
+    if (separator > 0 && separator + VALUE_ID_SEPARATOR.length() < id.length()) {
+      try {
+        value = Integer.parseInt(id.substring(separator + VALUE_ID_SEPARATOR.length()));
+        documentId = id.substring(0, separator);
+      } catch (NumberFormatException ex) {
+        // it is a document which file name contains the separator
+      }
+    }
+
+    JsonIndex index = null;
+    final Object found = context.getSharedResource(documentId);
+    if (found instanceof JsonIndex) {
+      index = (JsonIndex) found;
+    } else if (found == null && documentId.startsWith(DOCUMENT_ID_PREFIX) && context.isSharedResourceDropped(documentId)) {
+      index = openDocument(context, documentId.substring(DOCUMENT_ID_PREFIX.length()));
+    }
+
+    if (index == null || !index.isValue(value)) {
+      throw context.makeException("Can't find any JSON value for the \'" + id + "\' id", null);
+    }
+    return new JsonNode(documentId, index, value);
+  }
+
+  /**
+   * Make preprocessor value for a JSON value, scalar values are converted into preprocessor values and arrays and objects are presented by
+   * their ids.
+   *
+   * @param node  node of the document, must not be null
+   * @param value handle of the value
+   * @return preprocessor value, must not be null
+   */
+  @Nonnull
+  protected static Value makeResult(@Nonnull final JsonNode node, final int value) {
+    return node.getIndex().isContainer(value) ? Value.valueOf(makeValueId(node.getDocumentId(), value)) : node.getIndex().toValue(value);
+  }
+
+  /**
+   * Value of a JSON document.
+   */
+  @Data
+  protected static final class JsonNode {
+
+    private final String documentId;
+    private final JsonIndex index;
+    private final int value;
+  }
+}
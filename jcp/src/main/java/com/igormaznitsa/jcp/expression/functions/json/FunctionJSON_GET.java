@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.json;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The class implements the json_get function handler
+ *
+ * @since 7.0.1
+ */
+public final class FunctionJSON_GET extends AbstractJsonFunction {
+
+  private static final ValueType[][] ARG_TYPES = new ValueType[][] {{ValueType.STRING, ValueType.INT}, {ValueType.STRING, ValueType.STRING}};
+
+  @Override
+  @Nonnull
+  public String getName() {
+    return "json_get";
+  }
+
+  @Nonnull
+  public Value executeStrInt(@Nonnull final PreprocessorContext context, @Nonnull final Value valueId, @Nonnull final Value index) {
+    final JsonNode node = findNode(context, valueId.asString());
+    final int found = node.getIndex().getChild(node.getValue(), (int) index.longValue());
+    if (found < 0) {
+      throw context.makeException("The JSON item index is out of bounds [" + index.longValue() + ']', null);
+    }
+    return makeResult(node, found);
+  }
+
+  @Nonnull
+  public Value executeStrStr(@Nonnull final PreprocessorContext context, @Nonnull final Value valueId, @Nonnull final Value name) {
+    final JsonNode node = findNode(context, valueId.asString());
+    final String memberName = name.asString();
+    int found = node.getIndex().findMember(node.getValue(), memberName);
+    if (found < 0 && node.getIndex().getType(node.getValue()) == JsonIndex.TYPE_ARRAY) {
+      try {
+        found = node.getIndex().getChild(node.getValue(), Integer.parseInt(memberName.trim()));
+      } catch (NumberFormatException ex) {
+        found = -1;
+      }
+    }
+    if (found < 0) {
+      throw context.makeException("Can't find JSON member \'" + memberName + "\' in \'" + valueId.asString() + '\'', null);
+    }
+    return makeResult(node, found);
+  }
+
+  @Override
+  public int getArity() {
+    return 2;
+  }
+
+  @Override
+  @Nonnull
+  @MustNotContainNull
+  public ValueType[][] getAllowedArgumentTypes() {
+    return ARG_TYPES;
+  }
+
+  @Override
+  @Nonnull
+  public String getReference() {
+    return "get item of JSON array for its index (0 is first) or member of JSON object for its name, arrays and objects are returned as ids";
+  }
+
+  @Override
+  @Nonnull
+  public ValueType getResultType() {
+    return ValueType.ANY;
+  }
+}
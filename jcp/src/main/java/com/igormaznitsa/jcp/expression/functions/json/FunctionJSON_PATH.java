@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.json;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The class implements the json_path function handler
+ *
+ * @since 7.0.1
+ */
+public final class FunctionJSON_PATH extends AbstractJsonFunction {
+
+  private static final ValueType[][] ARG_TYPES = new ValueType[][] {{ValueType.STRING, ValueType.STRING}};
+
+  @Override
+  @Nonnull
+  public String getName() {
+    return "json_path";
+  }
+
+  @Nonnull
+  public Value executeStrStr(@Nonnull final PreprocessorContext context, @Nonnull final Value valueId, @Nonnull final Value path) {
+    final JsonNode node = findNode(context, valueId.asString());
+    final int found;
+    try {
+      found = node.getIndex().findPath(node.getValue(), path.asString());
+    } catch (IllegalArgumentException ex) {
+      throw context.makeException(ex.getMessage(), ex);
+    }
+    if (found < 0) {
+      throw context.makeException("Can't find JSON value for path \'" + path.asString() + '\'', null);
+    }
+    return makeResult(node, found);
+  }
+
+  @Override
+  public int getArity() {
+    return 2;
+  }
+
+  @Override
+  @Nonnull
+  @MustNotContainNull
+  public ValueType[][] getAllowedArgumentTypes() {
+    return ARG_TYPES;
+  }
+
+  @Override
+  @Nonnull
+  public String getReference() {
+    return "get JSON value for path like $.items[2].name relative to JSON value, arrays and objects are returned as ids";
+  }
+
+  @Override
+  @Nonnull
+  public ValueType getResultType() {
+    return ValueType.ANY;
+  }
+}
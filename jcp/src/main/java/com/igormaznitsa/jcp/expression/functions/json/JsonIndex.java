@@ -0,0 +1,657 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.json;
+
+import com.igormaznitsa.jcp.expression.Value;
+
+import javax.annotation.Nonnull;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read only index of JSON text. The text is tokenized in one pass without building of object graph, every value gets integer handle
+ * and the index keeps only its type and offsets in the source text. Members of objects and items of arrays are placed contiguously so that
+ * access by position takes constant time, strings and numbers are decoded only on request. Resolved paths are cached so that repeated
+ * lookups don't walk the document. The index is immutable after parsing and can be used by several threads.
+ *
+ * @since 7.0.1
+ */
+public final class JsonIndex {
+
+  public static final int TYPE_OBJECT = 0;
+  public static final int TYPE_ARRAY = 1;
+  public static final int TYPE_STRING = 2;
+  public static final int TYPE_NUMBER = 3;
+  public static final int TYPE_TRUE = 4;
+  public static final int TYPE_FALSE = 5;
+  public static final int TYPE_NULL = 6;
+
+  /**
+   * Handle of the root value.
+   */
+  public static final int ROOT = 0;
+
+  private static final int MAX_CACHED_PATHS = 4096;
+
+  private final String text;
+  private final byte[] types;
+  /**
+   * For containers it is the index of the first child in children arrays, for other values it is start offset in the text.
+   */
+  private final int[] from;
+  /**
+   * For containers it is number of children, for other values it is end offset in the text (exclusive).
+   */
+  private final int[] to;
+  private final int[] children;
+  private final int[] keyFrom;
+  private final int[] keyTo;
+  private final Map<String, Integer> pathCache = new ConcurrentHashMap<>();
+
+  private JsonIndex(@Nonnull final String text, @Nonnull final Builder builder) {
+    this.text = text;
+    this.types = Arrays.copyOf(builder.types, builder.nodes);
+    this.from = Arrays.copyOf(builder.from, builder.nodes);
+    this.to = Arrays.copyOf(builder.to, builder.nodes);
+    this.children = Arrays.copyOf(builder.children, builder.childCount);
+    this.keyFrom = Arrays.copyOf(builder.keyFrom, builder.childCount);
+    this.keyTo = Arrays.copyOf(builder.keyTo, builder.childCount);
+  }
+
+  /**
+   * Tokenize JSON text and build its index.
+   *
+   * @param text JSON text, must not be null
+   * @return built index, must not be null
+   * @throws ParseException thrown if the text is not valid JSON, the error offset points the wrong position
+   */
+  @Nonnull
+  public static JsonIndex parse(@Nonnull final String text) throws ParseException {
+    final Builder builder = new Builder(text);
+    builder.parse();
+    return new JsonIndex(text, builder);
+  }
+
+  private static boolean isWhitespace(final char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+  }
+
+  private static int hexDigit(final char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    return -1;
+  }
+
+  /**
+   * Get number of values in the index.
+   *
+   * @return number of values
+   */
+  public int size() {
+    return this.types.length;
+  }
+
+  /**
+   * Get approximate number of bytes occupied by the index and its text.
+   *
+   * @return approximate weight in bytes
+   */
+  public long getWeight() {
+    return 64L + this.text.length() * 2L + this.types.length * 9L + this.children.length * 12L + this.pathCache.size() * 64L;
+  }
+
+  public boolean isValue(final int value) {
+    return value >= 0 && value < this.types.length;
+  }
+
+  public int getType(final int value) {
+    return this.types[value];
+  }
+
+  public boolean isContainer(final int value) {
+    return this.types[value] == TYPE_OBJECT || this.types[value] == TYPE_ARRAY;
+  }
+
+  /**
+   * Get number of items of array or number of members of object.
+   *
+   * @param value handle of a container
+   * @return number of children
+   * @throws IllegalArgumentException if the value is not a container
+   */
+  public int getChildCount(final int value) {
+    if (!isContainer(value)) {
+      throw new IllegalArgumentException("Not array or object");
+    }
+    return this.to[value];
+  }
+
+  /**
+   * Get child of container for its position.
+   *
+   * @param value handle of a container
+   * @param index position of the child, 0 is the first one
+   * @return handle of the child or -1 if the value is not a container or the index is out of bounds
+   */
+  public int getChild(final int value, final int index) {
+    if (!isContainer(value) || index < 0 || index >= this.to[value]) {
+      return -1;
+    }
+    return this.children[this.from[value] + index];
+  }
+
+  /**
+   * Find member of object for its name.
+   *
+   * @param value handle of an object
+   * @param name  name of the member, must not be null
+   * @return handle of the member value or -1 if the value is not an object or it doesn't have such member
+   */
+  public int findMember(final int value, @Nonnull final String name) {
+    if (this.types[value] != TYPE_OBJECT) {
+      return -1;
+    }
+    final int start = this.from[value];
+    final int end = start + this.to[value];
+    for (int i = start; i < end; i++) {
+      if (keyEquals(this.keyFrom[i], this.keyTo[i], name)) {
+        return this.children[i];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Get name of member of object for its position.
+   *
+   * @param value handle of an object
+   * @param index position of the member
+   * @return name of the member, must not be null
+   * @throws IllegalArgumentException if the value is not an object or the index is out of bounds
+   */
+  @Nonnull
+  public String getMemberName(final int value, final int index) {
+    if (this.types[value] != TYPE_OBJECT || index < 0 || index >= this.to[value]) {
+      throw new IllegalArgumentException("Can't find member " + index);
+    }
+    final int child = this.from[value] + index;
+    return decodeString(this.keyFrom[child], this.keyTo[child]);
+  }
+
+  /**
+   * Find value for path relative to a value. Path is sequence of steps, a step is a member name after dot or an index or quoted member name
+   * in square brackets, the first dot can be omitted and the path can be started with '$' (for instance {@code $.items[2].name},
+   * {@code items[2]["full name"]}). Results are cached.
+   *
+   * @param value handle of the start value
+   * @param path  the path, must not be null
+   * @return handle of the found value or -1 if not found
+   * @throws IllegalArgumentException if the path has wrong syntax
+   */
+  public int findPath(final int value, @Nonnull final String path) {
+    final String key = value == ROOT ? path : value + ":" + path;
+    final Integer cached = this.pathCache.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    final int result = walkPath(value, path);
+    if (this.pathCache.size() < MAX_CACHED_PATHS) {
+      this.pathCache.put(key, result);
+    }
+    return result;
+  }
+
+  private int walkPath(final int start, @Nonnull final String path) {
+    int current = start;
+    int pos = path.startsWith("$") ? 1 : 0;
+    final int length = path.length();
+    boolean first = true;
+    while (pos < length && current >= 0) {
+      final char c = path.charAt(pos);
+      if (c == '[') {
+        final int close = path.indexOf(']', pos);
+        if (close < 0) {
+          throw new IllegalArgumentException("Unclosed bracket in path: " + path);
+        }
+        final String step = path.substring(pos + 1, close).trim();
+        if (step.length() > 1 && (step.charAt(0) == '"' || step.charAt(0) == '\'') && step.charAt(step.length() - 1) == step.charAt(0)) {
+          current = findMember(current, step.substring(1, step.length() - 1));
+        } else {
+          try {
+            current = getChild(current, Integer.parseInt(step));
+          } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Wrong index in path: " + path);
+          }
+        }
+        pos = close + 1;
+      } else {
+        if (c == '.') {
+          pos++;
+        } else if (!first) {
+          throw new IllegalArgumentException("Unexpected char in path: " + path);
+        }
+        int end = pos;
+        while (end < length && path.charAt(end) != '.' && path.charAt(end) != '[') {
+          end++;
+        }
+        if (end == pos) {
+          throw new IllegalArgumentException("Empty step in path: " + path);
+        }
+        current = findMember(current, path.substring(pos, end));
+        pos = end;
+      }
+      first = false;
+    }
+    return current;
+  }
+
+  /**
+   * Make preprocessor value for a scalar JSON value. Strings are decoded, integer numbers are converted into INT and other numbers into FLOAT,
+   * null is presented as empty string.
+   *
+   * @param value handle of a scalar value
+   * @return preprocessor value, must not be null
+   * @throws IllegalArgumentException if the value is a container
+   */
+  @Nonnull
+  public Value toValue(final int value) {
+    switch (this.types[value]) {
+      case TYPE_STRING:
+        return Value.valueOf(decodeString(this.from[value], this.to[value]));
+      case TYPE_NUMBER: {
+        final String number = this.text.substring(this.from[value], this.to[value]);
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+          try {
+            return Value.valueOf(Long.parseLong(number));
+          } catch (NumberFormatException ex) {
+            // too big for long, it is presented as float
+          }
+        }
+        return Value.valueOf(Float.parseFloat(number));
+      }
+      case TYPE_TRUE:
+        return Value.BOOLEAN_TRUE;
+      case TYPE_FALSE:
+        return Value.BOOLEAN_FALSE;
+      case TYPE_NULL:
+        return Value.valueOf("");
+      default:
+        throw new IllegalArgumentException("Value is array or object");
+    }
+  }
+
+  private boolean keyEquals(final int start, final int end, @Nonnull final String name) {
+    final int length = end - start;
+    if (length == name.length() && this.text.regionMatches(start, name, 0, length)) {
+      return true;
+    }
+    if (length <= name.length()) {
+      return false;
+    }
+    final int escape = this.text.indexOf('\\', start);
+    return escape >= 0 && escape < end && decodeString(start, end).equals(name);
+  }
+
+  @Nonnull
+  private String decodeString(final int start, final int end) {
+    int escape = this.text.indexOf('\\', start);
+    if (escape < 0 || escape >= end) {
+      return this.text.substring(start, end);
+    }
+    final StringBuilder result = new StringBuilder(end - start);
+    int copyFrom = start;
+    while (escape >= 0 && escape < end) {
+      result.append(this.text, copyFrom, escape);
+      final char c = this.text.charAt(escape + 1);
+      int next = escape + 2;
+      switch (c) {
+        case 'b':
+          result.append('\b');
+          break;
+        case 'f':
+          result.append('\f');
+          break;
+        case 'n':
+          result.append('\n');
+          break;
+        case 'r':
+          result.append('\r');
+          break;
+        case 't':
+          result.append('\t');
+          break;
+        case 'u':
+          result.append((char) ((hexDigit(this.text.charAt(escape + 2)) << 12) | (hexDigit(this.text.charAt(escape + 3)) << 8)
+              | (hexDigit(this.text.charAt(escape + 4)) << 4) | hexDigit(this.text.charAt(escape + 5))));
+          next = escape + 6;
+          break;
+        default:
+          result.append(c);
+          break;
+      }
+      copyFrom = next;
+      escape = this.text.indexOf('\\', next);
+    }
+    return result.append(this.text, copyFrom, end).toString();
+  }
+
+  /**
+   * Single pass tokenizer. Children of open containers are collected on the pending stack, when a container is closed its children are
+   * moved into the tail of the children arrays so that they lie contiguously.
+   */
+  private static final class Builder {
+
+    private final String text;
+    private byte[] types = new byte[64];
+    private int[] from = new int[64];
+    private int[] to = new int[64];
+    private int nodes;
+
+    private int[] children = new int[64];
+    private int[] keyFrom = new int[64];
+    private int[] keyTo = new int[64];
+    private int childCount;
+
+    private int[] pendingChild = new int[64];
+    private int[] pendingKeyFrom = new int[64];
+    private int[] pendingKeyTo = new int[64];
+    private int pending;
+
+    private int[] stack = new int[16];
+    private int[] stackMark = new int[16];
+    private int depth;
+
+    private int pos;
+
+    private Builder(@Nonnull final String text) {
+      this.text = text;
+    }
+
+    private int addNode(final int type, final int start, final int end) {
+      if (this.nodes == this.types.length) {
+        final int size = this.nodes * 2;
+        this.types = Arrays.copyOf(this.types, size);
+        this.from = Arrays.copyOf(this.from, size);
+        this.to = Arrays.copyOf(this.to, size);
+      }
+      this.types[this.nodes] = (byte) type;
+      this.from[this.nodes] = start;
+      this.to[this.nodes] = end;
+      return this.nodes++;
+    }
+
+    private void addPending(final int start, final int end) {
+      if (this.pending == this.pendingChild.length) {
+        final int size = this.pending * 2;
+        this.pendingChild = Arrays.copyOf(this.pendingChild, size);
+        this.pendingKeyFrom = Arrays.copyOf(this.pendingKeyFrom, size);
+        this.pendingKeyTo = Arrays.copyOf(this.pendingKeyTo, size);
+      }
+      this.pendingChild[this.pending] = -1;
+      this.pendingKeyFrom[this.pending] = start;
+      this.pendingKeyTo[this.pending] = end;
+      this.pending++;
+    }
+
+    private void push(final int node) {
+      if (this.depth == this.stack.length) {
+        this.stack = Arrays.copyOf(this.stack, this.depth * 2);
+        this.stackMark = Arrays.copyOf(this.stackMark, this.depth * 2);
+      }
+      this.stack[this.depth] = node;
+      this.stackMark[this.depth] = this.pending;
+      this.depth++;
+    }
+
+    private int close() {
+      this.depth--;
+      final int node = this.stack[this.depth];
+      final int mark = this.stackMark[this.depth];
+      final int count = this.pending - mark;
+      if (this.childCount + count > this.children.length) {
+        final int size = Math.max(this.children.length * 2, this.childCount + count);
+        this.children = Arrays.copyOf(this.children, size);
+        this.keyFrom = Arrays.copyOf(this.keyFrom, size);
+        this.keyTo = Arrays.copyOf(this.keyTo, size);
+      }
+      System.arraycopy(this.pendingChild, mark, this.children, this.childCount, count);
+      System.arraycopy(this.pendingKeyFrom, mark, this.keyFrom, this.childCount, count);
+      System.arraycopy(this.pendingKeyTo, mark, this.keyTo, this.childCount, count);
+      this.from[node] = this.childCount;
+      this.to[node] = count;
+      this.childCount += count;
+      this.pending = mark;
+      return node;
+    }
+
+    @Nonnull
+    private ParseException error(@Nonnull final String message) {
+      return new ParseException(message + " at " + this.pos, this.pos);
+    }
+
+    private char next() throws ParseException {
+      while (this.pos < this.text.length() && isWhitespace(this.text.charAt(this.pos))) {
+        this.pos++;
+      }
+      if (this.pos >= this.text.length()) {
+        throw error("Unexpected end of JSON");
+      }
+      return this.text.charAt(this.pos);
+    }
+
+    private void parse() throws ParseException {
+      if (this.text.startsWith("\uFEFF")) {
+        this.pos = 1;
+      }
+      int node = parseValue();
+      while (true) {
+        if (node < 0) {
+          // the first member of just opened container
+          node = parseMember(this.types[this.stack[this.depth - 1]] == TYPE_OBJECT);
+          continue;
+        }
+        if (this.depth == 0) {
+          while (this.pos < this.text.length() && isWhitespace(this.text.charAt(this.pos))) {
+            this.pos++;
+          }
+          if (this.pos < this.text.length()) {
+            throw error("Unexpected text after JSON value");
+          }
+          return;
+        }
+        this.pendingChild[this.pending - 1] = node;
+        final boolean object = this.types[this.stack[this.depth - 1]] == TYPE_OBJECT;
+        final char c = next();
+        if (c == ',') {
+          this.pos++;
+          node = parseMember(object);
+        } else if (c == (object ? '}' : ']')) {
+          this.pos++;
+          node = close();
+        } else {
+          throw error("Expected ',' or end of " + (object ? "object" : "array"));
+        }
+      }
+    }
+
+    private int parseMember(final boolean object) throws ParseException {
+      if (object) {
+        if (next() != '"') {
+          throw error("Expected member name");
+        }
+        final int start = this.pos + 1;
+        final int end = skipString();
+        if (next() != ':') {
+          throw error("Expected ':'");
+        }
+        this.pos++;
+        addPending(start, end);
+      } else {
+        addPending(-1, -1);
+      }
+      return parseValue();
+    }
+
+    /**
+     * Parse value or open container.
+     *
+     * @return handle of parsed scalar value or -1 if a container has been opened and its children must be parsed
+     */
+    private int parseValue() throws ParseException {
+      final char c = next();
+      final int start = this.pos;
+      switch (c) {
+        case '{':
+        case '[': {
+          final boolean object = c == '{';
+          final int node = addNode(object ? TYPE_OBJECT : TYPE_ARRAY, 0, 0);
+          this.pos++;
+          push(node);
+          if (next() == (object ? '}' : ']')) {
+            this.pos++;
+            return close();
+          }
+          return -1;
+        }
+        case '"': {
+          final int end = skipString();
+          return addNode(TYPE_STRING, start + 1, end);
+        }
+        case 't':
+          return literal("true", TYPE_TRUE);
+        case 'f':
+          return literal("false", TYPE_FALSE);
+        case 'n':
+          return literal("null", TYPE_NULL);
+        default: {
+          if (c == '-' || (c >= '0' && c <= '9')) {
+            return addNode(TYPE_NUMBER, start, skipNumber());
+          }
+          throw error("Unexpected char '" + c + '\'');
+        }
+      }
+    }
+
+    private int literal(@Nonnull final String literal, final int type) throws ParseException {
+      if (!this.text.startsWith(literal, this.pos)) {
+        throw error("Unexpected token");
+      }
+      final int start = this.pos;
+      this.pos += literal.length();
+      return addNode(type, start, this.pos);
+    }
+
+    /**
+     * Skip string and check its escapes.
+     *
+     * @return offset of the closing quote
+     */
+    private int skipString() throws ParseException {
+      int i = this.pos + 1;
+      final int length = this.text.length();
+      while (i < length) {
+        final char c = this.text.charAt(i);
+        if (c == '"') {
+          this.pos = i + 1;
+          return i;
+        } else if (c == '\\') {
+          if (i + 1 >= length) {
+            break;
+          }
+          final char escaped = this.text.charAt(i + 1);
+          if (escaped == 'u') {
+            if (i + 5 >= length || hexDigit(this.text.charAt(i + 2)) < 0 || hexDigit(this.text.charAt(i + 3)) < 0
+                || hexDigit(this.text.charAt(i + 4)) < 0 || hexDigit(this.text.charAt(i + 5)) < 0) {
+              this.pos = i;
+              throw error("Wrong unicode escape");
+            }
+            i += 6;
+          } else if ("\"\\/bfnrt".indexOf(escaped) >= 0) {
+            i += 2;
+          } else {
+            this.pos = i;
+            throw error("Wrong escape");
+          }
+        } else if (c < 0x20) {
+          this.pos = i;
+          throw error("Control char in string");
+        } else {
+          i++;
+        }
+      }
+      this.pos = length;
+      throw error("Unclosed string");
+    }
+
+    private int skipNumber() throws ParseException {
+      int i = this.pos;
+      final int length = this.text.length();
+      if (this.text.charAt(i) == '-') {
+        i++;
+      }
+      final int intStart = i;
+      while (i < length && this.text.charAt(i) >= '0' && this.text.charAt(i) <= '9') {
+        i++;
+      }
+      if (i == intStart || (this.text.charAt(intStart) == '0' && i - intStart > 1)) {
+        this.pos = intStart;
+        throw error("Wrong number");
+      }
+      if (i < length && this.text.charAt(i) == '.') {
+        final int fractionStart = ++i;
+        while (i < length && this.text.charAt(i) >= '0' && this.text.charAt(i) <= '9') {
+          i++;
+        }
+        if (i == fractionStart) {
+          this.pos = i;
+          throw error("Wrong number fraction");
+        }
+      }
+      if (i < length && (this.text.charAt(i) == 'e' || this.text.charAt(i) == 'E')) {
+        i++;
+        if (i < length && (this.text.charAt(i) == '+' || this.text.charAt(i) == '-')) {
+          i++;
+        }
+        final int exponentStart = i;
+        while (i < length && this.text.charAt(i) >= '0' && this.text.charAt(i) <= '9') {
+          i++;
+        }
+        if (i == exponentStart) {
+          this.pos = i;
+          throw error("Wrong number exponent");
+        }
+      }
+      this.pos = i;
+      return i;
+    }
+  }
+}
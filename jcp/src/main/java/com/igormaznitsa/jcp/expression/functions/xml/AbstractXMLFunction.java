@@ -22,137 +22,301 @@
 package com.igormaznitsa.jcp.expression.functions.xml;
 
 import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
+import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
+import com.igormaznitsa.meta.annotation.MustNotContainNull;
 import org.apache.xpath.jaxp.XPathFactoryImpl;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for functions working with XML documents. Documents are kept as {@link CompactXmlDocument} in shared resources of the context,
+ * functions exchange string ids. Id of an element is made from id of its document and its integer handle so that it is resolved without search.
+ * Documents live during whole preprocessing run while found elements and lists are released after processing of the current file, all of them
+ * can be dropped if the shared resource budget is exceeded and they are made again from their ids on demand.
+ */
 public abstract class AbstractXMLFunction extends AbstractFunction {
 
+  private static final String ELEMENT_ID_SEPARATOR = "_#";
+  private static final String DOCUMENT_ID_PREFIX = "xmlDocument_";
+  private static final String ROOT_ID_SUFFIX = ELEMENT_ID_SEPARATOR + "root";
+  private static final String LIST_ID_SEPARATOR = ELEMENT_ID_SEPARATOR + "list_";
+  private static final String XPATH_LIST_ID_SEPARATOR = ELEMENT_ID_SEPARATOR + "xpath_";
+  private static final String XPATH_ELEMENT_ID_SEPARATOR = ELEMENT_ID_SEPARATOR + "xpathelement_";
+
+  private static final int MAX_CACHED_XPATH_EXPRESSIONS = 256;
+
+  private static final ThreadLocal<XPath> THREAD_XPATH = ThreadLocal.withInitial(() -> new XPathFactoryImpl().newXPath());
+
+  private static final ThreadLocal<Map<String, XPathExpression>> COMPILED_XPATH_CACHE = ThreadLocal.withInitial(() -> new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(@Nonnull final Map.Entry<String, XPathExpression> eldest) {
+      return this.size() > MAX_CACHED_XPATH_EXPRESSIONS;
+    }
+  });
+
   @Nonnull
-  public static String makeElementListId(@Nonnull final Element parentName, @Nonnull final String elementName) {
-    return buildPathForElement(parentName) + "_#list_" + elementName;
+  public static String makeElementListId(@Nonnull final String elementId, @Nonnull final String elementName) {
+    return elementId + LIST_ID_SEPARATOR + elementName;
   }
 
   @Nonnull
   public static String makeDocumentId(@Nonnull final String fileName) {
-    return "xmlDocument_" + fileName;
+    return DOCUMENT_ID_PREFIX + fileName;
   }
 
   @Nonnull
   public static String makeDocumentRootId(@Nonnull final String documentId) {
-    return documentId + "_#root";
+    return documentId + ROOT_ID_SUFFIX;
   }
 
+  /**
+   * Make id of an element.
+   *
+   * @param documentId id of the document, must not be null
+   * @param element    handle of the element in the document
+   * @return id of the element, must not be null
+   * @since 7.0.1
+   */
   @Nonnull
-  public static String makeElementId(@Nonnull final String elementListId, @Nonnull final int elementIndex) {
-    return elementListId + '_' + elementIndex;
+  public static String makeElementId(@Nonnull final String documentId, final int element) {
+    return documentId + ELEMENT_ID_SEPARATOR + element;
   }
 
   @Nonnull
   public static String makeXPathListId(@Nonnull final String documentId, @Nonnull final String xpath) {
-    return documentId + "_#xpath_" + xpath;
+    return documentId + XPATH_LIST_ID_SEPARATOR + xpath;
   }
 
   @Nonnull
   public static String makeXPathElementId(@Nonnull final String documentId, @Nonnull final String xpath) {
-    return documentId + "_#xpathelement_" + xpath;
+    return documentId + XPATH_ELEMENT_ID_SEPARATOR + xpath;
   }
 
+  /**
+   * Get compiled XPath expression. XPath objects and compiled expressions are not thread safe so that they are cached per thread,
+   * the cache keeps limited number of recently used expressions.
+   *
+   * @param path the XPath text, must not be null
+   * @return compiled expression, must not be null
+   * @throws XPathExpressionException thrown if the path can't be compiled
+   */
   @Nonnull
-  public static String buildPathForElement(@Nonnull final Element element) {
-    final StringBuilder result = new StringBuilder();
+  protected static XPathExpression prepareXPathExpression(@Nonnull final String path) throws XPathExpressionException {
+    final Map<String, XPathExpression> cache = COMPILED_XPATH_CACHE.get();
+    XPathExpression result = cache.get(path);
+    if (result == null) {
+      result = THREAD_XPATH.get().compile(path);
+      cache.put(path, result);
+    }
+    return result;
+  }
+
+  /**
+   * Split path into element names if it is a simple path containing only child steps with names or '*' (like '/root/item').
+   *
+   * @param path the XPath text, must not be null
+   * @return array of step names or null if the path is not a simple one and must be processed by XPath engine
+   * @since 7.0.1
+   */
+  @Nullable
+  @MustNotContainNull
+  static String[] parseSimplePath(@Nonnull final String path) {
+    final int start = path.startsWith("/") ? 1 : 0;
+    if (start == path.length()) {
+      return null;
+    }
+    final List<String> steps = new ArrayList<>();
+    int stepStart = start;
+    for (int i = start; i <= path.length(); i++) {
+      if (i == path.length() || path.charAt(i) == '/') {
+        final String step = path.substring(stepStart, i);
+        if (!isSimpleStep(step)) {
+          return null;
+        }
+        steps.add(step);
+        stepStart = i + 1;
+      }
+    }
+    return steps.toArray(new String[0]);
+  }
 
-    Node theNode = element;
+  private static boolean isSimpleStep(@Nonnull final String step) {
+    if ("*".equals(step)) {
+      return true;
+    }
+    if (step.isEmpty() || !(Character.isLetter(step.charAt(0)) || step.charAt(0) == '_')) {
+      return false;
+    }
+    for (int i = 1; i < step.length(); i++) {
+      final char c = step.charAt(i);
+      if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Register container in shared resources of the context.
+   *
+   * @param context   the preprocessor context, must not be null
+   * @param id        the container id, must not be null
+   * @param container the container, must not be null
+   * @param scope     the scope of the container, must not be null
+   * @since 7.0.1
+   */
+  protected static void registerContainer(@Nonnull final PreprocessorContext context, @Nonnull final String id, @Nonnull final NodeContainer container, @Nonnull final SharedResourceScope scope) {
+    context.setSharedResource(id, container, scope, container.getWeight());
+  }
+
+  /**
+   * Find container for an id. Element ids are resolved through their document container. Containers dropped from shared resources
+   * (because of the memory budget or the end of their scope) are made again from their ids if their document is known.
+   *
+   * @param context the preprocessor context, must not be null
+   * @param id      the id, must not be null
+   * @return found container or null
+   */
+  @Nullable
+  protected static NodeContainer findContainer(@Nonnull final PreprocessorContext context, @Nonnull final String id) {
+    final Object found = context.getSharedResource(id);
+    if (found != null) {
+      return found instanceof NodeContainer ? (NodeContainer) found : null;
+    }
+    if (isRestorable(context, id)) {
+      return restoreContainer(context, id);
+    }
 
-    while (theNode != null) {
-      int level = 0;
-      Node sibling = theNode;
-      while (sibling != null) {
-        level++;
-        sibling = sibling.getPreviousSibling();
+    final int separator = id.lastIndexOf(ELEMENT_ID_SEPARATOR);
+    final int start = separator + ELEMENT_ID_SEPARATOR.length();
+    if (separator <= 0 || start == id.length() || id.length() - start > 9) {
+      return null;
+    }
+    int element = 0;
+    for (int i = start; i < id.length(); i++) {
+      final char c = id.charAt(i);
+      if (c < '0' || c > '9') {
+        return null;
       }
+      element = element * 10 + (c - '0');
+    }
 
-      result.append('/').append(theNode.getNodeName()).append('{').append(level).append('}');
-      theNode = theNode.getParentNode();
+    final NodeContainer document = findContainer(context, id.substring(0, separator));
+    if (document != null && document.isDocument() && document.getDocument().isElement(element)) {
+      return new NodeContainer(0L, id.substring(0, separator), document.getDocument(), element);
     }
+    return null;
+  }
 
-    return result.toString();
+  @Nullable
+  private static NodeContainer restoreContainer(@Nonnull final PreprocessorContext context, @Nonnull final String id) {
+    final int listSeparator = id.lastIndexOf(LIST_ID_SEPARATOR);
+    if (listSeparator > 0) {
+      new FunctionXML_LIST().executeStrStr(context, Value.valueOf(id.substring(0, listSeparator)), Value.valueOf(id.substring(listSeparator + LIST_ID_SEPARATOR.length())));
+    } else {
+      final int separator = findDocumentSeparator(context, id);
+      final String documentId = separator < 0 ? id : id.substring(0, separator);
+      final String suffix = separator < 0 ? "" : id.substring(separator);
+      if (!documentId.startsWith(DOCUMENT_ID_PREFIX)) {
+        return null;
+      }
+      if (suffix.isEmpty()) {
+        new FunctionXML_OPEN().executeStr(context, Value.valueOf(documentId.substring(DOCUMENT_ID_PREFIX.length())));
+      } else if (suffix.equals(ROOT_ID_SUFFIX)) {
+        new FunctionXML_OPEN().executeStr(context, Value.valueOf(documentId.substring(DOCUMENT_ID_PREFIX.length())));
+        // the root can be dropped by placement of its parsed document if the budget is too small
+        final NodeContainer document = findContainer(context, documentId);
+        return document == null ? null : new NodeContainer(0L, documentId, document.getDocument(), 0);
+      } else if (suffix.startsWith(XPATH_ELEMENT_ID_SEPARATOR)) {
+        new FunctionXML_XELEMENT().executeStrStr(context, Value.valueOf(documentId), Value.valueOf(suffix.substring(XPATH_ELEMENT_ID_SEPARATOR.length())));
+      } else {
+        new FunctionXML_XLIST().executeStrStr(context, Value.valueOf(documentId), Value.valueOf(suffix.substring(XPATH_LIST_ID_SEPARATOR.length())));
+      }
+    }
+    final Object restored = context.getSharedResource(id);
+    return restored instanceof NodeContainer ? (NodeContainer) restored : null;
   }
 
-  @Nonnull
-  public static String getFirstLevelTextContent(@Nonnull final Node node) {
-    final NodeList list = node.getChildNodes();
-    final StringBuilder textContent = new StringBuilder(128);
-    for (int i = 0; i < list.getLength(); ++i) {
-      final Node child = list.item(i);
-      if (child.getNodeType() == Node.TEXT_NODE) {
-        textContent.append(child.getTextContent());
+  /**
+   * Find separator between document id and suffix of a root or an xpath id. Both file name of the document and xpath can contain the separator
+   * so that its positions are tried from the last one and a position is accepted only if the context knows the document.
+   *
+   * @param context the preprocessor context, must not be null
+   * @param id      the id, must not be null
+   * @return position of the separator or -1 if the id is a document one
+   */
+  private static int findDocumentSeparator(@Nonnull final PreprocessorContext context, @Nonnull final String id) {
+    for (int separator = id.lastIndexOf(ELEMENT_ID_SEPARATOR); separator > 0; separator = id.lastIndexOf(ELEMENT_ID_SEPARATOR, separator - 1)) {
+      final boolean suffix = id.startsWith(ROOT_ID_SUFFIX, separator) && separator + ROOT_ID_SUFFIX.length() == id.length()
+          || id.startsWith(XPATH_ELEMENT_ID_SEPARATOR, separator)
+          || id.startsWith(XPATH_LIST_ID_SEPARATOR, separator);
+      if (suffix && isKnownDocument(context, id.substring(0, separator))) {
+        return separator;
       }
     }
-    return textContent.toString();
+    return -1;
   }
 
-  @Nonnull
-  protected static XPathExpression prepareXPathExpression(@Nonnull final String path) throws XPathExpressionException {
-    final XPathFactory factory = new XPathFactoryImpl();
-    final XPath xpath = factory.newXPath();
-    return xpath.compile(path);
+  private static boolean isRestorable(@Nonnull final PreprocessorContext context, @Nonnull final String id) {
+    if (context.isSharedResourceDropped(id)) {
+      return true;
+    }
+    // names of released containers of the file scope are not kept so that they are recognized as derived from a known document
+    final int listSeparator = id.lastIndexOf(LIST_ID_SEPARATOR);
+    if (listSeparator > 0) {
+      return findContainer(context, id.substring(0, listSeparator)) != null;
+    }
+    return findDocumentSeparator(context, id) > 0;
+  }
+
+  private static boolean isKnownDocument(@Nonnull final PreprocessorContext context, @Nonnull final String documentId) {
+    return context.getSharedResource(documentId) instanceof NodeContainer || context.isSharedResourceDropped(documentId);
   }
 
   @Nonnull
   public String getAttribute(@Nonnull final PreprocessorContext context, @Nonnull final String elementId, @Nonnull final String attributeName) {
-    final NodeContainer container = (NodeContainer) context.getSharedResource(elementId);
-    if (container == null) {
-      throw context.makeException("Can't find any active element with the \'" + elementId + "\' id", null);
-    }
-    try {
-      return ((Element) container.getNode()).getAttribute(attributeName);
-    } catch (ClassCastException ex) {
-      throw context.makeException("Incompatible cached element type [" + elementId + '.' + attributeName + ']', ex);
-    }
+    final NodeContainer container = getCachedElement(context, elementId);
+    final String result = container.getDocument().findAttribute(container.getElement(), attributeName);
+    return result == null ? "" : result;
   }
 
   @Nonnull
-  public Document getCachedDocument(@Nonnull final PreprocessorContext context, @Nonnull final String documentId) {
-    final NodeContainer container = (NodeContainer) context.getSharedResource(documentId);
+  public CompactXmlDocument getCachedDocument(@Nonnull final PreprocessorContext context, @Nonnull final String documentId) {
+    final NodeContainer container = findContainer(context, documentId);
     if (container == null) {
       throw context.makeException("Can't find any document for the \'" + documentId + "\' id", null);
     }
-
-    try {
-      return (Document) container.getNode();
-    } catch (ClassCastException ex) {
-      throw context.makeException("Incompatible cached element type [" + documentId + ']', ex);
+    if (!container.isDocument()) {
+      throw context.makeException("Incompatible cached element type [" + documentId + ']', null);
     }
+    return container.getDocument();
   }
 
   @Nullable
-  public Element findCachedElement(@Nonnull final PreprocessorContext context, @Nonnull final String elementId) {
-    final NodeContainer container = (NodeContainer) context.getSharedResource(elementId);
+  public NodeContainer findCachedElement(@Nonnull final PreprocessorContext context, @Nonnull final String elementId) {
+    final NodeContainer container = findContainer(context, elementId);
     if (container == null) {
       return null;
     }
-
-    try {
-      return (Element) container.getNode();
-    } catch (ClassCastException ex) {
+    if (!container.isElement()) {
       throw context.makeException("Incompatible cached element type [" + elementId + ']', null);
     }
+    return container;
   }
 
   @Nonnull
-  public Element getCachedElement(@Nonnull final PreprocessorContext context, @Nonnull final String elementId) {
-    final Element element = findCachedElement(context, elementId);
+  public NodeContainer getCachedElement(@Nonnull final PreprocessorContext context, @Nonnull final String elementId) {
+    final NodeContainer element = findCachedElement(context, elementId);
     if (element == null) {
       throw context.makeException("Can't find any active element for the \'" + elementId + "\' id", null);
     }
@@ -160,21 +324,20 @@ public abstract class AbstractXMLFunction extends AbstractFunction {
   }
 
   @Nullable
-  public NodeList findCachedElementList(@Nonnull final PreprocessorContext context, @Nonnull final String elementListId) {
-    final NodeContainer container = (NodeContainer) context.getSharedResource(elementListId);
+  public NodeContainer findCachedElementList(@Nonnull final PreprocessorContext context, @Nonnull final String elementListId) {
+    final NodeContainer container = findContainer(context, elementListId);
     if (container == null) {
       return null;
     }
-    try {
-      return container.getNodeList();
-    } catch (ClassCastException ex) {
-      throw context.makeException("Incompatible cached element type [" + elementListId + ']', ex);
+    if (!container.isElementList()) {
+      throw context.makeException("Incompatible cached element type [" + elementListId + ']', null);
     }
+    return container;
   }
 
   @Nonnull
-  public NodeList getCachedElementList(@Nonnull final PreprocessorContext context, @Nonnull final String elementListId) {
-    final NodeList result = findCachedElementList(context, elementListId);
+  public NodeContainer getCachedElementList(@Nonnull final PreprocessorContext context, @Nonnull final String elementListId) {
+    final NodeContainer result = findCachedElementList(context, elementListId);
     if (result == null) {
       throw context.makeException("Can't find any active element list for the \'" + elementListId + "\' id", null);
     }
@@ -182,35 +345,26 @@ public abstract class AbstractXMLFunction extends AbstractFunction {
   }
 
   public int getElementListSize(@Nonnull final PreprocessorContext context, @Nonnull final String elementListId) {
-    return getCachedElementList(context, elementListId).getLength();
+    return getCachedElementList(context, elementListId).getElements().length;
   }
 
   @Nonnull
   public String findElementForIndex(@Nonnull final PreprocessorContext context, @Nonnull final String elementListId, final int elementIndex) {
-    final String elementCacheId = makeElementId(elementListId, elementIndex);
-    NodeContainer container = (NodeContainer) context.getSharedResource(elementCacheId);
+    final NodeContainer container = findCachedElementList(context, elementListId);
     if (container == null) {
-      container = (NodeContainer) context.getSharedResource(elementListId);
-
-      if (container == null) {
-        throw context.makeException("Can't find any active node list for the id \'" + elementListId + '\'', null);
-      }
-
-      final NodeList list = container.getNodeList();
-      if (elementIndex < 0 || elementIndex >= list.getLength()) {
-        throw context.makeException("The Element Index is out of bounds [" + elementIndex + ']', null);
-      }
-
-      final Element element = (Element) list.item(elementIndex);
+      throw context.makeException("Can't find any active node list for the id \'" + elementListId + '\'', null);
+    }
 
-      if (element == null) {
-        throw context.makeException("Wrong index [" + elementIndex + ']', null);
-      }
+    final int[] list = container.getElements();
+    if (elementIndex < 0 || elementIndex >= list.length) {
+      throw context.makeException("The Element Index is out of bounds [" + elementIndex + ']', null);
+    }
 
-      container = new NodeContainer(UID_COUNTER.getAndIncrement(), element);
-      context.setSharedResource(elementCacheId, container);
+    final int element = list[elementIndex];
+    if (element < 0) {
+      throw context.makeException("Node is not an element [" + elementIndex + ']', null);
     }
-    return elementCacheId;
-  }
 
+    return makeElementId(container.getDocumentId(), element);
+  }
 }
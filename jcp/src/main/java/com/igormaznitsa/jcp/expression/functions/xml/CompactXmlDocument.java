@@ -0,0 +1,582 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.xml;
+
+import org.apache.xerces.jaxp.DocumentBuilderFactoryImpl;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Compact immutable model of XML document used by xml functions. Elements are identified by integer handles which are their indexes in document
+ * order (the root element has handle 0), all element data are kept in parallel arrays, names are kept once in a name table and texts and attribute
+ * values are kept in one char buffer. Text content of an element is a continuous part of the buffer because texts are placed in document order.
+ * Comments and processing instructions are ignored. Only XPath expressions which are not simple child paths need W3C DOM, it is lazily parsed from
+ * the same file and softly referenced so that it can be collected under memory pressure and parsed again.
+ *
+ * @since 7.0.1
+ */
+public final class CompactXmlDocument {
+
+  /**
+   * Handle returned for found node which is not an element (for instance attribute or text node found by XPath).
+   */
+  public static final int NOT_ELEMENT = -2;
+
+  private static final int[] EMPTY = new int[0];
+
+  private final File file;
+  private final String[] names;
+  private final Map<String, Integer> nameIndexes;
+  private final int[] elementNames;
+  private final int[] parents;
+  private final int[] firstChildren;
+  private final int[] nextSiblings;
+  private final int[] subtreeEnds;
+  private final int[] textStarts;
+  private final int[] textEnds;
+  private final int[] attributeStarts;
+  private final int[] attributeNames;
+  private final int[] attributeValueStarts;
+  private final int[] attributeValueEnds;
+  private final char[] chars;
+
+  private SoftReference<DomView> domView = new SoftReference<>(null);
+
+  private CompactXmlDocument(@Nonnull final File file, @Nonnull final Builder builder) {
+    this.file = file;
+    this.names = builder.names.toArray(new String[0]);
+    this.nameIndexes = builder.nameIndexes;
+    final int count = builder.count;
+    this.elementNames = Arrays.copyOf(builder.elementNames, count);
+    this.parents = Arrays.copyOf(builder.parents, count);
+    this.firstChildren = Arrays.copyOf(builder.firstChildren, count);
+    this.nextSiblings = Arrays.copyOf(builder.nextSiblings, count);
+    this.subtreeEnds = Arrays.copyOf(builder.subtreeEnds, count);
+    this.textStarts = Arrays.copyOf(builder.textStarts, count);
+    this.textEnds = Arrays.copyOf(builder.textEnds, count);
+    this.attributeStarts = Arrays.copyOf(builder.attributeStarts, count + 1);
+    this.attributeStarts[count] = builder.attributeCount;
+    this.attributeNames = Arrays.copyOf(builder.attributeNames, builder.attributeCount);
+    this.attributeValueStarts = Arrays.copyOf(builder.attributeValueStarts, builder.attributeCount);
+    this.attributeValueEnds = Arrays.copyOf(builder.attributeValueEnds, builder.attributeCount);
+
+    // attribute values are placed after texts
+    final int textLength = builder.text.length();
+    this.chars = new char[textLength + builder.attributeText.length()];
+    builder.text.getChars(0, textLength, this.chars, 0);
+    builder.attributeText.getChars(0, builder.attributeText.length(), this.chars, textLength);
+    for (int i = 0; i < this.attributeValueStarts.length; i++) {
+      this.attributeValueStarts[i] += textLength;
+      this.attributeValueEnds[i] += textLength;
+    }
+  }
+
+  /**
+   * Parse XML file.
+   *
+   * @param file the file to be parsed, must not be null
+   * @return parsed document, must not be null
+   * @throws IOException        thrown if the file can't be read
+   * @throws XMLStreamException thrown if the file content is not well-formed XML
+   */
+  @Nonnull
+  public static CompactXmlDocument parse(@Nonnull final File file) throws IOException, XMLStreamException {
+    final XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+    final Builder builder = new Builder();
+    try (final InputStream in = Files.newInputStream(assertNotNull(file).toPath())) {
+      final XMLStreamReader reader = factory.createXMLStreamReader(file.toURI().toASCIIString(), in);
+      try {
+        while (reader.hasNext()) {
+          switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+              builder.startElement(reader);
+              break;
+            case XMLStreamConstants.END_ELEMENT:
+              builder.endElement();
+              break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+              builder.text(reader);
+              break;
+            default:
+              break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    if (builder.count == 0) {
+      throw new XMLStreamException("There is no root element in " + file);
+    }
+    return new CompactXmlDocument(file, builder);
+  }
+
+  @Nonnull
+  private static String makeQualifiedName(@Nullable final String prefix, @Nonnull final String localName) {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+  }
+
+  @Nonnull
+  public File getFile() {
+    return this.file;
+  }
+
+  public int getElementCount() {
+    return this.elementNames.length;
+  }
+
+  /**
+   * Check that a handle points to an element of the document.
+   *
+   * @param element the handle to check
+   * @return true if the handle is an element handle of the document
+   */
+  public boolean isElement(final int element) {
+    return element >= 0 && element < this.elementNames.length;
+  }
+
+  @Nonnull
+  public String getName(final int element) {
+    return this.names[this.elementNames[element]];
+  }
+
+  /**
+   * Get parent element.
+   *
+   * @param element the element handle
+   * @return the parent element handle or -1 for the root element
+   */
+  public int getParent(final int element) {
+    return this.parents[element];
+  }
+
+  /**
+   * Get text content of an element, it is concatenation of all texts of the element and its descendants.
+   *
+   * @param element the element handle
+   * @return the text content, must not be null
+   */
+  @Nonnull
+  public String getText(final int element) {
+    return new String(this.chars, this.textStarts[element], this.textEnds[element] - this.textStarts[element]);
+  }
+
+  /**
+   * Find attribute value of an element.
+   *
+   * @param element the element handle
+   * @param name    the attribute name, must not be null
+   * @return the attribute value or null if not found
+   */
+  @Nullable
+  public String findAttribute(final int element, @Nonnull final String name) {
+    final Integer nameIndex = this.nameIndexes.get(name);
+    if (nameIndex != null) {
+      for (int i = this.attributeStarts[element]; i < this.attributeStarts[element + 1]; i++) {
+        if (this.attributeNames[i] == nameIndex) {
+          return new String(this.chars, this.attributeValueStarts[i], this.attributeValueEnds[i] - this.attributeValueStarts[i]);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Find all descendants of an element with a name in document order.
+   *
+   * @param element the element handle
+   * @param name    the name or '*' for all elements, must not be null
+   * @return array of found element handles, must not be null
+   */
+  @Nonnull
+  public int[] findDescendants(final int element, @Nonnull final String name) {
+    final int from = element + 1;
+    final int to = this.subtreeEnds[element];
+    if ("*".equals(name)) {
+      final int[] result = new int[to - from];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = from + i;
+      }
+      return result;
+    }
+
+    final Integer nameIndex = this.nameIndexes.get(name);
+    if (nameIndex == null) {
+      return EMPTY;
+    }
+    final IntBuffer result = new IntBuffer();
+    for (int i = from; i < to; i++) {
+      if (this.elementNames[i] == nameIndex) {
+        result.add(i);
+      }
+    }
+    return result.toArray();
+  }
+
+  private int firstChild(final int element) {
+    return element < 0 ? 0 : this.firstChildren[element];
+  }
+
+  @Nullable
+  private int[] resolveStepNames(@Nonnull final String[] steps) {
+    final int[] result = new int[steps.length];
+    for (int i = 0; i < steps.length; i++) {
+      if ("*".equals(steps[i])) {
+        result[i] = -1;
+      } else {
+        final Integer index = this.nameIndexes.get(steps[i]);
+        if (index == null) {
+          return null;
+        }
+        result[i] = index;
+      }
+    }
+    return result;
+  }
+
+  private void collect(final int node, @Nonnull final int[] steps, final int stepIndex, @Nonnull final IntBuffer result, final boolean onlyFirst) {
+    for (int child = firstChild(node); child >= 0; child = this.nextSiblings[child]) {
+      if (steps[stepIndex] < 0 || steps[stepIndex] == this.elementNames[child]) {
+        if (stepIndex == steps.length - 1) {
+          result.add(child);
+        } else {
+          collect(child, steps, stepIndex + 1, result, onlyFirst);
+        }
+        if (onlyFirst && result.size > 0) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Find elements for simple path made by child steps from the document node.
+   *
+   * @param steps element names or '*' for every step, must not be null
+   * @return found element handles in document order, must not be null
+   * @see AbstractXMLFunction#parseSimplePath(String)
+   */
+  @Nonnull
+  public int[] findForSimplePath(@Nonnull final String[] steps) {
+    final int[] resolved = resolveStepNames(steps);
+    if (resolved == null || resolved.length == 0) {
+      return EMPTY;
+    }
+    final IntBuffer result = new IntBuffer();
+    collect(-1, resolved, 0, result, false);
+    return result.toArray();
+  }
+
+  /**
+   * Find the first element for simple path made by child steps from the document node.
+   *
+   * @param steps element names or '*' for every step, must not be null
+   * @return the first found element handle or -1 if not found
+   */
+  public int findFirstForSimplePath(@Nonnull final String[] steps) {
+    final int[] resolved = resolveStepNames(steps);
+    if (resolved == null || resolved.length == 0) {
+      return -1;
+    }
+    final IntBuffer result = new IntBuffer();
+    collect(-1, resolved, 0, result, true);
+    return result.size == 0 ? -1 : result.data[0];
+  }
+
+  /**
+   * Find nodes for XPath expression through W3C DOM of the document.
+   *
+   * @param path the XPath expression, must not be null
+   * @return handles of found nodes in document order, {@link #NOT_ELEMENT} for nodes which are not elements
+   * @throws XPathExpressionException thrown for error in the expression or if DOM can't be made
+   */
+  @Nonnull
+  public synchronized int[] findForXPath(@Nonnull final String path) throws XPathExpressionException {
+    final DomView view = getDomView();
+    final NodeList list = (NodeList) AbstractXMLFunction.prepareXPathExpression(path).evaluate(view.document, XPathConstants.NODESET);
+    final int[] result = new int[list.getLength()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = view.toHandle(list.item(i));
+    }
+    return result;
+  }
+
+  /**
+   * Find the first node for XPath expression through W3C DOM of the document.
+   *
+   * @param path the XPath expression, must not be null
+   * @return handle of the first found node, -1 if not found or {@link #NOT_ELEMENT} if the found node is not an element
+   * @throws XPathExpressionException thrown for error in the expression or if DOM can't be made
+   */
+  public synchronized int findFirstForXPath(@Nonnull final String path) throws XPathExpressionException {
+    final DomView view = getDomView();
+    final Node found = (Node) AbstractXMLFunction.prepareXPathExpression(path).evaluate(view.document, XPathConstants.NODE);
+    return found == null ? -1 : view.toHandle(found);
+  }
+
+  /**
+   * Get approximate weight of the document in memory, W3C DOM is not counted because it is softly referenced.
+   *
+   * @return approximate weight in bytes
+   */
+  public long getWeight() {
+    long result = 128L + this.chars.length * 2L;
+    result += (this.elementNames.length * 8L + this.attributeNames.length * 3L + 1L) * 4L;
+    for (final String name : this.names) {
+      result += 48L + name.length() * 2L;
+    }
+    return result;
+  }
+
+  @Nonnull
+  private DomView getDomView() throws XPathExpressionException {
+    DomView result = this.domView.get();
+    if (result == null) {
+      final DocumentBuilderFactoryImpl docBuilderFactory = new DocumentBuilderFactoryImpl();
+      docBuilderFactory.setIgnoringComments(true);
+      docBuilderFactory.setCoalescing(true);
+      docBuilderFactory.setValidating(false);
+
+      final Document document;
+      try {
+        document = docBuilderFactory.newDocumentBuilder().parse(this.file);
+      } catch (ParserConfigurationException | SAXException | IOException ex) {
+        final XPathExpressionException error = new XPathExpressionException("Can't parse DOM for " + this.file);
+        error.initCause(ex);
+        throw error;
+      }
+
+      final Map<Node, Integer> handles = new IdentityHashMap<>(this.elementNames.length * 2);
+      int counter = 0;
+      Node node = document.getDocumentElement();
+      while (node != null) {
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+          handles.put(node, counter++);
+        }
+        if (node.getFirstChild() != null) {
+          node = node.getFirstChild();
+        } else {
+          while (node != null && node.getNextSibling() == null) {
+            node = node.getParentNode();
+          }
+          node = node == null ? null : node.getNextSibling();
+        }
+      }
+      if (counter != this.elementNames.length) {
+        throw new XPathExpressionException("Changed XML file " + this.file);
+      }
+      result = new DomView(document, handles);
+      this.domView = new SoftReference<>(result);
+    }
+    return result;
+  }
+
+  @Override
+  @Nonnull
+  public String toString() {
+    return "CompactXmlDocument(" + this.file + ", elements=" + this.elementNames.length + ", chars=" + this.chars.length + ')';
+  }
+
+  /**
+   * W3C DOM of the document made lazily for XPath search only and kept through soft reference, so that it can be collected under memory
+   * pressure and parsed again. Every DOM element is mapped to the handle of the same element in the compact document.
+   */
+  private static final class DomView {
+    private final Document document;
+    private final Map<Node, Integer> elementHandles;
+
+    private DomView(@Nonnull final Document document, @Nonnull final Map<Node, Integer> elementHandles) {
+      this.document = document;
+      this.elementHandles = elementHandles;
+    }
+
+    private int toHandle(@Nonnull final Node node) {
+      final Integer handle = this.elementHandles.get(node);
+      return handle == null ? NOT_ELEMENT : handle;
+    }
+  }
+
+  /**
+   * Growable int array.
+   */
+  private static final class IntBuffer {
+    private int[] data = new int[16];
+    private int size;
+
+    private static int[] ensure(@Nonnull final int[] array, final int size) {
+      return size < array.length ? array : Arrays.copyOf(array, Math.max(16, array.length * 2));
+    }
+
+    private void add(final int value) {
+      this.data = ensure(this.data, this.size);
+      this.data[this.size++] = value;
+    }
+
+    @Nonnull
+    private int[] toArray() {
+      return this.size == 0 ? EMPTY : Arrays.copyOf(this.data, this.size);
+    }
+  }
+
+  /**
+   * Collector of document data during parsing.
+   */
+  private static final class Builder {
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIndexes = new HashMap<>();
+    private final StringBuilder text = new StringBuilder(4096);
+    private final StringBuilder attributeText = new StringBuilder(1024);
+    private int[] elementNames = new int[64];
+    private int[] parents = new int[64];
+    private int[] firstChildren = new int[64];
+    private int[] nextSiblings = new int[64];
+    private int[] subtreeEnds = new int[64];
+    private int[] textStarts = new int[64];
+    private int[] textEnds = new int[64];
+    private int[] attributeStarts = new int[65];
+    private int[] attributeNames = new int[64];
+    private int[] attributeValueStarts = new int[64];
+    private int[] attributeValueEnds = new int[64];
+    private int[] openElements = new int[16];
+    private int[] lastChildren = new int[16];
+    private int depth;
+    private int count;
+    private int attributeCount;
+
+    private int nameIndex(@Nonnull final String name) {
+      Integer result = this.nameIndexes.get(name);
+      if (result == null) {
+        result = this.names.size();
+        this.names.add(name);
+        this.nameIndexes.put(name, result);
+      }
+      return result;
+    }
+
+    private void addAttribute(@Nonnull final String name, @Nonnull final String value) {
+      if (this.attributeCount == this.attributeNames.length) {
+        final int newLength = this.attributeNames.length * 2;
+        this.attributeNames = Arrays.copyOf(this.attributeNames, newLength);
+        this.attributeValueStarts = Arrays.copyOf(this.attributeValueStarts, newLength);
+        this.attributeValueEnds = Arrays.copyOf(this.attributeValueEnds, newLength);
+      }
+      this.attributeNames[this.attributeCount] = nameIndex(name);
+      this.attributeValueStarts[this.attributeCount] = this.attributeText.length();
+      this.attributeText.append(value);
+      this.attributeValueEnds[this.attributeCount] = this.attributeText.length();
+      this.attributeCount++;
+    }
+
+    private void startElement(@Nonnull final XMLStreamReader reader) {
+      if (this.count == this.elementNames.length) {
+        final int newLength = this.elementNames.length * 2;
+        this.elementNames = Arrays.copyOf(this.elementNames, newLength);
+        this.parents = Arrays.copyOf(this.parents, newLength);
+        this.firstChildren = Arrays.copyOf(this.firstChildren, newLength);
+        this.nextSiblings = Arrays.copyOf(this.nextSiblings, newLength);
+        this.subtreeEnds = Arrays.copyOf(this.subtreeEnds, newLength);
+        this.textStarts = Arrays.copyOf(this.textStarts, newLength);
+        this.textEnds = Arrays.copyOf(this.textEnds, newLength);
+        this.attributeStarts = Arrays.copyOf(this.attributeStarts, newLength + 1);
+      }
+      if (this.depth == this.openElements.length) {
+        this.openElements = Arrays.copyOf(this.openElements, this.depth * 2);
+        this.lastChildren = Arrays.copyOf(this.lastChildren, this.depth * 2);
+      }
+
+      final int element = this.count++;
+      this.elementNames[element] = nameIndex(makeQualifiedName(reader.getPrefix(), reader.getLocalName()));
+      this.firstChildren[element] = -1;
+      this.nextSiblings[element] = -1;
+      this.textStarts[element] = this.text.length();
+      if (this.depth == 0) {
+        this.parents[element] = -1;
+      } else {
+        final int parent = this.openElements[this.depth - 1];
+        this.parents[element] = parent;
+        final int lastChild = this.lastChildren[this.depth - 1];
+        if (lastChild < 0) {
+          this.firstChildren[parent] = element;
+        } else {
+          this.nextSiblings[lastChild] = element;
+        }
+        this.lastChildren[this.depth - 1] = element;
+      }
+
+      // namespace declarations are visible as attributes in DOM made without namespace support
+      this.attributeStarts[element] = this.attributeCount;
+      for (int i = 0; i < reader.getNamespaceCount(); i++) {
+        final String prefix = reader.getNamespacePrefix(i);
+        addAttribute(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, reader.getNamespaceURI(i));
+      }
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        addAttribute(makeQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+      }
+
+      this.openElements[this.depth] = element;
+      this.lastChildren[this.depth] = -1;
+      this.depth++;
+    }
+
+    private void endElement() {
+      final int element = this.openElements[--this.depth];
+      this.textEnds[element] = this.text.length();
+      this.subtreeEnds[element] = this.count;
+    }
+
+    private void text(@Nonnull final XMLStreamReader reader) {
+      if (this.depth > 0) {
+        this.text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+      }
+    }
+  }
+}
@@ -45,7 +45,7 @@ public final class FunctionXML_GET extends AbstractXMLFunction {
 
   @Nonnull
   public Value executeStrInt(@Nonnull final PreprocessorContext context, @Nonnull final Value elementListId, @Nonnull final Value elementIndex) {
-    return Value.valueOf(findElementForIndex(context, elementListId.asString(), elementIndex.asLong().intValue()));
+    return Value.valueOf(findElementForIndex(context, elementListId.asString(), (int) elementIndex.longValue()));
   }
 
   @Override
@@ -22,11 +22,10 @@
 package com.igormaznitsa.jcp.expression.functions.xml;
 
 import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import javax.annotation.Nonnull;
 
@@ -48,14 +47,14 @@ public final class FunctionXML_LIST extends AbstractXMLFunction {
   @Nonnull
   public Value executeStrStr(@Nonnull final PreprocessorContext context, @Nonnull final Value elementId, @Nonnull final Value elementTag) {
     final String tagName = elementTag.asString();
-    final Element element = getCachedElement(context, elementId.asString());
-    final String listId = makeElementListId(element, tagName);
+    final NodeContainer element = getCachedElement(context, elementId.asString());
+    final String listId = makeElementListId(makeElementId(element.getDocumentId(), element.getElement()), tagName);
 
     NodeContainer container = (NodeContainer) context.getSharedResource(listId);
     if (container == null) {
-      final NodeList list = element.getElementsByTagName(tagName);
-      container = new NodeContainer(UID_COUNTER.getAndIncrement(), list);
-      context.setSharedResource(listId, container);
+      final int[] list = element.getDocument().findDescendants(element.getElement(), tagName);
+      container = new NodeContainer(UID_COUNTER.getAndIncrement(), element.getDocumentId(), element.getDocument(), list);
+      registerContainer(context, listId, container, SharedResourceScope.FILE);
     }
 
     return Value.valueOf(listId);
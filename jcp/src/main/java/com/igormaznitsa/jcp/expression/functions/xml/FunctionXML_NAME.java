@@ -25,7 +25,6 @@ import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
-import org.w3c.dom.Element;
 
 import javax.annotation.Nonnull;
 
@@ -46,8 +45,8 @@ public final class FunctionXML_NAME extends AbstractXMLFunction {
 
   @Nonnull
   public Value executeStr(@Nonnull final PreprocessorContext context, @Nonnull final Value elementId) {
-    final Element cachedElement = getCachedElement(context, elementId.asString());
-    return Value.valueOf(cachedElement.getTagName());
+    final NodeContainer cachedElement = getCachedElement(context, elementId.asString());
+    return Value.valueOf(cachedElement.getDocument().getName(cachedElement.getElement()));
   }
 
   @Override
@@ -22,15 +22,14 @@
 package com.igormaznitsa.jcp.expression.functions.xml;
 
 import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.ResourcePrefetcher;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
-import org.apache.xerces.jaxp.DocumentBuilderFactoryImpl;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 
 import javax.annotation.Nonnull;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
 
@@ -68,28 +67,30 @@ public final class FunctionXML_OPEN extends AbstractXMLFunction {
         throw context.makeException("Can't read \'" + name + '\'', null);
       }
 
-      final Document document = openFileAndParse(context, file);
-      docContainer = new NodeContainer(UID_COUNTER.getAndIncrement(), document);
-      context.setSharedResource(documentId, docContainer);
-      final NodeContainer rootContainer = new NodeContainer(UID_COUNTER.getAndIncrement(), document.getDocumentElement());
-      context.setSharedResource(documentIdRoot, rootContainer);
+      final CompactXmlDocument document = openFileAndParse(context, file);
+      docContainer = new NodeContainer(UID_COUNTER.getAndIncrement(), documentId, document);
+      // the document is registered last to be the most recently used one
+      registerContainer(context, documentIdRoot, new NodeContainer(UID_COUNTER.getAndIncrement(), documentId, document, 0), SharedResourceScope.RUN);
+      registerContainer(context, documentId, docContainer, SharedResourceScope.RUN);
+    } else if (context.getSharedResource(documentIdRoot) == null) {
+      registerContainer(context, documentIdRoot, new NodeContainer(UID_COUNTER.getAndIncrement(), documentId, docContainer.getDocument(), 0), SharedResourceScope.RUN);
     }
 
     return Value.valueOf(documentId);
   }
 
   @Nonnull
-  private Document openFileAndParse(@Nonnull final PreprocessorContext context, @Nonnull final File file) {
-    final DocumentBuilderFactoryImpl docBuilderFactory = new DocumentBuilderFactoryImpl();
-    docBuilderFactory.setIgnoringComments(true);
-    docBuilderFactory.setCoalescing(true);
-    docBuilderFactory.setValidating(false);
-
+  private CompactXmlDocument openFileAndParse(@Nonnull final PreprocessorContext context, @Nonnull final File file) {
+    final ResourcePrefetcher prefetcher = context.getResourcePrefetcher();
+    if (prefetcher != null) {
+      final CompactXmlDocument prefetched = prefetcher.takeXmlDocument(file);
+      if (prefetched != null) {
+        return prefetched;
+      }
+    }
     try {
-      return docBuilderFactory.newDocumentBuilder().parse(file);
-    } catch (ParserConfigurationException unexpected) {
-      throw context.makeException("XML parser configuration exception", unexpected);
-    } catch (SAXException unexpected) {
+      return CompactXmlDocument.parse(file);
+    } catch (XMLStreamException unexpected) {
       throw context.makeException("Exception during XML parsing", unexpected);
     } catch (IOException unexpected) {
       throw context.makeException("Can't read XML file", unexpected);
@@ -47,7 +47,7 @@ public final class FunctionXML_ROOT extends AbstractXMLFunction {
   public Value executeStr(@Nonnull final PreprocessorContext context, @Nonnull final Value documentId) {
     final String documentRootId = makeDocumentRootId(documentId.asString());
 
-    final NodeContainer root = (NodeContainer) context.getSharedResource(documentRootId);
+    final NodeContainer root = findContainer(context, documentRootId);
     if (root == null) {
       throw context.makeException("Can't find any root for document [" + documentId + ']', null);
     }
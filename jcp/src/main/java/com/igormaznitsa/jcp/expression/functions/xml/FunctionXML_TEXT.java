@@ -25,7 +25,6 @@ import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
-import org.w3c.dom.Element;
 
 import javax.annotation.Nonnull;
 
@@ -46,8 +45,8 @@ public final class FunctionXML_TEXT extends AbstractXMLFunction {
 
   @Nonnull
   public Value executeStr(@Nonnull final PreprocessorContext context, @Nonnull final Value elementid) {
-    final Element element = getCachedElement(context, elementid.asString());
-    return Value.valueOf(element.getTextContent());
+    final NodeContainer element = getCachedElement(context, elementid.asString());
+    return Value.valueOf(element.getDocument().getText(element.getElement()));
   }
 
   @Override
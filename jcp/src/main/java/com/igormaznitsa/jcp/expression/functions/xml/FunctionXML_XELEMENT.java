@@ -22,15 +22,12 @@
 package com.igormaznitsa.jcp.expression.functions.xml;
 
 import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import javax.annotation.Nonnull;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 
 /**
@@ -54,23 +51,24 @@ public final class FunctionXML_XELEMENT extends AbstractXMLFunction {
     final String pathStr = xPath.asString();
 
     final String xpathElementId = makeXPathElementId(documentIdStr, pathStr);
-    final Document document = getCachedDocument(context, documentIdStr);
+    final CompactXmlDocument document = getCachedDocument(context, documentIdStr);
 
-    Element elem = findCachedElement(context, xpathElementId);
-    if (elem == null) {
+    if (context.getSharedResource(xpathElementId) == null) {
+      final int element;
       try {
-        final XPathExpression expression = prepareXPathExpression(pathStr);
-        elem = (Element) expression.evaluate(document, XPathConstants.NODE);
-        if (elem == null) {
-          throw context.makeException("Can't find element for xpath [" + pathStr + ']', null);
-        }
+        final String[] steps = parseSimplePath(pathStr);
+        element = steps == null ? document.findFirstForXPath(pathStr) : document.findFirstForSimplePath(steps);
       } catch (XPathExpressionException ex) {
         throw context.makeException("Error during XPath compilation [" + pathStr + ']', ex);
-      } catch (ClassCastException ex) {
-        throw context.makeException("Can't get element for XPath [" + pathStr + ']', ex);
       }
-      final NodeContainer container = new NodeContainer(UID_COUNTER.getAndIncrement(), elem);
-      context.setSharedResource(xpathElementId, container);
+      if (element == CompactXmlDocument.NOT_ELEMENT) {
+        throw context.makeException("Can't get element for XPath [" + pathStr + ']', null);
+      }
+      if (element < 0) {
+        throw context.makeException("Can't find element for xpath [" + pathStr + ']', null);
+      }
+      final NodeContainer container = new NodeContainer(UID_COUNTER.getAndIncrement(), documentIdStr, document, element);
+      registerContainer(context, xpathElementId, container, SharedResourceScope.FILE);
     }
     return Value.valueOf(xpathElementId);
   }
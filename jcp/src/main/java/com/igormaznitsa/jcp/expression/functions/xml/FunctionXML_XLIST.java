@@ -22,15 +22,12 @@
 package com.igormaznitsa.jcp.expression.functions.xml;
 
 import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
 
 import javax.annotation.Nonnull;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 
 /**
@@ -54,18 +51,18 @@ public final class FunctionXML_XLIST extends AbstractXMLFunction {
     final String pathStr = xPath.asString();
 
     final String xpathId = makeXPathListId(documentIdStr, pathStr);
-    final Document document = getCachedDocument(context, documentIdStr);
+    final CompactXmlDocument document = getCachedDocument(context, documentIdStr);
 
-    NodeList list = findCachedElementList(context, xpathId);
-    if (list == null) {
+    if (context.getSharedResource(xpathId) == null) {
+      final int[] list;
       try {
-        final XPathExpression expression = prepareXPathExpression(pathStr);
-        list = (NodeList) expression.evaluate(document, XPathConstants.NODESET);
+        final String[] steps = parseSimplePath(pathStr);
+        list = steps == null ? document.findForXPath(pathStr) : document.findForSimplePath(steps);
       } catch (XPathExpressionException ex) {
         throw context.makeException("Error during XPath compilation [" + pathStr + ']', ex);
       }
-      final NodeContainer container = new NodeContainer(UID_COUNTER.getAndIncrement(), list);
-      context.setSharedResource(xpathId, container);
+      final NodeContainer container = new NodeContainer(UID_COUNTER.getAndIncrement(), documentIdStr, document, list);
+      registerContainer(context, xpathId, container, SharedResourceScope.FILE);
     }
     return Value.valueOf(xpathId);
   }
@@ -21,50 +21,136 @@
 
 package com.igormaznitsa.jcp.expression.functions.xml;
 
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
 
 /**
  * It's a special auxiliary class to save XML node data in a preprocessor
- * storage
+ * storage. It keeps either whole document or an element handle or list of element handles of a {@link CompactXmlDocument}.
  *
  * @author Igor Maznitsa (igor.maznitsa@igormaznnitsa.com)
  */
 public class NodeContainer {
 
-  private final Node node;
-  private final NodeList nodeList;
+  private final String documentId;
+  private final CompactXmlDocument document;
+  private final int element;
+  private final int[] elements;
   private final long id;
 
-  public NodeContainer(final long id, @Nonnull final Node node) {
-    assertNotNull("Node is null", node);
+  /**
+   * Make container for whole document.
+   *
+   * @param id         the container id
+   * @param documentId id of the document, must not be null
+   * @param document   the document, must not be null
+   * @since 7.0.1
+   */
+  public NodeContainer(final long id, @Nonnull final String documentId, @Nonnull final CompactXmlDocument document) {
+    this.id = id;
+    this.documentId = assertNotNull("Document id is null", documentId);
+    this.document = assertNotNull("Document is null", document);
+    this.element = -1;
+    this.elements = null;
+  }
+
+  /**
+   * Make container for an element.
+   *
+   * @param id         the container id
+   * @param documentId id of the document, must not be null
+   * @param document   the document, must not be null
+   * @param element    the element handle
+   * @since 7.0.1
+   */
+  public NodeContainer(final long id, @Nonnull final String documentId, @Nonnull final CompactXmlDocument document, final int element) {
+    if (!document.isElement(element)) {
+      throw new IllegalArgumentException("Wrong element handle: " + element);
+    }
     this.id = id;
-    this.node = node;
-    this.nodeList = null;
+    this.documentId = assertNotNull("Document id is null", documentId);
+    this.document = document;
+    this.element = element;
+    this.elements = null;
   }
 
-  public NodeContainer(final long id, @Nonnull final NodeList list) {
-    assertNotNull("NodeList is null", list);
+  /**
+   * Make container for list of elements.
+   *
+   * @param id         the container id
+   * @param documentId id of the document, must not be null
+   * @param document   the document, must not be null
+   * @param elements   the element handles, must not be null
+   * @since 7.0.1
+   */
+  public NodeContainer(final long id, @Nonnull final String documentId, @Nonnull final CompactXmlDocument document, @Nonnull final int[] elements) {
     this.id = id;
-    this.node = null;
-    this.nodeList = list;
+    this.documentId = assertNotNull("Document id is null", documentId);
+    this.document = assertNotNull("Document is null", document);
+    this.element = -1;
+    this.elements = assertNotNull("Element list is null", elements);
   }
 
   @Nonnull
-  public NodeList getNodeList() {
-    return this.nodeList;
+  public String getDocumentId() {
+    return this.documentId;
   }
 
   @Nonnull
-  public Node getNode() {
-    return this.node;
+  public CompactXmlDocument getDocument() {
+    return this.document;
+  }
+
+  public boolean isDocument() {
+    return this.element < 0 && this.elements == null;
+  }
+
+  public boolean isElement() {
+    return this.element >= 0;
+  }
+
+  public boolean isElementList() {
+    return this.elements != null;
+  }
+
+  /**
+   * Get element handle.
+   *
+   * @return the element handle or -1 if the container doesn't contain element
+   */
+  public int getElement() {
+    return this.element;
+  }
+
+  /**
+   * Get element handles.
+   *
+   * @return array of element handles or null if the container doesn't contain list
+   */
+  @Nullable
+  public int[] getElements() {
+    return this.elements;
   }
 
   public long getId() {
     return this.id;
   }
+
+  /**
+   * Get approximate weight of the container, weight of a document is counted only for the document container.
+   *
+   * @return approximate weight in bytes
+   * @since 7.0.1
+   */
+  public long getWeight() {
+    long result = 48L;
+    if (isDocument()) {
+      result += this.document.getWeight();
+    } else if (this.elements != null) {
+      result += 16L + this.elements.length * 4L;
+    }
+    return result;
+  }
 }
@@ -23,10 +23,16 @@ package com.igormaznitsa.jcp.expression.operators;
 
 import com.igormaznitsa.jcp.expression.ExpressionItem;
 import com.igormaznitsa.jcp.expression.ExpressionItemType;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import com.igormaznitsa.meta.annotation.MayContainNull;
 import com.igormaznitsa.meta.annotation.MustNotContainNull;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
 
 /**
  * The class is the base for all operator handlers
@@ -40,11 +46,23 @@ public abstract class AbstractOperator implements ExpressionItem {
    */
   public static final String EXECUTION_PREFIX = "execute";
 
+  /**
+   * Number of value types, used to make index in dispatch table.
+   */
+  private static final int TYPE_NUMBER = ValueType.values().length;
+
   /**
    * The array contains all operators allowed by the preprocessor
    */
   private static AbstractOperator[] allOperators;
 
+  /**
+   * Table of method handles to process arguments, index is calculated from ordinals of argument types.
+   * It is resolved lazily only once for operator instance (arity is not available during construction of a subclass), so that calls don't need
+   * reflection search.
+   */
+  private volatile MethodHandle[] dispatchTable;
+
   @Nonnull
   @MustNotContainNull
   public static AbstractOperator[] getAllOperators() {
@@ -86,6 +104,91 @@ public abstract class AbstractOperator implements ExpressionItem {
     return null;
   }
 
+  @Nullable
+  private static Method findMethod(@Nonnull final Class<?> klazz, @Nonnull final String name, @Nonnull @MustNotContainNull final Class<?>[] args) {
+    try {
+      return klazz.getMethod(name, args);
+    } catch (NoSuchMethodException ex) {
+      return null;
+    }
+  }
+
+  @Nonnull
+  @MayContainNull
+  private MethodHandle[] getDispatchTable() {
+    MethodHandle[] result = this.dispatchTable;
+    if (result == null) {
+      // tables made concurrently are equal so that any of them can be kept
+      result = makeDispatchTable();
+      this.dispatchTable = result;
+    }
+    return result;
+  }
+
+  @Nonnull
+  @MayContainNull
+  private MethodHandle[] makeDispatchTable() {
+    final int arity = this.getArity();
+    final ValueType[] types = ValueType.values();
+    final Class<?>[] args = arity == 1 ? new Class<?>[] {Value.class} : new Class<?>[] {Value.class, Value.class};
+    final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+    final MethodHandle[] result = new MethodHandle[arity == 1 ? TYPE_NUMBER : TYPE_NUMBER * TYPE_NUMBER];
+
+    for (int i = 0; i < result.length; i++) {
+      final ValueType left = types[arity == 1 ? i : i / TYPE_NUMBER];
+      final ValueType right = arity == 1 ? null : types[i % TYPE_NUMBER];
+
+      final String signatureNormal = EXECUTION_PREFIX + left.getSignature() + (right == null ? "" : right.getSignature());
+      final String signatureAnyLeft = EXECUTION_PREFIX + ValueType.ANY.getSignature() + (right == null ? "" : right.getSignature());
+      final String signatureAnyRight = EXECUTION_PREFIX + left.getSignature() + (right == null ? "" : ValueType.ANY.getSignature());
+
+      Method method = findMethod(this.getClass(), signatureNormal, args);
+      if (method == null) {
+        method = findMethod(this.getClass(), signatureAnyLeft, args);
+      }
+      if (method == null) {
+        method = findMethod(this.getClass(), signatureAnyRight, args);
+      }
+
+      if (method != null && Value.class == method.getReturnType()) {
+        try {
+          result[i] = lookup.unreflect(method).bindTo(this);
+        } catch (IllegalAccessException ex) {
+          throw new IllegalStateException("Can't get access to operator method: " + method, ex);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Find resolved method handle to execute the unary operator for argument type. Resolution order is the same as for method search by signature:
+   * exact argument type at first and then the ANY type.
+   *
+   * @param type the argument type, must not be null
+   * @return method handle with type (Value)Value or null if the type is not supported
+   * @since 7.0.1
+   */
+  @Nullable
+  public final MethodHandle findExecutor(@Nonnull final ValueType type) {
+    return this.getArity() == 1 ? getDispatchTable()[type.ordinal()] : null;
+  }
+
+  /**
+   * Find resolved method handle to execute the binary operator for argument types. Resolution order is the same as for method search by signature:
+   * exact argument types at first, then ANY type as the left argument and then ANY type as the right argument.
+   *
+   * @param left  the left argument type, must not be null
+   * @param right the right argument type, must not be null
+   * @return method handle with type (Value,Value)Value or null if the types are not supported
+   * @since 7.0.1
+   */
+  @Nullable
+  public final MethodHandle findExecutor(@Nonnull final ValueType left, @Nonnull final ValueType right) {
+    return this.getArity() == 2 ? getDispatchTable()[left.ordinal() * TYPE_NUMBER + right.ordinal()] : null;
+  }
+
   /**
    * Get the expression item type
    *
@@ -52,22 +52,22 @@ public final class OperatorMOD extends AbstractOperator {
 
   @Nonnull
   public Value executeIntInt(@Nonnull final Value arg1, @Nonnull final Value arg2) {
-    return Value.valueOf(arg1.asLong() % arg2.asLong());
+    return Value.valueOf(arg1.longValue() % arg2.longValue());
   }
 
   @Nonnull
   public Value executeIntFloat(@Nonnull final Value arg1, @Nonnull final Value arg2) {
-    return Value.valueOf(arg1.asLong().floatValue() % arg2.asFloat());
+    return Value.valueOf(arg1.longValue() % arg2.floatValue());
   }
 
   @Nonnull
   public Value executeFloatInt(@Nonnull final Value arg1, @Nonnull final Value arg2) {
-    return Value.valueOf(arg1.asFloat() % arg2.asLong().floatValue());
+    return Value.valueOf(arg1.floatValue() % arg2.longValue());
   }
 
   @Nonnull
   public Value executeFloatFloat(@Nonnull final Value arg1, @Nonnull final Value arg2) {
-    return Value.valueOf(arg1.asFloat() % arg2.asFloat());
+    return Value.valueOf(arg1.floatValue() % arg2.floatValue());
   }
 
   @Override
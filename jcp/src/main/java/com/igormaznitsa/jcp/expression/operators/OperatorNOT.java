@@ -52,12 +52,12 @@ public class OperatorNOT extends AbstractOperator {
 
   @Nonnull
   public Value executeInt(@Nonnull final Value arg1) {
-    return Value.valueOf(~arg1.asLong());
+    return Value.valueOf(~arg1.longValue());
   }
 
   @Nonnull
   public Value executeBool(@Nonnull final Value arg1) {
-    return Value.valueOf(!arg1.asBoolean());
+    return Value.valueOf(!arg1.booleanValue());
   }
 
   @Nonnull
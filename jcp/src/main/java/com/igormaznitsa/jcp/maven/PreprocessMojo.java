@@ -50,6 +50,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -292,6 +293,15 @@ public class PreprocessMojo extends AbstractMojo implements PreprocessorLogger {
   @Parameter(alias = "dontOverwriteSameContent", defaultValue = "false")
   private boolean dontOverwriteSameContent = false;
 
+  /**
+   * List of variants to be generated from the same sources, every variant has name, own target folder and own global variables.
+   * Sources are read and parsed only once for all variants. If the list is not empty then project source roots are not replaced.
+   *
+   * @since 7.0.1
+   */
+  @Parameter(alias = "variants")
+  private List<Variant> variants = new ArrayList<>();
+
   @Nonnull
   @MustNotContainNull
   private List<String> formSourceRootList() {
@@ -397,6 +407,28 @@ public class PreprocessMojo extends AbstractMojo implements PreprocessorLogger {
     return context;
   }
 
+  @Nonnull
+  @MustNotContainNull
+  List<JcpPreprocessor.Variant> makeVariants() {
+    final List<JcpPreprocessor.Variant> result = new ArrayList<>();
+    for (final Variant variant : this.getVariants()) {
+      if (variant.getName() == null || variant.getName().trim().isEmpty()) {
+        throw new IllegalArgumentException("Variant name must be defined");
+      }
+      if (variant.getTarget() == null) {
+        throw new IllegalArgumentException("Target folder must be defined for variant: " + variant.getName());
+      }
+
+      final Map<String, Value> variantVars = new LinkedHashMap<>();
+      ensureNonNull(variant.getVars(), Collections.<String, String>emptyMap()).forEach((key, value) -> {
+        getLog().debug(String.format("Register global var for variant '%s': '%s' <- '%s'", variant.getName(), key, value));
+        variantVars.put(key, Value.recognizeRawString(value));
+      });
+      result.add(new JcpPreprocessor.Variant(variant.getName().trim(), variant.getTarget(), variantVars));
+    }
+    return result;
+  }
+
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
     if (this.isSkip()) {
@@ -419,9 +451,17 @@ public class PreprocessMojo extends AbstractMojo implements PreprocessorLogger {
       } else {
         try {
           final JcpPreprocessor preprocessor = new JcpPreprocessor(context);
-          preprocessor.execute();
-          if (this.isReplaceSources()) {
-            replaceSourceRootByPreprocessingDestinationFolder(context);
+          final List<JcpPreprocessor.Variant> preprocessingVariants = makeVariants();
+          if (preprocessingVariants.isEmpty()) {
+            preprocessor.execute();
+            if (this.isReplaceSources()) {
+              replaceSourceRootByPreprocessingDestinationFolder(context);
+            }
+          } else {
+            preprocessor.executeVariants(preprocessingVariants);
+            if (this.isReplaceSources()) {
+              info("Source roots are not replaced because variants are defined");
+            }
           }
         } catch (Exception ex) {
           final PreprocessorException pp = PreprocessorException.extractPreprocessorException(ex);
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.igormaznitsa.jcp.maven;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Description of a preprocessing variant for the mojo, every variant has name, own target folder and own global variables.
+ *
+ * @since 7.0.1
+ */
+public class Variant {
+
+  /**
+   * Name of the variant, must be unique among variants.
+   */
+  private String name;
+
+  /**
+   * Target folder for preprocessing result of the variant.
+   */
+  private File target;
+
+  /**
+   * Variables to be registered as global ones for the variant, they override variables defined by config files.
+   */
+  private Map<String, String> vars = new HashMap<>();
+
+  @Nullable
+  public String getName() {
+    return this.name;
+  }
+
+  public void setName(@Nullable final String name) {
+    this.name = name;
+  }
+
+  @Nullable
+  public File getTarget() {
+    return this.target;
+  }
+
+  public void setTarget(@Nullable final File target) {
+    this.target = target;
+  }
+
+  @Nullable
+  public Map<String, String> getVars() {
+    return this.vars;
+  }
+
+  public void setVars(@Nullable final Map<String, String> vars) {
+    this.vars = vars;
+  }
+
+  @Override
+  @Nonnull
+  public String toString() {
+    return "Variant(name=" + this.name + ", target=" + this.target + ", vars=" + this.vars + ')';
+  }
+}
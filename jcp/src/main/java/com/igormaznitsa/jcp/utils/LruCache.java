@@ -0,0 +1,124 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.igormaznitsa.jcp.utils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
+
+/**
+ * Thread safe bounded cache which removes the least recently used entry if the max size is reached.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ * @since 7.0.1
+ */
+public final class LruCache<K, V> {
+
+  private final int maxSize;
+  private final Map<K, V> map;
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize max number of entries in the cache, must be greater than zero
+   */
+  public LruCache(final int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Max size must be greater than zero: " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.map = new LinkedHashMap<K, V>(Math.min(maxSize, 256), 0.75f, true) {
+      private static final long serialVersionUID = -3417813620340386466L;
+
+      @Override
+      protected boolean removeEldestEntry(@Nonnull final Map.Entry<K, V> eldest) {
+        return this.size() > LruCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * Find cached value for a key.
+   *
+   * @param key the key, must not be null
+   * @return found value or null if there is not any value for the key
+   */
+  @Nullable
+  public synchronized V get(@Nonnull final Object key) {
+    final V result = this.map.get(assertNotNull(key));
+    if (result == null) {
+      this.misses++;
+    } else {
+      this.hits++;
+    }
+    return result;
+  }
+
+  /**
+   * Place value into the cache, the least recently used entry can be removed.
+   *
+   * @param key   the key, must not be null
+   * @param value the value, must not be null
+   */
+  public synchronized void put(@Nonnull final K key, @Nonnull final V value) {
+    this.map.put(assertNotNull(key), assertNotNull(value));
+  }
+
+  /**
+   * Remove entry for a key.
+   *
+   * @param key the key, must not be null
+   * @return removed value or null if not found
+   */
+  @Nullable
+  public synchronized V remove(@Nonnull final Object key) {
+    return this.map.remove(assertNotNull(key));
+  }
+
+  public synchronized void clear() {
+    this.map.clear();
+    this.hits = 0L;
+    this.misses = 0L;
+  }
+
+  public synchronized int size() {
+    return this.map.size();
+  }
+
+  public int getMaxSize() {
+    return this.maxSize;
+  }
+
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+}
@@ -46,8 +46,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
 
@@ -58,8 +56,6 @@ import static com.igormaznitsa.meta.common.utils.Assertions.assertNotNull;
  */
 public final class PreprocessorUtils {
 
-  private static final Pattern PATTERN_MACROS_WITH_SPACES = Pattern.compile("\\/\\*\\s*\\$(.*?)\\$\\s*\\*\\/");
-
   private PreprocessorUtils() {
   }
 
@@ -124,7 +120,7 @@ public final class PreprocessorUtils {
       throw new IllegalArgumentException("Source file is directory");
     }
 
-    if (!dest.getParentFile().exists() && !dest.getParentFile().mkdirs()) {
+    if (!dest.getParentFile().exists() && !dest.getParentFile().mkdirs() && !dest.getParentFile().isDirectory()) {
       throw new IOException("Can't make directory [" + getFilePath(dest.getParentFile()) + ']');
     }
 
@@ -167,52 +163,115 @@ public final class PreprocessorUtils {
     return buffer.toString();
   }
 
+  /**
+   * Expand all macroses in a string, a macros is a comment in format <b>&#47;*$expression$*&#47;</b> (whitespaces are allowed between the comment
+   * markers and dollars if it is enabled in the context). The string is scanned once from left to right and substituted values are not scanned again.
+   *
+   * @param processingString the string to be processed, must not be null
+   * @param context          the preprocessor context, must not be null
+   * @return the same string object if there is no any macros or a new string with expanded macroses
+   */
   @Nonnull
   public static String processMacroses(@Nonnull final String processingString, @Nonnull final PreprocessorContext context) {
-    int position;
-    String result = processingString;
+    int commentStart = processingString.indexOf("/*");
+    if (commentStart < 0) {
+      return processingString;
+    }
 
-    if (context.isAllowWhitespaces()) {
-      final Matcher matcher = PATTERN_MACROS_WITH_SPACES.matcher(processingString);
-      final StringBuilder buffer = new StringBuilder();
-      int end = 0;
-      while (matcher.find()) {
-        final int start = matcher.start();
-        final int prevEnd = end;
-        end = matcher.end();
-        final String macrosBody = matcher.group(1);
-        final Value value = Expression.evalExpression(macrosBody, context);
-        buffer.append(processingString, prevEnd, start);
-        buffer.append(value.toString());
-      }
-      if (end < processingString.length()) {
-        buffer.append(processingString.substring(end));
-      }
-      result = buffer.toString();
-    } else {
-      while (!Thread.currentThread().isInterrupted()) {
-        position = result.indexOf("/*$");
+    final boolean allowWhitespaces = context.isAllowWhitespaces();
+    final int length = processingString.length();
 
-        if (position >= 0) {
-          final String leftPart = result.substring(0, position);
-          final int beginIndex = position;
-          position = result.indexOf("$*/", position);
-          if (position >= 0) {
-            final String macrosBody = result.substring(beginIndex + 3, position);
-            final String rightPart = result.substring(position + 3);
+    StringBuilder buffer = null;
+    int copied = 0;
 
-            final Value value = Expression.evalExpression(macrosBody, context);
+    while (commentStart >= 0) {
+      int bodyStart = commentStart + 2;
+      if (allowWhitespaces) {
+        while (bodyStart < length && isMacrosWhitespace(processingString.charAt(bodyStart))) {
+          bodyStart++;
+        }
+      }
 
-            result = leftPart + value.toString() + rightPart;
-          } else {
+      if (bodyStart >= length || processingString.charAt(bodyStart) != '$') {
+        commentStart = processingString.indexOf("/*", commentStart + 2);
+        continue;
+      }
+      bodyStart++;
+
+      int bodyEnd = -1;
+      int macrosEnd = -1;
+      int nextSearch = -1;
+      for (int i = bodyStart; i < length; i++) {
+        final char chr = processingString.charAt(i);
+        if (chr == '$') {
+          int closing = i + 1;
+          if (allowWhitespaces) {
+            while (closing < length && isMacrosWhitespace(processingString.charAt(closing))) {
+              closing++;
+            }
+          }
+          if (processingString.startsWith("*/", closing)) {
+            bodyEnd = i;
+            macrosEnd = closing + 2;
             break;
           }
-        } else {
+        } else if (allowWhitespaces && isLineTerminator(chr)) {
+          // macros body can't contain line terminators, the next macros can be only after the terminator
+          nextSearch = i + 1;
           break;
         }
       }
+
+      if (bodyEnd < 0) {
+        if (nextSearch < 0) {
+          break;
+        }
+        commentStart = processingString.indexOf("/*", nextSearch);
+        continue;
+      }
+
+      final Value value = Expression.evalExpression(processingString, bodyStart, bodyEnd, context);
+
+      if (buffer == null) {
+        buffer = new StringBuilder(length + 16);
+      }
+      buffer.append(processingString, copied, commentStart).append(value.toString());
+      copied = macrosEnd;
+
+      commentStart = processingString.indexOf("/*", macrosEnd);
+    }
+
+    if (buffer == null) {
+      return processingString;
+    }
+    return buffer.append(processingString, copied, length).toString();
+  }
+
+  private static boolean isMacrosWhitespace(final char chr) {
+    switch (chr) {
+      case ' ':
+      case '\t':
+      case '\n':
+      case '\u000B':
+      case '\f':
+      case '\r':
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isLineTerminator(final char chr) {
+    switch (chr) {
+      case '\n':
+      case '\r':
+      case '\u0085':
+      case '\u2028':
+      case '\u2029':
+        return true;
+      default:
+        return false;
     }
-    return result;
   }
 
   private static void checkFile(@Nonnull final File file) throws IOException {
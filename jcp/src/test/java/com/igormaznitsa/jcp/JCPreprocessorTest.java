@@ -23,10 +23,14 @@ package com.igormaznitsa.jcp;
 
 import com.igormaznitsa.jcp.cmdline.CommandLineHandler;
 import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.TextFileCache;
 import com.igormaznitsa.jcp.exceptions.PreprocessorException;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.meta.common.utils.Deferrers;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -34,14 +38,19 @@ import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static com.igormaznitsa.meta.common.utils.Deferrers.defer;
 import static org.junit.Assert.*;
 
 public final class JCPreprocessorTest {
 
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
   private void assertGVDFPreprocessorException(final String file, final int stringIndexStartedFromOne) throws Exception {
     final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
     context.registerConfigFile(new File(this.getClass().getResource(file).toURI()));
@@ -131,6 +140,124 @@ public final class JCPreprocessorTest {
     }
   }
 
+  @Test
+  public void testExecuteVariants() throws Exception {
+    final File sourceFolder = tempFolder.newFolder("src");
+    final File variantA = new File(tempFolder.getRoot(), "variantA");
+    final File variantB = new File(tempFolder.getRoot(), "variantB");
+
+    FileUtils.writeStringToFile(new File(sourceFolder, "main.txt"), "//#if mode==\"a\"\nfirst /*$mode$*/\n//#else\nsecond /*$mode$*/\n//#endif\n//#include \"part.inc\"\n", StandardCharsets.UTF_8);
+    FileUtils.writeStringToFile(new File(sourceFolder, "part.inc"), "//$part /*$mode$*/\n", StandardCharsets.UTF_8);
+
+    final PreprocessorContext context = new PreprocessorContext(tempFolder.getRoot());
+    context.setSources(Collections.singletonList(sourceFolder.getAbsolutePath()));
+    context.setExcludeExtensions(Collections.singletonList("inc"));
+    context.setKeepLines(false);
+    context.setEol("\n");
+    final TextFileCache textFileCache = new TextFileCache();
+    context.setTextFileCache(textFileCache);
+
+    final JcpPreprocessor preprocessor = new JcpPreprocessor(context);
+    final Map<String, JcpPreprocessor.Statistics> result = preprocessor.executeVariants(Arrays.asList(
+        new JcpPreprocessor.Variant("a", variantA, Collections.singletonMap("mode", Value.valueOf("a"))),
+        new JcpPreprocessor.Variant("b", variantB, Collections.singletonMap("mode", Value.valueOf("b")))
+    ));
+
+    assertEquals(Arrays.asList("a", "b"), new ArrayList<>(result.keySet()));
+    assertEquals(1, result.get("a").getPreprocessed());
+    assertEquals(1, result.get("b").getPreprocessed());
+
+    assertEquals("first a\npart a\n", FileUtils.readFileToString(new File(variantA, "main.txt"), StandardCharsets.UTF_8));
+    assertEquals("second b\npart b\n", FileUtils.readFileToString(new File(variantB, "main.txt"), StandardCharsets.UTF_8));
+
+    assertSame(textFileCache, context.getTextFileCache());
+    assertEquals("Both source and included file must be read only once", 2, textFileCache.size());
+    assertNull("Variables of variants must not be visible in the base context", context.findVariableForName("mode", true));
+  }
+
+  @Test
+  public void testExecuteVariants_RunTextCacheIsRemoved() throws Exception {
+    final File sourceFolder = tempFolder.newFolder("src");
+    final File variantA = new File(tempFolder.getRoot(), "variantA");
+    final File source = new File(sourceFolder, "main.txt");
+
+    final PreprocessorContext context = new PreprocessorContext(tempFolder.getRoot());
+    context.setSources(Collections.singletonList(sourceFolder.getAbsolutePath()));
+    context.setKeepLines(false);
+    context.setEol("\n");
+    final List<JcpPreprocessor.Variant> variants = Collections.singletonList(new JcpPreprocessor.Variant("a", variantA, Collections.singletonMap("mode", Value.valueOf("a"))));
+
+    FileUtils.writeStringToFile(source, "old /*$mode$*/\n", StandardCharsets.UTF_8);
+    new JcpPreprocessor(context).executeVariants(variants);
+    assertNull(context.getTextFileCache());
+    assertEquals("old a\n", FileUtils.readFileToString(new File(variantA, "main.txt"), StandardCharsets.UTF_8));
+
+    FileUtils.writeStringToFile(source, "new /*$mode$*/\n", StandardCharsets.UTF_8);
+    new JcpPreprocessor(context).executeVariants(variants);
+    assertEquals("new a\n", FileUtils.readFileToString(new File(variantA, "main.txt"), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testExecute_Parallel() throws Exception {
+    final File sourceFolder = tempFolder.newFolder("src");
+    final File targetFolder = new File(tempFolder.getRoot(), "target");
+
+    FileUtils.writeStringToFile(new File(sourceFolder, "globals.txt"), "//#global prefix=\"file\"\n", StandardCharsets.UTF_8);
+    FileUtils.writeStringToFile(new File(sourceFolder, "part.inc"), "//$part /*$index$*/\n", StandardCharsets.UTF_8);
+    FileUtils.writeStringToFile(new File(sourceFolder, "copied.bin"), "binary", StandardCharsets.UTF_8);
+    for (int i = 0; i < 40; i++) {
+      final File folder = new File(sourceFolder, "folder" + (i % 4));
+      FileUtils.writeStringToFile(new File(folder, "file" + i + ".txt"), "//#local index=" + i + "\n//#define defined" + i + "\n/*$prefix+index$*/ /*$__filename__$*/\n//#ifdefined defined" + ((i + 1) % 40) + "\nleak\n//#endif\n//#include \"../part.inc\"\n", StandardCharsets.UTF_8);
+    }
+
+    final PreprocessorContext context = new PreprocessorContext(tempFolder.getRoot());
+    context.setSources(Collections.singletonList(sourceFolder.getAbsolutePath()));
+    context.setTarget(targetFolder);
+    context.setExcludeExtensions(Collections.singletonList("inc"));
+    context.setKeepLines(false);
+    context.setEol("\n");
+    context.setParallelism(4);
+
+    final JcpPreprocessor.Statistics stat = new JcpPreprocessor(context).execute();
+    assertEquals(new JcpPreprocessor.Statistics(41, 1, 0), stat);
+
+    for (int i = 0; i < 40; i++) {
+      final File result = new File(targetFolder, "folder" + (i % 4) + File.separatorChar + "file" + i + ".txt");
+      assertEquals("file" + i + " file" + i + ".txt\npart " + i + "\n", FileUtils.readFileToString(result, StandardCharsets.UTF_8));
+    }
+    assertEquals("binary", FileUtils.readFileToString(new File(targetFolder, "copied.bin"), StandardCharsets.UTF_8));
+    assertNull("Variables defined by files must not be visible in the base context", context.findVariableForName("defined1", true));
+  }
+
+  @Test
+  public void testExecute_Parallel_ErrorOfFirstFailedFile() throws Exception {
+    final File sourceFolder = tempFolder.newFolder("src");
+    for (int i = 0; i < 10; i++) {
+      FileUtils.writeStringToFile(new File(sourceFolder, "file" + i + ".txt"), i == 7 ? "//#if unknown_function(1)\n//#endif\n" : "text " + i + '\n', StandardCharsets.UTF_8);
+    }
+
+    final PreprocessorContext context = new PreprocessorContext(tempFolder.getRoot());
+    context.setSources(Collections.singletonList(sourceFolder.getAbsolutePath()));
+    context.setTarget(new File(tempFolder.getRoot(), "target"));
+    context.setParallelism(3);
+
+    try {
+      new JcpPreprocessor(context).execute();
+      fail("Must throw PreprocessorException");
+    } catch (PreprocessorException ex) {
+      assertEquals("file7.txt", ex.getRootFile().getName());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testExecuteVariants_DuplicatedName() throws Exception {
+    final PreprocessorContext context = new PreprocessorContext(tempFolder.getRoot());
+    new JcpPreprocessor(context).executeVariants(Arrays.asList(
+        new JcpPreprocessor.Variant("a", tempFolder.newFolder("a"), Collections.emptyMap()),
+        new JcpPreprocessor.Variant("a", tempFolder.newFolder("b"), Collections.emptyMap())
+    ));
+  }
+
   @Test
   public void testCLIHandlerNameConflicts() {
     final List<String> checked = new ArrayList<>();
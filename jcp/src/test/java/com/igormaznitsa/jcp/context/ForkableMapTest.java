@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ForkableMapTest {
+
+  @Test
+  public void testForkIsIndependent() {
+    final ForkableMap<String, Integer> parent = new ForkableMap<>();
+    parent.put("a", 1);
+    parent.put("b", 2);
+
+    final ForkableMap<String, Integer> fork = new ForkableMap<>();
+    fork.putAll(parent);
+    assertTrue(parent.isShared());
+    assertTrue(fork.isShared());
+    assertEquals(parent, fork);
+
+    fork.put("c", 3);
+    assertFalse(fork.isShared());
+    assertEquals(2, parent.size());
+    assertEquals(3, fork.size());
+
+    parent.remove("a");
+    assertFalse(parent.isShared());
+    assertEquals(Integer.valueOf(1), fork.get("a"));
+    assertNull(parent.get("a"));
+
+    assertNull(parent.remove("unknown"));
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    final ForkableMap<String, Integer> parent = new ForkableMap<>();
+    for (int i = 0; i < 10; i++) {
+      parent.put("key" + i, i);
+    }
+
+    final ForkableMap<String, Integer> fork = new ForkableMap<>();
+    fork.putAll(parent);
+
+    final Iterator<Map.Entry<String, Integer>> iterator = fork.entrySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().getValue() % 2 == 0) {
+        iterator.remove();
+      }
+    }
+    assertEquals(5, fork.size());
+    assertEquals(10, parent.size());
+
+    final Iterator<Map.Entry<String, Integer>> ownIterator = fork.entrySet().iterator();
+    while (ownIterator.hasNext()) {
+      ownIterator.next();
+      ownIterator.remove();
+    }
+    assertTrue(fork.isEmpty());
+    assertEquals(10, parent.size());
+  }
+}
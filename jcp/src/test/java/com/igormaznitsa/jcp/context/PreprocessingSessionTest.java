@@ -0,0 +1,162 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import com.igormaznitsa.jcp.expression.Value;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class PreprocessingSessionTest {
+
+  @Test
+  public void testFileContextKeepsOptions() {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setKeepLines(true);
+    context.setParallelism(3);
+    context.setExtensions(Collections.singletonList("java"));
+
+    final PreprocessingSession session = new PreprocessingSession(context);
+    assertSame(context, session.getBaseContext());
+
+    final PreprocessorContext fileContext = session.makeFileContext();
+    assertTrue(fileContext.isKeepLines());
+    assertEquals(3, fileContext.getParallelism());
+    assertEquals(Collections.singleton("java"), fileContext.getExtensions());
+    assertEquals(context.getSourceEncoding(), fileContext.getSourceEncoding());
+  }
+
+  @Test
+  public void testFileContextReadsOptionsFromSessionConfig() {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setKeepLines(true);
+    context.setPrefetchThreads(2);
+
+    final PreprocessingSession session = new PreprocessingSession(context);
+    final PreprocessorConfig config = session.getConfig();
+    assertTrue(config.isKeepLines());
+    assertEquals(2, config.getPrefetchThreads());
+    assertNull(context.getSessionConfig());
+
+    context.setKeepLines(false);
+
+    final PreprocessorContext fileContext = session.makeFileContext();
+    assertSame(config, fileContext.getSessionConfig());
+    assertTrue(fileContext.isKeepLines());
+    assertEquals(2, fileContext.getPrefetchThreads());
+
+    try {
+      config.getExtensions().add("txt");
+      fail("Must throw UnsupportedOperationException");
+    } catch (UnsupportedOperationException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testRunOptionsCantBeChangedInFileContext() {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setKeepComments(true);
+    final PreprocessingSession session = new PreprocessingSession(context);
+    final PreprocessorContext fileContext = session.makeFileContext();
+
+    try {
+      fileContext.setParallelism(2);
+      fail("Must throw IllegalStateException");
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+    try {
+      fileContext.setPrefetchThreads(2);
+      fail("Must throw IllegalStateException");
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+    try {
+      new PreprocessorContext(fileContext).setSharedResourceBudget(1024L);
+      fail("Must throw IllegalStateException");
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+
+    fileContext.setKeepComments(false);
+    assertFalse(fileContext.isKeepComments());
+    assertFalse(new PreprocessorContext(fileContext).isKeepComments());
+    assertTrue(session.getConfig().isKeepComments());
+    assertTrue(session.makeFileContext().isKeepComments());
+    assertTrue(context.isKeepComments());
+
+    assertNull(fileContext.makeVariantCopy().getSessionConfig());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParallelismMustBePositive() {
+    new PreprocessorContext(new File("some_impossible_folder_121212")).setParallelism(0);
+  }
+
+  @Test
+  public void testFileContextsAreIndependent() throws Exception {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setGlobalVariable("session.global", Value.INT_ONE);
+    context.setSharedResource("session.resource", "base");
+    context.compactGlobalVariables();
+
+    final PreprocessingSession session = new PreprocessingSession(context);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        final long index = i;
+        results.add(executor.submit(() -> {
+          final PreprocessorContext fileContext = session.makeFileContext();
+          assertNotSame(context, fileContext);
+          assertFalse(fileContext.isCloned());
+          fileContext.setGlobalVariable("session.global", Value.valueOf(index));
+          fileContext.setLocalVariable("session.local", Value.valueOf(index));
+          fileContext.setSharedResource("session.resource", index);
+          Thread.yield();
+          return Value.valueOf(index).equals(fileContext.findVariableForName("session.global", true))
+              && Value.valueOf(index).equals(fileContext.findVariableForName("session.local", true))
+              && Long.valueOf(index).equals(fileContext.getSharedResource("session.resource"));
+        }));
+      }
+      for (final Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(Value.INT_ONE, context.findVariableForName("session.global", true));
+    assertNull(context.findVariableForName("session.local", true));
+    assertEquals("base", context.getSharedResource("session.resource"));
+  }
+}
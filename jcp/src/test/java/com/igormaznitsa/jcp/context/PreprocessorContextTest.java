@@ -22,6 +22,9 @@
 package com.igormaznitsa.jcp.context;
 
 import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.functions.BinFileCache;
+import com.igormaznitsa.jcp.expression.functions.EvalFileCache;
+import com.igormaznitsa.jcp.expression.functions.FunctionResultCache;
 import com.igormaznitsa.jcp.extension.PreprocessorExtension;
 import com.igormaznitsa.jcp.logger.PreprocessorLogger;
 import org.junit.Test;
@@ -33,6 +36,7 @@ import java.lang.reflect.Modifier;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -190,6 +194,8 @@ public class PreprocessorContextTest {
         f.set(context, RND.nextBoolean());
       } else if (type == Integer.class || type == int.class) {
         f.set(context, RND.nextInt(10000));
+      } else if (type == Long.class || type == long.class) {
+        f.set(context, 1L + RND.nextInt(100000));
       } else if (type == String.class) {
         f.set(context, randomString());
       } else if (type == File.class) {
@@ -225,6 +231,21 @@ public class PreprocessorContextTest {
             break;
         }
         f.set(context, charset);
+      } else if (type.isEnum()) {
+        final Object[] constants = type.getEnumConstants();
+        f.set(context, constants[RND.nextInt(constants.length)]);
+      } else if (type == TextFileCache.class) {
+        f.set(context, new TextFileCache());
+      } else if (type == BinFileCache.class) {
+        f.set(context, new BinFileCache(new File("cache" + RND.nextInt(1000)), 1L + RND.nextInt(100000)));
+      } else if (type == EvalFileCache.class) {
+        f.set(context, new EvalFileCache(1L + RND.nextInt(100000)));
+      } else if (type == EvalFileCache.Recorder.class) {
+        f.set(context, new EvalFileCache.Recorder(null));
+      } else if (type == ResourcePrefetcher.class) {
+        f.set(context, new ResourcePrefetcher(1, Collections.emptyList(), StandardCharsets.UTF_8, new TextFileCache(), null));
+      } else if (type == FunctionResultCache.class) {
+        f.set(context, new FunctionResultCache(1L + RND.nextInt(100000)));
       } else if (type == PreprocessingState.class) {
         f.set(context, new PreprocessingState(context, StandardCharsets.UTF_8, StandardCharsets.UTF_8));
       } else if (type == PreprocessorLogger.class) {
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import com.igormaznitsa.jcp.JcpPreprocessor;
+import com.igormaznitsa.jcp.expression.functions.BinFileCache;
+import com.igormaznitsa.jcp.expression.functions.xml.CompactXmlDocument;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ResourcePrefetcherTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File makeFile(final String path, final String text) throws Exception {
+    final File result = new File(this.tempFolder.getRoot(), path);
+    FileUtils.write(result, text, StandardCharsets.UTF_8);
+    return result;
+  }
+
+  @Test
+  public void testLiteralReferencesArePrefetched() throws Exception {
+    final File main = makeFile("src/main.txt", "//#include \"inc/part.txt\"\n"
+        + "//#local doc = xml_open(\"data.xml\")\n"
+        + "/*$evalfile(\"eval.txt\")$*/ /*$binfile(\"data.bin\",\"base64\")$*/\n"
+        + "//#include \"unknown.txt\"\n"
+        + "//#local dynamic = xml_open(name+\".xml\")\n");
+    final File part = makeFile("src/inc/part.txt", "//#local x = xml_open(\"../other.xml\")\n");
+    final File eval = makeFile("src/eval.txt", "text");
+    makeFile("src/data.bin", "123");
+    final File data = makeFile("src/data.xml", "<root><a/></root>");
+    final File other = makeFile("src/other.xml", "<other/>");
+
+    final TextFileCache textFileCache = new TextFileCache();
+    final BinFileCache binFileCache = new BinFileCache(this.tempFolder.newFolder("bincache"), 1000L);
+    final PreprocessorContext context = new PreprocessorContext(this.tempFolder.getRoot());
+    context.setSources(Collections.singletonList(new File(this.tempFolder.getRoot(), "src").getAbsolutePath()));
+
+    try (final ResourcePrefetcher prefetcher = new ResourcePrefetcher(2, context.getSources(), StandardCharsets.UTF_8, textFileCache, binFileCache)) {
+      prefetcher.prefetch(main);
+      prefetcher.prefetch(main);
+      assertTrue(prefetcher.awaitIdle(10000L));
+
+      assertEquals(3, textFileCache.size());
+      assertEquals("//#local x = xml_open(\"../other.xml\")", textFileCache.open(part, StandardCharsets.UTF_8).getText()[0]);
+      assertNotNull(textFileCache.open(eval, StandardCharsets.UTF_8));
+      assertEquals(5L, prefetcher.getPrefetched());
+
+      final CompactXmlDocument document = prefetcher.takeXmlDocument(data);
+      assertNotNull(document);
+      assertEquals("root", document.getName(0));
+      assertNull(prefetcher.takeXmlDocument(data));
+      assertEquals("other", prefetcher.takeXmlDocument(other).getName(0));
+      assertEquals(2L, prefetcher.getUsedXmlDocuments());
+    }
+  }
+
+  @Test
+  public void testResolve() throws Exception {
+    final File main = makeFile("src/main.txt", "");
+    makeFile("src/sub/a.txt", "");
+    final File outside = makeFile("outside.txt", "");
+
+    final PreprocessorContext context = new PreprocessorContext(this.tempFolder.getRoot());
+    context.setSources(Collections.singletonList(new File(this.tempFolder.getRoot(), "src").getAbsolutePath()));
+    try (final ResourcePrefetcher prefetcher = new ResourcePrefetcher(1, context.getSources(), StandardCharsets.UTF_8, new TextFileCache(), null)) {
+      assertEquals(new File(main.getParentFile(), "sub/a.txt"), prefetcher.resolve(main, "sub/a.txt"));
+      assertNull(prefetcher.resolve(main, "sub/b.txt"));
+      assertNull(prefetcher.resolve(main, " "));
+      assertNull(prefetcher.resolve(main, outside.getAbsolutePath()));
+      assertEquals(main, prefetcher.resolve(main, main.getAbsolutePath()));
+    }
+  }
+
+  @Test
+  public void testClosedPrefetcherIgnoresRequests() throws Exception {
+    final File main = makeFile("src/main.txt", "//#local doc = xml_open(\"data.xml\")\n");
+    final TextFileCache textFileCache = new TextFileCache();
+    final ResourcePrefetcher prefetcher = new ResourcePrefetcher(1, Collections.emptyList(), StandardCharsets.UTF_8, textFileCache, null);
+    prefetcher.close();
+    prefetcher.prefetch(main);
+    assertTrue(prefetcher.awaitIdle(1000L));
+    assertEquals(0, textFileCache.size());
+    assertNull(prefetcher.takeXmlDocument(new File(main.getParentFile(), "data.xml")));
+  }
+
+  @Test
+  public void testPreprocessingWithPrefetch() throws Exception {
+    makeFile("src/main.java", "//#include \"part.txt\"\n//#local doc = xml_open(\"data.xml\")\n/*$xml_text(xml_root(doc))$*/\n");
+    makeFile("src/part.txt", "included\n");
+    makeFile("src/data.xml", "<root>xmltext</root>");
+
+    final PreprocessorContext context = new PreprocessorContext(this.tempFolder.getRoot());
+    context.setSources(Collections.singletonList(new File(this.tempFolder.getRoot(), "src").getAbsolutePath()));
+    context.setTarget(new File(this.tempFolder.getRoot(), "target"));
+    context.setExcludeExtensions(Collections.singletonList("xml"));
+    context.setPrefetchThreads(2);
+
+    new JcpPreprocessor(context).execute();
+    assertEquals("included\nxmltext\n", FileUtils.readFileToString(new File(context.getTarget(), "main.java"), StandardCharsets.UTF_8).replace("\r\n", "\n"));
+    assertNull(context.getResourcePrefetcher());
+    assertNull(context.getTextFileCache());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPrefetchThreadsMustNotBeNegative() {
+    new PreprocessorContext(new File("some_impossible_folder_121212")).setPrefetchThreads(-1);
+  }
+}
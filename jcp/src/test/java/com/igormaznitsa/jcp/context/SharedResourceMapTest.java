@@ -0,0 +1,180 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SharedResourceMapTest {
+
+  @Test
+  public void testLeastRecentlyUsedDroppedOverBudget() {
+    final SharedResourceMap map = new SharedResourceMap();
+    map.setBudget(100L);
+    map.put("pinned", "p", SharedResourceScope.PINNED, 50L);
+    map.put("a", "a", SharedResourceScope.RUN, 20L);
+    map.put("b", "b", SharedResourceScope.FILE, 20L);
+    assertEquals(90L, map.getWeight());
+
+    assertEquals("a", map.get("a"));
+    map.put("c", "c", SharedResourceScope.RUN, 20L);
+
+    assertEquals(90L, map.getWeight());
+    assertEquals(90L, map.getPeakWeight());
+    assertEquals(1L, map.getDropped());
+    assertNull(map.get("b"));
+    assertTrue(map.isDropped("b"));
+    assertFalse(map.isDropped("a"));
+    assertEquals("p", map.get("pinned"));
+    assertEquals("a", map.get("a"));
+    assertEquals("c", map.get("c"));
+  }
+
+  @Test
+  public void testPinnedAndJustPlacedAreNotDropped() {
+    final SharedResourceMap map = new SharedResourceMap();
+    map.setBudget(10L);
+    map.put("pinned", "p", SharedResourceScope.PINNED, 20L);
+    map.put("heavy", "h", SharedResourceScope.RUN, 30L);
+    assertEquals(50L, map.getWeight());
+    assertEquals("p", map.get("pinned"));
+    assertEquals("h", map.get("heavy"));
+
+    map.put("other", "o", SharedResourceScope.RUN, 1L);
+    assertNull(map.get("heavy"));
+    assertEquals(21L, map.getWeight());
+  }
+
+  @Test
+  public void testRelease() {
+    final SharedResourceMap map = new SharedResourceMap();
+    map.put("file1", "1", SharedResourceScope.FILE, 1L);
+    map.put("file2", "2", SharedResourceScope.FILE, 2L);
+    map.put("run", "3", SharedResourceScope.RUN, 4L);
+    map.put("old", "4");
+
+    assertEquals(2, map.release(SharedResourceScope.FILE));
+    assertEquals(4L, map.getWeight());
+    assertEquals(2, map.size());
+    assertFalse(map.isDropped("file1"));
+    assertEquals(0L, map.getDropped());
+    assertEquals(0, map.release(SharedResourceScope.FILE));
+  }
+
+  @Test
+  public void testDroppedNamesAreForgottenAtEndOfScope() {
+    final SharedResourceMap map = new SharedResourceMap();
+    map.setBudget(10L);
+    map.put("file", "f", SharedResourceScope.FILE, 6L);
+    map.put("run", "r", SharedResourceScope.RUN, 6L);
+    map.put("other", "o", SharedResourceScope.RUN, 6L);
+    assertTrue(map.isDropped("file"));
+    assertTrue(map.isDropped("run"));
+
+    map.release(SharedResourceScope.FILE);
+    assertFalse(map.isDropped("file"));
+    assertTrue(map.isDropped("run"));
+
+    map.release(SharedResourceScope.RUN);
+    assertFalse(map.isDropped("run"));
+    assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testDropOrderFollowsUse() {
+    final SharedResourceMap map = new SharedResourceMap();
+    map.setBudget(50L);
+    for (int i = 0; i < 5; i++) {
+      map.put("key" + i, i, SharedResourceScope.RUN, 10L);
+    }
+    map.get("key0");
+    map.put("key5", 5, SharedResourceScope.RUN, 10L);
+    assertTrue(map.isDropped("key1"));
+
+    map.get("key2");
+    map.put("key6", 6, SharedResourceScope.RUN, 10L);
+    map.put("key3", 3, SharedResourceScope.RUN, 10L);
+    map.put("key7", 7, SharedResourceScope.PINNED, 10L);
+    assertTrue(map.isDropped("key4"));
+    assertTrue(map.isDropped("key0"));
+    assertEquals(4L, map.getDropped());
+    assertEquals(50L, map.getWeight());
+    for (final String key : new String[] {"key2", "key3", "key5", "key6", "key7"}) {
+      assertNotNull(key, map.get(key));
+    }
+  }
+
+  @Test
+  public void testForkIsIndependentAndSharesUsage() {
+    final SharedResourceMap parent = new SharedResourceMap();
+    parent.setBudget(10L);
+    parent.put("a", "a", SharedResourceScope.RUN, 5L);
+
+    final SharedResourceMap fork = new SharedResourceMap();
+    fork.setBudget(10L);
+    fork.putAll(parent);
+    assertEquals(parent, fork);
+    assertEquals(5L, fork.getWeight());
+
+    fork.put("b", "b", SharedResourceScope.RUN, 8L);
+    assertNull(fork.get("a"));
+    assertEquals("a", parent.get("a"));
+    assertEquals(5L, parent.getWeight());
+    assertEquals(1L, parent.getDropped());
+    assertTrue(parent.isDropped("a"));
+    assertEquals(8L, parent.getPeakWeight());
+  }
+
+  @Test
+  public void testMapContract() {
+    final SharedResourceMap map = new SharedResourceMap();
+    final Map<String, Object> etalon = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      map.put("key" + i, i, SharedResourceScope.RUN, i);
+      etalon.put("key" + i, i);
+    }
+    assertEquals(etalon, map);
+    assertEquals(45L, map.getWeight());
+
+    map.entrySet().removeIf(e -> ((Integer) e.getValue()) % 2 == 0);
+    assertEquals(5, map.size());
+    assertEquals(25L, map.getWeight());
+
+    assertEquals(1, map.remove("key1"));
+    assertNull(map.remove("key1"));
+    assertEquals(24L, map.getWeight());
+
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertEquals(0L, map.getWeight());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongBudget() {
+    new SharedResourceMap().setBudget(0L);
+  }
+}
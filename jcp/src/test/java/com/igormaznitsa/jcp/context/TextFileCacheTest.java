@@ -0,0 +1,68 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.igormaznitsa.jcp.context;
+
+import com.igormaznitsa.jcp.containers.TextFileDataContainer;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class TextFileCacheTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testOpen_ReadOnlyOnce() throws Exception {
+    final File file = tempFolder.newFile("text.txt");
+    FileUtils.writeStringToFile(file, "line1\nline2\n", StandardCharsets.UTF_8);
+
+    final TextFileCache cache = new TextFileCache();
+    assertFalse(cache.contains(file, StandardCharsets.UTF_8));
+
+    final TextFileDataContainer first = cache.open(file, StandardCharsets.UTF_8);
+    assertEquals("line1", first.nextLine());
+    assertTrue(cache.contains(file, StandardCharsets.UTF_8));
+
+    FileUtils.writeStringToFile(file, "changed\n", StandardCharsets.UTF_8);
+
+    final TextFileDataContainer second = cache.open(file, StandardCharsets.UTF_8);
+    assertNotSame(first, second);
+    assertEquals("Every container must have own position", 0, second.getNextStringIndex());
+    assertEquals("Cached text must be used", "line1", second.nextLine());
+    assertEquals("line2", second.nextLine());
+    assertTrue(second.isPresentedNextLineOnReadString());
+    assertEquals(1, cache.size());
+
+    assertEquals("Other charset must be read separately", "changed", cache.open(file, StandardCharsets.ISO_8859_1).nextLine());
+    assertEquals(2, cache.size());
+
+    cache.clear();
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.context;
+
+import com.igormaznitsa.jcp.InfoHelper;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.Variable;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class VariableTableTest {
+
+  @Test
+  public void testSlots() {
+    final SymbolTable symbols = new SymbolTable();
+    final int slot = symbols.slotFor("table.test.slot");
+    assertEquals(slot, symbols.slotFor("table.test.slot"));
+    assertEquals(slot, symbols.findSlot("table.test.slot"));
+    assertEquals("table.test.slot", symbols.nameForSlot(slot));
+    assertEquals(-1, symbols.findSlot("table.test.unknown"));
+    assertEquals(-1, symbols.findSlot(null));
+    assertEquals(1, symbols.size());
+
+    final Variable variable = new Variable(" Table.Test.SLOT ");
+    assertEquals(slot, variable.getSlot(symbols));
+    assertEquals(slot, variable.getSlot(symbols));
+
+    final SymbolTable otherSymbols = new SymbolTable();
+    otherSymbols.slotFor("table.test.other");
+    assertEquals(1, variable.getSlot(otherSymbols));
+    assertEquals(slot, variable.getSlot(symbols));
+  }
+
+  @Test
+  public void testManySlots() {
+    final VariableTable<Value> table = new VariableTable<>();
+    for (int i = 0; i < 200000; i++) {
+      table.put("table.test.many" + i, Value.valueOf((long) i));
+    }
+    table.compact();
+    assertTrue(table.isCompact());
+    assertEquals(200000, table.size());
+    for (int i = 0; i < 200000; i += 7) {
+      assertEquals(Value.valueOf((long) i), table.get("table.test.many" + i));
+    }
+    assertNull(table.get("table.test.many.unknown"));
+  }
+
+  @Test
+  public void testMapOperations() {
+    final VariableTable<Value> table = new VariableTable<>();
+    final Map<String, Value> etalon = new HashMap<>();
+
+    for (int i = 0; i < 100; i++) {
+      final Value value = Value.valueOf((long) i);
+      assertNull(table.put("table.test.var" + i, value));
+      etalon.put("table.test.var" + i, value);
+    }
+    assertEquals(Value.valueOf(5L), table.put("table.test.var5", Value.valueOf(500L)));
+    etalon.put("table.test.var5", Value.valueOf(500L));
+
+    assertEquals(Value.valueOf(7L), table.remove("table.test.var7"));
+    etalon.remove("table.test.var7");
+    assertNull(table.remove("table.test.var7"));
+    assertNull(table.remove("table.test.unknown"));
+
+    assertEquals(etalon, table);
+    assertEquals(table, etalon);
+    assertEquals(99, table.size());
+    assertTrue(table.containsKey("table.test.var1"));
+    assertFalse(table.containsKey("table.test.var7"));
+    assertEquals(Value.valueOf(500L), table.get(table.getSymbols().findSlot("table.test.var5")));
+
+    final Iterator<Map.Entry<String, Value>> iterator = table.entrySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().getValue().asLong() % 2 == 0) {
+        iterator.remove();
+      }
+    }
+    assertEquals(48, table.size());
+    assertNull(table.get("table.test.var2"));
+    assertEquals(Value.valueOf(3L), table.get("table.test.var3"));
+
+    table.clear();
+    assertTrue(table.isEmpty());
+    assertNull(table.get("table.test.var3"));
+  }
+
+  @Test
+  public void testCompact() {
+    final VariableTable<Value> table = new VariableTable<>();
+    for (int i = 0; i < 30; i++) {
+      table.put("table.test.compact" + i, Value.valueOf((long) i));
+    }
+    final Map<String, Value> etalon = new HashMap<>(table);
+
+    table.compact();
+    assertTrue(table.isCompact());
+    assertEquals(etalon, table);
+    for (int i = 0; i < 30; i++) {
+      assertEquals(Value.valueOf((long) i), table.get(table.getSymbols().findSlot("table.test.compact" + i)));
+    }
+    assertNull(table.get("table.test.var1"));
+    assertNull(table.get(-1));
+
+    final VariableTable<Value> copy = new VariableTable<>(table.getSymbols());
+    copy.putAll(table);
+    assertTrue(copy.isCompact());
+    assertEquals(etalon, copy);
+
+    table.put("table.test.compact.new", Value.BOOLEAN_TRUE);
+    assertFalse(table.isCompact());
+    assertEquals(31, table.size());
+    assertEquals(Value.BOOLEAN_TRUE, table.get("table.test.compact.new"));
+    assertEquals(Value.valueOf(29L), table.get("table.test.compact29"));
+    assertEquals(etalon, copy);
+
+    copy.remove("table.test.compact0");
+    assertFalse(copy.isCompact());
+    assertEquals(29, copy.size());
+  }
+
+  @Test
+  public void testCopyOnWrite() {
+    final VariableTable<Value> parent = new VariableTable<>();
+    parent.put("table.test.cow1", Value.INT_ONE);
+    parent.put("table.test.cow2", Value.INT_TWO);
+
+    final VariableTable<Value> fork = new VariableTable<>(parent.getSymbols());
+    fork.putAll(parent);
+    assertTrue(parent.isShared());
+    assertTrue(fork.isShared());
+    assertEquals(parent, fork);
+
+    fork.put("table.test.cow1", Value.INT_THREE);
+    fork.remove("table.test.cow2");
+    assertFalse(fork.isShared());
+    assertEquals(Value.INT_ONE, parent.get("table.test.cow1"));
+    assertEquals(Value.INT_TWO, parent.get("table.test.cow2"));
+    assertEquals(2, parent.size());
+    assertEquals(Value.INT_THREE, fork.get("table.test.cow1"));
+    assertEquals(1, fork.size());
+
+    final VariableTable<Value> secondFork = new VariableTable<>(parent.getSymbols());
+    secondFork.putAll(parent);
+    parent.put("table.test.cow3", Value.INT_ONE);
+    assertFalse(parent.isShared());
+    assertNull(secondFork.get("table.test.cow3"));
+    assertEquals(2, secondFork.size());
+
+    parent.compact();
+    final VariableTable<Value> compactFork = new VariableTable<>(parent.getSymbols());
+    compactFork.putAll(parent);
+    compactFork.put("table.test.cow4", Value.INT_TWO);
+    assertTrue(parent.isCompact());
+    assertNull(parent.get("table.test.cow4"));
+    assertEquals(3, parent.size());
+    assertEquals(4, compactFork.size());
+
+    final VariableTable<Value> otherSymbols = new VariableTable<>();
+    otherSymbols.putAll(parent);
+    assertFalse(otherSymbols.isShared());
+    assertEquals(parent, otherSymbols);
+  }
+
+  @Test
+  public void testContextCloneSharesTables() {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setGlobalVariable("table.test.clone.global", Value.INT_ONE);
+    context.setLocalVariable("table.test.clone.local", Value.INT_TWO);
+
+    final PreprocessorContext clone = new PreprocessorContext(context);
+    assertTrue(clone.getGlobalVariableTable().isShared());
+    assertTrue(clone.getLocalVariableTable().isShared());
+    assertSame(context.getGlobalVariableTable().getSymbols(), clone.getGlobalVariableTable().getSymbols());
+
+    clone.setLocalVariable("table.test.clone.local", Value.INT_THREE);
+    clone.setGlobalVariable("table.test.clone.other", Value.INT_THREE);
+    assertEquals(Value.INT_TWO, context.getLocalVarTable().get("table.test.clone.local"));
+    assertNull(context.getGlobalVarTable().get("table.test.clone.other"));
+    assertEquals(Value.INT_ONE, clone.getGlobalVarTable().get("table.test.clone.global"));
+  }
+
+  @Test
+  public void testContextMapsWriteThrough() {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setGlobalVariable("table.test.view", Value.INT_ONE);
+    assertEquals(Value.INT_ONE, context.getGlobalVarTable().get("table.test.view"));
+    assertTrue(context.getMapVariableNameToSpecialVarProcessor().containsKey("jcp.version"));
+
+    context.getGlobalVarTable().put("table.test.view", Value.INT_TWO);
+    context.getLocalVarTable().put("table.test.local.view", Value.INT_THREE);
+    assertEquals(Value.INT_TWO, context.findVariableForName("table.test.view", true));
+    assertEquals(Value.INT_THREE, context.getLocalVariable("table.test.local.view"));
+    context.getGlobalVarTable().remove("table.test.view");
+    assertFalse(context.containsGlobalVariable("table.test.view"));
+
+    assertNotSame(context.getGlobalVariableTable().getSymbols(), new PreprocessorContext(new File("some_impossible_folder_121212")).getGlobalVariableTable().getSymbols());
+  }
+
+  @Test
+  public void testFindVariable() {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setGlobalVariable("table.test.global", Value.INT_ONE);
+    context.setLocalVariable("table.test.local", Value.INT_TWO);
+    context.compactGlobalVariables();
+
+    assertEquals(Value.INT_ONE, context.findVariable(new Variable("Table.Test.Global"), false));
+    assertEquals(Value.INT_TWO, context.findVariable(new Variable("table.test.local"), false));
+    assertEquals(Value.valueOf(InfoHelper.getVersion()), context.findVariable(new Variable("jcp.version"), false));
+    assertNull(context.findVariable(new Variable("table.test.unknown"), false));
+
+    context.setUnknownVariableAsFalse(true);
+    assertEquals(Value.BOOLEAN_FALSE, context.findVariable(new Variable("table.test.unknown"), false));
+    assertNull(context.findVariable(new Variable("table.test.unknown"), true));
+  }
+}
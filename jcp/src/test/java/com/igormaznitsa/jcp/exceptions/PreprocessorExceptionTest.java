@@ -86,4 +86,27 @@ public final class PreprocessorExceptionTest {
       assertEquals("Expected correct line number", 17, expected.getLineNumber());
     }
   }
+
+  @Test
+  public void testExceptionStringIndex_EvaluationErrorInIncluded() throws Exception {
+    final File file = new File(this.getClass().getResource("wrong_argument_include.txt").toURI());
+
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setSources(Collections.singletonList(file.getParent()));
+    context.setDryRun(true);
+
+    final FileInfoContainer container = new FileInfoContainer(file, "test", false);
+    try {
+      container.preprocessFile(null, context);
+      fail("Must throw PreprocessorException");
+    } catch (PreprocessorException expected) {
+      final FilePositionInfo[] fileStack = expected.getIncludeChain();
+      assertEquals("Must have depth 2", 2, fileStack.length);
+      assertEquals(4, fileStack[1].getLineNumber());
+      assertEquals("wrong_argument_include.txt", fileStack[1].getFile().getName());
+      assertEquals(4, fileStack[0].getLineNumber());
+      assertEquals("wrong_argument.txt", fileStack[0].getFile().getName());
+      assertEquals("//#local b = strlen(a)", expected.getProcessingString());
+    }
+  }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.IdentityHashMap;
+
+import static org.junit.Assert.*;
+
+public class CompiledExpressionTest {
+
+  private static PreprocessorContext makeContext() {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setEvaluationMode(EvaluationMode.TIERED);
+    context.setLocalVariable("intvar", Value.INT_FIVE);
+    context.setLocalVariable("strvar", Value.valueOf("hello"));
+    context.setLocalVariable("boolfalse", Value.BOOLEAN_FALSE);
+    return context;
+  }
+
+  private static ExpressionTree warmUp(final String expression, final PreprocessorContext context, final Value expected) throws Exception {
+    final ExpressionTree tree = ExpressionParser.getInstance().parseOptimized(expression, context);
+    for (int i = 0; i < CompiledExpression.COMPILE_THRESHOLD; i++) {
+      assertNull(tree.getCompiledExpression());
+      assertEquals(expected, Expression.evalTree(tree, context));
+    }
+    return tree;
+  }
+
+  @Test
+  public void testCompileAfterThreshold() throws Exception {
+    final PreprocessorContext context = makeContext();
+    final long compiled = CompiledExpression.getCompiledCounter();
+
+    final ExpressionTree tree = warmUp("intvar*3-strlen(strvar)==10 || (boolfalse && unknownvar)", context, Value.BOOLEAN_TRUE);
+    final CompiledExpression compiledExpression = tree.getCompiledExpression();
+    assertNotNull(compiledExpression);
+    assertEquals(compiled + 1, CompiledExpression.getCompiledCounter());
+
+    context.setLocalVariable("intvar", Value.valueOf(7L));
+    for (int i = 0; i < 10; i++) {
+      assertEquals(Value.BOOLEAN_FALSE, Expression.evalTree(tree, context));
+    }
+    assertTrue(compiledExpression.isValid());
+    assertEquals(Value.BOOLEAN_FALSE, compiledExpression.execute(context));
+  }
+
+  @Test
+  public void testDeoptimizationForChangedType() throws Exception {
+    final PreprocessorContext context = makeContext();
+    final ExpressionTree tree = warmUp("intvar+1", context, Value.valueOf(6L));
+    final CompiledExpression compiledExpression = tree.getCompiledExpression();
+    assertNotNull(compiledExpression);
+    assertTrue(compiledExpression.isValid());
+
+    final long deoptimized = CompiledExpression.getDeoptimizedCounter();
+    context.setLocalVariable("intvar", Value.valueOf("text"));
+    assertEquals(Value.valueOf("text1"), Expression.evalTree(tree, context));
+    assertFalse(compiledExpression.isValid());
+    assertEquals(deoptimized + 1, CompiledExpression.getDeoptimizedCounter());
+
+    assertEquals(Value.valueOf("text1"), Expression.evalTree(tree, context));
+    assertEquals(deoptimized + 1, CompiledExpression.getDeoptimizedCounter());
+  }
+
+  @Test
+  public void testErrorsAreTheSameAsForInterpretation() throws Exception {
+    final PreprocessorContext context = makeContext();
+    final ExpressionTree tree = warmUp("10/intvar", context, Value.valueOf(2L));
+    assertNotNull(tree.getCompiledExpression());
+
+    context.setLocalVariable("intvar", Value.valueOf(0L));
+    try {
+      Expression.evalTree(tree, context);
+      fail("Must throw ArithmeticException");
+    } catch (ArithmeticException ex) {
+      // expected
+    }
+    assertTrue(tree.getCompiledExpression().isValid());
+  }
+
+  @Test
+  public void testNotCompilableTreeIsNotCountedAndCompiled() throws Exception {
+    final PreprocessorContext context = makeContext();
+    final ExpressionTree tree = ExpressionParser.getInstance().parseOptimized("intvar+2-1", context);
+    assertTrue(tree.isCompilable());
+    tree.markNotCompilable();
+    assertFalse(tree.isCompilable());
+
+    for (int i = 0; i <= CompiledExpression.COMPILE_THRESHOLD; i++) {
+      assertEquals(Value.valueOf(6L), Expression.evalTree(tree, context));
+    }
+    assertNull(tree.getCompiledExpression());
+    assertEquals(0, tree.getEvaluationCounter());
+  }
+
+  @Test
+  public void testCounterStopsAfterCompilation() throws Exception {
+    final PreprocessorContext context = makeContext();
+    final ExpressionTree tree = warmUp("intvar+3-2", context, Value.valueOf(6L));
+    assertNotNull(tree.getCompiledExpression());
+    assertEquals(CompiledExpression.COMPILE_THRESHOLD, tree.getEvaluationCounter());
+
+    assertEquals(Value.valueOf(6L), Expression.evalTree(tree, context));
+    assertEquals(CompiledExpression.COMPILE_THRESHOLD, tree.getEvaluationCounter());
+  }
+
+  @Test
+  public void testMutableTreeIsNotCompiled() {
+    final ExpressionTree tree = new ExpressionTree();
+    assertFalse(tree.isCompilable());
+    assertNull(CompiledExpression.compile(tree, new IdentityHashMap<>()));
+    try {
+      tree.setCompiledExpression(null);
+      fail("Must throw ISE");
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.exceptions.PreprocessorException;
+import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
+import com.igormaznitsa.jcp.expression.functions.FunctionSTRLEN;
+import com.igormaznitsa.jcp.expression.operators.AbstractOperator;
+import com.igormaznitsa.jcp.expression.operators.OperatorADD;
+import com.igormaznitsa.jcp.expression.operators.OperatorGREATEQU;
+import com.igormaznitsa.jcp.expression.operators.OperatorNOT;
+import com.igormaznitsa.jcp.expression.operators.OperatorNOTEQU;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class ExpressionLexerTest {
+
+  private static final PreprocessorContext CONTEXT = new PreprocessorContext(new File("some_impossible_folder_121212"));
+
+  private static void assertItems(final String text, final ExpressionItem... items) {
+    final ExpressionLexer lexer = new ExpressionLexer(text);
+    for (final ExpressionItem item : items) {
+      final ExpressionItem read = lexer.nextItem(CONTEXT);
+      if (item instanceof Variable) {
+        assertTrue(text, read instanceof Variable);
+        assertEquals(text, ((Variable) item).getName(), ((Variable) read).getName());
+      } else {
+        assertEquals(text, item, read);
+      }
+    }
+    assertNull(lexer.nextItem(CONTEXT));
+    assertEquals(text.length(), lexer.getPosition());
+  }
+
+  private static void assertError(final String text, final String message) {
+    final ExpressionLexer lexer = new ExpressionLexer(text);
+    try {
+      while (lexer.nextItem(CONTEXT) != null) {
+        // read all items
+      }
+      fail("Must throw exception for " + text);
+    } catch (PreprocessorException ex) {
+      assertTrue(ex.getMessage(), ex.getMessage().startsWith(message));
+    }
+  }
+
+  @Test
+  public void testNumbers() {
+    assertItems("  1234567890123 ", Value.valueOf(1234567890123L));
+    assertItems("0x7FfFFFFFFFFFFFFF", Value.valueOf(Long.MAX_VALUE));
+    assertItems("0X1f", Value.valueOf(31L));
+    assertItems("0.5 .25 3.", Value.valueOf(0.5f), Value.valueOf(0.25f), Value.valueOf(3.0f));
+    assertItems("1.2.3", Value.valueOf(1.2f), Value.valueOf(0.3f));
+    assertItems("0+1", Value.INT_ZERO, AbstractOperator.findForClass(OperatorADD.class), Value.INT_ONE);
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testTooLongNumber() {
+    new ExpressionLexer("92233720368547758070").nextItem(CONTEXT);
+  }
+
+  @Test
+  public void testStrings() {
+    assertItems("\"plain\"", Value.valueOf("plain"));
+    assertItems("\"a\\tb\\\"c\\u0041\\\\\"", Value.valueOf("a\tb\"cA\\"));
+    assertItems("\"not closed", Value.valueOf("not closed"));
+    assertError("\"\\q\"", "Unsupported special char detected '\\q'");
+  }
+
+  @Test
+  public void testOperatorsAndNames() {
+    assertItems("!a>=StrLen(b)!=c", AbstractOperator.findForClass(OperatorNOT.class), new Variable("a"), AbstractOperator.findForClass(OperatorGREATEQU.class),
+        AbstractFunction.findForClass(FunctionSTRLEN.class), ExpressionParser.SpecialItem.BRACKET_OPENING, new Variable("b"), ExpressionParser.SpecialItem.BRACKET_CLOSING,
+        AbstractOperator.findForClass(OperatorNOTEQU.class), new Variable("c"));
+    assertError("1 ==- 2", "Unknown operator detected '==-'");
+    assertError("1 # 2", "Unsupported token character detected '#'");
+  }
+}
@@ -36,9 +36,6 @@ import com.igormaznitsa.jcp.expression.operators.OperatorMUL;
 import com.igormaznitsa.jcp.expression.operators.OperatorSUB;
 import org.junit.Test;
 
-import java.io.PushbackReader;
-import java.io.StringReader;
-
 import static org.junit.Assert.*;
 
 public class ExpressionParserTest extends AbstractMockPreprocessorContextTest {
@@ -68,7 +65,7 @@ public class ExpressionParserTest extends AbstractMockPreprocessorContextTest {
   public void testNextItem_zero() throws Exception {
     final PreprocessorContext context = prepareMockContext();
 
-    final PushbackReader reader = new PushbackReader(new StringReader("0"));
+    final ExpressionLexer reader = new ExpressionLexer("0");
     assertEquals("Must be 0", Value.INT_ZERO, ExpressionParser.getInstance().nextItem(reader, context));
     assertNull("Must be null", ExpressionParser.getInstance().nextItem(reader, context));
   }
@@ -77,7 +74,7 @@ public class ExpressionParserTest extends AbstractMockPreprocessorContextTest {
   public void testNextItem_negativeNumber() throws Exception {
     final PreprocessorContext context = prepareMockContext();
 
-    final PushbackReader reader = new PushbackReader(new StringReader("-1"));
+    final ExpressionLexer reader = new ExpressionLexer("-1");
     assertEquals("Must be SUB", AbstractOperator.findForClass(OperatorSUB.class), ExpressionParser.getInstance().nextItem(reader, context));
     assertEquals("Must be 1", Value.INT_ONE, ExpressionParser.getInstance().nextItem(reader, context));
     assertNull("Must be null", ExpressionParser.getInstance().nextItem(reader, context));
@@ -87,7 +84,7 @@ public class ExpressionParserTest extends AbstractMockPreprocessorContextTest {
   public void testNextItem_zeroLess() throws Exception {
     final PreprocessorContext context = prepareMockContext();
 
-    final PushbackReader reader = new PushbackReader(new StringReader("0<"));
+    final ExpressionLexer reader = new ExpressionLexer("0<");
     assertEquals("Must be 0", Value.INT_ZERO, ExpressionParser.getInstance().nextItem(reader, context));
     assertEquals("Must be LESS", AbstractOperator.findForClass(OperatorLESS.class), ExpressionParser.getInstance().nextItem(reader, context));
     assertNull("Must be null", ExpressionParser.getInstance().nextItem(reader, context));
@@ -97,7 +94,7 @@ public class ExpressionParserTest extends AbstractMockPreprocessorContextTest {
   public void testNextItem_oneValue() throws Exception {
     final PreprocessorContext context = prepareMockContext();
 
-    final PushbackReader reader = new PushbackReader(new StringReader("3"));
+    final ExpressionLexer reader = new ExpressionLexer("3");
     assertEquals("Must be 3", Value.INT_THREE, ExpressionParser.getInstance().nextItem(reader, context));
     assertNull("Must be null", ExpressionParser.getInstance().nextItem(reader, context));
   }
@@ -106,7 +103,7 @@ public class ExpressionParserTest extends AbstractMockPreprocessorContextTest {
   public void testNextItem_oneHexValue() throws Exception {
     final PreprocessorContext context = prepareMockContext();
 
-    final PushbackReader reader = new PushbackReader(new StringReader("0xfF"));
+    final ExpressionLexer reader = new ExpressionLexer("0xfF");
     assertEquals("Must be 255", Value.valueOf(255L), ExpressionParser.getInstance().nextItem(reader, context));
     assertNull("Must be null", ExpressionParser.getInstance().nextItem(reader, context));
   }
@@ -115,7 +112,7 @@ public class ExpressionParserTest extends AbstractMockPreprocessorContextTest {
   public void testNextItem_oneBooleanTrueValue() throws Exception {
     final PreprocessorContext context = prepareMockContext();
 
-    final PushbackReader reader = new PushbackReader(new StringReader("true"));
+    final ExpressionLexer reader = new ExpressionLexer("true");
     assertEquals("Must be TRUE", Value.BOOLEAN_TRUE, ExpressionParser.getInstance().nextItem(reader, context));
     assertNull("Must be null", ExpressionParser.getInstance().nextItem(reader, context));
   }
@@ -124,7 +121,7 @@ public class ExpressionParserTest extends AbstractMockPreprocessorContextTest {
   public void testNextItem_oneBooleanFalseValue() throws Exception {
     final PreprocessorContext context = prepareMockContext();
 
-    final PushbackReader reader = new PushbackReader(new StringReader("false"));
+    final ExpressionLexer reader = new ExpressionLexer("false");
     assertEquals("Must be FALSE", Value.BOOLEAN_FALSE, ExpressionParser.getInstance().nextItem(reader, context));
     assertNull("Must be null", ExpressionParser.getInstance().nextItem(reader, context));
   }
@@ -133,7 +130,7 @@ public class ExpressionParserTest extends AbstractMockPreprocessorContextTest {
   public void testNextItem_oneOperator() throws Exception {
     final PreprocessorContext context = prepareMockContext();
 
-    final PushbackReader reader = new PushbackReader(new StringReader("/"));
+    final ExpressionLexer reader = new ExpressionLexer("/");
     assertEquals("Must be DIV", AbstractOperator.findForClass(OperatorDIV.class), ExpressionParser.getInstance().nextItem(reader, context));
     assertNull("Must be null", ExpressionParser.getInstance().nextItem(reader, context));
   }
@@ -143,7 +140,7 @@ public class ExpressionParserTest extends AbstractMockPreprocessorContextTest {
 
     final PreprocessorContext context = prepareMockContext();
 
-    final PushbackReader reader = new PushbackReader(new StringReader("xml_attr(1.3%abs(1+2)*3/4,\"hello\"==\"\nworld\t\")"));
+    final ExpressionLexer reader = new ExpressionLexer("xml_attr(1.3%abs(1+2)*3/4,\"hello\"==\"\nworld\t\")");
 
     final ExpressionItem[] items = new ExpressionItem[] {
         AbstractFunction.findForClass(FunctionXML_ATTR.class),
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.SpecialVariableProcessor;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class ExpressionProgramTest {
+
+  private static final String[] EXPRESSIONS = new String[] {
+      "1+2*3",
+      "40/4-2*4",
+      "(1+2)*(3-4)/2",
+      "2.5*4-1",
+      "\"hello\"+' '+\"world\"+1+true",
+      "intvar*3+floatvar",
+      "strvar+strlen(strvar)",
+      "boolfalse && unknownvar",
+      "booltrue || unknownvar",
+      "booltrue && !boolfalse || unknownvar",
+      "boolfalse || booltrue && intvar==5",
+      "intvar && 6 || 8",
+      "intvar==5 && true",
+      "true && strlen(strvar)>3",
+      "intvar!=5 || false",
+      "false || !(intvar<3)",
+      "boolfalse || false",
+      "intvar && true",
+      "false || intvar",
+      "str2int(\"12\")*abs(-3)",
+      "round(floatvar)+issubstr(\"ll\",strvar)",
+      "str2java(strvar+\"\\n\",true)",
+      "is(\"intvar\",5)",
+      "xml_open(strvar)",
+      "strlen(strvar, 1)",
+      "strlen(intvar)",
+      "booltrue && 1",
+      "intvar / 0",
+      "intvar + unknownvar",
+      "-(intvar+1)",
+      "boolfalse &&",
+      "()"
+  };
+
+  private static PreprocessorContext makeContext(final EvaluationMode mode) {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setEvaluationMode(mode);
+    context.setLocalVariable("intvar", Value.INT_FIVE);
+    context.setLocalVariable("floatvar", Value.valueOf(2.7f));
+    context.setLocalVariable("strvar", Value.valueOf("hello"));
+    context.setLocalVariable("booltrue", Value.BOOLEAN_TRUE);
+    context.setLocalVariable("boolfalse", Value.BOOLEAN_FALSE);
+    return context;
+  }
+
+  private static Object evaluate(final String expression, final PreprocessorContext context) {
+    try {
+      return Expression.evalExpression(expression, context);
+    } catch (Exception ex) {
+      return ex.getClass().getName() + ':' + ex.getMessage();
+    }
+  }
+
+  @Test
+  public void testProgramIsEqualToTreeEvaluation() {
+    final PreprocessorContext treeContext = makeContext(EvaluationMode.TREE);
+    final PreprocessorContext programContext = makeContext(EvaluationMode.PROGRAM);
+    for (final String expression : EXPRESSIONS) {
+      assertEquals(expression, evaluate(expression, treeContext), evaluate(expression, programContext));
+    }
+  }
+
+  @Test
+  public void testCompile() throws Exception {
+    final PreprocessorContext context = makeContext(EvaluationMode.PROGRAM);
+
+    final ExpressionTree tree = ExpressionParser.getInstance().parse("intvar*2+strlen(strvar) > 3 && booltrue", context);
+    final ExpressionProgram program = tree.getProgram();
+    assertNotNull(program);
+    assertSame(program, tree.getProgram());
+    assertEquals(11, program.size());
+    assertEquals(2, program.getMaxStackDepth());
+    assertEquals(Value.BOOLEAN_TRUE, program.execute(context));
+
+    assertNull(ExpressionParser.getInstance().parse("()", context).getProgram());
+    assertNull(ExpressionParser.getInstance().parse("boolfalse &&", context).getProgram());
+    assertNull(new ExpressionTree().getProgram());
+  }
+
+  @Test
+  public void testReentrantExecution() {
+    final PreprocessorContext context = makeContext(EvaluationMode.PROGRAM);
+    context.registerSpecialVariableProcessor(new SpecialVariableProcessor() {
+      @Override
+      public String[] getVariableNames() {
+        return new String[] {"test.nested"};
+      }
+
+      @Override
+      public Value getVariable(final String varName, final PreprocessorContext context) {
+        return Expression.evalExpression("intvar*(intvar+1)+strlen(strvar)", context);
+      }
+
+      @Override
+      public void setVariable(final String varName, final Value value, final PreprocessorContext context) {
+        throw new UnsupportedOperationException();
+      }
+    });
+    assertEquals(Value.valueOf(90L), Expression.evalExpression("intvar*2+(intvar+test.nested)*2", context));
+  }
+}
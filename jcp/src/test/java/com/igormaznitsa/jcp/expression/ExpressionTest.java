@@ -22,9 +22,19 @@
 package com.igormaznitsa.jcp.expression;
 
 import com.igormaznitsa.jcp.AbstractSpyPreprocessorContextTest;
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.functions.AbstractFunction;
+import com.igormaznitsa.jcp.expression.operators.AbstractOperator;
+import com.igormaznitsa.jcp.expression.operators.OperatorAND;
+import com.igormaznitsa.jcp.expression.operators.OperatorDIV;
+import com.igormaznitsa.jcp.expression.operators.OperatorEQU;
+import com.igormaznitsa.jcp.expression.operators.OperatorGREAT;
+import com.igormaznitsa.jcp.expression.operators.OperatorNOT;
+import com.igormaznitsa.jcp.expression.operators.OperatorNOTEQU;
+import com.igormaznitsa.jcp.expression.operators.OperatorOR;
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class ExpressionTest extends AbstractSpyPreprocessorContextTest {
 
@@ -32,4 +42,154 @@ public class ExpressionTest extends AbstractSpyPreprocessorContextTest {
   public void testSimpleExpression() throws Exception {
     assertEquals("Must be equal", Value.INT_TWO, Expression.evalExpression("40/4-2*4", preparePreprocessorContext(getCurrentTestFolder())));
   }
+
+  @Test
+  public void testParsedTreeIsCachedAndImmutable() throws Exception {
+    final PreprocessorContext context = preparePreprocessorContext(getCurrentTestFolder());
+    final ExpressionTree tree = ExpressionParser.getInstance().parse("11 * 3 + 7", context);
+    assertTrue(tree.isImmutable());
+    assertSame(tree, ExpressionParser.getInstance().parse("  11 * 3 + 7 ", context));
+    assertEquals(Value.valueOf(40L), Expression.evalTree(tree, context));
+
+    try {
+      tree.addItem(Value.INT_ONE);
+      fail("Must throw ISE");
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testCachedTreeDoesNotKeepVariableValues() throws Exception {
+    final PreprocessorContext context = preparePreprocessorContext(getCurrentTestFolder());
+    context.setLocalVariable("cachedvar", Value.INT_ONE);
+    assertEquals(Value.INT_TWO, Expression.evalExpression("cachedvar+1", context));
+    context.setLocalVariable("cachedvar", Value.INT_FOUR);
+    assertEquals(Value.INT_FIVE, Expression.evalExpression("cachedvar+1", context));
+  }
+
+  @Test
+  public void testOptimizedTreeFoldsConstants() throws Exception {
+    final PreprocessorContext context = preparePreprocessorContext(getCurrentTestFolder());
+    final ExpressionTree tree = ExpressionParser.getInstance().parseOptimized("11 * 3 + strlen(\"abc\") + (2+2)", context);
+    assertTrue(tree.isImmutable());
+    assertSame(tree, ExpressionParser.getInstance().parseOptimized("11 * 3 + strlen(\"abc\") + (2+2)", context));
+    assertEquals(Value.valueOf(40L), tree.getRoot().getItem());
+    assertEquals(0, tree.getRoot().getArity());
+
+    final ExpressionTree notPure = ExpressionParser.getInstance().parseOptimized("is(\"abc\",1)", context);
+    assertEquals(AbstractFunction.findForName("is"), notPure.getRoot().getItem());
+
+    final ExpressionTree withError = ExpressionParser.getInstance().parseOptimized("1/0", context);
+    assertEquals(AbstractOperator.findForClass(OperatorDIV.class), withError.getRoot().getItem());
+    try {
+      Expression.evalTree(withError, context);
+      fail("Must throw ArithmeticException");
+    } catch (ArithmeticException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testShortCircuitEvaluation() throws Exception {
+    final PreprocessorContext context = preparePreprocessorContext(getCurrentTestFolder());
+    context.setLocalVariable("flagfalse", Value.BOOLEAN_FALSE);
+    context.setLocalVariable("flagtrue", Value.BOOLEAN_TRUE);
+
+    assertEquals(Value.BOOLEAN_FALSE, ExpressionParser.getInstance().parseOptimized("false && unknownvar", context).getRoot().getItem());
+    assertEquals(Value.BOOLEAN_TRUE, ExpressionParser.getInstance().parseOptimized("true || unknownvar", context).getRoot().getItem());
+
+    assertEquals(Value.BOOLEAN_FALSE, Expression.evalExpression("flagfalse && unknownvar", context));
+    assertEquals(Value.BOOLEAN_TRUE, Expression.evalExpression("flagtrue || unknownvar", context));
+    assertEquals(Value.BOOLEAN_TRUE, Expression.evalExpression("flagtrue && !flagfalse", context));
+    assertEquals(Value.valueOf(7L), Expression.evalExpression("0 || 3 || 4", context));
+    assertEquals(Value.valueOf(2L), Expression.evalExpression("6 && 3", context));
+
+    try {
+      Expression.evalExpression("flagtrue && unknownvar", context);
+      fail("Must throw exception for unknown variable");
+    } catch (RuntimeException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testOptimizedTreeRemovesBooleanIdentities() throws Exception {
+    final PreprocessorContext context = preparePreprocessorContext(getCurrentTestFolder());
+    context.setLocalVariable("identvar", Value.INT_FIVE);
+
+    assertTrue(ExpressionParser.getInstance().parseOptimized("identvar == 5 && true", context).getRoot().getItem() instanceof OperatorEQU);
+    assertTrue(ExpressionParser.getInstance().parseOptimized("true && identvar > 3", context).getRoot().getItem() instanceof OperatorGREAT);
+    assertTrue(ExpressionParser.getInstance().parseOptimized("identvar != 3 || false", context).getRoot().getItem() instanceof OperatorNOTEQU);
+    assertTrue(ExpressionParser.getInstance().parseOptimized("false || !(identvar < 2 ^ identvar >= 7)", context).getRoot().getItem() instanceof OperatorNOT);
+    assertTrue(ExpressionParser.getInstance().parseOptimized("false || issubstr(\"a\",\"abc\"+identvar)", context).getRoot().getItem() instanceof AbstractFunction);
+
+    // type of variable is unknown and INT operands make bitwise operation
+    assertTrue(ExpressionParser.getInstance().parseOptimized("identvar && true", context).getRoot().getItem() instanceof OperatorAND);
+    assertTrue(ExpressionParser.getInstance().parseOptimized("false || identvar", context).getRoot().getItem() instanceof OperatorOR);
+    assertTrue(ExpressionParser.getInstance().parseOptimized("!identvar || false", context).getRoot().getItem() instanceof OperatorOR);
+
+    assertEquals(Value.BOOLEAN_TRUE, Expression.evalExpression("identvar == 5 && true", context));
+    assertEquals(Value.BOOLEAN_FALSE, Expression.evalExpression("false || identvar < 5", context));
+    try {
+      Expression.evalExpression("identvar && true", context);
+      fail("Must throw exception for INT and BOOLEAN arguments");
+    } catch (RuntimeException ex) {
+      // expected
+    }
+  }
+
+  public static final class FailingOperator extends AbstractOperator {
+
+    private final int arity;
+
+    public FailingOperator(final int arity) {
+      this.arity = arity;
+    }
+
+    public Value executeIntInt(final Value left, final Value right) {
+      throw new StackOverflowError("test");
+    }
+
+    public Value executeInt(final Value arg) throws Exception {
+      throw new Exception("test");
+    }
+
+    @Override
+    public int getArity() {
+      return this.arity;
+    }
+
+    @Override
+    public String getKeyword() {
+      return "fail";
+    }
+
+    @Override
+    public String getReference() {
+      return "test operator";
+    }
+
+    @Override
+    public ExpressionItemPriority getExpressionItemPriority() {
+      return ExpressionItemPriority.ARITHMETIC_ADD_SUB;
+    }
+  }
+
+  @Test
+  public void testInvokeOperator_ErrorsAreNotWrapped() throws Exception {
+    final PreprocessorContext context = preparePreprocessorContext(getCurrentTestFolder());
+    try {
+      Expression.invokeOperator(context, new FailingOperator(2), Value.valueOf(1L), Value.valueOf(2L));
+      fail("Must throw error");
+    } catch (StackOverflowError ex) {
+      assertEquals("test", ex.getMessage());
+    }
+    try {
+      Expression.invokeOperator(context, new FailingOperator(1), Value.valueOf(1L), null);
+      fail("Must throw exception");
+    } catch (RuntimeException ex) {
+      assertEquals(Exception.class, ex.getCause().getClass());
+    }
+  }
 }
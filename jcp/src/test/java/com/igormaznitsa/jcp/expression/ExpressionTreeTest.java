@@ -21,6 +21,7 @@
 
 package com.igormaznitsa.jcp.expression;
 
+import com.igormaznitsa.jcp.exceptions.FilePositionInfo;
 import com.igormaznitsa.jcp.expression.operators.AbstractOperator;
 import com.igormaznitsa.jcp.expression.operators.OperatorADD;
 import com.igormaznitsa.jcp.expression.operators.OperatorDIV;
@@ -51,6 +52,17 @@ public class ExpressionTreeTest {
     assertEquals("Right must be 2", Value.INT_TWO, root.getChildForIndex(1).getItem());
   }
 
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testDeprecatedConstructor() {
+    final ExpressionTree tree = new ExpressionTree(new FilePositionInfo[0], "some source");
+    tree.addItem(Value.INT_ONE);
+    tree.addItem(AbstractOperator.findForClass(OperatorADD.class));
+    tree.addItem(Value.INT_TWO);
+
+    assertEquals("Root must be add", AbstractOperator.findForClass(OperatorADD.class), tree.getRoot().getItem());
+  }
+
   @Test
   public void testAddDivHierarchyTree() {
     // 1+2/3
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ValueTest {
+
+  @Test
+  public void testSmallIntegersAreCached() {
+    assertSame(Value.INT_ZERO, Value.valueOf(0L));
+    assertSame(Value.INT_FIVE, Value.valueOf(Long.valueOf(5L)));
+    assertSame(Value.valueOf(-128L), Value.valueOf(-128L));
+    assertSame(Value.valueOf(1023L), Value.valueOf(1023L));
+    assertNotSame(Value.valueOf(1024L), Value.valueOf(1024L));
+    assertEquals(Value.valueOf(1024L), Value.valueOf(1024L));
+  }
+
+  @Test
+  public void testBoxedCompatibility() {
+    assertEquals(Long.valueOf(123456789012L), Value.valueOf(123456789012L).getValue());
+    assertEquals(Long.valueOf(123456789012L), Value.valueOf(123456789012L).asLong());
+    assertEquals(Float.valueOf(2.7f), Value.valueOf(2.7f).getValue());
+    assertEquals(Float.valueOf(2.7f), Value.valueOf(2.7f).asFloat());
+    assertEquals(Boolean.TRUE, Value.BOOLEAN_TRUE.getValue());
+    assertEquals("text", Value.valueOf("text").getValue());
+
+    assertEquals(Long.valueOf(-77L).hashCode(), Value.valueOf(-77L).hashCode());
+    assertEquals(Float.valueOf(1.1f).hashCode(), Value.valueOf(1.1f).hashCode());
+    assertEquals(Boolean.FALSE.hashCode(), Value.BOOLEAN_FALSE.hashCode());
+    assertEquals("text".hashCode(), Value.valueOf("text").hashCode());
+
+    assertEquals("2.7", Value.valueOf(2.7f).toString());
+    assertEquals("-77", Value.valueOf(-77L).toString());
+    assertEquals("true", Value.BOOLEAN_TRUE.toString());
+    assertEquals("Float : 2.7", Value.valueOf(2.7f).toStringDetail());
+  }
+
+  @Test
+  public void testEquality() {
+    assertEquals(Value.valueOf(1.5f), Value.valueOf(Float.valueOf(1.5f)));
+    assertEquals(Value.valueOf(Float.NaN), Value.valueOf(Float.NaN));
+    assertNotEquals(Value.valueOf(0.0f), Value.valueOf(-0.0f));
+    assertNotEquals(Value.valueOf(1L), Value.valueOf(1.0f));
+    assertNotEquals(Value.valueOf(1L), Value.BOOLEAN_TRUE);
+    assertNotEquals(Value.valueOf("1"), Value.valueOf(1L));
+  }
+
+  @Test
+  public void testPrimitiveAccessors() {
+    assertEquals(42L, Value.valueOf(42L).longValue());
+    assertEquals(0.1f, Value.valueOf(0.1f).floatValue(), 0.0f);
+    assertTrue(Value.BOOLEAN_TRUE.booleanValue());
+    assertFalse(Value.valueOf(false).booleanValue());
+
+    try {
+      Value.valueOf(1.0f).longValue();
+      fail("Must throw ISE");
+    } catch (IllegalStateException ex) {
+      assertEquals("Value is not integer", ex.getMessage());
+    }
+    try {
+      Value.valueOf(1L).floatValue();
+      fail("Must throw ISE");
+    } catch (IllegalStateException ex) {
+      assertEquals("Value is not float", ex.getMessage());
+    }
+    try {
+      Value.valueOf("true").booleanValue();
+      fail("Must throw ISE");
+    } catch (IllegalStateException ex) {
+      assertEquals("Value is not boolean", ex.getMessage());
+    }
+  }
+}
@@ -28,13 +28,16 @@ import com.igormaznitsa.jcp.expression.Expression;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
 import org.junit.Test;
+import org.mockito.stubbing.Answer;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
 
 public abstract class AbstractFunctionTest extends AbstractSpyPreprocessorContextTest {
 
@@ -110,6 +113,24 @@ public abstract class AbstractFunctionTest extends AbstractSpyPreprocessorContex
     assertEquals("Must be equal", expected, result);
   }
 
+  /**
+   * Make spy context which finds files in the resource folder of the test class, it is used to open documents by functions.
+   *
+   * @return the spy context
+   * @throws Exception if the context can't be made
+   */
+  protected PreprocessorContext makeResourceFolderContext() throws Exception {
+    final PreprocessorContext context = spy(new PreprocessorContext(new File("some_impossible_folder_121212")));
+    final File thisRoot = new File(this.getClass().getResource("./").toURI());
+
+    doAnswer((Answer<Object>) invocation -> {
+      final String name = (String) invocation.getArguments()[0];
+      return new File(thisRoot, name);
+    }).when(context).findFileInSources(any(String.class));
+
+    return context;
+  }
+
   protected Throwable getRootCause(final Throwable thr) {
     if (thr == null) {
       return null;
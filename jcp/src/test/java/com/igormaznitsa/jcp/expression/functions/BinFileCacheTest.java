@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Expression;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.utils.PreprocessorUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class BinFileCacheTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testMakeKey() throws Exception {
+    final File folder = tempFolder.newFolder("src");
+    final BinFileCache cache = new BinFileCache(tempFolder.newFolder("cache"), 1000L);
+
+    final File file1 = new File(folder, "file1.bin");
+    final File file2 = new File(folder, "file2.bin");
+    FileUtils.writeByteArrayToFile(file1, new byte[] {1, 2, 3});
+    FileUtils.writeByteArrayToFile(file2, new byte[] {1, 2, 3});
+
+    final String key = cache.makeKey(file1, "base64", false, 80, "\n");
+    assertEquals(64, key.length());
+    assertEquals("Same content must have same key", key, cache.makeKey(file2, "base64", false, 80, "\n"));
+    assertNotEquals(key, cache.makeKey(file1, "uint8[]", false, 80, "\n"));
+    assertNotEquals(key, cache.makeKey(file1, "base64", true, 80, "\n"));
+    assertNotEquals(key, cache.makeKey(file1, "base64", false, -1, "\n"));
+    assertNotEquals(key, cache.makeKey(file1, "base64", false, 80, "\r\n"));
+
+    FileUtils.writeByteArrayToFile(file2, new byte[] {1, 2, 3, 4});
+    assertNotEquals(key, cache.makeKey(file2, "base64", false, 80, "\n"));
+  }
+
+  @Test
+  public void testPutGet_SizeBounded() throws Exception {
+    final File cacheFolder = new File(tempFolder.getRoot(), "some/cache");
+    final BinFileCache cache = new BinFileCache(cacheFolder, 200L);
+
+    assertNull(cache.get("key1"));
+    assertTrue(cache.put("key1", PreprocessorUtils.generateStringForChar('a', 80)));
+    assertTrue(cacheFolder.isDirectory());
+    assertTrue(cache.put("key2", PreprocessorUtils.generateStringForChar('b', 80)));
+    new File(cacheFolder, "key1.jcpbin").setLastModified(System.currentTimeMillis() - 20000L);
+    new File(cacheFolder, "key2.jcpbin").setLastModified(System.currentTimeMillis() - 10000L);
+    assertEquals(160L, cache.getSize());
+
+    assertTrue(cache.put("key3", PreprocessorUtils.generateStringForChar('c', 80)));
+    assertTrue(cache.getSize() <= cache.getMaxSize());
+    assertNull("The least recently used must be removed", cache.get("key1"));
+    assertEquals(PreprocessorUtils.generateStringForChar('b', 80), cache.get("key2"));
+    assertEquals(PreprocessorUtils.generateStringForChar('c', 80), cache.get("key3"));
+
+    assertFalse("Too big text must not be cached", cache.put("key4", PreprocessorUtils.generateStringForChar('d', 201)));
+    assertNull(cache.get("key4"));
+
+    assertEquals(2L, cache.getHits());
+    assertEquals(3L, cache.getMisses());
+  }
+
+  @Test
+  public void testReusedBetweenContexts() throws Exception {
+    final File folder = tempFolder.newFolder("src");
+    final File cacheFolder = tempFolder.newFolder("cache");
+    final byte[] data = new byte[10000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i / 7);
+    }
+    FileUtils.writeByteArrayToFile(new File(folder, "some.bin"), data);
+
+    String first = null;
+    for (int i = 0; i < 2; i++) {
+      final BinFileCache cache = new BinFileCache(cacheFolder, 1000000L);
+      final PreprocessorContext context = new PreprocessorContext(folder);
+      context.setSources(Collections.singletonList(folder.getAbsolutePath()));
+      context.setBinFileCache(cache);
+      context.setLocalVariable("path", Value.valueOf("some.bin"));
+
+      final String result = Expression.evalExpression("binfile(path,\"base64sd\")", context).asString();
+      if (first == null) {
+        first = result;
+        assertEquals(0L, cache.getHits());
+        assertEquals(1L, cache.getMisses());
+      } else {
+        assertEquals(first, result);
+        assertEquals(1L, cache.getHits());
+        assertEquals(0L, cache.getMisses());
+      }
+    }
+
+    final PreprocessorContext context = new PreprocessorContext(folder);
+    context.setSources(Collections.singletonList(folder.getAbsolutePath()));
+    context.setLocalVariable("path", Value.valueOf("some.bin"));
+    assertEquals(first, Expression.evalExpression("binfile(path,\"base64sd\")", context).asString());
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Expression;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.utils.PreprocessorUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EvalFileCacheTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File folder;
+
+  private PreprocessorContext makeContext(final EvalFileCache cache) throws Exception {
+    if (this.folder == null) {
+      this.folder = tempFolder.newFolder("src");
+    }
+    final PreprocessorContext context = new PreprocessorContext(this.folder);
+    context.setSources(Collections.singletonList(this.folder.getAbsolutePath()));
+    context.setEol("\n");
+    context.setEvalFileCache(cache);
+    return context;
+  }
+
+  private void writeFile(final String name, final String text) throws Exception {
+    FileUtils.write(new File(this.folder, name), text, StandardCharsets.UTF_8);
+  }
+
+  private static String eval(final PreprocessorContext context, final String fileName) {
+    context.setLocalVariable("evalpath", Value.valueOf(fileName));
+    return Expression.evalExpression("evalfile(evalpath)", context).asString();
+  }
+
+  @Test
+  public void testKeyedByReadVariables() throws Exception {
+    final EvalFileCache cache = new EvalFileCache(100000L);
+    final PreprocessorContext context = makeContext(cache);
+    writeFile("fragment.txt", "//#if flag\nyes /*$text$*/\n//#else\nno\n//#endif\n");
+
+    context.setGlobalVariable("flag", Value.BOOLEAN_TRUE);
+    context.setGlobalVariable("text", Value.valueOf("first"));
+    context.setGlobalVariable("unused", Value.INT_ONE);
+
+    assertEquals("yes first\n", eval(context, "fragment.txt"));
+    assertEquals(0L, cache.getHits());
+    assertEquals(1, cache.size());
+
+    context.setGlobalVariable("unused", Value.INT_TWO);
+    assertEquals("yes first\n", eval(context, "fragment.txt"));
+    assertEquals("Not read variable must not affect cache", 1L, cache.getHits());
+
+    context.setGlobalVariable("text", Value.valueOf("second"));
+    assertEquals("yes second\n", eval(context, "fragment.txt"));
+    assertEquals(1L, cache.getHits());
+
+    context.setGlobalVariable("flag", Value.BOOLEAN_FALSE);
+    assertEquals("no\n", eval(context, "fragment.txt"));
+    context.setGlobalVariable("text", Value.valueOf("third"));
+    assertEquals("Variable not read by evaluation must not affect cache", "no\n", eval(context, "fragment.txt"));
+    assertEquals(2L, cache.getHits());
+
+    context.setGlobalVariable("flag", Value.BOOLEAN_TRUE);
+    context.setGlobalVariable("text", Value.valueOf("first"));
+    assertEquals("yes first\n", eval(context, "fragment.txt"));
+    assertEquals(3L, cache.getHits());
+    assertEquals(3, cache.size());
+  }
+
+  @Test
+  public void testInvalidatedByFileChange() throws Exception {
+    final EvalFileCache cache = new EvalFileCache(100000L);
+    final PreprocessorContext context = makeContext(cache);
+    writeFile("fragment.txt", "//#include \"included.txt\"\nend\n");
+    writeFile("included.txt", "included\n");
+
+    assertEquals("included\nend\n", eval(context, "fragment.txt"));
+    assertEquals("included\nend\n", eval(context, "fragment.txt"));
+    assertEquals(1L, cache.getHits());
+
+    writeFile("included.txt", "changed included\n");
+    assertEquals("changed included\nend\n", eval(context, "fragment.txt"));
+    assertEquals(1L, cache.getHits());
+
+    writeFile("fragment.txt", "//#include \"included.txt\"\nchanged end\n");
+    assertEquals("changed included\nchanged end\n", eval(context, "fragment.txt"));
+    assertEquals(1L, cache.getHits());
+  }
+
+  @Test
+  public void testChangedBeforeReadVariableIsNotRecorded() throws Exception {
+    final EvalFileCache cache = new EvalFileCache(100000L);
+    final PreprocessorContext context = makeContext(cache);
+    writeFile("fragment.txt", "//#local counter=10\n/*$counter+1$*/\n");
+
+    context.setLocalVariable("counter", Value.INT_ONE);
+    assertEquals("11\n", eval(context, "fragment.txt"));
+    context.setLocalVariable("counter", Value.INT_TWO);
+    assertEquals("11\n", eval(context, "fragment.txt"));
+    assertEquals(1L, cache.getHits());
+    assertEquals("Changes must not be visible for caller", Value.INT_TWO, context.getLocalVariable("counter"));
+  }
+
+  @Test
+  public void testNotCachedForSpecialVariables() throws Exception {
+    final EvalFileCache cache = new EvalFileCache(100000L);
+    final PreprocessorContext context = makeContext(cache);
+    writeFile("fragment.txt", "/*$__line__$*/\n");
+
+    assertEquals("1\n", eval(context, "fragment.txt"));
+    assertEquals("1\n", eval(context, "fragment.txt"));
+    assertEquals(0L, cache.getHits());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testNestedEvaluationPassesDependencies() throws Exception {
+    final EvalFileCache cache = new EvalFileCache(100000L);
+    final PreprocessorContext context = makeContext(cache);
+    writeFile("outer.txt", "outer /*$evalfile(\"inner.txt\")$*/\n");
+    writeFile("inner.txt", "/*$value$*/");
+
+    context.setGlobalVariable("value", Value.valueOf("a"));
+    assertEquals("outer a\n", eval(context, "outer.txt"));
+    assertEquals(2, cache.size());
+
+    context.setGlobalVariable("value", Value.valueOf("b"));
+    assertEquals("outer b\n", eval(context, "outer.txt"));
+    assertEquals(0L, cache.getHits());
+
+    context.setGlobalVariable("value", Value.valueOf("a"));
+    assertEquals("a", eval(context, "inner.txt"));
+    assertEquals(1L, cache.getHits());
+
+    writeFile("inner.txt", "/*$value$*/!");
+    assertEquals("outer a!\n", eval(context, "outer.txt"));
+    assertEquals("Outer result must depend on nested file", 1L, cache.getHits());
+  }
+
+  @Test
+  public void testWeightBounded() throws Exception {
+    final EvalFileCache cache = new EvalFileCache(1000L);
+    final PreprocessorContext context = makeContext(cache);
+    writeFile("big.txt", PreprocessorUtils.generateStringForChar('a', 600) + '\n');
+    writeFile("small1.txt", "small1\n");
+    writeFile("small2.txt", "small2\n");
+    writeFile("huge.txt", PreprocessorUtils.generateStringForChar('b', 2000) + '\n');
+
+    eval(context, "small1.txt");
+    eval(context, "big.txt");
+    eval(context, "small1.txt");
+    eval(context, "small2.txt");
+    assertTrue(cache.getWeight() <= cache.getMaxWeight());
+    eval(context, "huge.txt");
+    assertTrue(cache.getWeight() <= cache.getMaxWeight());
+    assertEquals(3, cache.size());
+
+    final List<Object> key = EvalFileCache.makeKey(context, new File(this.folder, "huge.txt"));
+    assertNull(cache.find(key, context));
+    assertNotNull(cache.find(EvalFileCache.makeKey(context, new File(this.folder, "small1.txt")), context));
+  }
+}
@@ -25,7 +25,19 @@ import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.expression.Expression;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.Deflater;
 
 import static org.junit.Assert.assertEquals;
 
@@ -33,6 +45,88 @@ public class FunctionBINFILETest extends AbstractFunctionTest {
 
   private static final FunctionBINFILE HANDLER = new FunctionBINFILE();
 
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static String encodeByWholeArray(final byte[] data, final String type, final boolean deflate, final int lineLength, final String endOfLine) {
+    byte[] array = data;
+    if (deflate) {
+      final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+      deflater.setInput(array);
+      deflater.finish();
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[1024];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      deflater.end();
+      array = out.toByteArray();
+    }
+
+    if ("base64".equals(type)) {
+      return new Base64(lineLength, endOfLine.getBytes(StandardCharsets.UTF_8), false).encodeAsString(array).trim();
+    }
+
+    final StringBuilder result = new StringBuilder();
+    boolean addNextLine = false;
+    int visible = 0;
+    for (final byte b : array) {
+      if (result.length() > 0) {
+        result.append(',');
+        visible++;
+      }
+      if (addNextLine) {
+        addNextLine = false;
+        visible = 0;
+        result.append(endOfLine);
+      }
+      final int initial = result.length();
+      switch (type) {
+        case "byte[]":
+          result.append("(byte)0x").append(Integer.toHexString(b & 0xFF).toUpperCase(Locale.ENGLISH));
+          break;
+        case "uint8[]":
+          result.append(b & 0xFF);
+          break;
+        default:
+          result.append(b);
+          break;
+      }
+      visible += result.length() - initial;
+      if (lineLength > 0 && visible >= lineLength) {
+        addNextLine = true;
+      }
+    }
+    return result.toString();
+  }
+
+  @Test
+  public void testExecution_SameAsWholeArrayEncoding() throws Exception {
+    final File folder = tempFolder.newFolder("bin");
+    final PreprocessorContext context = new PreprocessorContext(folder);
+    context.setSources(Collections.singletonList(folder.getAbsolutePath()));
+    final String endOfLine = System.getProperty("line.separator", "\r\n");
+
+    final Random rnd = new Random(12345L);
+    for (final int size : new int[] {0, 1, 2, 3, 79, 1000, 65535, 65536, 65537, 300000}) {
+      final byte[] data = new byte[size];
+      for (int i = 0; i < size; i++) {
+        data[i] = (byte) (i % 3 == 0 ? rnd.nextInt() : i / 1000);
+      }
+      final File file = new File(folder, "data" + size + ".bin");
+      FileUtils.writeByteArrayToFile(file, data);
+      context.setLocalVariable("path", Value.valueOf(file.getName()));
+
+      for (final String type : new String[] {"base64", "byte[]", "uint8[]", "int8[]"}) {
+        for (final String flags : new String[] {"", "s", "d", "sd"}) {
+          context.setLocalVariable("type", Value.valueOf(type + flags));
+          final String expected = encodeByWholeArray(data, type, flags.contains("d"), flags.contains("s") ? 80 : -1, endOfLine);
+          assertEquals(type + flags + " for " + size, expected, Expression.evalExpression("binfile(path,type)", context).asString());
+        }
+      }
+    }
+  }
+
   @Test
   public void testExecution_Base64Encoding() throws Exception {
     final PreprocessorContext context = preparePreprocessorContext(getCurrentTestFolder());
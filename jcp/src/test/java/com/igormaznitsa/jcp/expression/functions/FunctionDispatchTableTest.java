@@ -0,0 +1,164 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import com.igormaznitsa.jcp.extension.PreprocessorExtension;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FunctionDispatchTableTest {
+
+  private static final Value[] SAMPLES = new Value[] {
+      Value.valueOf(7L),
+      Value.valueOf(2.5f),
+      Value.valueOf("text"),
+      Value.BOOLEAN_TRUE
+  };
+
+  private static ValueType[] findByLinearSearch(final AbstractFunction function, final Value[] args) {
+    for (final ValueType[] current : function.getAllowedArgumentTypes()) {
+      boolean allCompatible = true;
+      for (int i = 0; i < current.length; i++) {
+        if (!current[i].isCompatible(args[i].getType())) {
+          allCompatible = false;
+          break;
+        }
+      }
+      if (allCompatible) {
+        return current;
+      }
+    }
+    return null;
+  }
+
+  private static Method findByReflection(final AbstractFunction function, final ValueType[] signature) {
+    final StringBuilder name = new StringBuilder(AbstractFunction.EXECUTION_PREFIX);
+    final Class<?>[] args = new Class<?>[signature.length + 1];
+    args[0] = PreprocessorContext.class;
+    for (int i = 0; i < signature.length; i++) {
+      name.append(signature[i].getSignature());
+      args[i + 1] = Value.class;
+    }
+    try {
+      return function.getClass().getMethod(name.toString(), args);
+    } catch (NoSuchMethodException ex) {
+      return null;
+    }
+  }
+
+  private static void assertDispatch(final AbstractFunction function, final Value[] args) {
+    final ValueType[] allowed = findByLinearSearch(function, args);
+    final String text = function.getName() + Arrays.toString(args);
+    assertArrayEquals(text, allowed, function.findAllowedSignature(args));
+
+    final MethodHandle handle = function.findExecutor(args);
+    if (allowed == null || findByReflection(function, allowed) == null) {
+      assertNull(text, handle);
+    } else {
+      assertNotNull(text, handle);
+      assertEquals(text, AbstractFunction.EXECUTOR_TYPE, handle.type());
+    }
+  }
+
+  @Test
+  public void testDispatchTableIsEqualToReflectionSearch() {
+    for (final AbstractFunction function : AbstractFunction.getAllFunctions()) {
+      switch (function.getArity()) {
+        case 1: {
+          for (final Value a : SAMPLES) {
+            assertDispatch(function, new Value[] {a});
+          }
+        }
+        break;
+        case 2: {
+          for (final Value a : SAMPLES) {
+            for (final Value b : SAMPLES) {
+              assertDispatch(function, new Value[] {a, b});
+            }
+          }
+        }
+        break;
+        case 3: {
+          for (final Value a : SAMPLES) {
+            for (final Value b : SAMPLES) {
+              for (final Value c : SAMPLES) {
+                assertDispatch(function, new Value[] {a, b, c});
+              }
+            }
+          }
+        }
+        break;
+        default:
+          fail("Unexpected arity: " + function.getName());
+          break;
+      }
+      assertNull(function.findExecutor(new Value[0]));
+    }
+  }
+
+  @Test
+  public void testExecuteBuiltInFunction() throws Throwable {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    final AbstractFunction function = AbstractFunction.findForClass(FunctionSTRLEN.class);
+    final Value[] args = new Value[] {Value.valueOf("hello")};
+    assertSame(function.findExecutor(args), function.findExecutor(args));
+    assertEquals(Value.valueOf(5L), (Value) function.findExecutor(args).invokeExact(context, args));
+  }
+
+  @Test
+  public void testExecuteUserFunction() throws Throwable {
+    final PreprocessorContext context = new PreprocessorContext(new File("some_impossible_folder_121212"));
+    context.setPreprocessorExtension(new PreprocessorExtension() {
+      @Override
+      public boolean processAction(final PreprocessorContext context, final Value[] parameters) {
+        return false;
+      }
+
+      @Override
+      public Value processUserFunction(final String functionName, final Value[] arguments) {
+        return Value.valueOf(functionName + arguments.length);
+      }
+
+      @Override
+      public int getUserFunctionArity(final String functionName) {
+        return 5;
+      }
+    });
+
+    final FunctionDefinedByUser function = new FunctionDefinedByUser("test", 5, context);
+    final Value[] args = new Value[] {Value.valueOf(1L), Value.valueOf("a"), Value.BOOLEAN_FALSE, Value.valueOf(1.0f), Value.valueOf(2L)};
+    final MethodHandle handle = function.findExecutor(args);
+    assertNotNull(handle);
+    assertEquals(Value.valueOf("test5"), (Value) handle.invokeExact(context, args));
+    assertNull(function.findExecutor(new Value[] {Value.valueOf(1L)}));
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.exceptions.PreprocessorException;
+import com.igormaznitsa.jcp.expression.Expression;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class FunctionPROPS_GETTest extends AbstractFunctionTest {
+
+  private static final FunctionPROPS_GET HANDLER = new FunctionPROPS_GET();
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private PreprocessorContext context;
+  private File propsFile;
+
+  @Before
+  public void prepare() throws Exception {
+    final File folder = tempFolder.newFolder("props");
+    this.propsFile = new File(folder, "messages.properties");
+    FileUtils.write(this.propsFile, "# comment\nhello=Hello world\nerror.404 = Not \\\n  found\nunicode=\\u00e9t\\u00e9\n", StandardCharsets.ISO_8859_1);
+    this.context = new PreprocessorContext(folder);
+    this.context.setSources(Collections.singletonList(folder.getAbsolutePath()));
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    assertEquals(Value.valueOf("Hello world"), HANDLER.executeStrStr(this.context, Value.valueOf("messages.properties"), Value.valueOf("hello")));
+    assertEquals(Value.valueOf("Not found"), HANDLER.executeStrStr(this.context, Value.valueOf("messages.properties"), Value.valueOf("error.404")));
+    assertEquals(Value.valueOf("été"), Expression.evalExpression("props_get(\"messages.properties\",\"unicode\")", this.context));
+  }
+
+  @Test
+  public void testExecute_FileIsReadOnce() throws Exception {
+    assertEquals(Value.valueOf("Hello world"), HANDLER.executeStrStr(this.context, Value.valueOf("messages.properties"), Value.valueOf("hello")));
+    final Object loaded = this.context.getSharedResource("propsFile_messages.properties");
+    FileUtils.write(this.propsFile, "hello=Changed\n", StandardCharsets.ISO_8859_1);
+    assertEquals(Value.valueOf("Hello world"), HANDLER.executeStrStr(this.context, Value.valueOf("messages.properties"), Value.valueOf("hello")));
+    assertSame(loaded, this.context.getSharedResource("propsFile_messages.properties"));
+  }
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_UnknownKey() throws Exception {
+    HANDLER.executeStrStr(this.context, Value.valueOf("messages.properties"), Value.valueOf("unknown"));
+  }
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_FileNotFound() throws Exception {
+    HANDLER.executeStrStr(this.context, Value.valueOf("unknown.properties"), Value.valueOf("hello"));
+  }
+
+  @Override
+  public void testName() {
+    assertEquals("props_get", HANDLER.getName());
+  }
+
+  @Override
+  public void testReference() {
+    assertReference(HANDLER);
+  }
+
+  @Override
+  public void testArity() {
+    assertEquals(2, HANDLER.getArity());
+  }
+
+  @Override
+  public void testAllowedArgumentTypes() {
+    assertAllowedArguments(HANDLER, new ValueType[][] {{ValueType.STRING, ValueType.STRING}});
+  }
+
+  @Override
+  public void testResultType() {
+    assertEquals(ValueType.STRING, HANDLER.getResultType());
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Expression;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.utils.PreprocessorUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FunctionResultCacheTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testMakeKey_OnlyMemoizableFunctions() {
+    final PreprocessorContext context = new PreprocessorContext(new File("."));
+    final FunctionResultCache cache = new FunctionResultCache(1000L);
+
+    assertNull(cache.makeKey(context, new FunctionABS(), new Value[] {Value.valueOf(-1L)}));
+    assertNull(cache.makeKey(context, new FunctionSTR2INT(), new Value[] {Value.valueOf("1")}));
+    assertNull(cache.makeKey(context, new FunctionEVALFILE(), new Value[] {Value.valueOf("some.txt")}));
+
+    final FunctionSTR2WEB function = new FunctionSTR2WEB();
+    final FunctionResultCache.Key key = cache.makeKey(context, function, new Value[] {Value.valueOf("<a>")});
+    assertNotNull(key);
+    assertEquals(key, cache.makeKey(context, function, new Value[] {Value.valueOf("<a>")}));
+    assertNotEquals(key, cache.makeKey(context, function, new Value[] {Value.valueOf("<b>")}));
+    assertNotEquals(key, cache.makeKey(context, new FunctionSTR2XML(), new Value[] {Value.valueOf("<a>")}));
+  }
+
+  @Test
+  public void testPutGet_WeightBounded() {
+    final PreprocessorContext context = new PreprocessorContext(new File("."));
+    final FunctionResultCache cache = new FunctionResultCache(200L);
+    final FunctionESC function = new FunctionESC();
+
+    final FunctionResultCache.Key key1 = cache.makeKey(context, function, new Value[] {Value.valueOf("first")});
+    final FunctionResultCache.Key key2 = cache.makeKey(context, function, new Value[] {Value.valueOf("second")});
+    final FunctionResultCache.Key key3 = cache.makeKey(context, function, new Value[] {Value.valueOf("third")});
+
+    assertNull(cache.get(key1));
+    cache.put(key1, Value.valueOf(PreprocessorUtils.generateStringForChar('a', 50)));
+    cache.put(key2, Value.valueOf(PreprocessorUtils.generateStringForChar('b', 50)));
+    assertEquals(2, cache.size());
+    assertTrue(cache.getWeight() <= cache.getMaxWeight());
+
+    assertNotNull(cache.get(key1));
+    cache.put(key3, Value.valueOf(PreprocessorUtils.generateStringForChar('c', 50)));
+    assertEquals(2, cache.size());
+    assertNotNull("Recently used must be kept", cache.get(key1));
+    assertNull("Least recently used must be removed", cache.get(key2));
+    assertNotNull(cache.get(key3));
+    assertTrue(cache.getWeight() <= cache.getMaxWeight());
+
+    cache.put(key2, Value.valueOf(PreprocessorUtils.generateStringForChar('d', 500)));
+    assertNull("Too heavy result must not be cached", cache.get(key2));
+
+    assertEquals(3L, cache.getHits());
+    assertEquals(3L, cache.getMisses());
+    assertEquals(0.5d, cache.getHitRatio(), 0.0001d);
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.getWeight());
+    assertEquals(0.0d, cache.getHitRatio(), 0.0d);
+  }
+
+  @Test
+  public void testExpression_SharedBetweenContexts() {
+    final PreprocessorContext context = new PreprocessorContext(new File("."));
+    context.setFunctionResultCache(new FunctionResultCache(10000L));
+    context.setLocalVariable("text", Value.valueOf("<a>"));
+
+    assertEquals("&lt;a&gt;", Expression.evalExpression("str2web(text)", context).asString());
+    assertEquals(0L, context.getFunctionResultCache().getHits());
+
+    final PreprocessorContext cloned = new PreprocessorContext(context);
+    assertSame(context.getFunctionResultCache(), cloned.getFunctionResultCache());
+    assertEquals("&lt;a&gt;", Expression.evalExpression("str2web(text)", cloned).asString());
+    assertEquals(1L, cloned.getFunctionResultCache().getHits());
+  }
+
+  @Test
+  public void testBinFile_KeyDependsOnFileState() throws Exception {
+    final File folder = tempFolder.newFolder("src");
+    final File file = new File(folder, "data.bin");
+    FileUtils.writeByteArrayToFile(file, new byte[] {1, 2, 3});
+
+    final PreprocessorContext context = new PreprocessorContext(new File("."));
+    context.setSources(Collections.singletonList(folder.getAbsolutePath()));
+    context.setFunctionResultCache(new FunctionResultCache(10000L));
+
+    context.setLocalVariable("path", Value.valueOf(file.getAbsolutePath()));
+
+    final String expression = "binfile(path,\"uint8[]\")";
+    assertEquals("1,2,3", Expression.evalExpression(expression, context).asString());
+    assertEquals("1,2,3", Expression.evalExpression(expression, context).asString());
+    assertEquals(1L, context.getFunctionResultCache().getHits());
+
+    FileUtils.writeByteArrayToFile(file, new byte[] {4, 5, 6, 7});
+    assertEquals("4,5,6,7", Expression.evalExpression(expression, context).asString());
+    assertEquals(1L, context.getFunctionResultCache().getHits());
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions;
+
+import com.igormaznitsa.jcp.utils.PreprocessorUtils;
+import org.apache.commons.text.StringEscapeUtils;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class StringEscaperTest {
+
+  private static final int RANDOM_STRINGS = 20000;
+
+  private static String legacyEsc(final String sourceString) {
+    final StringBuilder result = new StringBuilder();
+    for (int i = 0; i < sourceString.length(); i++) {
+      final char chr = sourceString.charAt(i);
+      switch (chr) {
+        case '\n':
+          result.append("\\n");
+          break;
+        case '\t':
+          result.append("\\t");
+          break;
+        case '\b':
+          result.append("\\b");
+          break;
+        case '\f':
+          result.append("\\f");
+          break;
+        case '\r':
+          result.append("\\r");
+          break;
+        case '\\':
+          result.append("\\\\");
+          break;
+        case '\'':
+          result.append("\\\'");
+          break;
+        case '\"':
+          result.append("\\\"");
+          break;
+        default: {
+          if (chr > 0x7F || Character.isISOControl(chr)) {
+            String hexCode = Integer.toHexString(chr).toUpperCase(Locale.ENGLISH);
+            if (hexCode.length() < 4) {
+              hexCode = "0000".substring(0, 4 - hexCode.length()) + hexCode;
+            }
+            result.append("\\u").append(hexCode);
+          } else {
+            result.append(chr);
+          }
+        }
+      }
+    }
+    return result.toString();
+  }
+
+  private static String legacyGo(final String value) {
+    final StringBuilder result = new StringBuilder();
+    for (final char c : value.toCharArray()) {
+      switch (c) {
+        case '\u0007':
+          result.append("\\a");
+          break;
+        case '\u000b':
+          result.append("\\v");
+          break;
+        case '\b':
+          result.append("\\b");
+          break;
+        case '\f':
+          result.append("\\f");
+          break;
+        case '\n':
+          result.append("\\n");
+          break;
+        case '\r':
+          result.append("\\r");
+          break;
+        case '\t':
+          result.append("\\t");
+          break;
+        case '\\':
+          result.append("\\\\");
+          break;
+        case '\'':
+          result.append("\\\'");
+          break;
+        case '\"':
+          result.append("\\\"");
+          break;
+        case ' ':
+          result.append(" ");
+          break;
+        default: {
+          if (Character.isISOControl(c) || Character.isWhitespace(c) || c > 0xFF) {
+            final String hex = Integer.toHexString(c);
+            result.append("\\u");
+            for (int i = 0; i < 4 - hex.length(); i++) {
+              result.append('0');
+            }
+            result.append(hex);
+          } else {
+            result.append(c);
+          }
+        }
+        break;
+      }
+    }
+    return result.toString();
+  }
+
+  private static String legacyWeb(final String value) {
+    final String escaped = StringEscapeUtils.escapeHtml3(value);
+    final StringBuilder result = new StringBuilder(escaped.length() * 2);
+    for (int i = 0; i < escaped.length(); i++) {
+      final char ch = escaped.charAt(i);
+      if (ch < 128) {
+        result.append(ch);
+      } else {
+        result.append("&#").append(Character.codePointAt(escaped, i)).append(';');
+      }
+    }
+    return result.toString();
+  }
+
+  private static String legacySplitLines(final String text, final Function<String, String> escaper) {
+    final boolean endsWithNextLine = text.endsWith("\n");
+    final List<String> split = PreprocessorUtils.splitForCharAndHoldEmptyLine(text, '\n');
+    final StringBuilder result = new StringBuilder(text.length() * 2);
+    final String nextLineChars = PreprocessorUtils.getNextLineCodes();
+
+    int index = 0;
+    for (final String s : split) {
+      final boolean last = ++index == split.size();
+      if (result.length() > 0) {
+        result.append(nextLineChars).append('+');
+      }
+      result.append('\"').append(escaper.apply(s));
+      if (last) {
+        result.append(endsWithNextLine ? "\\n\"" : "\"");
+      } else {
+        result.append("\\n\"");
+      }
+    }
+    return result.toString();
+  }
+
+  private static String legacyTrimLines(final String text) {
+    final StringBuilder result = new StringBuilder(text.length());
+    for (final String s : PreprocessorUtils.splitForChar(text, '\n')) {
+      final String trimmed = s.trim();
+      if (!trimmed.isEmpty()) {
+        if (result.length() > 0) {
+          result.append(PreprocessorUtils.getNextLineCodes());
+        }
+        result.append(trimmed);
+      }
+    }
+    return result.toString();
+  }
+
+  private static String randomString(final Random rnd) {
+    final int length = rnd.nextInt(24);
+    final StringBuilder result = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      switch (rnd.nextInt(6)) {
+        case 0:
+          result.append((char) rnd.nextInt(0x20));
+          break;
+        case 1:
+          result.append(" \t\n\r\"',&<>\\".charAt(rnd.nextInt(11)));
+          break;
+        case 2:
+          result.append((char) (0x80 + rnd.nextInt(0x80)));
+          break;
+        case 3:
+          result.append((char) (0xD800 + rnd.nextInt(0x800)));
+          break;
+        case 4:
+          result.appendCodePoint(0x10000 + rnd.nextInt(0x10000));
+          break;
+        default:
+          result.append((char) (0x20 + rnd.nextInt(0x60)));
+          break;
+      }
+    }
+    return result.toString();
+  }
+
+  private static void assertSameResults(final Function<String, String> expected, final Function<String, String> actual) {
+    for (int c = 0; c <= 0xFFFF; c++) {
+      final String text = "a" + (char) c + "b";
+      assertEquals("Char " + c, expected.apply(text), actual.apply(text));
+    }
+    final Random rnd = new Random(12345L);
+    for (int i = 0; i < RANDOM_STRINGS; i++) {
+      final String text = randomString(rnd);
+      assertEquals(expected.apply(text), actual.apply(text));
+    }
+  }
+
+  @Test
+  public void testJava() {
+    assertSameResults(StringEscapeUtils::escapeJava, StringEscaper.JAVA::escape);
+  }
+
+  @Test
+  public void testJson() {
+    assertSameResults(StringEscapeUtils::escapeJson, StringEscaper.JSON::escape);
+  }
+
+  @Test
+  public void testEcmaScript() {
+    assertSameResults(StringEscapeUtils::escapeEcmaScript, StringEscaper.ECMA_SCRIPT::escape);
+  }
+
+  @Test
+  public void testXml10() {
+    assertSameResults(StringEscapeUtils::escapeXml10, StringEscaper.XML10::escape);
+  }
+
+  @Test
+  public void testWeb() {
+    assertSameResults(StringEscaperTest::legacyWeb, StringEscaper.WEB::escape);
+  }
+
+  @Test
+  public void testPreprocessor() {
+    assertSameResults(StringEscaperTest::legacyEsc, StringEscaper.PREPROCESSOR::escape);
+  }
+
+  @Test
+  public void testGo() {
+    assertSameResults(StringEscaperTest::legacyGo, StringEscaper.GO::escape);
+  }
+
+  @Test
+  public void testCsv() {
+    assertSameResults(StringEscapeUtils::escapeCsv, StringEscaper::escapeCsv);
+  }
+
+  @Test
+  public void testTrimLines() {
+    assertSameResults(StringEscaperTest::legacyTrimLines, StringEscaper::trimLines);
+  }
+
+  @Test
+  public void testSplitLines() {
+    assertSameResults(x -> legacySplitLines(x, StringEscapeUtils::escapeJava), StringEscaper.JAVA::escapeSplitLines);
+    assertSameResults(x -> legacySplitLines(x, StringEscaperTest::legacyGo), StringEscaper.GO::escapeSplitLines);
+    for (final String text : new String[] {"", "\n", "\n\n", "a\n", "\na", "a\n\nb", "a\nb\n\n"}) {
+      assertEquals(legacySplitLines(text, StringEscapeUtils::escapeJava), StringEscaper.JAVA.escapeSplitLines(text));
+    }
+  }
+
+  @Test
+  public void testReturnSameInstanceIfNothingToEscape() {
+    final String text = "Hello world 12345";
+    assertSame(text, StringEscaper.JAVA.escape(text));
+    assertSame(text, StringEscaper.JSON.escape(text));
+    assertSame(text, StringEscaper.XML10.escape(text));
+    assertSame(text, StringEscaper.WEB.escape(text));
+    assertSame(text, StringEscaper.GO.escape(text));
+    assertSame(text, StringEscaper.escapeCsv(text));
+    assertSame("\uD83D\uDE00", StringEscaper.XML10.escape("\uD83D\uDE00"));
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.csv;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class CsvTableTest {
+
+  private static CsvTable table(final String text) {
+    return CsvTable.wrap(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testAsciiCompatibleCharsets() {
+    assertTrue(CsvTable.isAsciiCompatible(StandardCharsets.UTF_8));
+    assertTrue(CsvTable.isAsciiCompatible(StandardCharsets.ISO_8859_1));
+    assertTrue(CsvTable.isAsciiCompatible(StandardCharsets.US_ASCII));
+    assertFalse(CsvTable.isAsciiCompatible(StandardCharsets.UTF_16));
+    assertFalse(CsvTable.isAsciiCompatible(StandardCharsets.UTF_16LE));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNotAsciiCompatibleCharset() {
+    CsvTable.wrap(ByteBuffer.wrap("a,b".getBytes(StandardCharsets.UTF_16BE)), StandardCharsets.UTF_16BE);
+  }
+
+  @Test
+  public void testEmpty() {
+    assertEquals(0, table("").getRowCount());
+    assertEquals(0, table("\n\r\n").getRowCount());
+    assertNull(table("").getCell(0, 0));
+    assertEquals(-1, table("").findRow(0, ""));
+  }
+
+  @Test
+  public void testRowsAndCells() {
+    final CsvTable table = table("\uFEFFa,b\nc\r\n\"d,\r\ne\",\"\"\"\"\"\"\n\u00e9\u4e2d,");
+    assertEquals(4, table.getRowCount());
+    assertEquals("a", table.getCell(0, 0));
+    assertEquals("b", table.getCell(0, 1));
+    assertNull(table.getCell(0, 2));
+    assertEquals("c", table.getCell(1, 0));
+    assertNull(table.getCell(1, 1));
+    assertEquals("d,\r\ne", table.getCell(2, 0));
+    assertEquals("\"\"", table.getCell(2, 1));
+    assertEquals("\u00e9\u4e2d", table.getCell(3, 0));
+    assertEquals("", table.getCell(3, 1));
+    assertNull(table.getCell(4, 0));
+    assertNull(table.getCell(-1, 0));
+    assertNull(table.getCell(0, -1));
+  }
+
+  @Test
+  public void testFindRow() {
+    final StringBuilder buffer = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      buffer.append("key").append(i).append(",value").append(i).append('\n');
+    }
+    final CsvTable table = table(buffer.toString());
+    final long weight = table.getWeight();
+    assertEquals(9876, table.findRow(0, "key9876"));
+    assertTrue(table.getWeight() > weight);
+    final long indexed = table.getWeight();
+    assertEquals(1234, table.findRow(1, "value1234"));
+    assertEquals(-1, table.findRow(1, "key1234"));
+    assertEquals(0, table.findRow(0, "key0"));
+    assertTrue(table.getWeight() > indexed);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.csv;
+
+import com.igormaznitsa.jcp.expression.Expression;
+import com.igormaznitsa.jcp.exceptions.PreprocessorException;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FunctionCSV_FINDTest extends AbstractFunctionCsvTest {
+
+  private static final FunctionCSV_FIND HANDLER = new FunctionCSV_FIND();
+
+  @Test
+  public void testExecute() throws Exception {
+    final long weight = SPY_CONTEXT.getSharedResourceWeight();
+    assertEquals(Value.valueOf(1L), HANDLER.executeStrIntStr(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(0L), Value.valueOf("E001")));
+    assertTrue(SPY_CONTEXT.getSharedResourceWeight() > weight);
+    assertEquals(Value.valueOf(3L), HANDLER.executeStrIntStr(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(0L), Value.valueOf("E003")));
+    assertEquals(Value.valueOf(-1L), HANDLER.executeStrIntStr(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(0L), Value.valueOf("E999")));
+    assertEquals(Value.valueOf(2L), HANDLER.executeStrIntStr(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(2L), Value.valueOf("warn")));
+    assertEquals(Value.valueOf(-1L), HANDLER.executeStrIntStr(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(10L), Value.valueOf("warn")));
+  }
+
+  @Test
+  public void testExecute_InExpression() throws Exception {
+    assertEquals(Value.valueOf("warn"), Expression.evalExpression("csv_get(csv_open(\"test.csv\"),csv_find(csv_open(\"test.csv\"),0,\"E002\"),2)", SPY_CONTEXT));
+  }
+
+  @Override
+  public void testName() {
+    assertEquals("csv_find", HANDLER.getName());
+  }
+
+  @Override
+  public void testReference() {
+    assertReference(HANDLER);
+  }
+
+  @Override
+  public void testArity() {
+    assertEquals(3, HANDLER.getArity());
+  }
+
+  @Override
+  public void testAllowedArgumentTypes() {
+    assertAllowedArguments(HANDLER, new ValueType[][] {{ValueType.STRING, ValueType.INT, ValueType.STRING}});
+  }
+
+  @Override
+  public void testResultType() {
+    assertEquals(ValueType.INT, HANDLER.getResultType());
+  }
+}
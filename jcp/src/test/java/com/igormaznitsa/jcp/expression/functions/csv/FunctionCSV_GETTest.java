@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.csv;
+
+import com.igormaznitsa.jcp.exceptions.PreprocessorException;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FunctionCSV_GETTest extends AbstractFunctionCsvTest {
+
+  private static final FunctionCSV_GET HANDLER = new FunctionCSV_GET();
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_RowOutOfBounds() throws Exception {
+    HANDLER.executeStrIntInt(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(6L), Value.valueOf(0L));
+  }
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_ColumnOutOfBounds() throws Exception {
+    HANDLER.executeStrIntInt(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(1L), Value.valueOf(3L));
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    assertEquals(Value.valueOf("level"), HANDLER.executeStrIntInt(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(0L), Value.valueOf(2L)));
+    assertEquals(Value.valueOf("File not found, check path"), HANDLER.executeStrIntInt(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(1L), Value.valueOf(1L)));
+    assertEquals(Value.valueOf("Say \"hello\""), HANDLER.executeStrIntInt(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(2L), Value.valueOf(1L)));
+    assertEquals(Value.valueOf("multi\nline"), HANDLER.executeStrIntInt(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(3L), Value.valueOf(1L)));
+    assertEquals(Value.valueOf("info"), HANDLER.executeStrIntInt(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(3L), Value.valueOf(2L)));
+    assertEquals(Value.valueOf(""), HANDLER.executeStrIntInt(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(5L), Value.valueOf(1L)));
+    assertEquals(Value.valueOf(""), HANDLER.executeStrIntInt(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(5L), Value.valueOf(2L)));
+  }
+
+  @Override
+  public void testName() {
+    assertEquals("csv_get", HANDLER.getName());
+  }
+
+  @Override
+  public void testReference() {
+    assertReference(HANDLER);
+  }
+
+  @Override
+  public void testArity() {
+    assertEquals(3, HANDLER.getArity());
+  }
+
+  @Override
+  public void testAllowedArgumentTypes() {
+    assertAllowedArguments(HANDLER, new ValueType[][] {{ValueType.STRING, ValueType.INT, ValueType.INT}});
+  }
+
+  @Override
+  public void testResultType() {
+    assertEquals(ValueType.STRING, HANDLER.getResultType());
+  }
+}
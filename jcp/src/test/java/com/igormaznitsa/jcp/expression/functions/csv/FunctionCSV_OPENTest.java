@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.csv;
+
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.context.SharedResourceScope;
+import com.igormaznitsa.jcp.exceptions.PreprocessorException;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class FunctionCSV_OPENTest extends AbstractFunctionCsvTest {
+
+  private static final FunctionCSV_OPEN HANDLER = new FunctionCSV_OPEN();
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_FileNotFound() throws Exception {
+    HANDLER.executeStr(SPY_CONTEXT, Value.valueOf("unknown_file.csv"));
+  }
+
+  @Test
+  public void testExecute_NotAsciiCompatibleEncoding() throws Exception {
+    final PreprocessorContext context = makeResourceFolderContext();
+    context.setSourceEncoding(StandardCharsets.UTF_16);
+    try {
+      HANDLER.executeStr(context, Value.valueOf("test.csv"));
+      fail("Must throw PreprocessorException");
+    } catch (PreprocessorException ex) {
+      assertTrue(ex.getMessage().contains("UTF-16"));
+    }
+  }
+
+  @Test
+  public void testExecute_TableIsShared() throws Exception {
+    final Object table = SPY_CONTEXT.getSharedResource(OPENED_TABLE_ID.asString());
+    assertTrue(table instanceof CsvTable);
+    assertEquals(OPENED_TABLE_ID, HANDLER.executeStr(SPY_CONTEXT, Value.valueOf("test.csv")));
+    assertSame(table, SPY_CONTEXT.getSharedResource(OPENED_TABLE_ID.asString()));
+  }
+
+  @Test
+  public void testExecute_DroppedTableIsMappedAgain() throws Exception {
+    SPY_CONTEXT.setSharedResourceBudget(1L);
+    SPY_CONTEXT.setSharedResource("some", "resource", SharedResourceScope.RUN, 10L);
+    assertTrue(SPY_CONTEXT.isSharedResourceDropped(OPENED_TABLE_ID.asString()));
+
+    assertEquals(Value.valueOf("E002"), new FunctionCSV_GET().executeStrIntInt(SPY_CONTEXT, OPENED_TABLE_ID, Value.valueOf(2L), Value.valueOf(0L)));
+  }
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_NotOpenedTableIsNotMade() throws Exception {
+    new FunctionCSV_SIZE().executeStr(SPY_CONTEXT, Value.valueOf(AbstractCsvFunction.makeTableId("test.csv") + 'x'));
+  }
+
+  @Override
+  public void testName() {
+    assertEquals("csv_open", HANDLER.getName());
+  }
+
+  @Override
+  public void testReference() {
+    assertReference(HANDLER);
+  }
+
+  @Override
+  public void testArity() {
+    assertEquals(1, HANDLER.getArity());
+  }
+
+  @Override
+  public void testAllowedArgumentTypes() {
+    assertAllowedArguments(HANDLER, new ValueType[][] {{ValueType.STRING}});
+  }
+
+  @Override
+  public void testResultType() {
+    assertEquals(ValueType.STRING, HANDLER.getResultType());
+  }
+}
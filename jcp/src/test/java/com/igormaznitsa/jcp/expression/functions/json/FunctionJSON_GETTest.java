@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.json;
+
+import com.igormaznitsa.jcp.exceptions.PreprocessorException;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FunctionJSON_GETTest extends AbstractFunctionJsonTest {
+
+  private static final FunctionJSON_GET HANDLER = new FunctionJSON_GET();
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_WrongId() throws Exception {
+    HANDLER.executeStrStr(SPY_CONTEXT, Value.valueOf("jhjhsdjhsd"), Value.valueOf("name"));
+  }
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_UnknownMember() throws Exception {
+    HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("unknown"));
+  }
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_IndexOutOfBounds() throws Exception {
+    final Value languages = HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("languages"));
+    HANDLER.executeStrInt(SPY_CONTEXT, languages, Value.valueOf(3L));
+  }
+
+  @Test
+  public void testExecute_Scalars() throws Exception {
+    assertEquals(Value.valueOf("Test config"), HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("name")));
+    assertEquals(Value.valueOf(3L), HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("version")));
+    assertEquals(Value.valueOf(1.5f), HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("ratio")));
+    assertEquals(Value.BOOLEAN_TRUE, HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("enabled")));
+    assertEquals(Value.BOOLEAN_FALSE, HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("debug")));
+    assertEquals(Value.valueOf(""), HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("owner")));
+    assertEquals(Value.valueOf("line1\nline2 A\""), HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("escaped\tkey")));
+  }
+
+  @Test
+  public void testExecute_Containers() throws Exception {
+    final Value languages = HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("languages"));
+    assertEquals(ValueType.STRING, languages.getType());
+    final Value kotlin = HANDLER.executeStrInt(SPY_CONTEXT, languages, Value.valueOf(2L));
+    assertEquals(Value.valueOf("Kotlin"), HANDLER.executeStrStr(SPY_CONTEXT, kotlin, Value.valueOf("name")));
+    assertEquals(Value.valueOf(2011L), HANDLER.executeStrStr(SPY_CONTEXT, kotlin, Value.valueOf("year")));
+    assertEquals(kotlin, HANDLER.executeStrStr(SPY_CONTEXT, languages, Value.valueOf("2")));
+    assertEquals(Value.valueOf("Test config"), HANDLER.executeStrInt(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf(0L)));
+  }
+
+  @Override
+  public void testName() {
+    assertEquals("json_get", HANDLER.getName());
+  }
+
+  @Override
+  public void testReference() {
+    assertReference(HANDLER);
+  }
+
+  @Override
+  public void testArity() {
+    assertEquals(2, HANDLER.getArity());
+  }
+
+  @Override
+  public void testAllowedArgumentTypes() {
+    assertAllowedArguments(HANDLER, new ValueType[][] {{ValueType.STRING, ValueType.INT}, {ValueType.STRING, ValueType.STRING}});
+  }
+
+  @Override
+  public void testResultType() {
+    assertEquals(ValueType.ANY, HANDLER.getResultType());
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.json;
+
+import com.igormaznitsa.jcp.context.SharedResourceScope;
+import com.igormaznitsa.jcp.exceptions.PreprocessorException;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FunctionJSON_OPENTest extends AbstractFunctionJsonTest {
+
+  private static final FunctionJSON_OPEN HANDLER = new FunctionJSON_OPEN();
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_FileNotFound() throws Exception {
+    HANDLER.executeStr(SPY_CONTEXT, Value.valueOf("unknown_file.json"));
+  }
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_WrongJson() throws Exception {
+    HANDLER.executeStr(SPY_CONTEXT, Value.valueOf("wrong.json"));
+  }
+
+  @Test
+  public void testExecute_DocumentIsShared() throws Exception {
+    final Object index = SPY_CONTEXT.getSharedResource(OPENED_DOCUMENT_ID.asString());
+    assertTrue(index instanceof JsonIndex);
+    assertEquals(OPENED_DOCUMENT_ID, HANDLER.executeStr(SPY_CONTEXT, Value.valueOf("test.json")));
+    assertSame(index, SPY_CONTEXT.getSharedResource(OPENED_DOCUMENT_ID.asString()));
+    assertSame(index, SPY_CONTEXT.getSharedResources().get(OPENED_DOCUMENT_ID.asString()));
+  }
+
+  @Test
+  public void testExecute_DroppedDocumentIsParsedAgain() throws Exception {
+    final Value languages = new FunctionJSON_GET().executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("languages"));
+    SPY_CONTEXT.setSharedResourceBudget(1L);
+    SPY_CONTEXT.setSharedResource("some", "resource", SharedResourceScope.RUN, 10L);
+    assertTrue(SPY_CONTEXT.isSharedResourceDropped(OPENED_DOCUMENT_ID.asString()));
+
+    assertEquals(3L, new FunctionJSON_SIZE().executeStr(SPY_CONTEXT, languages).asLong().longValue());
+  }
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_NotOpenedDocumentIsNotMade() throws Exception {
+    new FunctionJSON_SIZE().executeStr(SPY_CONTEXT, Value.valueOf(AbstractJsonFunction.makeDocumentId("test.json") + 'x'));
+  }
+
+  @Override
+  public void testName() {
+    assertEquals("json_open", HANDLER.getName());
+  }
+
+  @Override
+  public void testReference() {
+    assertReference(HANDLER);
+  }
+
+  @Override
+  public void testArity() {
+    assertEquals(1, HANDLER.getArity());
+  }
+
+  @Override
+  public void testAllowedArgumentTypes() {
+    assertAllowedArguments(HANDLER, new ValueType[][] {{ValueType.STRING}});
+  }
+
+  @Override
+  public void testResultType() {
+    assertEquals(ValueType.STRING, HANDLER.getResultType());
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.json;
+
+import com.igormaznitsa.jcp.expression.Expression;
+import com.igormaznitsa.jcp.exceptions.PreprocessorException;
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FunctionJSON_PATHTest extends AbstractFunctionJsonTest {
+
+  private static final FunctionJSON_PATH HANDLER = new FunctionJSON_PATH();
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_NotFound() throws Exception {
+    HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("$.languages[5].name"));
+  }
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecute_WrongPath() throws Exception {
+    HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("$.languages[x"));
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    assertEquals(Value.valueOf("android"), HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("$.languages[2].tags[1]")));
+    assertEquals(Value.valueOf(4L), HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("matrix[1][1]")));
+    assertEquals(Value.valueOf("dotted"), HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("[\"with.dot\"]")));
+    final Value go = HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("languages[1]"));
+    assertEquals(Value.valueOf(2009L), HANDLER.executeStrStr(SPY_CONTEXT, go, Value.valueOf("year")));
+    assertEquals(Value.valueOf(2009L), HANDLER.executeStrStr(SPY_CONTEXT, go, Value.valueOf(".year")));
+  }
+
+  @Test
+  public void testExecute_InExpression() throws Exception {
+    assertEquals(Value.valueOf("Go 2009"), Expression.evalExpression("json_path(json_open(\"test.json\"),\"languages[1].name\")+\" \"+json_get(json_path(json_open(\"test.json\"),\"languages[1]\"),\"year\")", SPY_CONTEXT));
+    assertEquals(Value.valueOf(3L), Expression.evalExpression("json_size(json_get(json_open(\"test.json\"),\"languages\"))", SPY_CONTEXT));
+  }
+
+  @Override
+  public void testName() {
+    assertEquals("json_path", HANDLER.getName());
+  }
+
+  @Override
+  public void testReference() {
+    assertReference(HANDLER);
+  }
+
+  @Override
+  public void testArity() {
+    assertEquals(2, HANDLER.getArity());
+  }
+
+  @Override
+  public void testAllowedArgumentTypes() {
+    assertAllowedArguments(HANDLER, new ValueType[][] {{ValueType.STRING, ValueType.STRING}});
+  }
+
+  @Override
+  public void testResultType() {
+    assertEquals(ValueType.ANY, HANDLER.getResultType());
+  }
+}
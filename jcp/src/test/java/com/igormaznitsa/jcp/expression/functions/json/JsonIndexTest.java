@@ -0,0 +1,128 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.json;
+
+import com.igormaznitsa.jcp.expression.Value;
+import org.junit.Test;
+
+import java.text.ParseException;
+
+import static org.junit.Assert.*;
+
+public class JsonIndexTest {
+
+  private static void assertWrong(final String json) {
+    try {
+      JsonIndex.parse(json);
+      fail("Must throw ParseException: " + json);
+    } catch (ParseException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testScalarRoot() throws Exception {
+    assertEquals(Value.valueOf(-12L), JsonIndex.parse(" -12 ").toValue(JsonIndex.ROOT));
+    assertEquals(Value.valueOf(1.5e3f), JsonIndex.parse("1.5e3").toValue(JsonIndex.ROOT));
+    assertEquals(Value.valueOf("\u00e9\n/"), JsonIndex.parse("\"\\u00e9\\n\\/\"").toValue(JsonIndex.ROOT));
+    assertEquals(Value.BOOLEAN_TRUE, JsonIndex.parse("\uFEFFtrue").toValue(JsonIndex.ROOT));
+    assertEquals(Value.valueOf(""), JsonIndex.parse("null").toValue(JsonIndex.ROOT));
+  }
+
+  @Test
+  public void testWrongJson() {
+    assertWrong("");
+    assertWrong("{");
+    assertWrong("[1,]");
+    assertWrong("[1 2]");
+    assertWrong("{\"a\" 1}");
+    assertWrong("{a:1}");
+    assertWrong("[01]");
+    assertWrong("[1.]");
+    assertWrong("[1e]");
+    assertWrong("\"abc");
+    assertWrong("\"\\x\"");
+    assertWrong("\"\t\"");
+    assertWrong("tru");
+    assertWrong("[1]]");
+    assertWrong("{\"a\":1,}");
+  }
+
+  @Test
+  public void testContainers() throws Exception {
+    final JsonIndex index = JsonIndex.parse("{\"a\":[1,[2,3],{}],\"b\":{\"c\":\"d\"},\"e\\u0041\":5}");
+    assertEquals(3, index.getChildCount(JsonIndex.ROOT));
+    assertEquals("a", index.getMemberName(JsonIndex.ROOT, 0));
+    assertEquals("eA", index.getMemberName(JsonIndex.ROOT, 2));
+    assertEquals(Value.valueOf(5L), index.toValue(index.findMember(JsonIndex.ROOT, "eA")));
+
+    final int a = index.findMember(JsonIndex.ROOT, "a");
+    assertEquals(JsonIndex.TYPE_ARRAY, index.getType(a));
+    assertEquals(3, index.getChildCount(a));
+    assertEquals(Value.valueOf(1L), index.toValue(index.getChild(a, 0)));
+    assertEquals(Value.valueOf(3L), index.toValue(index.getChild(index.getChild(a, 1), 1)));
+    assertEquals(0, index.getChildCount(index.getChild(a, 2)));
+    assertEquals(-1, index.getChild(a, 3));
+    assertEquals(-1, index.getChild(a, -1));
+    assertEquals(-1, index.findMember(a, "a"));
+    assertEquals(Value.valueOf("d"), index.toValue(index.findPath(JsonIndex.ROOT, "$.b.c")));
+    assertEquals(-1, index.findPath(JsonIndex.ROOT, "b.x"));
+  }
+
+  @Test
+  public void testPathIsCached() throws Exception {
+    final JsonIndex index = JsonIndex.parse("{\"list\":[{\"v\":1},{\"v\":2}]}");
+    final int found = index.findPath(JsonIndex.ROOT, "list[1].v");
+    final long weight = index.getWeight();
+    assertEquals(found, index.findPath(JsonIndex.ROOT, "list[1].v"));
+    assertEquals(weight, index.getWeight());
+    final int list = index.findMember(JsonIndex.ROOT, "list");
+    assertEquals(found, index.findPath(list, "[1].v"));
+    assertEquals(Value.valueOf(2L), index.toValue(found));
+  }
+
+  @Test
+  public void testDeepNestingAndBigArray() throws Exception {
+    final StringBuilder buffer = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      buffer.append('[');
+    }
+    for (int i = 0; i < 100000; i++) {
+      buffer.append(']');
+    }
+    assertEquals(100000, JsonIndex.parse(buffer.toString()).size());
+
+    buffer.setLength(0);
+    buffer.append('[');
+    for (int i = 0; i < 50000; i++) {
+      if (i > 0) {
+        buffer.append(',');
+      }
+      buffer.append("{\"id\":").append(i).append('}');
+    }
+    buffer.append(']');
+    final JsonIndex index = JsonIndex.parse(buffer.toString());
+    assertEquals(50000, index.getChildCount(JsonIndex.ROOT));
+    assertEquals(Value.valueOf(43210L), index.toValue(index.findMember(index.getChild(JsonIndex.ROOT, 43210), "id")));
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.igormaznitsa.jcp.expression.functions.xml;
+
+import org.apache.xerces.jaxp.DocumentBuilderFactoryImpl;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+
+import static org.junit.Assert.*;
+
+public class CompactXmlDocumentTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static Document parseDom(final File file) throws Exception {
+    final DocumentBuilderFactoryImpl factory = new DocumentBuilderFactoryImpl();
+    factory.setIgnoringComments(true);
+    factory.setCoalescing(true);
+    factory.setValidating(false);
+    return factory.newDocumentBuilder().parse(file);
+  }
+
+  private static void collectElements(final Node node, final List<Element> result) {
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() == Node.ELEMENT_NODE) {
+        result.add((Element) child);
+        collectElements(child, result);
+      }
+    }
+  }
+
+  private static void assertSameAsDom(final File file) throws Exception {
+    final CompactXmlDocument document = CompactXmlDocument.parse(file);
+    final List<Element> elements = new ArrayList<>();
+    collectElements(parseDom(file), elements);
+
+    assertEquals(elements.size(), document.getElementCount());
+    final Set<String> names = new HashSet<>();
+    for (int i = 0; i < elements.size(); i++) {
+      final Element element = elements.get(i);
+      names.add(element.getTagName());
+      assertEquals(element.getTagName(), document.getName(i));
+      assertEquals(element.getTextContent(), document.getText(i));
+      assertEquals(element.getParentNode() instanceof Element ? elements.indexOf(element.getParentNode()) : -1, document.getParent(i));
+
+      final NamedNodeMap attributes = element.getAttributes();
+      for (int a = 0; a < attributes.getLength(); a++) {
+        final String attributeName = attributes.item(a).getNodeName();
+        assertEquals(attributeName, element.getAttribute(attributeName), document.findAttribute(i, attributeName));
+      }
+      assertNull(document.findAttribute(i, "nonexistattribute"));
+    }
+
+    names.add("*");
+    names.add("nonexist");
+    for (int i = 0; i < elements.size(); i += Math.max(1, elements.size() / 20)) {
+      for (final String name : names) {
+        final NodeList expected = elements.get(i).getElementsByTagName(name);
+        final int[] found = document.findDescendants(i, name);
+        assertEquals(name, expected.getLength(), found.length);
+        for (int k = 0; k < found.length; k++) {
+          assertSame(expected.item(k), elements.get(found[k]));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSameAsDom_StaticSiteFiles() throws Exception {
+    final File folder = new File(this.getClass().getResource("/com/igormaznitsa/jcp/usecases/StaticSiteTest/src").toURI());
+    for (final String fileName : new String[] {"site.xml", "news.xml", "hotnews.xml", "games.xml", "devices.xml", "channels.xml"}) {
+      assertSameAsDom(new File(folder, fileName));
+    }
+    assertSameAsDom(new File(this.getClass().getResource("test.xml").toURI()));
+  }
+
+  @Test
+  public void testSameAsDom_MixedContent() throws Exception {
+    final File file = tempFolder.newFile("mixed.xml");
+    FileUtils.write(file, "<?xml version=\"1.0\"?>\n<!-- comment -->\n<a:root xmlns:a=\"http://some\" xmlns=\"http://default\" a:id=\"1\">"
+        + "text1<b>in b<!-- hidden --><c x='&amp;&lt;'>in c</c></b><?pi data?>text2<![CDATA[<cdata>]]>"
+        + "<b/><d><b>deep</b></d>&#1050;</a:root>", StandardCharsets.UTF_8);
+    assertSameAsDom(file);
+  }
+
+  @Test
+  public void testWideList() throws Exception {
+    final File file = tempFolder.newFile("wide.xml");
+    final StringBuilder buffer = new StringBuilder("<catalog>");
+    for (int i = 0; i < 100000; i++) {
+      buffer.append("<item id=\"").append(i).append("\">").append(i).append("</item>");
+    }
+    buffer.append("</catalog>");
+    FileUtils.write(file, buffer, StandardCharsets.UTF_8);
+
+    final CompactXmlDocument document = CompactXmlDocument.parse(file);
+    assertEquals(100001, document.getElementCount());
+    final int[] items = document.findForSimplePath(new String[] {"catalog", "item"});
+    assertEquals(100000, items.length);
+    assertEquals("99999", document.getText(items[99999]));
+    assertEquals("12345", document.findAttribute(items[12345], "id"));
+  }
+
+  @Test(expected = XMLStreamException.class)
+  public void testNotXml() throws Exception {
+    final File file = tempFolder.newFile("wrong.xml");
+    FileUtils.write(file, "<root><a></root>", StandardCharsets.UTF_8);
+    CompactXmlDocument.parse(file);
+  }
+}
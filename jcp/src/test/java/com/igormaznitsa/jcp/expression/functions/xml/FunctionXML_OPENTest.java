@@ -21,12 +21,16 @@
 
 package com.igormaznitsa.jcp.expression.functions.xml;
 
+import com.igormaznitsa.jcp.context.SharedResourceScope;
 import com.igormaznitsa.jcp.exceptions.PreprocessorException;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class FunctionXML_OPENTest extends AbstractFunctionXMLTest {
 
@@ -47,6 +51,62 @@ public class FunctionXML_OPENTest extends AbstractFunctionXMLTest {
     HANDLER.executeStr(SPY_CONTEXT, Value.valueOf("test.xml"));
   }
 
+  @Test
+  public void testExecute_DroppedResourcesAreMadeAgain() throws Exception {
+    SPY_CONTEXT.setSharedResourceBudget(1L);
+
+    final Value list = new FunctionXML_XLIST().executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("/root/languages/language"));
+    final Value languages = new FunctionXML_XELEMENT().executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("/root/languages"));
+    final Value children = new FunctionXML_LIST().executeStrStr(SPY_CONTEXT, languages, Value.valueOf("language"));
+    assertTrue(SPY_CONTEXT.getSharedResourceDropCount() > 0L);
+    assertTrue(SPY_CONTEXT.isSharedResourceDropped(OPENED_DOCUMENT_ID.asString()));
+
+    SPY_CONTEXT.releaseSharedResources(SharedResourceScope.FILE);
+    assertFalse(SPY_CONTEXT.isSharedResourceDropped(list.asString()));
+
+    final Value element = new FunctionXML_GET().executeStrInt(SPY_CONTEXT, list, Value.valueOf(2L));
+    assertEquals("esttext", new FunctionXML_TEXT().executeStr(SPY_CONTEXT, element).asString());
+    assertEquals(6L, new FunctionXML_SIZE().executeStr(SPY_CONTEXT, children).asLong().longValue());
+    assertEquals("languages", new FunctionXML_NAME().executeStr(SPY_CONTEXT, languages).asString());
+    assertEquals("hello", new FunctionXML_ATTR().executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ROOT, Value.valueOf("attr")).asString());
+
+    SPY_CONTEXT.releaseSharedResources(SharedResourceScope.FILE);
+    SPY_CONTEXT.releaseSharedResources(SharedResourceScope.RUN);
+    assertFalse(SPY_CONTEXT.isSharedResourceDropped(OPENED_DOCUMENT_ID.asString()));
+    try {
+      new FunctionXML_SIZE().executeStr(SPY_CONTEXT, children);
+      fail("Must throw PreprocessorException");
+    } catch (PreprocessorException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testExecute_DroppedDocumentWithSeparatorInName() throws Exception {
+    SPY_CONTEXT.setSharedResourceBudget(1L);
+
+    final Value document = HANDLER.executeStr(SPY_CONTEXT, Value.valueOf("separator_#root.xml"));
+    final Value root = new FunctionXML_ROOT().executeStr(SPY_CONTEXT, document);
+    final Value element = new FunctionXML_XELEMENT().executeStrStr(SPY_CONTEXT, document, Value.valueOf("/root/element"));
+    HANDLER.executeStr(SPY_CONTEXT, Value.valueOf("test.xml"));
+    assertTrue(SPY_CONTEXT.isSharedResourceDropped(document.asString()));
+
+    assertEquals("separator", new FunctionXML_ATTR().executeStrStr(SPY_CONTEXT, root, Value.valueOf("attr")).asString());
+    assertEquals("elem1", new FunctionXML_TEXT().executeStr(SPY_CONTEXT, element).asString());
+    assertEquals("root", new FunctionXML_NAME().executeStr(SPY_CONTEXT, new FunctionXML_ROOT().executeStr(SPY_CONTEXT, document)).asString());
+  }
+
+  @Test
+  public void testExecute_NotOpenedDocumentIsNotMade() throws Exception {
+    final FunctionXML_ROOT root = new FunctionXML_ROOT();
+    try {
+      root.executeStr(SPY_CONTEXT, Value.valueOf(AbstractXMLFunction.makeDocumentId("test.xml") + 'x'));
+      fail("Must throw PreprocessorException");
+    } catch (PreprocessorException ex) {
+      assertFalse(SPY_CONTEXT.isSharedResourceDropped(AbstractXMLFunction.makeDocumentId("test.xml") + 'x'));
+    }
+  }
+
   @Override
   public void testName() {
     assertEquals("xml_open", HANDLER.getName());
@@ -21,13 +21,22 @@
 
 package com.igormaznitsa.jcp.expression.functions.xml;
 
+import com.igormaznitsa.jcp.context.PreprocessorContext;
 import com.igormaznitsa.jcp.exceptions.PreprocessorException;
 import com.igormaznitsa.jcp.expression.Value;
 import com.igormaznitsa.jcp.expression.ValueType;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class FunctionXML_XLISTTest extends AbstractFunctionXMLTest {
 
@@ -52,6 +61,77 @@ public class FunctionXML_XLISTTest extends AbstractFunctionXMLTest {
     assertEquals(4, new FunctionXML_SIZE().executeStr(SPY_CONTEXT, value).asLong().intValue());
   }
 
+  @Test
+  public void testParseSimplePath() {
+    assertArrayEquals(new String[] {"root", "element"}, AbstractXMLFunction.parseSimplePath("/root/element"));
+    assertArrayEquals(new String[] {"root", "*", "some_name.1"}, AbstractXMLFunction.parseSimplePath("root/*/some_name.1"));
+    assertNull(AbstractXMLFunction.parseSimplePath("/"));
+    assertNull(AbstractXMLFunction.parseSimplePath("//element"));
+    assertNull(AbstractXMLFunction.parseSimplePath("/root/"));
+    assertNull(AbstractXMLFunction.parseSimplePath("/root/@attr"));
+    assertNull(AbstractXMLFunction.parseSimplePath("/root/element[1]"));
+    assertNull(AbstractXMLFunction.parseSimplePath("/root/ns:element"));
+    assertNull(AbstractXMLFunction.parseSimplePath("/root/text()"));
+    assertNull(AbstractXMLFunction.parseSimplePath("/root/../element"));
+  }
+
+  private static void collectPaths(final CompactXmlDocument document, final int element, final String path, final Set<String> result) {
+    final String elementPath = path + '/' + document.getName(element);
+    result.add(elementPath);
+    result.add(path + "/*");
+    for (int i = element + 1; i < document.getElementCount(); i++) {
+      if (document.getParent(i) == element) {
+        collectPaths(document, i, elementPath, result);
+      }
+    }
+  }
+
+  @Test
+  public void testSimplePathsSameAsXPath() throws Exception {
+    final File folder = new File(this.getClass().getResource("/com/igormaznitsa/jcp/usecases/StaticSiteTest/src").toURI());
+    final PreprocessorContext context = new PreprocessorContext(folder);
+    context.setSources(Collections.singletonList(folder.getAbsolutePath()));
+
+    int checkedPaths = 0;
+    for (final String fileName : new String[] {"site.xml", "news.xml", "hotnews.xml", "games.xml", "devices.xml", "channels.xml"}) {
+      final CompactXmlDocument document = HANDLER.getCachedDocument(context, new FunctionXML_OPEN().executeStr(context, Value.valueOf(fileName)).asString());
+
+      final Set<String> paths = new LinkedHashSet<>();
+      collectPaths(document, 0, "", paths);
+      paths.add("/" + document.getName(0) + "/nonexist");
+      for (final String path : paths) {
+        for (final String checked : new String[] {path, path.substring(1)}) {
+          final String[] steps = AbstractXMLFunction.parseSimplePath(checked);
+          assertNotNull(checked, steps);
+          assertArrayEquals(checked, document.findForXPath(checked), document.findForSimplePath(steps));
+          assertEquals(checked, document.findFirstForXPath(checked), document.findFirstForSimplePath(steps));
+          checkedPaths++;
+        }
+      }
+    }
+    assertEquals(true, checkedPaths > 100);
+  }
+
+  @Test
+  public void testPrepareXPathExpression_CachedForThread() throws Exception {
+    assertSame(AbstractXMLFunction.prepareXPathExpression("/root/element[1]"), AbstractXMLFunction.prepareXPathExpression("/root/element[1]"));
+  }
+
+  @Test
+  public void testExecution_ComplexXPath() throws Exception {
+    final Value value = HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("//element[position() > 1]"));
+    assertEquals(3, new FunctionXML_SIZE().executeStr(SPY_CONTEXT, value).asLong().intValue());
+    final Value element = new FunctionXML_GET().executeStrInt(SPY_CONTEXT, value, Value.INT_ONE);
+    assertEquals("elem3", new FunctionXML_TEXT().executeStr(SPY_CONTEXT, element).asString());
+  }
+
+  @Test(expected = PreprocessorException.class)
+  public void testExecution_NotElementCantBeTaken() throws Exception {
+    final Value value = HANDLER.executeStrStr(SPY_CONTEXT, OPENED_DOCUMENT_ID, Value.valueOf("/root/element/@attr"));
+    assertEquals(1, new FunctionXML_SIZE().executeStr(SPY_CONTEXT, value).asLong().intValue());
+    new FunctionXML_GET().executeStrInt(SPY_CONTEXT, value, Value.INT_ZERO);
+  }
+
   @Override
   public void testName() {
     assertEquals("xml_xlist", HANDLER.getName());
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.igormaznitsa.jcp.expression.operators;
+
+import com.igormaznitsa.jcp.expression.Value;
+import com.igormaznitsa.jcp.expression.ValueType;
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+
+public class OperatorDispatchTableTest {
+
+  private static final Value[] SAMPLES = new Value[] {
+      Value.valueOf(7L),
+      Value.valueOf(2.5f),
+      Value.valueOf("text"),
+      Value.BOOLEAN_TRUE
+  };
+
+  private static Method findByReflection(final AbstractOperator operator, final Value[] args) {
+    final Class<?>[] signature = args.length == 1 ? new Class<?>[] {Value.class} : new Class<?>[] {Value.class, Value.class};
+    final String[] names = new String[3];
+    for (int n = 0; n < names.length; n++) {
+      final StringBuilder buffer = new StringBuilder(AbstractOperator.EXECUTION_PREFIX);
+      for (int i = 0; i < args.length; i++) {
+        buffer.append((n == 1 && i == 0) || (n == 2 && i == 1) ? ValueType.ANY.getSignature() : args[i].getType().getSignature());
+      }
+      names[n] = buffer.toString();
+    }
+    for (final String name : names) {
+      try {
+        return operator.getClass().getMethod(name, signature);
+      } catch (NoSuchMethodException ex) {
+        // try next
+      }
+    }
+    return null;
+  }
+
+  private static Object callReflection(final Method method, final AbstractOperator operator, final Value[] args) throws Exception {
+    try {
+      return method.invoke(operator, (Object[]) args);
+    } catch (InvocationTargetException ex) {
+      return ex.getTargetException().getClass();
+    }
+  }
+
+  private static Object callHandle(final MethodHandle handle, final Value[] args) throws Throwable {
+    try {
+      return args.length == 1 ? (Value) handle.invokeExact(args[0]) : (Value) handle.invokeExact(args[0], args[1]);
+    } catch (RuntimeException ex) {
+      return ex.getClass();
+    }
+  }
+
+  @Test
+  public void testDispatchTableIsEqualToReflectionSearch() throws Throwable {
+    for (final AbstractOperator operator : AbstractOperator.getAllOperators()) {
+      for (final Value left : SAMPLES) {
+        if (operator.getArity() == 1) {
+          final Value[] args = new Value[] {left};
+          final Method method = findByReflection(operator, args);
+          final MethodHandle handle = operator.findExecutor(left.getType());
+          assertEquals(operator.getKeyword() + " " + left.getType(), method == null, handle == null);
+          if (method != null) {
+            assertEquals(callReflection(method, operator, args), callHandle(handle, args));
+          }
+          assertNull(operator.findExecutor(left.getType(), left.getType()));
+        } else {
+          for (final Value right : SAMPLES) {
+            final Value[] args = new Value[] {left, right};
+            final Method method = findByReflection(operator, args);
+            final MethodHandle handle = operator.findExecutor(left.getType(), right.getType());
+            assertEquals(operator.getKeyword() + " " + left.getType() + ',' + right.getType(), method == null, handle == null);
+            if (method != null) {
+              assertEquals(callReflection(method, operator, args), callHandle(handle, args));
+            }
+          }
+          assertNull(operator.findExecutor(left.getType()));
+        }
+      }
+    }
+  }
+}
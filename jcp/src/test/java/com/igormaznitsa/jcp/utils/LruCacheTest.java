@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2019 Igor Maznitsa (http://www.igormaznitsa.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.igormaznitsa.jcp.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LruCacheTest {
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testConstructor_WrongSize() {
+    new LruCache<String, String>(0);
+  }
+
+  @Test
+  public void testEvictionOfLeastRecentlyUsed() {
+    final LruCache<String, Integer> cache = new LruCache<>(2);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    assertEquals(Integer.valueOf(1), cache.get("a"));
+    cache.put("c", 3);
+
+    assertEquals(2, cache.size());
+    assertNull("Least recently used must be removed", cache.get("b"));
+    assertEquals(Integer.valueOf(1), cache.get("a"));
+    assertEquals(Integer.valueOf(3), cache.get("c"));
+
+    assertEquals(3L, cache.getHits());
+    assertEquals(1L, cache.getMisses());
+
+    assertEquals(Integer.valueOf(3), cache.remove("c"));
+    assertEquals(1, cache.size());
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.getHits());
+  }
+}
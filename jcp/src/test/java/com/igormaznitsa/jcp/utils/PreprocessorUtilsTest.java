@@ -21,6 +21,8 @@
 
 package com.igormaznitsa.jcp.utils;
 
+import com.igormaznitsa.jcp.context.PreprocessorContext;
+import com.igormaznitsa.jcp.expression.Value;
 import org.junit.Test;
 
 import java.io.BufferedReader;
@@ -56,6 +58,42 @@ public class PreprocessorUtilsTest {
     assertEquals("abc  ", PreprocessorUtils.replacePartByChar("abcde", ' ', 3, 8));
   }
 
+  @Test
+  public void testProcessMacroses_NoMacros() throws Exception {
+    final PreprocessorContext context = new PreprocessorContext(new File("."));
+    final String line = "int a = 10; /* comment */ // $hello$";
+    assertSame(line, PreprocessorUtils.processMacroses(line, context));
+    assertSame("", PreprocessorUtils.processMacroses("", context));
+    final String unclosed = "int a = /*$1+2;";
+    assertSame(unclosed, PreprocessorUtils.processMacroses(unclosed, context));
+  }
+
+  @Test
+  public void testProcessMacroses_SeveralMacros() throws Exception {
+    final PreprocessorContext context = new PreprocessorContext(new File("."));
+    context.setLocalVariable("hello", Value.valueOf("world"));
+    assertEquals("int a = 3; String s = \"world\"; // 6", PreprocessorUtils.processMacroses("int a = /*$1+2$*/; String s = \"/*$hello$*/\"; // /*$2*3$*/", context));
+    assertEquals("3world", PreprocessorUtils.processMacroses("/*$1+2$*//*$hello$*/", context));
+    assertEquals("/* $1$ */", PreprocessorUtils.processMacroses("/* $1$ */", context));
+  }
+
+  @Test
+  public void testProcessMacroses_SubstitutedTextIsNotExpandedAgain() throws Exception {
+    final PreprocessorContext context = new PreprocessorContext(new File("."));
+    context.setLocalVariable("macros", Value.valueOf("/*$1+2$*/"));
+    assertEquals("a=/*$1+2$*/;", PreprocessorUtils.processMacroses("a=/*$macros$*/;", context));
+  }
+
+  @Test
+  public void testProcessMacroses_AllowWhitespaces() throws Exception {
+    final PreprocessorContext context = new PreprocessorContext(new File("."));
+    context.setAllowWhitespaces(true);
+    context.setLocalVariable("hello", Value.valueOf("world"));
+    assertEquals("int a = 3; String s = \"world\"; 1", PreprocessorUtils.processMacroses("int a = /*  $1+2$\t*/; String s = \"/*$hello $ */\"; /*$1$*/", context));
+    assertEquals("/* comment */ 3", PreprocessorUtils.processMacroses("/* comment */ /* $1+2$ */", context));
+    assertEquals("/* $ 1$ \u2028 */ 2", PreprocessorUtils.processMacroses("/* $ 1$ \u2028 */ /*$2$*/", context));
+  }
+
   @Test
   public void testMakeFileReader_charsetAndBufferSizeChange() throws Exception {
     final Charset defaultCharset = Charset.defaultCharset();